@@ -0,0 +1,99 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.*;
+
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+/**
+ * Traitement applicatif bloquant de 5 ms (accès base de données simulé) :
+ * chaque opération envoie un message sur chacune des connexions puis attend
+ * tous les accusés de réception.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar BlockingHandlerBenchmark
+ * </pre>
+ *
+ * Serveur et clients partagent la JVM : 10 000 connexions demandent plus de
+ * 20 000 descripteurs de fichiers ({@code ulimit -n}). Les threads virtuels
+ * nécessitent le JDK 21, l'exécuteur VIRTUAL_THREADS est ignoré sinon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class BlockingHandlerBenchmark {
+    private static final long HANDLER_DELAY_MILLIS = 5;
+
+    @Param({ "1000", "10000" })
+    public int connections;
+
+    @Param({ "INLINE", "POOL", "VIRTUAL_THREADS" })
+    public WebSocketHandlerExecutor executor;
+
+    private WebSocketServer server;
+    private EventLoopGroup clientGroup;
+    private final List<LoopbackClient> clients = new ArrayList<LoopbackClient>();
+    private WsMsgText message;
+
+    @Setup
+    public void setup() throws Exception {
+        if (!executor.isAvailable()) {
+            throw new IllegalStateException(executor + " is not available on this JVM");
+        }
+
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setPort(0);
+        config.setHandlerExecutor(executor);
+        config.setHandlerThreads(256);
+
+        WsMessageDispatcher dispatcher = new WsMessageDispatcher()
+                .register(WsMsgText.class, new WsMessageHandler<WsMsgText>() {
+                    @Override
+                    public void handle(ChannelHandlerContext ctx, WsMsgText message) throws InterruptedException {
+                        Thread.sleep(HANDLER_DELAY_MILLIS);
+                    }
+                });
+        server = new WebSocketServer(config, dispatcher);
+        server.start();
+
+        clientGroup = new NioEventLoopGroup(2);
+        int port = server.localAddress().getPort();
+        for (int i = 0 ; i < connections ; i++) {
+            clients.add(LoopbackClient.connect(clientGroup, port, null, WsWireFormat.BINARY));
+        }
+
+        message = new WsMsgText();
+        message.setText("Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (LoopbackClient client : clients) {
+            client.close();
+        }
+        clients.clear();
+        clientGroup.shutdownGracefully().sync();
+        server.stop();
+    }
+
+    @Benchmark
+    public WsAckText sendToAll() throws InterruptedException {
+        for (LoopbackClient client : clients) {
+            client.sendAsync(message);
+        }
+        WsAckText ack = null;
+        for (LoopbackClient client : clients) {
+            ack = client.awaitAck(60, TimeUnit.SECONDS);
+        }
+        return ack;
+    }
+}
@@ -0,0 +1,92 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.WebSocketCompressionConfig;
+
+import io.netty.buffer.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+
+/**
+ * Compromis bande passante / CPU de permessage-deflate sur des frames JSON
+ * WsMsgText. Le débit mesure le coût CPU de l'encodeur, le compteur
+ * {@code wireBytes} le total d'octets envoyés sur l'itération (à rapporter au
+ * nombre d'opérations).
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar CompressionBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({ "off", "1", "6", "9" })
+    public String level;
+
+    @Param({ "64", "1024", "16384" })
+    public int textLength;
+
+    @Param({ "false", "true" })
+    public boolean noContextTakeover;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long wireBytes;
+    }
+
+    private EmbeddedChannel channel;
+    private ByteBuf payload;
+
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder();
+        String[] words = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do" };
+        for (int i = 0 ; text.length() < textLength ; i++) {
+            text.append(words[(i * 7) % words.length]).append(' ');
+        }
+        WsMsgText message = new WsMsgText();
+        message.setText(text.substring(0, textLength));
+        ByteBuf json = WsMessageCodec.getInstance().encode(PooledByteBufAllocator.DEFAULT, message);
+        payload = Unpooled.unreleasableBuffer(Unpooled.directBuffer().writeBytes(json));
+        json.release();
+
+        if ("off".equals(level)) {
+            channel = new EmbeddedChannel();
+            return;
+        }
+
+        WebSocketCompressionConfig config = new WebSocketCompressionConfig();
+        config.setCompressionLevel(Integer.parseInt(level));
+        config.setServerNoContextTakeover(noContextTakeover);
+        config.setMinSize(0);
+        WebSocketExtensionData request = new WebSocketExtensionData("permessage-deflate",
+                noContextTakeover ? Collections.singletonMap("server_no_context_takeover", (String) null) : Collections.<String, String> emptyMap());
+        channel = new EmbeddedChannel(config.newServerHandshaker().handshakeExtension(request).newExtensionEncoder());
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encode(Counters counters) {
+        channel.writeOutbound(new TextWebSocketFrame(payload.duplicate()));
+        WebSocketFrame frame = channel.readOutbound();
+        int size = frame.content().readableBytes();
+        frame.release();
+        counters.wireBytes += size;
+        return size;
+    }
+}
@@ -0,0 +1,118 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.*;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+/**
+ * Remise d'un message d'un noeud à l'autre par le {@link WebSocketNodeBus} :
+ * diffusion sur le noeud A, réception par un client connecté au seul noeud
+ * B, en mémoire ({@code local:}) ou sur la boucle locale TCP.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar CrossNodeBenchmark
+ * </pre>
+ *
+ * {@code latency} donne les percentiles d'un message isolé (attente du lot
+ * comprise), {@code throughput} le débit par rafales de {@link #BURST}
+ * messages, regroupés en lots de {@code busBatchSize} au plus.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrossNodeBenchmark {
+    static final int BURST = 256;
+
+    @Param({ "local", "tcp" })
+    public String bus;
+
+    /** 0 : lot envoyé dès que le thread du bus est disponible */
+    @Param({ "0", "1000" })
+    public int busBatchDelayMicros;
+
+    private WebSocketServer nodeA;
+    private WebSocketServer nodeB;
+    private EventLoopGroup clientGroup;
+    private LoopbackClient client;
+    private WsMsgText message;
+    private long nextId;
+
+    @Setup
+    public void setup() throws Exception {
+        boolean local = "local".equals(bus);
+
+        nodeB = new WebSocketServer(nodeConfig(local ? "local:node-b" : "127.0.0.1:0"));
+        nodeB.start();
+        InetSocketAddress busB = local ? null : (InetSocketAddress) ((WebSocketNodeBus) nodeB.getMessageBus()).localAddress();
+
+        WebSocketServerConfig configA = nodeConfig(local ? "local:node-a" : "127.0.0.1:0");
+        configA.setBusPeers(Collections.singletonList(local ? "local:node-b" : "127.0.0.1:" + busB.getPort()));
+        nodeA = new WebSocketServer(configA);
+        nodeA.start();
+
+        clientGroup = new NioEventLoopGroup(1);
+        client = LoopbackClient.connect(clientGroup, nodeB.localAddress().getPort(), null, WsWireFormat.BINARY);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (nodeB.getChannelRegistry().size() < 1 || ((WebSocketNodeBus) nodeA.getMessageBus()).getConnectedPeers() < 1) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Nodes not connected after 10s");
+            }
+            Thread.sleep(10);
+        }
+
+        message = new WsMsgText();
+        message.setText("Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+    }
+
+    private WebSocketServerConfig nodeConfig(String busAddress) {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setPort(0);
+        config.setJmx(false);
+        config.setBusAddress(busAddress);
+        config.setBusBatchDelayMicros(busBatchDelayMicros);
+        return config;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        clientGroup.shutdownGracefully().sync();
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public WsMsgText latency() throws InterruptedException {
+        // Identifiants distincts, les doublons n'étant pas transmis
+        message.setId(++nextId);
+        nodeA.getChannelRegistry().broadcast(message);
+        return client.awaitText(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(BURST)
+    public WsMsgText throughput() throws InterruptedException {
+        for (int i = 0 ; i < BURST ; i++) {
+            message.setId(++nextId);
+            nodeA.getChannelRegistry().broadcast(message);
+        }
+        WsMsgText last = null;
+        for (int i = 0 ; i < BURST ; i++) {
+            last = client.awaitText(10, TimeUnit.SECONDS);
+        }
+        return last;
+    }
+}
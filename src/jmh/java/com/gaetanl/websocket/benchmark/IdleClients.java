@@ -0,0 +1,85 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.net.*;
+import java.util.*;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.websocketx.*;
+
+/**
+ * Connexions inactives ouvertes depuis un processus séparé, pour que
+ * {@link IdleConnectionMemoryBenchmark} ne mesure que la mémoire du serveur.
+ * Les pings du serveur reçoivent un pong (WebSocketClientProtocolHandler).
+ *
+ * <pre>
+ * IdleClients port connections [adresse locale...]
+ * </pre>
+ *
+ * Les adresses locales (127.0.0.2, 127.0.0.3...) dépassent la limite
+ * d'environ 28 000 ports éphémères par couple d'adresses. Le processus
+ * écrit {@code READY} une fois toutes les connexions établies et se termine
+ * à la fermeture de son entrée standard.
+ */
+public final class IdleClients {
+    private static final int CONNECT_BATCH = 512;
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[0]);
+        int connections = Integer.parseInt(args[1]);
+        List<String> localAddresses = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : Collections.<String>emptyList();
+
+        final URI uri = new URI("ws://localhost:" + port + "/");
+        EventLoopGroup group = new NioEventLoopGroup(2);
+        try {
+            Bootstrap b = new Bootstrap()
+                    .group(group)
+                    .channel(NioSocketChannel.class)
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new HttpClientCodec());
+                            ch.pipeline().addLast(new HttpObjectAggregator(8192));
+                            ch.pipeline().addLast(new WebSocketClientProtocolHandler(WebSocketClientHandshakerFactory.newHandshaker(
+                                    uri, WebSocketVersion.V13, null, false, new DefaultHttpHeaders())));
+                        }
+                    });
+
+            List<Channel> channels = new ArrayList<Channel>(connections);
+            List<ChannelFuture> batch = new ArrayList<ChannelFuture>(CONNECT_BATCH);
+            for (int i = 0 ; i < connections ; i++) {
+                if (localAddresses.isEmpty()) {
+                    batch.add(b.connect("127.0.0.1", port));
+                }
+                else {
+                    batch.add(b.connect(new InetSocketAddress("127.0.0.1", port),
+                            new InetSocketAddress(localAddresses.get(i % localAddresses.size()), 0)));
+                }
+                if (batch.size() == CONNECT_BATCH || i == connections - 1) {
+                    for (ChannelFuture future : batch) {
+                        channels.add(future.sync().channel());
+                    }
+                    batch.clear();
+                }
+            }
+
+            System.out.println("READY");
+            System.out.flush();
+
+            // Attente de la fin du benchmark
+            while (System.in.read() != -1) {
+                // Do nothing
+            }
+
+            for (Channel channel : channels) {
+                channel.close();
+            }
+        }
+        finally {
+            group.shutdownGracefully();
+        }
+    }
+}
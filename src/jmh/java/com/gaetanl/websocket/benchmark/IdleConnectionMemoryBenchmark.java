@@ -0,0 +1,118 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.server.*;
+
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Mémoire occupée par connexion inactive côté serveur, avec et sans
+ * heartbeat. Les clients sont ouverts par {@link IdleClients} dans un
+ * processus séparé ; la mesure est la différence de heap utilisée après GC
+ * (et de mémoire directe Netty) divisée par le nombre de connexions.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar IdleConnectionMemoryBenchmark -p connections=100000
+ * </pre>
+ *
+ * 100 000 connexions demandent 200 000 descripteurs de fichiers
+ * ({@code ulimit -n}) et plusieurs adresses locales, ajoutées
+ * automatiquement par tranche de 25 000 connexions (127.0.0.2, ...).
+ * Le score (temps) n'a pas de signification, seuls les compteurs
+ * {@code heapBytesPerConnection} et {@code directBytesPerConnection} en ont.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IdleConnectionMemoryBenchmark {
+    private static final int CONNECTIONS_PER_ADDRESS = 25000;
+
+    @Param({ "1000", "10000" })
+    public int connections;
+
+    @Param({ "false", "true" })
+    public boolean heartbeat;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long heapBytesPerConnection;
+        public long directBytesPerConnection;
+    }
+
+    private WebSocketServer server;
+    private Process clients;
+    private long baselineHeap;
+    private long baselineDirect;
+
+    @Setup
+    public void setup() throws Exception {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setPort(0);
+        config.setMetrics(false);
+        if (!heartbeat) {
+            config.setReaderIdleSeconds(0);
+            config.setWriterIdleSeconds(0);
+            config.setAllIdleSeconds(0);
+        }
+        server = new WebSocketServer(config);
+        server.start();
+
+        baselineHeap = usedHeapAfterGc();
+        baselineDirect = PlatformDependent.usedDirectMemory();
+
+        StringBuilder command = new StringBuilder();
+        command.append(System.getProperty("java.home")).append(File.separator).append("bin").append(File.separator).append("java");
+        ProcessBuilder builder = new ProcessBuilder(command.toString(), "-cp", System.getProperty("java.class.path"),
+                IdleClients.class.getName(), String.valueOf(server.localAddress().getPort()), String.valueOf(connections));
+        if (connections > CONNECTIONS_PER_ADDRESS) {
+            for (int i = 0 ; i * CONNECTIONS_PER_ADDRESS < connections ; i++) {
+                builder.command().add("127.0.0." + (i + 2));
+            }
+        }
+        clients = builder.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(clients.getInputStream(), "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null && !line.equals("READY")) {
+            // Do nothing
+        }
+        if (line == null) {
+            throw new IllegalStateException("Client process exited before opening its connections");
+        }
+        while (server.getChannelRegistry().size() < connections) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        clients.getOutputStream().close();
+        clients.waitFor(30, TimeUnit.SECONDS);
+        clients.destroy();
+        server.stop();
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0 ; i < 3 ; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public void measure(Counters counters) throws InterruptedException {
+        counters.heapBytesPerConnection = (usedHeapAfterGc() - baselineHeap) / connections;
+        counters.directBytesPerConnection = (PlatformDependent.usedDirectMemory() - baselineDirect) / connections;
+    }
+}
@@ -0,0 +1,137 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.net.URI;
+import java.util.concurrent.*;
+
+import com.gaetanl.websocket.client.WebSocketClientHandler;
+import com.gaetanl.websocket.message.*;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.ssl.*;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+
+/**
+ * Connexion cliente vers un serveur local, attendant l'accusé de réception
+ * de chaque message envoyé. Les WsMsgText diffusés par le serveur sont
+ * retenus jusqu'à leur lecture par {@link #awaitText(long, TimeUnit)}.
+ */
+final class LoopbackClient {
+    private final Channel channel;
+    private final BlockingQueue<WsAckText> acks;
+    private final BlockingQueue<WsMsgText> texts;
+
+    private LoopbackClient(Channel channel, BlockingQueue<WsAckText> acks, BlockingQueue<WsMsgText> texts) {
+        this.channel = channel;
+        this.acks = acks;
+        this.texts = texts;
+    }
+
+    /**
+     * Le certificat de test n'étant pas signé par une autorité reconnue, le
+     * client en mode SSL ne vérifie pas le certificat serveur.
+     */
+    static SslContext insecureClientContext() throws Exception {
+        return SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+    }
+
+    static LoopbackClient connect(EventLoopGroup group, int port, final SslContext sslCtx, WsWireFormat format) throws Exception {
+        final BlockingQueue<WsAckText> acks = new LinkedBlockingQueue<WsAckText>();
+        final BlockingQueue<WsMsgText> texts = new LinkedBlockingQueue<WsMsgText>();
+        WsMessageDispatcher dispatcher = new WsMessageDispatcher()
+                .register(WsAckText.class, new WsMessageHandler<WsAckText>() {
+                    @Override
+                    public void handle(ChannelHandlerContext ctx, WsAckText message) {
+                        acks.add(message);
+                    }
+                })
+                .register(WsMsgText.class, new WsMessageHandler<WsMsgText>() {
+                    @Override
+                    public void handle(ChannelHandlerContext ctx, WsMsgText message) {
+                        texts.add(message);
+                    }
+                });
+
+        URI uri = new URI(String.format("%s://%s:%d", sslCtx != null ? "wss" : "ws", "localhost", port));
+        final WebSocketClientHandler handler = new WebSocketClientHandler(
+                WebSocketClientHandshakerFactory.newHandshaker(uri, WebSocketVersion.V13, format.getSubprotocol(), true, new DefaultHttpHeaders()),
+                dispatcher);
+
+        Bootstrap b = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        if (sslCtx != null) {
+                            p.addLast(sslCtx.newHandler(ch.alloc()));
+                        }
+                        p.addLast(new HttpClientCodec());
+                        p.addLast(new HttpObjectAggregator(65536));
+                        p.addLast(handler);
+                    }
+                });
+
+        Channel channel = b.connect(uri.getHost(), port).sync().channel();
+        handler.handshakeFuture().sync();
+        return new LoopbackClient(channel, acks, texts);
+    }
+
+    WsAckText send(WsMessage message) throws InterruptedException {
+        sendAsync(message);
+        return awaitAck(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Envoie le message sans attendre son accusé de réception.
+     */
+    void sendAsync(WsMessage message) {
+        channel.writeAndFlush(WsWireFormat.of(channel).encodeFrame(channel.alloc(), message), channel.voidPromise());
+    }
+
+    WsAckText awaitAck(long timeout, TimeUnit unit) throws InterruptedException {
+        WsAckText ack = acks.poll(timeout, unit);
+        if (ack == null) {
+            throw new IllegalStateException("No ack received within " + timeout + " " + unit + " on " + channel);
+        }
+        return ack;
+    }
+
+    WsMsgText awaitText(long timeout, TimeUnit unit) throws InterruptedException {
+        WsMsgText text = texts.poll(timeout, unit);
+        if (text == null) {
+            throw new IllegalStateException("No message received within " + timeout + " " + unit + " on " + channel);
+        }
+        return text;
+    }
+
+    /**
+     * Envoie {@code count} messages en un seul flush puis attend autant
+     * d'accusés de réception.
+     */
+    WsAckText sendBatch(WsMessage message, int count) throws InterruptedException {
+        WsWireFormat format = WsWireFormat.of(channel);
+        for (int i = 0; i < count; i++) {
+            channel.write(format.encodeFrame(channel.alloc(), message), channel.voidPromise());
+        }
+        channel.flush();
+
+        WsAckText ack = null;
+        for (int i = 0; i < count; i++) {
+            ack = acks.poll(10, TimeUnit.SECONDS);
+            if (ack == null) {
+                throw new IllegalStateException("Missing " + (count - i) + " acks after 10s on " + channel);
+            }
+        }
+        return ack;
+    }
+
+    void close() throws InterruptedException {
+        channel.close().sync();
+    }
+}
@@ -0,0 +1,82 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.*;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+/**
+ * Débit en envoi pipeliné : le client envoie {@code batch} messages sans
+ * attendre puis attend les accusés de réception. Avec
+ * {@code maxWritesPerFlush = 1}, le serveur flush chaque accusé comme avant
+ * le regroupement des écritures.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar PipelinedSendBenchmark
+ * </pre>
+ *
+ * Le score principal compte des lots par milliseconde, le compteur
+ * {@code messages} des messages par milliseconde.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelinedSendBenchmark {
+    @Param({ "1", "16", "256" })
+    public int batch;
+
+    @Param({ "1", "64" })
+    public int maxWritesPerFlush;
+
+    @Param({ "false", "true" })
+    public boolean flushConsolidation;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long messages;
+    }
+
+    private WebSocketServer server;
+    private EventLoopGroup clientGroup;
+    private LoopbackClient client;
+    private WsMsgText message;
+
+    @Setup
+    public void setup() throws Exception {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setPort(0);
+        config.setMaxWritesPerFlush(maxWritesPerFlush);
+        config.setFlushConsolidation(flushConsolidation);
+        server = new WebSocketServer(config);
+        server.start();
+
+        clientGroup = new NioEventLoopGroup(1);
+        client = LoopbackClient.connect(clientGroup, server.localAddress().getPort(), null, WsWireFormat.BINARY);
+
+        message = new WsMsgText();
+        message.setText("Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        clientGroup.shutdownGracefully().sync();
+        server.stop();
+    }
+
+    @Benchmark
+    public WsAckText pipelined(Counters counters) throws InterruptedException {
+        WsAckText ack = client.sendBatch(message, batch);
+        counters.messages += batch;
+        return ack;
+    }
+}
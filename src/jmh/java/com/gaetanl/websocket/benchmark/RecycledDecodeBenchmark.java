@@ -0,0 +1,73 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.*;
+
+import io.netty.buffer.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Réception d'un WsMsgText binaire par {@link WebSocketServerHandler} et
+ * écriture de son accusé, avec et sans recyclage des messages
+ * ({@code websocket.recycleMessages}). À lancer avec le profileur GC :
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar RecycledDecodeBenchmark -prof gc
+ * </pre>
+ *
+ * {@code gc.alloc.rate.norm} donne les octets alloués par message. Avec
+ * recyclage, il ne reste que les deux objets frame (celle reçue, créée par
+ * le banc, et celle de l'accusé), leur contenu provenant de l'allocateur
+ * poolé. La détection des fuites, qui alloue pour les buffers
+ * échantillonnés, est désactivée.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dio.netty.leakDetection.level=disabled")
+public class RecycledDecodeBenchmark {
+    @Param({ "false", "true" })
+    public boolean recycleMessages;
+
+    private EmbeddedChannel channel;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setRecycleMessages(recycleMessages);
+        channel = new EmbeddedChannel(new WebSocketServerHandler(WebSocketServerHandler.defaultDispatcher(), null, config));
+        channel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+        channel.attr(WsWireFormat.ATTRIBUTE).set(WsWireFormat.BINARY);
+
+        WsMsgText message = new WsMsgText();
+        message.setId(1);
+        message.setText("Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+        ByteBuf encoded = WsBinaryCodec.getInstance().encode(PooledByteBufAllocator.DEFAULT, message);
+        payload = ByteBufUtil.getBytes(encoded);
+        encoded.release();
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object receiveAndAck() {
+        ByteBuf content = PooledByteBufAllocator.DEFAULT.directBuffer(payload.length).writeBytes(payload);
+        channel.pipeline().fireChannelRead(new BinaryWebSocketFrame(content));
+        channel.pipeline().fireChannelReadComplete();
+        Object ack = channel.readOutbound();
+        ReferenceCountUtil.release(ack);
+        return ack;
+    }
+}
@@ -0,0 +1,67 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.*;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+/**
+ * Aller-retour complet sur la boucle locale : envoi d'un WsMsgText et
+ * attente du WsAckText correspondant, en WS et WSS.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar RoundTripBenchmark -prof gc
+ * </pre>
+ *
+ * Le mode SampleTime donne les percentiles de latence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    @Param({ "false", "true" })
+    public boolean ssl;
+
+    @Param({ "BINARY", "JSON" })
+    public WsWireFormat format;
+
+    private WebSocketServer server;
+    private EventLoopGroup clientGroup;
+    private LoopbackClient client;
+    private WsMsgText message;
+
+    @Setup
+    public void setup() throws Exception {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setPort(0);
+        config.setSsl(ssl);
+        server = new WebSocketServer(config);
+        server.start();
+
+        clientGroup = new NioEventLoopGroup(1);
+        client = LoopbackClient.connect(clientGroup, server.localAddress().getPort(), ssl ? LoopbackClient.insecureClientContext() : null, format);
+
+        message = new WsMsgText();
+        message.setText("Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        clientGroup.shutdownGracefully().sync();
+        server.stop();
+    }
+
+    @Benchmark
+    public WsAckText roundTrip() throws InterruptedException {
+        return client.send(message);
+    }
+}
@@ -0,0 +1,84 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.*;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+/**
+ * Débit du serveur selon le nombre de threads worker, avec une connexion
+ * par thread de benchmark. Le débit doit croître avec {@code workerThreads}
+ * jusqu'au nombre de coeurs disponibles.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ServerScalingBenchmark -t 8
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ServerScalingBenchmark {
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({ "1", "2", "4", "8" })
+        public int workerThreads;
+
+        @Param({ "NIO", "EPOLL" })
+        public WebSocketTransport transport;
+
+        WebSocketServer server;
+        EventLoopGroup clientGroup;
+
+        @Setup
+        public void setup() throws Exception {
+            if (!transport.isAvailable()) {
+                throw new IllegalStateException(transport + " transport is not available on this platform");
+            }
+            WebSocketServerConfig config = new WebSocketServerConfig();
+            config.setPort(0);
+            config.setWorkerThreads(workerThreads);
+            config.setTransport(transport);
+            server = new WebSocketServer(config);
+            server.start();
+
+            clientGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors());
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            clientGroup.shutdownGracefully().sync();
+            server.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        LoopbackClient client;
+        WsMsgText message;
+
+        @Setup
+        public void setup(Server server) throws Exception {
+            client = LoopbackClient.connect(server.clientGroup, server.server.localAddress().getPort(), null, WsWireFormat.BINARY);
+            message = new WsMsgText();
+            message.setText("Lorem ipsum dolor sit amet");
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public WsAckText roundTrip(Connection connection) throws InterruptedException {
+        return connection.client.send(connection.message);
+    }
+}
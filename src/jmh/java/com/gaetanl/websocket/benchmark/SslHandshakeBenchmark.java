@@ -0,0 +1,77 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.server.*;
+
+import io.netty.buffer.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.*;
+
+/**
+ * Coût d'un handshake TLS complet entre deux {@link EmbeddedChannel}, en
+ * mémoire :
+ * <ul>
+ * <li>{@code rebuild} : contexte serveur reconstruit à chaque connexion
+ *     (comportement de l'ancien createSSLContext)</li>
+ * <li>{@code shared} : contexte construit une fois par
+ *     {@link WebSocketSslContextProvider}</li>
+ * <li>{@code resumed} : contexte partagé et reprise de session côté
+ *     client</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SslHandshakeBenchmark {
+    @Param({ "rebuild", "shared", "resumed" })
+    public String mode;
+
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    private WebSocketServerConfig config;
+    private WebSocketSslContextProvider serverProvider;
+    private SslContext clientCtx;
+
+    @Setup
+    public void setup() throws Exception {
+        config = new WebSocketServerConfig();
+        serverProvider = new WebSocketSslContextProvider(config);
+        clientCtx = LoopbackClient.insecureClientContext();
+    }
+
+    @Benchmark
+    public boolean handshake() throws Exception {
+        SslContext serverCtx = "rebuild".equals(mode) ? new WebSocketSslContextProvider(config).get() : serverProvider.get();
+        SslHandler clientHandler = "resumed".equals(mode) ? clientCtx.newHandler(alloc, "localhost", 8443) : clientCtx.newHandler(alloc);
+
+        EmbeddedChannel server = new EmbeddedChannel(serverCtx.newHandler(alloc));
+        EmbeddedChannel client = new EmbeddedChannel(clientHandler);
+        try {
+            for (int i = 0 ; i < 100 && !clientHandler.handshakeFuture().isDone() ; i++) {
+                transfer(client, server);
+                transfer(server, client);
+            }
+            if (!clientHandler.handshakeFuture().isSuccess()) {
+                throw new IllegalStateException("Handshake failed", clientHandler.handshakeFuture().cause());
+            }
+            return true;
+        }
+        finally {
+            client.finishAndReleaseAll();
+            server.finishAndReleaseAll();
+        }
+    }
+
+    private static void transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        ByteBuf buf;
+        while ((buf = from.readOutbound()) != null) {
+            to.writeInbound(buf);
+        }
+        to.runPendingTasks();
+    }
+}
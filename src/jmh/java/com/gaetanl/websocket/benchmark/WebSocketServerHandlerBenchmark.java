@@ -0,0 +1,75 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.*;
+
+import io.netty.buffer.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * {@link WebSocketServerHandler} piloté par un {@link EmbeddedChannel} : une
+ * frame WsMsgText entrante, un accusé de réception sortant.
+ *
+ * Le paramètre {@code logging} compare le débit avec le log des frames
+ * désactivé, échantillonné (1 sur 100) et complet. Les frames sont écrites
+ * dans target/jmh-frames.log (voir log4j2-jmh.xml).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-jmh.xml")
+public class WebSocketServerHandlerBenchmark {
+    @Param({ "BINARY", "JSON" })
+    public WsWireFormat format;
+
+    @Param({ "off", "sampled", "full" })
+    public String logging;
+
+    private EmbeddedChannel channel;
+    private ByteBuf payload;
+
+    @Setup
+    public void setup() {
+        // Lu à l'initialisation de WebSocketFrameLogger, avant la création des handlers
+        System.setProperty("websocket.frameLog.sampleRate", "sampled".equals(logging) ? "100" : "1");
+
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        context.getConfiguration().getLoggerConfig(WebSocketFrameLogger.LOGGER_NAME).setLevel("off".equals(logging) ? org.apache.logging.log4j.Level.WARN : org.apache.logging.log4j.Level.INFO);
+        context.updateLoggers();
+
+        channel = new EmbeddedChannel(new OutboundLoggingHandler(), new WebSocketServerHandler());
+        channel.attr(WsWireFormat.ATTRIBUTE).set(format);
+
+        WsMsgText message = new WsMsgText();
+        message.setText("Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+        WebSocketFrame frame = format.encodeFrame(PooledByteBufAllocator.DEFAULT, message);
+        payload = Unpooled.unreleasableBuffer(Unpooled.directBuffer().writeBytes(frame.content()));
+        frame.release();
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object receiveAndAck() {
+        WebSocketFrame frame = format == WsWireFormat.BINARY
+                ? new BinaryWebSocketFrame(payload.duplicate())
+                : new TextWebSocketFrame(payload.duplicate());
+        channel.writeInbound(frame);
+        Object ack = channel.readOutbound();
+        ReferenceCountUtil.release(ack);
+        return ack;
+    }
+}
@@ -0,0 +1,97 @@
+package com.gaetanl.websocket.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.gaetanl.websocket.message.*;
+
+import io.netty.buffer.*;
+
+/**
+ * Encodage et décodage de chaque sous-classe de {@link WsMessage}, en JSON
+ * (WsMessageCodec et WsMessageTypeAdapterFactory) et en binaire
+ * (WsBinaryCodec).
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar WsMessageCodecBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WsMessageCodecBenchmark {
+    @Param({ "text", "ack-text", "deconnexion" })
+    public String type;
+
+    @Param({ "64" })
+    public int textLength;
+
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    private final WsMessageCodec jsonCodec = WsMessageCodec.getInstance();
+    private final WsBinaryCodec binaryCodec = WsBinaryCodec.getInstance();
+
+    private WsMessage message;
+    private ByteBuf json;
+    private ByteBuf binary;
+
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0 ; i < textLength ; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+
+        if (WsMessageConstants.WS_MSG_TEXT.equals(type)) {
+            WsMsgText msgText = new WsMsgText();
+            msgText.setText(text.toString());
+            message = msgText;
+        }
+        else if (WsMessageConstants.WS_ACK_TEXT.equals(type)) {
+            WsAckText ack = new WsAckText();
+            ack.setOriginalText(text.toString());
+            message = ack;
+        }
+        else {
+            message = new WsMsgDeconnexion();
+        }
+
+        json = jsonCodec.encode(alloc, message);
+        binary = binaryCodec.encode(alloc, message);
+    }
+
+    @TearDown
+    public void tearDown() {
+        json.release();
+        binary.release();
+    }
+
+    @Benchmark
+    public int encodeJson() {
+        ByteBuf buf = jsonCodec.encode(alloc, message);
+        int size = buf.readableBytes();
+        buf.release();
+        return size;
+    }
+
+    @Benchmark
+    public WsMessage decodeJson() {
+        return jsonCodec.decode(json);
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        ByteBuf buf = binaryCodec.encode(alloc, message);
+        int size = buf.readableBytes();
+        buf.release();
+        return size;
+    }
+
+    @Benchmark
+    public WsMessage decodeBinary() {
+        return binaryCodec.decode(binary);
+    }
+}
@@ -0,0 +1,635 @@
+package com.gaetanl.websocket.client;
+
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.OutboundLoggingHandler;
+import com.gaetanl.websocket.server.WebSocketCloseFrames;
+import com.gaetanl.websocket.server.WebSocketFrameLogger;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.concurrent.*;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Client WebSocket non bloquant. Chaque envoi renvoie un future complété à
+ * la réception de l'accusé de réception correspondant : plusieurs envois
+ * peuvent être en attente sur la même connexion. Les messages sont
+ * numérotés par connexion ({@link WsMessage#getSeq()}) et acquittés par
+ * les {@link WsAck} cumulatifs du serveur, ou par leur accusé individuel,
+ * corrélé par l'identifiant du message, pour les types dont le serveur
+ * renvoie l'écho.
+ *
+ * Avec {@link WebSocketClientConfig#isReconnect()}, la perte de la
+ * connexion est transparente pour l'appelant : le client se reconnecte
+ * avec un délai exponentiel aléatoire, puis renvoie dans l'ordre les
+ * messages non acquittés, conservés dans une fenêtre bornée. Les envois
+ * faits pendant la reconnexion y attendent la connexion suivante. Un
+ * message dont l'accusé a été perdu avec la connexion est renvoyé avec le
+ * même identifiant : la livraison est au moins une fois.
+ *
+ * L'EventLoopGroup et le SslContext sont fournis par l'appelant et peuvent
+ * être partagés par un grand nombre de clients ({@link WebSocketClientPool}).
+ */
+public class WebSocketAsyncClient {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketAsyncClient.class);
+
+    private final EventLoopGroup group;
+    private final SslContext sslContext;
+    private final WebSocketClientConfig config;
+    private final WsMessageDispatcher dispatcher;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final ConcurrentMap<Long, PendingAck> pendingAcks = new ConcurrentHashMap<Long, PendingAck>();
+    /** Les mêmes envois, par numéro de séquence sur la connexion courante */
+    private final ConcurrentNavigableMap<Long, PendingAck> pendingAcksBySeq = new ConcurrentSkipListMap<Long, PendingAck>();
+    private volatile Channel channel;
+    private volatile WebSocketClientSession session;
+
+    // Reconnexion, gardés par window : envois non acquittés par ordre
+    // d'envoi, y compris ceux en attente de la prochaine connexion
+    private final Set<PendingAck> window = new LinkedHashSet<PendingAck>();
+    private boolean connected = false;
+    private boolean closed = false;
+    private int reconnectAttempts = 0;
+    private ScheduledFuture<?> reconnectFuture;
+
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder resentMessages = new LongAdder();
+
+    /**
+     * @param   sslContext  le contexte SSL client, ou null pour ws://
+     */
+    public WebSocketAsyncClient(EventLoopGroup group, SslContext sslContext, WebSocketClientConfig config) {
+        this(group, sslContext, config, new WsMessageDispatcher());
+    }
+
+    /**
+     * @param   dispatcher  traitement des messages envoyés par le serveur,
+     *                      hors accusés de réception des envois
+     */
+    public WebSocketAsyncClient(EventLoopGroup group, SslContext sslContext, WebSocketClientConfig config, WsMessageDispatcher dispatcher) {
+        if (config.isSsl() && sslContext == null) {
+            throw new IllegalArgumentException("SslContext required for " + config.getUri());
+        }
+        this.group = group;
+        this.sslContext = sslContext;
+        this.config = config;
+        this.dispatcher = dispatcher;
+        if (config.isResumable()) {
+            this.session = new WebSocketClientSession(UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * Peut être rappelé après la fermeture de la connexion : avec une
+     * session, le serveur renvoie alors les messages émis depuis le dernier
+     * reçu.
+     *
+     * @return  un future complété une fois le handshake WebSocket terminé
+     */
+    public Future<WebSocketAsyncClient> connect() {
+        synchronized (window) {
+            closed = false;
+        }
+        return doConnect();
+    }
+
+    private Future<WebSocketAsyncClient> doConnect() {
+        final Promise<WebSocketAsyncClient> promise = group.next().newPromise();
+        final URI uri = config.getUri();
+        final String host = uri.getHost();
+        final int port = config.getPort();
+
+        final WebSocketClientSession session = this.session;
+        HttpHeaders headers = new DefaultHttpHeaders();
+        if (session != null) {
+            session.addHandshakeHeaders(headers);
+        }
+        final WebSocketClientHandler handler = new WebSocketClientHandler(
+                WebSocketClientHandshakerFactory.newHandshaker(uri, WebSocketVersion.V13, WsWireFormat.SUBPROTOCOLS, true, headers, config.getMaxFramePayloadLength()),
+                ackDispatcher(), session);
+
+        Bootstrap b = new Bootstrap();
+        b.group(group)
+        .channel(config.getTransport().channelClass())
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMillis())
+        .option(ChannelOption.ALLOCATOR, config.getAllocator().newAllocator(config.isPreferDirect()))
+        .handler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ChannelPipeline p = ch.pipeline();
+
+                if (sslContext != null) {
+                    p.addLast(sslContext.newHandler(ch.alloc(), host, port));
+                }
+                p.addLast(new HttpClientCodec());
+                p.addLast(new HttpObjectAggregator(8192));
+                ChannelHandler compressionHandler = config.getCompression().newClientHandler();
+                if (compressionHandler != null) {
+                    p.addLast(compressionHandler);
+                }
+                if (WebSocketFrameLogger.isEnabled()) {
+                    p.addLast(OutboundLoggingHandler.NAME, new OutboundLoggingHandler());
+                }
+                p.addLast(handler);
+            }
+        });
+
+        b.connect(host, port).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+
+                final Channel ch = future.channel();
+                // Numérotation propre à la connexion
+                nextSeq.set(0);
+                channel = ch;
+                final ScheduledFuture<?> ackTimeouts = scheduleAckTimeouts(ch);
+                ch.closeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        ackTimeouts.cancel(false);
+                        disconnected(ch);
+                    }
+                });
+
+                handler.handshakeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (future.isSuccess()) {
+                            if (handshakeComplete(ch)) {
+                                promise.trySuccess(WebSocketAsyncClient.this);
+                            }
+                            else {
+                                promise.tryFailure(new ClosedChannelException());
+                            }
+                        }
+                        else {
+                            promise.tryFailure(future.cause());
+                            ch.close();
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Ouvre la connexion aux envois et renvoie les messages non acquittés
+     * de la fenêtre, avant tout nouvel envoi.
+     *
+     * @return  false si le client a été fermé entre-temps
+     */
+    private boolean handshakeComplete(Channel ch) {
+        if (!config.isReconnect()) {
+            return true;
+        }
+        List<PendingAck> resend;
+        synchronized (window) {
+            if (closed) {
+                ch.close();
+                return false;
+            }
+            connected = true;
+            reconnectAttempts = 0;
+            resend = new ArrayList<PendingAck>(window);
+        }
+        // Sur l'event loop : les envois d'autres threads sont écrits après
+        for (PendingAck pending : resend) {
+            transmit(ch, pending);
+        }
+        if (!resend.isEmpty()) {
+            resentMessages.add(resend.size());
+            logger.info("[OK] websocket/out: {} unacknowledged message(s) resent", resend.size());
+        }
+        return true;
+    }
+
+    private void disconnected(Channel ch) {
+        if (channel != ch) {
+            // Connexion déjà remplacée par un nouvel appel à connect()
+            return;
+        }
+        // Numéros de séquence de la connexion fermée
+        pendingAcksBySeq.clear();
+        if (!config.isReconnect()) {
+            failPendingAcks(new ClosedChannelException());
+            return;
+        }
+
+        boolean wasConnected;
+        boolean isClosed;
+        synchronized (window) {
+            wasConnected = connected;
+            connected = false;
+            isClosed = closed;
+            for (PendingAck pending : window) {
+                // Hors délai d'accusé jusqu'au renvoi
+                pending.seq = 0;
+            }
+        }
+        if (isClosed) {
+            failPendingAcks(new ClosedChannelException());
+        }
+        else if (wasConnected) {
+            logger.info("[NOK] Connection to {} lost, reconnecting", config.getUri());
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Planifie la tentative suivante. Le délai double à chaque échec, dans
+     * la limite du maximum ; sa seconde moitié est aléatoire, pour que des
+     * clients déconnectés ensemble ne se reconnectent pas ensemble.
+     */
+    private void scheduleReconnect() {
+        int attempt;
+        synchronized (window) {
+            if (closed) {
+                return;
+            }
+            attempt = ++reconnectAttempts;
+            if (config.getReconnectMaxAttempts() == 0 || attempt <= config.getReconnectMaxAttempts()) {
+                long delay = Math.min(config.getReconnectMaxDelayMillis(), config.getReconnectInitialDelayMillis() << Math.min(attempt - 1, 20));
+                delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+                reconnectFuture = group.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        reconnect();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            closed = true;
+        }
+        logger.info("[NOK] Reconnection to {} abandoned after {} attempts", config.getUri(), attempt - 1);
+        failPendingAcks(new ClosedChannelException());
+    }
+
+    private void reconnect() {
+        synchronized (window) {
+            reconnectFuture = null;
+            if (closed) {
+                return;
+            }
+        }
+        doConnect().addListener(new FutureListener<WebSocketAsyncClient>() {
+            @Override
+            public void operationComplete(Future<WebSocketAsyncClient> future) {
+                if (future.isSuccess()) {
+                    reconnects.increment();
+                    logger.info("[OK] Reconnected to {}", config.getUri());
+                }
+                else {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Reconnection to {} failed: {}", config.getUri(), future.cause().toString());
+                    }
+                    scheduleReconnect();
+                }
+            }
+        });
+    }
+
+    /**
+     * Envoie le message. Un identifiant lui est attribué s'il n'en a pas,
+     * ainsi que le numéro de séquence suivant de la connexion.
+     *
+     * @return  un future complété par l'accusé de réception du message
+     *          (individuel ou {@link WsAck} cumulatif), par null une fois le
+     *          message écrit s'il n'attend pas d'accusé, ou en échec après
+     *          {@link WebSocketClientConfig#getAckTimeoutMillis()} ; en échec
+     *          immédiat si la fenêtre de renvoi est pleine
+     */
+    public Future<WsMessage> send(WsMessage message) {
+        if (message.getId() == 0) {
+            message.setId(nextId.incrementAndGet());
+        }
+        final boolean expectsAck = message.expectsAck();
+
+        Channel ch;
+        PendingAck pending;
+        if (!config.isReconnect()) {
+            ch = channel;
+            if (ch == null || !ch.isActive()) {
+                return ImmediateEventExecutor.INSTANCE.newFailedFuture(new ClosedChannelException());
+            }
+            pending = new PendingAck(message, expectsAck, ch.eventLoop().<WsMessage>newPromise());
+            if (expectsAck && pendingAcks.putIfAbsent(message.getId(), pending) != null) {
+                return pending.promise.setFailure(new IllegalStateException("Message " + message.getId() + " already awaiting its ack"));
+            }
+        }
+        else {
+            synchronized (window) {
+                if (closed) {
+                    return ImmediateEventExecutor.INSTANCE.newFailedFuture(new ClosedChannelException());
+                }
+                if (window.size() >= config.getResendWindow()) {
+                    return ImmediateEventExecutor.INSTANCE.newFailedFuture(
+                            new RejectedExecutionException("Resend window full: " + window.size() + " unacknowledged messages"));
+                }
+                ch = connected ? channel : null;
+                pending = new PendingAck(message, expectsAck, (ch != null ? ch.eventLoop() : group.next()).<WsMessage>newPromise());
+                if (expectsAck && pendingAcks.putIfAbsent(message.getId(), pending) != null) {
+                    return pending.promise.setFailure(new IllegalStateException("Message " + message.getId() + " already awaiting its ack"));
+                }
+                window.add(pending);
+            }
+        }
+
+        if (ch != null) {
+            transmit(ch, pending);
+        }
+        return pending.promise;
+    }
+
+    /**
+     * Écrit le message sur la connexion, sous le numéro de séquence suivant.
+     * En cas de reconnexion, un message dont l'écriture échoue avec la
+     * connexion reste dans la fenêtre pour être renvoyé.
+     */
+    private void transmit(Channel ch, final PendingAck pending) {
+        WsMessage message = pending.message;
+        WebSocketFrame frame;
+        try {
+            message.setSeq(nextSeq.incrementAndGet());
+            if (pending.expectsAck) {
+                pending.seq = message.getSeq();
+                pending.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getAckTimeoutMillis());
+                pendingAcksBySeq.put(pending.seq, pending);
+            }
+            frame = WsWireFormat.of(ch).encodeFrame(ch.alloc(), message);
+        }
+        catch (RuntimeException e) {
+            removePending(pending);
+            pending.promise.tryFailure(e);
+            return;
+        }
+
+        ch.writeAndFlush(frame).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    if (config.isReconnect() && !future.channel().isActive()) {
+                        return;
+                    }
+                    removePending(pending);
+                    pending.promise.tryFailure(future.cause());
+                }
+                else if (!pending.expectsAck) {
+                    removePending(pending);
+                    pending.promise.trySuccess(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Écrit une frame de contrôle ou une frame déjà encodée (ping, etc.).
+     */
+    public ChannelFuture writeFrame(WebSocketFrame frame) {
+        Channel ch = channel;
+        if (ch == null) {
+            frame.release();
+            throw new IllegalStateException("Client not connected");
+        }
+        return ch.writeAndFlush(frame);
+    }
+
+    /**
+     * Ferme la connexion par une frame Close (1000) et arrête les
+     * reconnexions. Les envois non acquittés échouent.
+     */
+    public Future<?> close() {
+        ScheduledFuture<?> pendingReconnect;
+        synchronized (window) {
+            closed = true;
+            pendingReconnect = reconnectFuture;
+            reconnectFuture = null;
+        }
+        if (pendingReconnect != null) {
+            pendingReconnect.cancel(false);
+        }
+
+        Channel ch = channel;
+        if (ch == null || !ch.isActive()) {
+            failPendingAcks(new ClosedChannelException());
+            return ch == null ? ImmediateEventExecutor.INSTANCE.newSucceededFuture(null) : ch.closeFuture();
+        }
+        ch.writeAndFlush(WebSocketCloseFrames.of(WebSocketCloseStatus.NORMAL_CLOSURE)).addListener(ChannelFutureListener.CLOSE);
+        return ch.closeFuture();
+    }
+
+    /**
+     * @return  le futur de fermeture de la connexion courante
+     */
+    public ChannelFuture closeFuture() {
+        Channel ch = channel;
+        if (ch == null) {
+            throw new IllegalStateException("Client not connected");
+        }
+        return ch.closeFuture();
+    }
+
+    public boolean isActive() {
+        Channel ch = channel;
+        return ch != null && ch.isActive();
+    }
+
+    /**
+     * @return  true si le client a été fermé, ou si la connexion est perdue
+     *          sans reconnexion en cours
+     */
+    public boolean isClosed() {
+        if (config.isReconnect()) {
+            synchronized (window) {
+                return closed;
+            }
+        }
+        return !isActive();
+    }
+
+    /**
+     * @return  le nombre d'envois en attente de leur accusé de réception
+     */
+    public int getPendingAcks() {
+        return pendingAcks.size();
+    }
+
+    /**
+     * @return  le nombre d'envois conservés pour être renvoyés, 0 sans
+     *          reconnexion automatique
+     */
+    public int getResendWindowSize() {
+        synchronized (window) {
+            return window.size();
+        }
+    }
+
+    /**
+     * @return  le nombre de reconnexions automatiques réussies
+     */
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * @return  le nombre de messages renvoyés après une reconnexion
+     */
+    public long getResentMessages() {
+        return resentMessages.sum();
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return  la session reprise d'une connexion à l'autre, ou null
+     */
+    public WebSocketClientSession getSession() {
+        return session;
+    }
+
+    /**
+     * Reprend une session existante, par exemple après un redémarrage du
+     * client, à la prochaine connexion.
+     */
+    public void setSession(WebSocketClientSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Les accusés de réception des envois complètent leur future, les autres
+     * messages sont transmis au dispatcher de l'appelant.
+     */
+    private WsMessageDispatcher ackDispatcher() {
+        return new WsMessageDispatcher().register(WsMessage.class, new WsMessageHandler<WsMessage>() {
+            @Override
+            public void handle(ChannelHandlerContext ctx, WsMessage message) throws Exception {
+                if (message instanceof WsAck) {
+                    acknowledged((WsAck) message);
+                    return;
+                }
+                if (message instanceof WsAckText) {
+                    PendingAck pending = pendingAcks.get(((WsAckText) message).getMessageId());
+                    if (pending != null) {
+                        removePending(pending);
+                        pending.promise.trySuccess(message);
+                        return;
+                    }
+                }
+                dispatcher.dispatch(ctx, message);
+            }
+        });
+    }
+
+    /**
+     * Complète les envois acquittés par l'accusé cumulatif. Les envois
+     * numérotés en deçà mais non acquittés (message manquant) attendent
+     * jusqu'à l'expiration de leur délai.
+     */
+    private void acknowledged(WsAck ack) {
+        complete(pendingAcksBySeq.headMap(ack.getCumulative(), true), ack);
+        long[] ranges = ack.getRanges();
+        if (ranges != null) {
+            for (int i = 0 ; i + 1 < ranges.length ; i += 2) {
+                if (ranges[i] <= ranges[i + 1]) {
+                    complete(pendingAcksBySeq.subMap(ranges[i], true, ranges[i + 1], true), ack);
+                }
+            }
+        }
+    }
+
+    private void complete(ConcurrentNavigableMap<Long, PendingAck> acked, WsAck ack) {
+        Map.Entry<Long, PendingAck> entry;
+        while ((entry = acked.pollFirstEntry()) != null) {
+            PendingAck pending = entry.getValue();
+            removePending(pending);
+            pending.promise.trySuccess(ack);
+        }
+    }
+
+    private void removePending(PendingAck pending) {
+        if (pending.expectsAck) {
+            pendingAcks.remove(pending.message.getId(), pending);
+            pendingAcksBySeq.remove(pending.seq, pending);
+        }
+        if (config.isReconnect()) {
+            synchronized (window) {
+                window.remove(pending);
+            }
+        }
+    }
+
+    /**
+     * Un seul balayage périodique par connexion plutôt qu'une tâche planifiée
+     * par envoi.
+     */
+    private ScheduledFuture<?> scheduleAckTimeouts(Channel ch) {
+        long period = Math.max(10, Math.min(1000, config.getAckTimeoutMillis() / 4));
+        return ch.eventLoop().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.nanoTime();
+                for (PendingAck pending : pendingAcks.values()) {
+                    if (pending.seq > 0 && now - pending.deadline >= 0) {
+                        removePending(pending);
+                        pending.promise.tryFailure(new TimeoutException(
+                                "No ack for message " + pending.message.getId() + " after " + config.getAckTimeoutMillis() + " ms"));
+                    }
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void failPendingAcks(Throwable cause) {
+        List<PendingAck> pendings = new ArrayList<PendingAck>(pendingAcks.values());
+        if (config.isReconnect()) {
+            synchronized (window) {
+                pendings.addAll(window);
+            }
+        }
+        int failed = 0;
+        for (PendingAck pending : pendings) {
+            removePending(pending);
+            if (pending.promise.tryFailure(cause)) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            logger.info("[NOK] websocket/out: {} message(s) not acknowledged before channel close", failed);
+        }
+    }
+
+    private static class PendingAck {
+        final WsMessage message;
+        final boolean expectsAck;
+        final Promise<WsMessage> promise;
+        /** Attribués à chaque écriture du message, 0 avant la première */
+        volatile long seq;
+        volatile long deadline;
+
+        PendingAck(WsMessage message, boolean expectsAck, Promise<WsMessage> promise) {
+            this.message = message;
+            this.expectsAck = expectsAck;
+            this.promise = promise;
+        }
+    }
+}
@@ -9,18 +9,14 @@ import javax.net.ssl.TrustManagerFactory;
 import org.slf4j.*;
 
 import com.gaetanl.websocket.message.*;
-import com.gaetanl.websocket.server.OutboundLoggingHandler;
 import com.gaetanl.websocket.server.WebSocketUtil;
-import com.google.gson.*;
 
-import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.Unpooled;
-import io.netty.channel.*;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.websocketx.*;
 import io.netty.handler.ssl.*;
+import io.netty.util.concurrent.*;
 
 public class WebSocketClient {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketClient.class);
@@ -71,38 +67,16 @@ public class WebSocketClient {
                 sslCtx = null;
             }
 
-            // Connect with V13 (RFC 6455 aka HyBi-17). You can change it to V08 or V00.
-            // If you change it to V00, ping is not supported and remember to change
-            // HttpResponseDecoder to WebSocketHttpResponseDecoder in the pipeline.
             final URI uri = new URI(String.format("%s://%s:%d", protocol, host, port));
-            final WebSocketClientHandler webSocketHandler = new WebSocketClientHandler(
-                    WebSocketClientHandshakerFactory.newHandshaker(uri, WebSocketVersion.V13, null, true, new DefaultHttpHeaders()));
-
-            Bootstrap b = new Bootstrap();
-            b.group(bossLoop)
-            .channel(NioSocketChannel.class)
-            .handler(new ChannelInitializer<NioSocketChannel>() {
-                @Override
-                protected void initChannel(NioSocketChannel ch) {
-                    ChannelPipeline p = ch.pipeline();
-
-                    if (sslCtx != null) {
-                        p.addLast(sslCtx.newHandler(ch.alloc()));
-                    }
-                    p.addLast(new HttpClientCodec(512, 512, 512));
-                    p.addLast(new HttpObjectAggregator(16384));
-                    p.addLast(webSocketHandler);
-                    p.addLast(new OutboundLoggingHandler());
-                }
-            });
+            final WebSocketAsyncClient client = new WebSocketAsyncClient(bossLoop, sslCtx, WebSocketClientConfig.fromProperties(uri, System.getProperties()));
 
             logger.info(String.format("Trying to create channel with %s://%s:%d", protocol, uri.getHost(), port));
-            Channel ch = b.connect(uri.getHost(), port).sync().channel();
-            webSocketHandler.handshakeFuture().sync();
+            client.connect().sync();
             logger.info("[OK] Channel created, enter commands:");
             try {
                 BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
-                while (ch.isActive()) {
+                // Avec websocket.client.reconnect, la boucle survit aux pertes de connexion
+                while (!client.isClosed()) {
                     String input = console.readLine();
                     if (input == null) {
                         break;
@@ -113,7 +87,7 @@ public class WebSocketClient {
                     try {
                         if ("ping".equals(input)) {
                             WebSocketFrame frame = new PingWebSocketFrame(Unpooled.wrappedBuffer(new byte[] { 8, 1, 8, 1 }));
-                            ch.writeAndFlush(frame);
+                            client.writeFrame(frame);
                         }
                         else if ("deconnection".equals(input)) {
                             message = new WsMsgDeconnexion();
@@ -130,22 +104,22 @@ public class WebSocketClient {
                     }
 
                     if (message != null) {
-                        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-                        String json = gson.toJson(message);
-
-                        WebSocketFrame frame = new TextWebSocketFrame(json);
-                        ch.writeAndFlush(frame);
+                        Future<WsMessage> sent = client.send(message);
+                        sent.addListener(new FutureListener<WsMessage>() {
+                            @Override
+                            public void operationComplete(Future<WsMessage> future) {
+                                if (!future.isSuccess()) {
+                                    logger.info("[NOK] Message not acknowledged", future.cause());
+                                }
+                            }
+                        });
 
                         if (message instanceof WsMsgDeconnexion) {
                             logger.debug("Closing channel...");
-                            ChannelFuture futureClose = ch.closeFuture().sync();
-
-                            futureClose.addListener(new ChannelFutureListener() {
-                                @Override
-                                public void operationComplete(ChannelFuture arg0) throws Exception {
-                                    logger.debug("[OK] Channel closed");
-                                }
-                            });
+                            // Fermeture volontaire : pas de reconnexion
+                            sent.await();
+                            client.close().sync();
+                            logger.debug("[OK] Channel closed");
                         }
                     }
                 }
@@ -0,0 +1,222 @@
+package com.gaetanl.websocket.client;
+
+import java.net.URI;
+import java.util.Properties;
+
+import com.gaetanl.websocket.server.WebSocketAllocator;
+import com.gaetanl.websocket.server.WebSocketCompressionConfig;
+import com.gaetanl.websocket.server.WebSocketTransport;
+
+/**
+ * Configuration d'un {@link WebSocketAsyncClient}. Une même instance peut
+ * être partagée par tous les clients d'un {@link WebSocketClientPool}.
+ */
+public class WebSocketClientConfig {
+    private URI uri;
+
+    /** Doit correspondre à l'EventLoopGroup fourni aux clients */
+    private WebSocketTransport transport = WebSocketTransport.NIO;
+
+    private WebSocketCompressionConfig compression = new WebSocketCompressionConfig();
+
+    private int connectTimeoutMillis = 10000;
+
+    /** Délai au-delà duquel un envoi sans accusé de réception échoue */
+    private long ackTimeoutMillis = 10000;
+
+    private int maxFramePayloadLength = 65536;
+
+    private WebSocketAllocator allocator = WebSocketAllocator.POOLED;
+    private boolean preferDirect = true;
+
+    /** Chaque client ouvre une session reprise à la reconnexion (voir WebSocketClientSession) */
+    private boolean resumable = false;
+
+    /** Reconnexion automatique après la perte de la connexion, avec renvoi des messages non acquittés */
+    private boolean reconnect = false;
+    /** Délai avant la première tentative, doublé à chaque échec jusqu'au maximum */
+    private long reconnectInitialDelayMillis = 100;
+    private long reconnectMaxDelayMillis = 10000;
+    /** Tentatives successives avant abandon, 0 pour ne pas limiter */
+    private int reconnectMaxAttempts = 0;
+    /** Messages non acquittés conservés pour être renvoyés ; au-delà, les envois sont refusés */
+    private int resendWindow = 1024;
+
+    public WebSocketClientConfig() {
+    }
+
+    public WebSocketClientConfig(URI uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * Surcharge la configuration par défaut avec les propriétés
+     * {@code websocket.client.connectTimeoutMillis},
+     * {@code websocket.client.ackTimeoutMillis},
+     * {@code websocket.client.maxFramePayloadLength},
+     * {@code websocket.client.allocator} (POOLED|UNPOOLED),
+     * {@code websocket.client.preferDirect},
+     * {@code websocket.client.resumable},
+     * {@code websocket.client.reconnect},
+     * {@code websocket.client.reconnectInitialDelayMillis},
+     * {@code websocket.client.reconnectMaxDelayMillis},
+     * {@code websocket.client.reconnectMaxAttempts},
+     * {@code websocket.client.resendWindow} et
+     * {@code websocket.compression.*}.
+     */
+    public static WebSocketClientConfig fromProperties(URI uri, Properties properties) {
+        WebSocketClientConfig config = new WebSocketClientConfig(uri);
+        config.setConnectTimeoutMillis(Integer.parseInt(properties.getProperty("websocket.client.connectTimeoutMillis", String.valueOf(config.getConnectTimeoutMillis()))));
+        config.setAckTimeoutMillis(Long.parseLong(properties.getProperty("websocket.client.ackTimeoutMillis", String.valueOf(config.getAckTimeoutMillis()))));
+        config.setMaxFramePayloadLength(Integer.parseInt(properties.getProperty("websocket.client.maxFramePayloadLength", String.valueOf(config.getMaxFramePayloadLength()))));
+        String allocator = properties.getProperty("websocket.client.allocator");
+        if (allocator != null) {
+            config.setAllocator(WebSocketAllocator.valueOf(allocator.trim().toUpperCase()));
+        }
+        config.setPreferDirect(Boolean.parseBoolean(properties.getProperty("websocket.client.preferDirect", String.valueOf(config.isPreferDirect()))));
+        config.setResumable(Boolean.parseBoolean(properties.getProperty("websocket.client.resumable", String.valueOf(config.isResumable()))));
+        config.setReconnect(Boolean.parseBoolean(properties.getProperty("websocket.client.reconnect", String.valueOf(config.isReconnect()))));
+        config.setReconnectDelayMillis(
+                Long.parseLong(properties.getProperty("websocket.client.reconnectInitialDelayMillis", String.valueOf(config.getReconnectInitialDelayMillis()))),
+                Long.parseLong(properties.getProperty("websocket.client.reconnectMaxDelayMillis", String.valueOf(config.getReconnectMaxDelayMillis()))));
+        config.setReconnectMaxAttempts(Integer.parseInt(properties.getProperty("websocket.client.reconnectMaxAttempts", String.valueOf(config.getReconnectMaxAttempts()))));
+        config.setResendWindow(Integer.parseInt(properties.getProperty("websocket.client.resendWindow", String.valueOf(config.getResendWindow()))));
+        config.setCompression(WebSocketCompressionConfig.fromProperties(properties));
+        return config;
+    }
+
+    public boolean isSsl() {
+        return "wss".equalsIgnoreCase(uri.getScheme());
+    }
+
+    /**
+     * @return  le port de l'URI, ou le port par défaut du schéma
+     */
+    public int getPort() {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return isSsl() ? 443 : 80;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public void setUri(URI uri) {
+        this.uri = uri;
+    }
+
+    public WebSocketTransport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(WebSocketTransport transport) {
+        this.transport = transport;
+    }
+
+    public WebSocketCompressionConfig getCompression() {
+        return compression;
+    }
+
+    public void setCompression(WebSocketCompressionConfig compression) {
+        this.compression = compression;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public long getAckTimeoutMillis() {
+        return ackTimeoutMillis;
+    }
+
+    public void setAckTimeoutMillis(long ackTimeoutMillis) {
+        if (ackTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("ackTimeoutMillis must be positive: " + ackTimeoutMillis);
+        }
+        this.ackTimeoutMillis = ackTimeoutMillis;
+    }
+
+    public int getMaxFramePayloadLength() {
+        return maxFramePayloadLength;
+    }
+
+    public void setMaxFramePayloadLength(int maxFramePayloadLength) {
+        this.maxFramePayloadLength = maxFramePayloadLength;
+    }
+
+    public WebSocketAllocator getAllocator() {
+        return allocator;
+    }
+
+    public void setAllocator(WebSocketAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public boolean isPreferDirect() {
+        return preferDirect;
+    }
+
+    public void setPreferDirect(boolean preferDirect) {
+        this.preferDirect = preferDirect;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    public boolean isReconnect() {
+        return reconnect;
+    }
+
+    public void setReconnect(boolean reconnect) {
+        this.reconnect = reconnect;
+    }
+
+    public long getReconnectInitialDelayMillis() {
+        return reconnectInitialDelayMillis;
+    }
+
+    public long getReconnectMaxDelayMillis() {
+        return reconnectMaxDelayMillis;
+    }
+
+    public void setReconnectDelayMillis(long initialDelayMillis, long maxDelayMillis) {
+        if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException(String.format("Reconnect delays must satisfy 0 < initial <= max, got initial=%d, max=%d", initialDelayMillis, maxDelayMillis));
+        }
+        this.reconnectInitialDelayMillis = initialDelayMillis;
+        this.reconnectMaxDelayMillis = maxDelayMillis;
+    }
+
+    public int getReconnectMaxAttempts() {
+        return reconnectMaxAttempts;
+    }
+
+    public void setReconnectMaxAttempts(int reconnectMaxAttempts) {
+        if (reconnectMaxAttempts < 0) {
+            throw new IllegalArgumentException("reconnectMaxAttempts must be >= 0, got " + reconnectMaxAttempts);
+        }
+        this.reconnectMaxAttempts = reconnectMaxAttempts;
+    }
+
+    public int getResendWindow() {
+        return resendWindow;
+    }
+
+    public void setResendWindow(int resendWindow) {
+        if (resendWindow < 1) {
+            throw new IllegalArgumentException("resendWindow must be >= 1, got " + resendWindow);
+        }
+        this.resendWindow = resendWindow;
+    }
+}
@@ -1,13 +1,13 @@
 package com.gaetanl.websocket.client;
 
-import static com.gaetanl.websocket.message.WsMessageConstants.*;
-
 import org.slf4j.*;
 
 import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.WebSocketFrameLogger;
 import com.google.gson.*;
 
 import io.netty.channel.*;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.websocketx.*;
 import io.netty.util.CharsetUtil;
@@ -16,10 +16,27 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
     private static final Logger logger = LoggerFactory.getLogger(WebSocketClientHandler.class);
 
     private final WebSocketClientHandshaker handshaker;
+    private final WsMessageDispatcher dispatcher;
+    private final WebSocketClientSession session;
+    private final WebSocketFrameLogger frameLogger = new WebSocketFrameLogger();
     private ChannelPromise handshakeFuture;
 
     public WebSocketClientHandler(WebSocketClientHandshaker handshaker) {
+        this(handshaker, new WsMessageDispatcher());
+    }
+
+    public WebSocketClientHandler(WebSocketClientHandshaker handshaker, WsMessageDispatcher dispatcher) {
+        this(handshaker, dispatcher, null);
+    }
+
+    /**
+     * @param   session  session reprise par cette connexion, dont les
+     *                   en-têtes ont été ajoutés au handshake, ou null
+     */
+    public WebSocketClientHandler(WebSocketClientHandshaker handshaker, WsMessageDispatcher dispatcher, WebSocketClientSession session) {
         this.handshaker = handshaker;
+        this.dispatcher = dispatcher;
+        this.session = session;
     }
 
     public ChannelFuture handshakeFuture() {
@@ -38,18 +55,24 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
+        if (!handshakeFuture.isDone()) {
+            handshakeFuture.tryFailure(new WebSocketHandshakeException("Connection closed before handshake completion"));
+        }
         logger.info("[OK] websocket client disconnected");
     }
 
     @Override
     public void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
-        logger.debug(String.format("Received (%s) frame on channel %s", msg.getClass().getSimpleName(), ctx.channel()));
-
         Channel ch = ctx.channel();
         if (!handshaker.isHandshakeComplete()) {
             try {
                 handshaker.finishHandshake(ch, (FullHttpResponse) msg);
-                logger.info("[OK] Handshake done");
+                if (session != null) {
+                    session.handshakeComplete(((FullHttpResponse) msg).headers());
+                }
+                WsWireFormat format = WsWireFormat.fromSubprotocol(handshaker.actualSubprotocol());
+                ch.attr(WsWireFormat.ATTRIBUTE).set(format);
+                logger.info("[OK] Handshake done (format={})", format);
                 handshakeFuture.setSuccess();
             }
             catch (WebSocketHandshakeException e) {
@@ -65,58 +88,55 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         }
 
         WebSocketFrame frame = (WebSocketFrame) msg;
+        if (session != null && (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame || frame instanceof ContinuationWebSocketFrame)) {
+            session.frameReceived();
+        }
         if (frame instanceof WebSocketFrame) {
 
-            if (frame instanceof BinaryWebSocketFrame) {
-                logger.info("[OK] websocket/in: BinaryWebSocketFrame");
-            }
-
-            else if (frame instanceof TextWebSocketFrame) {
-                String text = ((TextWebSocketFrame) frame).text();
-                logger.info(String.format("[OK] websocket/in: TextWebSocketFrame (see below)\n\n%s\n", text.replaceAll("(?m)^", "    ")));
-
+            if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
                 WsMessage message = null;
                 try {
-                    GsonBuilder builder = new GsonBuilder();
-                    builder.registerTypeAdapter(WsMessage.class, new WsMessageDeserializer());
-                    Gson gsonReader = builder.create();
-                    message = gsonReader.fromJson(text, WsMessage.class);
-
-                    String type = message.getType();
-                    if (WS_MSG_TEXT.equals(type)) {
-                        // Do nothing
-                    }
-                    else if (WS_ACK_TEXT.equals(type)) {
-                        // Do nothing
+                    message = WsWireFormat.decodeFrame(frame);
+                    if (frameLogger.sample()) {
+                        frameLogger.inbound(ch, frame, message);
                     }
 
                     if (message != null) {
+                        dispatcher.dispatch(ctx, message);
+
                         WsMessage ack = message.getAck();
 
                         if (ack != null) {
-                            Gson gsonWriter = new GsonBuilder().setPrettyPrinting().create();
-                            String json = gsonWriter.toJson(ack);
-                            ctx.channel().writeAndFlush(new TextWebSocketFrame(json));
+                            ctx.channel().writeAndFlush(WsWireFormat.of(ch).encodeFrame(ctx.alloc(), ack));
                         }
                     }
                 }
-                catch (JsonSyntaxException e) {
-                    logger.info(String.format("[NOK] websocket/in: WebSocketFrame/WsMessage ('%s' could'nt be parsed)", text), e.getMessage(), e);
+                catch (JsonParseException e) {
+                    logDecodeFailure(frame, e);
+                }
+                catch (CorruptedFrameException e) {
+                    logDecodeFailure(frame, e);
                 }
             }
 
             else if (frame instanceof PingWebSocketFrame) {
-                logger.info("[OK] websocket/in: PingWebSocketFrame");
+                if (frameLogger.sample()) {
+                    frameLogger.inbound(ch, frame, null);
+                }
+                // Réponse au heartbeat du serveur
+                ch.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
             }
 
             else if (frame instanceof PongWebSocketFrame) {
-                logger.info("[OK] websocket/in: PongWebSocketFrame");
+                if (frameLogger.sample()) {
+                    frameLogger.inbound(ch, frame, null);
+                }
             }
 
             else if (frame instanceof CloseWebSocketFrame) {
                 final String reasonText = ((CloseWebSocketFrame) frame).reasonText();
                 final int statusCode = ((CloseWebSocketFrame) frame).statusCode();
-                logger.info(String.format("[OK] websocket/in: CloseWebSocketFrame (reasonText=%s, statusCode=%d)", reasonText, statusCode));
+                logger.info("[OK] websocket/in: CloseWebSocketFrame (reasonText={}, statusCode={})", reasonText, statusCode);
                 ch.close();
             }
 
@@ -126,6 +146,12 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         }
     }
 
+    private static void logDecodeFailure(WebSocketFrame frame, RuntimeException e) {
+        if (logger.isInfoEnabled()) {
+            logger.info(String.format("[NOK] websocket/in: %s/WsMessage ('%s' could'nt be parsed)", frame.getClass().getSimpleName(), WebSocketFrameLogger.payload(frame)), e);
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         if (!handshakeFuture.isDone()) {
@@ -0,0 +1,119 @@
+package com.gaetanl.websocket.client;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.gaetanl.websocket.message.*;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.concurrent.*;
+
+/**
+ * Pool de connexions vers un même serveur : les envois sont répartis à tour
+ * de rôle sur les connexions actives. Toutes les connexions partagent
+ * l'EventLoopGroup, le SslContext et la configuration.
+ */
+public class WebSocketClientPool {
+    private final EventLoopGroup group;
+    private final List<WebSocketAsyncClient> clients;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public WebSocketClientPool(EventLoopGroup group, SslContext sslContext, WebSocketClientConfig config, int size) {
+        this(group, sslContext, config, size, new WsMessageDispatcher());
+    }
+
+    public WebSocketClientPool(EventLoopGroup group, SslContext sslContext, WebSocketClientConfig config, int size, WsMessageDispatcher dispatcher) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1: " + size);
+        }
+        this.group = group;
+        List<WebSocketAsyncClient> clients = new ArrayList<WebSocketAsyncClient>(size);
+        for (int i = 0 ; i < size ; i++) {
+            clients.add(new WebSocketAsyncClient(group, sslContext, config, dispatcher));
+        }
+        this.clients = Collections.unmodifiableList(clients);
+    }
+
+    /**
+     * @return  un future complété lorsque toutes les connexions sont
+     *          établies, ou en échec dès le premier échec
+     */
+    public Future<WebSocketClientPool> connect() {
+        final Promise<WebSocketClientPool> promise = group.next().newPromise();
+        final AtomicInteger remaining = new AtomicInteger(clients.size());
+        for (WebSocketAsyncClient client : clients) {
+            client.connect().addListener(new FutureListener<WebSocketAsyncClient>() {
+                @Override
+                public void operationComplete(Future<WebSocketAsyncClient> future) {
+                    if (!future.isSuccess()) {
+                        promise.tryFailure(future.cause());
+                    }
+                    else if (remaining.decrementAndGet() == 0) {
+                        promise.trySuccess(WebSocketClientPool.this);
+                    }
+                }
+            });
+        }
+        return promise;
+    }
+
+    /**
+     * Envoie le message sur la prochaine connexion active.
+     *
+     * @see  WebSocketAsyncClient#send(WsMessage)
+     */
+    public Future<WsMessage> send(WsMessage message) {
+        int size = clients.size();
+        int start = next.getAndIncrement();
+        for (int i = 0 ; i < size ; i++) {
+            WebSocketAsyncClient client = clients.get(((start + i) & Integer.MAX_VALUE) % size);
+            if (client.isActive()) {
+                return client.send(message);
+            }
+        }
+        return ImmediateEventExecutor.INSTANCE.newFailedFuture(new ClosedChannelException());
+    }
+
+    /**
+     * @return  un future complété lorsque toutes les connexions sont fermées
+     */
+    public Future<WebSocketClientPool> close() {
+        final Promise<WebSocketClientPool> promise = group.next().newPromise();
+        final AtomicInteger remaining = new AtomicInteger(clients.size());
+        for (WebSocketAsyncClient client : clients) {
+            client.close().addListener(new FutureListener<Object>() {
+                @Override
+                public void operationComplete(Future<Object> future) {
+                    if (remaining.decrementAndGet() == 0) {
+                        promise.trySuccess(WebSocketClientPool.this);
+                    }
+                }
+            });
+        }
+        return promise;
+    }
+
+    public int getActiveConnections() {
+        int active = 0;
+        for (WebSocketAsyncClient client : clients) {
+            if (client.isActive()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    public int getPendingAcks() {
+        int pending = 0;
+        for (WebSocketAsyncClient client : clients) {
+            pending += client.getPendingAcks();
+        }
+        return pending;
+    }
+
+    public List<WebSocketAsyncClient> getClients() {
+        return clients;
+    }
+}
@@ -0,0 +1,81 @@
+package com.gaetanl.websocket.client;
+
+import org.slf4j.*;
+
+import com.gaetanl.websocket.server.WebSocketJournalHandler;
+
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Session reprise d'une connexion à l'autre lorsque le serveur journalise
+ * ses envois ({@link WebSocketJournalHandler}). La session compte les
+ * frames de données reçues : à la reconnexion, le serveur relit celles qui
+ * suivent le dernier offset reçu.
+ */
+public class WebSocketClientSession {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketClientSession.class);
+
+    private final String id;
+
+    /** Offset de la dernière frame reçue, écrit par l'event loop du channel */
+    private volatile long receivedOffset;
+
+    /** Le serveur a accepté la session lors du dernier handshake */
+    private volatile boolean journaled;
+
+    /**
+     * @param   id  identifiant de la session, difficile à deviner (UUID,
+     *              etc.) et composé de lettres, chiffres, '-' ou '_'
+     */
+    public WebSocketClientSession(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getReceivedOffset() {
+        return receivedOffset;
+    }
+
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    void addHandshakeHeaders(HttpHeaders headers) {
+        headers.set(WebSocketJournalHandler.SESSION_HEADER, id);
+        headers.set(WebSocketJournalHandler.OFFSET_HEADER, receivedOffset);
+    }
+
+    /**
+     * Reprend à l'offset indiqué par le serveur, qui peut différer du
+     * dernier offset reçu si des messages ont été perdus.
+     */
+    void handshakeComplete(HttpHeaders responseHeaders) {
+        String offset = responseHeaders.get(WebSocketJournalHandler.OFFSET_HEADER);
+        journaled = offset != null;
+        if (!journaled) {
+            logger.info("[NOK] Session {} not journaled by the server", id);
+            return;
+        }
+
+        long resumeOffset = Long.parseLong(offset.trim());
+        if (resumeOffset > receivedOffset) {
+            logger.info("[NOK] Session {}: messages {} to {} lost", new Object[] { id, receivedOffset + 1, resumeOffset });
+        }
+        else if (resumeOffset < receivedOffset) {
+            logger.info("[NOK] Session {} reset by the server at offset {} (received {})", new Object[] { id, resumeOffset, receivedOffset });
+        }
+        else {
+            logger.info("[OK] Session {} resumed at offset {}", id, resumeOffset);
+        }
+        receivedOffset = resumeOffset;
+    }
+
+    void frameReceived() {
+        if (journaled) {
+            receivedOffset++;
+        }
+    }
+}
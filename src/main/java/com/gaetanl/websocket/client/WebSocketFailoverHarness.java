@@ -0,0 +1,225 @@
+package com.gaetanl.websocket.client;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.WebSocketServer;
+import com.gaetanl.websocket.server.WebSocketServerConfig;
+import com.gaetanl.websocket.server.WebSocketServerHandler;
+
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.*;
+import io.netty.util.concurrent.Future;
+
+/**
+ * Banc de reprise après panne : un {@link WebSocketAsyncClient} avec
+ * reconnexion envoie des {@link WsMsgText} à débit fixe vers un
+ * WebSocketServer local, arrêté brutalement (connexions fermées sans frame
+ * Close) puis redémarré sur le même port à intervalles réguliers.
+ *
+ * Pour chaque coupure sont mesurés le temps de reprise, du redémarrage du
+ * serveur au premier accusé de réception, et l'interruption vue par
+ * l'appelant, du dernier accusé avant la coupure au premier après. Au terme
+ * sont comptés les envois en échec, les messages jamais reçus par le
+ * serveur et les doublons dus aux renvois.
+ *
+ * <pre>
+ * java -Dwebsocket.failover.rate=500 -Dwebsocket.failover.outages=3 \
+ *     com.gaetanl.websocket.client.WebSocketFailoverHarness
+ * </pre>
+ *
+ * Propriétés {@code websocket.failover.rate} (messages par seconde),
+ * {@code .outages}, {@code .intervalMillis} (durée de fonctionnement entre
+ * deux coupures), {@code .downtimeMillis}, ainsi que les propriétés
+ * {@code websocket.*} du serveur et {@code websocket.client.*} du client, la
+ * reconnexion étant toujours activée.
+ */
+public class WebSocketFailoverHarness {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketFailoverHarness.class);
+
+    private static final String PREFIX = "m-";
+
+    private final WebSocketServerConfig serverConfig;
+    private final WebSocketClientConfig clientConfig;
+    private final int rate;
+    private final int outages;
+    private final long intervalMillis;
+    private final long downtimeMillis;
+
+    /** Réceptions par le serveur, par numéro de message */
+    private final AtomicIntegerArray received;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile long lastAckNanos;
+
+    public WebSocketFailoverHarness(WebSocketServerConfig serverConfig, WebSocketClientConfig clientConfig, int rate, int outages, long intervalMillis, long downtimeMillis) {
+        this.serverConfig = serverConfig;
+        this.clientConfig = clientConfig;
+        this.rate = rate;
+        this.outages = outages;
+        this.intervalMillis = intervalMillis;
+        this.downtimeMillis = downtimeMillis;
+        long duration = (outages + 1) * intervalMillis + outages * downtimeMillis;
+        this.received = new AtomicIntegerArray((int) Math.min(Integer.MAX_VALUE - 8, rate * (duration / 1000 + 2)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties properties = System.getProperties();
+        WebSocketServerConfig serverConfig = WebSocketServerConfig.fromProperties(properties);
+        serverConfig.setSsl(false);
+        serverConfig.setPort(0);
+        serverConfig.setJmx(false);
+        WebSocketClientConfig clientConfig = WebSocketClientConfig.fromProperties(null, properties);
+        clientConfig.setReconnect(true);
+
+        new WebSocketFailoverHarness(serverConfig, clientConfig,
+                Integer.parseInt(properties.getProperty("websocket.failover.rate", "500")),
+                Integer.parseInt(properties.getProperty("websocket.failover.outages", "3")),
+                Long.parseLong(properties.getProperty("websocket.failover.intervalMillis", "3000")),
+                Long.parseLong(properties.getProperty("websocket.failover.downtimeMillis", "1000"))).run();
+    }
+
+    /**
+     * Démarre le serveur, envoie pendant les coupures successives, puis
+     * attend les derniers accusés de réception. Bloquant.
+     */
+    public void run() throws Exception {
+        WebSocketServer server = startServer();
+        int port = server.localAddress().getPort();
+        serverConfig.setPort(port);
+        clientConfig.setUri(new URI("ws://127.0.0.1:" + port));
+
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+        final WebSocketAsyncClient client = new WebSocketAsyncClient(group, null, clientConfig);
+        try {
+            client.connect().sync();
+            logger.info("[OK] failover: {} messages/s to {}, {} outage(s) of {} ms every {} ms",
+                    new Object[] { rate, clientConfig.getUri(), outages, downtimeMillis, intervalMillis });
+
+            // Envois par tranche d'une milliseconde, en rattrapant le retard éventuel
+            final long start = System.nanoTime();
+            sender.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    long due = Math.min(received.length(), (System.nanoTime() - start) * rate / 1000000000L);
+                    while (sent.get() < due) {
+                        send(client, sent.getAndIncrement());
+                    }
+                }
+            }, 0, 1, TimeUnit.MILLISECONDS);
+
+            for (int outage = 1 ; outage <= outages ; outage++) {
+                Thread.sleep(intervalMillis);
+                long lastAckBefore = lastAckNanos;
+                server.getChannelRegistry().getChannels().close();
+                server.stop();
+                Thread.sleep(downtimeMillis);
+                long restart = System.nanoTime();
+                server = startServer();
+
+                long firstAck = awaitAckAfter(restart, TimeUnit.MILLISECONDS.toNanos(intervalMillis + clientConfig.getReconnectMaxDelayMillis()));
+                if (firstAck < 0) {
+                    logger.info("[NOK] failover: outage {}, no ack after restart", outage);
+                }
+                else {
+                    logger.info("[OK] failover: outage {}, recovery {} ms after restart, acks interrupted for {} ms",
+                            new Object[] { outage, (firstAck - restart) / 1000000, (firstAck - lastAckBefore) / 1000000 });
+                }
+            }
+            Thread.sleep(intervalMillis);
+            sender.shutdown();
+            sender.awaitTermination(1, TimeUnit.SECONDS);
+
+            // Derniers accusés, au plus le délai d'accusé
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(clientConfig.getAckTimeoutMillis());
+            while (acked.sum() + failed.sum() < sent.get() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            report(client);
+        }
+        finally {
+            sender.shutdownNow();
+            client.close();
+            group.shutdownGracefully();
+            server.stop();
+        }
+    }
+
+    private WebSocketServer startServer() throws Exception {
+        WsMessageDispatcher dispatcher = WebSocketServerHandler.defaultDispatcher().register(WsMsgText.class, new WsMessageHandler<WsMsgText>() {
+            @Override
+            public void handle(ChannelHandlerContext ctx, WsMsgText message) {
+                String text = message.getText();
+                if (text != null && text.startsWith(PREFIX)) {
+                    received.incrementAndGet(Integer.parseInt(text.substring(PREFIX.length())));
+                }
+            }
+        });
+        WebSocketServer server = new WebSocketServer(serverConfig, dispatcher);
+        server.start();
+        return server;
+    }
+
+    private void send(WebSocketAsyncClient client, long number) {
+        WsMsgText message = new WsMsgText();
+        message.setText(PREFIX + number);
+        client.send(message).addListener(new FutureListener<WsMessage>() {
+            @Override
+            public void operationComplete(Future<WsMessage> future) {
+                if (future.isSuccess()) {
+                    acked.increment();
+                    lastAckNanos = System.nanoTime();
+                }
+                else {
+                    failed.increment();
+                    if (future.cause() instanceof RejectedExecutionException) {
+                        rejected.increment();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return  la date du premier accusé reçu après {@code after}, ou -1
+     *          au-delà du délai
+     */
+    private long awaitAckAfter(long after, long timeoutNanos) throws InterruptedException {
+        long deadline = after + timeoutNanos;
+        while (System.nanoTime() < deadline) {
+            long last = lastAckNanos;
+            if (last - after > 0) {
+                return last;
+            }
+            Thread.sleep(1);
+        }
+        return -1;
+    }
+
+    private void report(WebSocketAsyncClient client) {
+        long total = sent.get();
+        int missing = 0;
+        int duplicated = 0;
+        for (int i = 0 ; i < total ; i++) {
+            int count = received.get(i);
+            if (count == 0) {
+                missing++;
+            }
+            else if (count > 1) {
+                duplicated++;
+            }
+        }
+        logger.info("[OK] failover: sent={}, acked={}, failed={} (window full: {}), never received={}, duplicated={}, reconnects={}, resent={}",
+                new Object[] { total, acked.sum(), failed.sum(), rejected.sum(), missing, duplicated, client.getReconnects(), client.getResentMessages() });
+    }
+}
@@ -0,0 +1,168 @@
+package com.gaetanl.websocket.client;
+
+import java.util.Properties;
+
+/**
+ * Configuration du {@link WebSocketLoadGenerator}.
+ */
+public class WebSocketLoadConfig {
+    public enum Mode {
+        /** Débit fixe : les envois suivent un planning indépendant des réponses */
+        FIXED_RATE,
+        /** Boucle fermée : chaque accusé de réception déclenche l'envoi suivant */
+        CLOSED_LOOP
+    }
+
+    private int connections = 10;
+
+    /** Durée sur laquelle les connexions sont ouvertes */
+    private long rampUpMillis = 1000;
+
+    private Mode mode = Mode.FIXED_RATE;
+
+    /** Débit total en messages par seconde (FIXED_RATE) */
+    private int rate = 10000;
+
+    /** Envois en attente d'accusé par connexion (CLOSED_LOOP) */
+    private int concurrency = 1;
+
+    /** Au-delà, les envois sont différés sans décaler leur date prévue (FIXED_RATE) */
+    private int maxOutstanding = 1000;
+
+    /** Taille du texte des WsMsgText, en caractères */
+    private int payloadSize = 64;
+
+    private int warmupSeconds = 5;
+    private int durationSeconds = 30;
+    private int reportIntervalSeconds = 1;
+
+    /** Threads de l'EventLoopGroup des clients, 0 pour le défaut de Netty */
+    private int threads = 0;
+
+    /**
+     * Surcharge la configuration par défaut avec les propriétés
+     * {@code websocket.load.connections}, {@code .rampUpMillis},
+     * {@code .mode}, {@code .rate}, {@code .concurrency},
+     * {@code .maxOutstanding}, {@code .payloadSize}, {@code .warmupSeconds},
+     * {@code .durationSeconds}, {@code .reportIntervalSeconds} et
+     * {@code .threads}.
+     */
+    public static WebSocketLoadConfig fromProperties(Properties properties) {
+        WebSocketLoadConfig config = new WebSocketLoadConfig();
+        config.setConnections(Integer.parseInt(properties.getProperty("websocket.load.connections", String.valueOf(config.getConnections()))));
+        config.setRampUpMillis(Long.parseLong(properties.getProperty("websocket.load.rampUpMillis", String.valueOf(config.getRampUpMillis()))));
+        config.setMode(Mode.valueOf(properties.getProperty("websocket.load.mode", config.getMode().name()).toUpperCase()));
+        config.setRate(Integer.parseInt(properties.getProperty("websocket.load.rate", String.valueOf(config.getRate()))));
+        config.setConcurrency(Integer.parseInt(properties.getProperty("websocket.load.concurrency", String.valueOf(config.getConcurrency()))));
+        config.setMaxOutstanding(Integer.parseInt(properties.getProperty("websocket.load.maxOutstanding", String.valueOf(config.getMaxOutstanding()))));
+        config.setPayloadSize(Integer.parseInt(properties.getProperty("websocket.load.payloadSize", String.valueOf(config.getPayloadSize()))));
+        config.setWarmupSeconds(Integer.parseInt(properties.getProperty("websocket.load.warmupSeconds", String.valueOf(config.getWarmupSeconds()))));
+        config.setDurationSeconds(Integer.parseInt(properties.getProperty("websocket.load.durationSeconds", String.valueOf(config.getDurationSeconds()))));
+        config.setReportIntervalSeconds(Integer.parseInt(properties.getProperty("websocket.load.reportIntervalSeconds", String.valueOf(config.getReportIntervalSeconds()))));
+        config.setThreads(Integer.parseInt(properties.getProperty("websocket.load.threads", String.valueOf(config.getThreads()))));
+        return config;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be at least 1: " + connections);
+        }
+        this.connections = connections;
+    }
+
+    public long getRampUpMillis() {
+        return rampUpMillis;
+    }
+
+    public void setRampUpMillis(long rampUpMillis) {
+        this.rampUpMillis = rampUpMillis;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public void setRate(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("rate must be at least 1: " + rate);
+        }
+        this.rate = rate;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1: " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    public void setMaxOutstanding(int maxOutstanding) {
+        if (maxOutstanding < 1) {
+            throw new IllegalArgumentException("maxOutstanding must be at least 1: " + maxOutstanding);
+        }
+        this.maxOutstanding = maxOutstanding;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    public void setPayloadSize(int payloadSize) {
+        this.payloadSize = payloadSize;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public int getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    public void setReportIntervalSeconds(int reportIntervalSeconds) {
+        if (reportIntervalSeconds < 1) {
+            throw new IllegalArgumentException("reportIntervalSeconds must be at least 1: " + reportIntervalSeconds);
+        }
+        this.reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+}
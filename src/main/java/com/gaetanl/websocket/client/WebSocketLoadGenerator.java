@@ -0,0 +1,353 @@
+package com.gaetanl.websocket.client;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.*;
+import org.slf4j.*;
+
+import com.gaetanl.websocket.message.*;
+import com.gaetanl.websocket.server.WebSocketServer;
+import com.gaetanl.websocket.server.WebSocketServerConfig;
+
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.handler.ssl.*;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.concurrent.*;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Générateur de charge : ouvre N connexions {@link WebSocketAsyncClient}
+ * progressivement, envoie des {@link WsMsgText} à débit fixe ou en boucle
+ * fermée et mesure la latence jusqu'à l'accusé de réception ({@link WsAck}
+ * cumulatif ou {@link WsAckText}).
+ *
+ * À débit fixe, la latence est mesurée depuis la date d'envoi prévue par le
+ * planning et non depuis l'envoi effectif : un serveur qui ralentit retarde
+ * les envois suivants, et ce retard doit être compté (correction de la
+ * coordinated omission). Le temps de service, mesuré depuis l'envoi
+ * effectif, est rapporté à titre de comparaison. En boucle fermée, les deux
+ * mesures sont confondues.
+ *
+ * Sans URI, un WebSocketServer est démarré sur la boucle locale :
+ * <pre>
+ * java -Dwebsocket.load.connections=100 -Dwebsocket.load.rate=50000 \
+ *     com.gaetanl.websocket.client.WebSocketLoadGenerator [ws://host:port]
+ * </pre>
+ *
+ * @see  WebSocketLoadConfig
+ */
+public class WebSocketLoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketLoadGenerator.class);
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /** Période de la tâche d'envoi à débit fixe */
+    private static final long TICK_MICROS = 100;
+
+    private final EventLoopGroup group;
+    private final SslContext sslContext;
+    private final WebSocketClientConfig clientConfig;
+    private final WebSocketLoadConfig config;
+    private final String payload;
+
+    /** Depuis la date prévue de l'envoi */
+    private final Recorder latency = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+    /** Depuis l'envoi effectif */
+    private final Recorder serviceTime = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private final List<Driver> drivers = new ArrayList<Driver>();
+    private volatile boolean running;
+    private volatile boolean measuring;
+    private volatile long measureStart;
+
+    public WebSocketLoadGenerator(EventLoopGroup group, SslContext sslContext, WebSocketClientConfig clientConfig, WebSocketLoadConfig config) {
+        this.group = group;
+        this.sslContext = sslContext;
+        this.clientConfig = clientConfig;
+        this.config = config;
+
+        char[] text = new char[config.getPayloadSize()];
+        Arrays.fill(text, 'x');
+        this.payload = new String(text);
+    }
+
+    public static void main(String[] args) throws Exception {
+        WebSocketLoadConfig config = WebSocketLoadConfig.fromProperties(System.getProperties());
+
+        WebSocketServer server = null;
+        final URI uri;
+        if (args.length > 0) {
+            uri = new URI(args[0]);
+        }
+        else {
+            WebSocketServerConfig serverConfig = WebSocketServerConfig.fromProperties(System.getProperties());
+            serverConfig.setSsl(false);
+            serverConfig.setPort(0);
+            server = new WebSocketServer(serverConfig);
+            server.start();
+            uri = new URI("ws://127.0.0.1:" + server.localAddress().getPort());
+        }
+
+        EventLoopGroup group = new NioEventLoopGroup(config.getThreads());
+        try {
+            WebSocketClientConfig clientConfig = WebSocketClientConfig.fromProperties(uri, System.getProperties());
+            // Serveur de test : le certificat n'est pas vérifié
+            SslContext sslContext = clientConfig.isSsl() ? SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build() : null;
+
+            logger.info("[OK] load: {} connections to {}, mode={}", config.getConnections(), uri, config.getMode());
+            Report report = new WebSocketLoadGenerator(group, sslContext, clientConfig, config).run();
+            logger.info("[OK] load: {}", report);
+        }
+        finally {
+            group.shutdownGracefully();
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Ouvre les connexions, attend la fin du warmup puis mesure pendant la
+     * durée configurée en rapportant chaque intervalle. Bloquant.
+     *
+     * @return  le rapport de la période de mesure
+     * @throws  Exception si une connexion échoue
+     */
+    public Report run() throws Exception {
+        running = true;
+        List<Future<Void>> connected = new ArrayList<Future<Void>>();
+        int connections = config.getConnections();
+        long rampUpNanos = TimeUnit.MILLISECONDS.toNanos(config.getRampUpMillis());
+        for (int i = 0 ; i < connections ; i++) {
+            final Driver driver = new Driver(new WebSocketAsyncClient(group, sslContext, clientConfig));
+            final Promise<Void> promise = group.next().newPromise();
+            drivers.add(driver);
+            connected.add(promise);
+            group.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    driver.start(promise);
+                }
+            }, rampUpNanos * i / connections, TimeUnit.NANOSECONDS);
+        }
+
+        try {
+            for (Future<Void> future : connected) {
+                future.sync();
+            }
+            logger.info("[OK] load: {} connections open, warming up for {} s", connections, config.getWarmupSeconds());
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.getWarmupSeconds()));
+
+            latency.reset();
+            serviceTime.reset();
+            long sentBefore = sent.sum();
+            long errorsBefore = errors.sum();
+            measureStart = System.nanoTime();
+            measuring = true;
+
+            Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            Histogram totalService = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            Histogram interval = null;
+            Histogram intervalService = null;
+            long end = measureStart + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+            long intervalStart = measureStart;
+            long now = measureStart;
+            while (now - end < 0) {
+                long next = Math.min(intervalStart + TimeUnit.SECONDS.toNanos(config.getReportIntervalSeconds()), end);
+                TimeUnit.NANOSECONDS.sleep(next - now);
+
+                interval = latency.getIntervalHistogram(interval);
+                intervalService = serviceTime.getIntervalHistogram(intervalService);
+                total.add(interval);
+                totalService.add(intervalService);
+                now = System.nanoTime();
+                if (logger.isInfoEnabled()) {
+                    logger.info(String.format("[OK] load: t=%.0fs %s", (now - measureStart) / 1e9, format(interval, now - intervalStart)));
+                }
+                intervalStart = now;
+            }
+            measuring = false;
+
+            return new Report(total, totalService, now - measureStart, sent.sum() - sentBefore, errors.sum() - errorsBefore);
+        }
+        finally {
+            running = false;
+            measuring = false;
+            for (Driver driver : drivers) {
+                driver.client.close();
+            }
+        }
+    }
+
+    private static String format(Histogram latency, long elapsedNanos) {
+        return String.format("%.0f msg/s, latency p50=%d p99=%d p999=%d max=%d us",
+                latency.getTotalCount() * 1e9 / elapsedNanos,
+                micros(latency.getValueAtPercentile(50)),
+                micros(latency.getValueAtPercentile(99)),
+                micros(latency.getValueAtPercentile(99.9)),
+                micros(latency.getMaxValue()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Envois d'une connexion. Les appels sont confinés à l'event loop du
+     * channel, où les futures d'accusé de réception sont complétés.
+     */
+    private class Driver implements Runnable {
+        final WebSocketAsyncClient client;
+        /** Intervalle entre deux envois prévus, en nanosecondes (FIXED_RATE) */
+        final long period;
+        long nextSend;
+        int outstanding;
+        ScheduledFuture<?> tick;
+
+        Driver(WebSocketAsyncClient client) {
+            this.client = client;
+            this.period = Math.max(1, TimeUnit.SECONDS.toNanos(config.getConnections()) / config.getRate());
+        }
+
+        void start(final Promise<Void> connected) {
+            client.connect().addListener(new FutureListener<WebSocketAsyncClient>() {
+                @Override
+                public void operationComplete(Future<WebSocketAsyncClient> future) {
+                    if (!future.isSuccess()) {
+                        connected.tryFailure(future.cause());
+                        return;
+                    }
+                    final EventLoop loop = client.getChannel().eventLoop();
+                    loop.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (config.getMode() == WebSocketLoadConfig.Mode.FIXED_RATE) {
+                                nextSend = System.nanoTime();
+                                tick = loop.scheduleAtFixedRate(Driver.this, 0, TICK_MICROS, TimeUnit.MICROSECONDS);
+                            }
+                            else {
+                                for (int i = 0 ; i < config.getConcurrency() ; i++) {
+                                    send(System.nanoTime());
+                                }
+                            }
+                        }
+                    });
+                    connected.trySuccess(null);
+                }
+            });
+        }
+
+        /**
+         * Rattrape les envois prévus jusqu'à maintenant : un envoi en retard
+         * garde sa date prévue.
+         */
+        @Override
+        public void run() {
+            if (!running) {
+                tick.cancel(false);
+                return;
+            }
+            long now = System.nanoTime();
+            while (nextSend - now <= 0 && outstanding < config.getMaxOutstanding()) {
+                send(nextSend);
+                nextSend += period;
+            }
+        }
+
+        void send(final long intended) {
+            final long sendTime = System.nanoTime();
+            WsMsgText message = new WsMsgText();
+            message.setText(payload);
+            outstanding++;
+            sent.increment();
+            client.send(message).addListener(new FutureListener<WsMessage>() {
+                @Override
+                public void operationComplete(Future<WsMessage> future) {
+                    outstanding--;
+                    long now = System.nanoTime();
+                    if (!future.isSuccess()) {
+                        if (running) {
+                            errors.increment();
+                        }
+                        return;
+                    }
+                    if (measuring && intended - measureStart >= 0) {
+                        latency.recordValue(Math.min(now - intended, HIGHEST_TRACKABLE_NANOS));
+                        serviceTime.recordValue(Math.min(now - sendTime, HIGHEST_TRACKABLE_NANOS));
+                    }
+                    if (running && config.getMode() == WebSocketLoadConfig.Mode.CLOSED_LOOP) {
+                        send(now);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Résultat de la période de mesure.
+     */
+    public static class Report {
+        private final Histogram latency;
+        private final Histogram serviceTime;
+        private final long elapsedNanos;
+        private final long sent;
+        private final long errors;
+
+        Report(Histogram latency, Histogram serviceTime, long elapsedNanos, long sent, long errors) {
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+            this.elapsedNanos = elapsedNanos;
+            this.sent = sent;
+            this.errors = errors;
+        }
+
+        /**
+         * @return  la latence depuis la date d'envoi prévue, en nanosecondes
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return  la latence depuis l'envoi effectif, en nanosecondes
+         */
+        public Histogram getServiceTime() {
+            return serviceTime;
+        }
+
+        /**
+         * @return  les accusés de réception reçus par seconde
+         */
+        public double getThroughput() {
+            return latency.getTotalCount() * 1e9 / elapsedNanos;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getAcked() {
+            return latency.getTotalCount();
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d sent, %d acked, %d errors in %.1f s: %s (service time p99=%d p999=%d us)",
+                    sent, getAcked(), errors, elapsedNanos / 1e9,
+                    format(latency, elapsedNanos),
+                    micros(serviceTime.getValueAtPercentile(99)),
+                    micros(serviceTime.getValueAtPercentile(99.9)));
+        }
+    }
+}
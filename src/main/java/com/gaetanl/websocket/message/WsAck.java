@@ -0,0 +1,116 @@
+package com.gaetanl.websocket.message;
+
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * Accusé de réception cumulatif des messages séquencés d'un channel
+ * ({@link WsMessage#getSeq()}) : tous les messages jusqu'au numéro
+ * {@code cumulative} inclus ont été traités, ainsi que ceux des plages
+ * sélectives reçues au-delà d'un message manquant.
+ *
+ * En binaire, les plages sont codées par écart au numéro précédent :
+ * quelques octets par accusé, quel que soit le nombre de messages acquittés.
+ */
+public class WsAck extends WsMessage {
+    private static final long serialVersionUID = 2815306385741196283L;
+
+    static final WsBinaryAdapter<WsAck> BINARY_ADAPTER = new WsBinaryAdapter<WsAck>() {
+        @Override
+        public WsAck newMessage() {
+            return new WsAck();
+        }
+
+        @Override
+        public void writeFields(WsAck message, ByteBuf out) {
+            WsBinaryCodec.writeVarLong(out, message.cumulative);
+            long[] ranges = message.ranges;
+            int count = ranges == null ? 0 : ranges.length / 2;
+            WsBinaryCodec.writeVarInt(out, count);
+            long previous = message.cumulative;
+            for (int i = 0 ; i < count ; i++) {
+                WsBinaryCodec.writeVarLong(out, ranges[2 * i] - previous);
+                WsBinaryCodec.writeVarLong(out, ranges[2 * i + 1] - ranges[2 * i]);
+                previous = ranges[2 * i + 1];
+            }
+        }
+
+        @Override
+        public void readFields(WsAck message, ByteBuf in) {
+            message.cumulative = WsBinaryCodec.readVarLong(in);
+            int count = WsBinaryCodec.readVarInt(in);
+            if (count < 0 || count > in.readableBytes() / 2) {
+                throw new CorruptedFrameException("Invalid ack range count " + count);
+            }
+            if (count > 0) {
+                long[] ranges = new long[2 * count];
+                long previous = message.cumulative;
+                for (int i = 0 ; i < count ; i++) {
+                    ranges[2 * i] = previous + WsBinaryCodec.readVarLong(in);
+                    ranges[2 * i + 1] = ranges[2 * i] + WsBinaryCodec.readVarLong(in);
+                    previous = ranges[2 * i + 1];
+                }
+                message.ranges = ranges;
+            }
+        }
+    };
+
+    /** Dernier numéro de séquence d'une suite reçue sans manque */
+    private long cumulative;
+
+    /**
+     * Plages reçues au-delà de cumulative + 1, par paires début, fin
+     * (incluses) croissantes ; null si aucune
+     */
+    private long[] ranges;
+
+    public WsAck() {
+    }
+
+    public WsAck(long cumulative, long[] ranges) {
+        this.cumulative = cumulative;
+        this.ranges = ranges;
+    }
+
+    public long getCumulative() {
+        return cumulative;
+    }
+
+    public void setCumulative(long cumulative) {
+        this.cumulative = cumulative;
+    }
+
+    public long[] getRanges() {
+        return ranges;
+    }
+
+    public void setRanges(long[] ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return  true si le message de ce numéro de séquence est acquitté
+     */
+    public boolean isAcked(long seq) {
+        if (seq <= cumulative) {
+            return true;
+        }
+        if (ranges != null) {
+            for (int i = 0 ; i + 1 < ranges.length ; i += 2) {
+                if (seq >= ranges[i] && seq <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getContent() {
+        return ranges == null
+                ? String.format("Messages up to %d well received", cumulative)
+                : String.format("Messages up to %d and %s well received", cumulative, Arrays.toString(ranges));
+    }
+}
@@ -0,0 +1,182 @@
+package com.gaetanl.websocket.message;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.buffer.*;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Cache des accusés de réception encodés, pour les clients qui renvoient
+ * souvent les mêmes textes. Chaque accusé porte l'identifiant du message
+ * acquitté et sa propre date : seuls ces champs sont encodés à chaque envoi,
+ * le texte acquitté déjà encodé (chaîne préfixée en binaire, chaîne échappée
+ * en JSON) est repris du cache. Désactivé par défaut : il ne profite qu'aux
+ * textes répétés, et coûte une copie de plus pour les autres.
+ *
+ * Borné en nombre d'entrées et partagé par tous les channels, sans verrou :
+ * les event loops et les threads de traitement lisent la même
+ * ConcurrentHashMap. L'éviction est un LRU approché (seconde chance) : une
+ * entrée lue depuis le dernier passage est épargnée une fois. Les textes
+ * plus longs que {@code maxTextLength} ne sont pas mis en cache.
+ *
+ * Les textes encodés sont gardés dans des tableaux sur le tas et copiés dans
+ * le buffer de la frame, alloué par l'allocateur du channel : une entrée
+ * évincée n'a rien à libérer, et aucune frame n'en garde de référence. Un
+ * texte absent du cache est encodé une seule fois, directement dans la
+ * frame, puis copié dans le cache.
+ */
+public class WsAckCache {
+    private static final byte[] JSON_TEXT_FIELD = (",\"" + WsAckText.ORIGINAL_TEXT_FIELD + "\":").getBytes(CharsetUtil.US_ASCII);
+
+    private final int maxEntries;
+    private final int maxTextLength;
+    private final ConcurrentMap<String, Entry> binaryTexts = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentMap<String, Entry> jsonTexts = new ConcurrentHashMap<String, Entry>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public WsAckCache(int maxEntries, int maxTextLength) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.maxTextLength = maxTextLength;
+    }
+
+    /**
+     * Encode l'accusé de réception dans le format du channel, comme
+     * {@link WsWireFormat#encodeFrame(ByteBufAllocator, WsMessage)}.
+     */
+    public WebSocketFrame encodeFrame(ByteBufAllocator alloc, WsWireFormat format, WsAckText ack) {
+        // Texte d'un accusé recyclé : copié tel quel en binaire, sans décodage
+        if (format == WsWireFormat.BINARY && ack.isOriginalTextUndecoded()) {
+            return format.encodeFrame(alloc, ack);
+        }
+        String text = ack.getOriginalText();
+        if (text == null || text.length() > maxTextLength) {
+            return format.encodeFrame(alloc, ack);
+        }
+
+        boolean binary = format == WsWireFormat.BINARY;
+        ConcurrentMap<String, Entry> texts = binary ? binaryTexts : jsonTexts;
+        Entry entry = texts.get(text);
+        ByteBuf content;
+        if (binary) {
+            content = alloc.ioBuffer(32 + (entry != null ? entry.text.length : ByteBufUtil.utf8MaxBytes(text) + 5));
+            WsBinaryCodec.writeHeader(content, WsMessageRegistry.getInstance().getEntry(WsAckText.class), ack);
+            WsAckText.writeFieldsBeforeText(ack, content);
+        }
+        else {
+            // JSON de l'accusé sans son texte, dont l'accolade fermante est remplacée par le champ du texte
+            content = ack.encodeJsonWithoutOriginalText(alloc);
+            content.writerIndex(content.writerIndex() - 1);
+            content.writeBytes(JSON_TEXT_FIELD);
+        }
+
+        boolean success = false;
+        try {
+            if (entry != null) {
+                hits.increment();
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                content.writeBytes(entry.text);
+            }
+            else {
+                misses.increment();
+                int start = content.writerIndex();
+                if (binary) {
+                    WsBinaryCodec.writeString(content, text);
+                }
+                else {
+                    WsMessageCodec.getInstance().encode(content, text, String.class);
+                }
+                add(texts, text, ByteBufUtil.getBytes(content, start, content.writerIndex() - start));
+            }
+            if (!binary) {
+                content.writeByte('}');
+            }
+            success = true;
+        }
+        finally {
+            if (!success) {
+                content.release();
+            }
+        }
+        return binary ? new BinaryWebSocketFrame(content) : new TextWebSocketFrame(content);
+    }
+
+    private void add(ConcurrentMap<String, Entry> texts, String text, byte[] encoded) {
+        // Encodé en parallèle par un autre thread : sa version est gardée
+        if (texts.putIfAbsent(text, new Entry(encoded)) == null && texts.size() > maxEntries) {
+            evict(texts);
+        }
+    }
+
+    /**
+     * Retire une entrée non lue depuis le dernier passage, en retirant leur
+     * seconde chance aux entrées lues rencontrées.
+     */
+    private void evict(ConcurrentMap<String, Entry> texts) {
+        for (int pass = 0; pass < 2; pass++) {
+            for (Map.Entry<String, Entry> candidate : texts.entrySet()) {
+                Entry entry = candidate.getValue();
+                if (entry.referenced) {
+                    entry.referenced = false;
+                }
+                else if (texts.remove(candidate.getKey(), entry)) {
+                    evictions.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Vide le cache.
+     */
+    public void clear() {
+        binaryTexts.clear();
+        jsonTexts.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return  la part des accusés servis depuis le cache, 0 si aucun
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int size() {
+        return binaryTexts.size() + jsonTexts.size();
+    }
+
+    private static final class Entry {
+        private final byte[] text;
+        /** Lue depuis le dernier passage de l'éviction */
+        private volatile boolean referenced = false;
+
+        private Entry(byte[] text) {
+            this.text = text;
+        }
+    }
+}
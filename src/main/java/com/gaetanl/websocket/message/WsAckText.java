@@ -1,20 +1,155 @@
 package com.gaetanl.websocket.message;
 
+import io.netty.buffer.*;
+import io.netty.util.CharsetUtil;
+
 public class WsAckText extends WsMessage {
     private static final long serialVersionUID = -4377008034679793325L;
 
+    static final WsMessagePool<WsAckText> POOL = new WsMessagePool<WsAckText>() {
+        @Override
+        protected WsAckText newMessage() {
+            return new WsAckText();
+        }
+    };
+
+    static final WsBinaryAdapter<WsAckText> BINARY_ADAPTER = new WsBinaryAdapter<WsAckText>() {
+        @Override
+        public WsAckText newMessage() {
+            return new WsAckText();
+        }
+
+        @Override
+        public WsAckText newRecycledMessage() {
+            return POOL.get();
+        }
+
+        @Override
+        public void writeFields(WsAckText message, ByteBuf out) {
+            writeFieldsBeforeText(message, out);
+            if (message.originalText == null) {
+                WsBinaryCodec.writeString(out, message.originalTextUtf8);
+            }
+            else {
+                WsBinaryCodec.writeString(out, message.originalText);
+            }
+        }
+
+        @Override
+        public void readFields(WsAckText message, ByteBuf in) {
+            message.messageId = WsBinaryCodec.readVarLong(in);
+            if (message.isPooled()) {
+                message.originalTextUtf8 = WsBinaryCodec.readStringView(in);
+            }
+            else {
+                message.originalText = WsBinaryCodec.readString(in);
+            }
+        }
+    };
+
+    /** Nom JSON du texte acquitté, ajouté en dernier par {@link WsAckCache} */
+    static final String ORIGINAL_TEXT_FIELD = "originalText";
+
+    /** Identifiant du message acquitté */
+    private long messageId;
     private String originalText;
 
+    /** Texte acquitté tel que reçu, décodé à la première lecture de getOriginalText() */
+    private transient ByteBuf originalTextUtf8;
+
+    /**
+     * Champs binaires précédant le texte acquitté, seul champ mis en cache
+     * par {@link WsAckCache}.
+     */
+    static void writeFieldsBeforeText(WsAckText message, ByteBuf out) {
+        WsBinaryCodec.writeVarLong(out, message.messageId);
+    }
+
+    /**
+     * Encode l'accusé en JSON sans son texte acquitté, omis car null. Le
+     * texte est retiré le temps de l'encodage plutôt que copié dans un
+     * nouvel accusé.
+     *
+     * @return  le buffer contenant le JSON, à libérer par l'appelant
+     */
+    ByteBuf encodeJsonWithoutOriginalText(ByteBufAllocator alloc) {
+        String text = originalText;
+        originalText = null;
+        try {
+            return WsMessageCodec.getInstance().encode(alloc, this, WsAckText.class);
+        }
+        finally {
+            originalText = text;
+        }
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(long messageId) {
+        this.messageId = messageId;
+    }
+
     public String getOriginalText() {
+        if (originalText == null && originalTextUtf8 != null) {
+            originalText = originalTextUtf8.toString(CharsetUtil.UTF_8);
+        }
         return originalText;
     }
 
     public void setOriginalText(String originalMsg) {
         this.originalText = originalMsg;
+        releaseOriginalTextUtf8();
+    }
+
+    /**
+     * @return  les octets UTF-8 du texte acquitté, sans décodage, valides
+     *          jusqu'au retour de l'accusé à son pool, ou null
+     */
+    public ByteBuf getOriginalTextUtf8() {
+        return originalTextUtf8;
+    }
+
+    /**
+     * @param   originalTextUtf8  octets UTF-8 du texte acquitté, dont
+     *                            l'accusé prend une référence
+     */
+    void setOriginalTextUtf8(ByteBuf originalTextUtf8) {
+        this.originalText = null;
+        releaseOriginalTextUtf8();
+        this.originalTextUtf8 = originalTextUtf8;
+    }
+
+    /**
+     * @return  true si le texte acquitté n'est disponible que sous forme
+     *          d'octets, non encore décodés
+     */
+    boolean isOriginalTextUndecoded() {
+        return originalText == null && originalTextUtf8 != null;
+    }
+
+    private void releaseOriginalTextUtf8() {
+        if (originalTextUtf8 != null) {
+            originalTextUtf8.release();
+            originalTextUtf8 = null;
+        }
+    }
+
+    @Override
+    protected void clear() {
+        messageId = 0;
+        originalText = null;
+        releaseOriginalTextUtf8();
+    }
+
+    @Override
+    protected void decodeLazyFields() {
+        getOriginalText();
     }
 
     @Override
     public String getContent() {
-        return String.format("Message «%s» well received", this.originalText);
+        return String.format("Message «%s» well received", getOriginalText());
     }
 }
@@ -0,0 +1,28 @@
+package com.gaetanl.websocket.message;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Encodage binaire des champs propres à un type de message. L'en-tête commun
+ * (identifiant du type, date de création) est écrit par {@link WsBinaryCodec}.
+ *
+ * @see WsBinaryCodec#writeString(ByteBuf, String)
+ * @see WsBinaryCodec#readString(ByteBuf)
+ */
+public interface WsBinaryAdapter<T extends WsMessage> {
+    T newMessage();
+
+    /**
+     * Message à remplir par le décodage recyclé, obtenu d'un
+     * {@link WsMessagePool} pour les types qui en ont un. Ses champs texte
+     * peuvent alors rester des vues sur le buffer reçu
+     * ({@link WsBinaryCodec#readStringView(ByteBuf)}).
+     */
+    default T newRecycledMessage() {
+        return newMessage();
+    }
+
+    void writeFields(T message, ByteBuf out);
+
+    void readFields(T message, ByteBuf in);
+}
@@ -0,0 +1,255 @@
+package com.gaetanl.websocket.message;
+
+import io.netty.buffer.*;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Codec binaire compact pour les {@link WsMessage}, transporté dans des
+ * {@code BinaryWebSocketFrame}. Format d'une frame :
+ *
+ * <pre>
+ * varint  identifiant du type (WsMessageRegistry)
+ * varlong identifiant du message (WsMessage#getId)
+ * varlong numéro de séquence (WsMessage#getSeq)
+ * int64   date de création, en millisecondes depuis l'epoch
+ * ...     champs du type (WsBinaryAdapter), chaînes préfixées par leur
+ *         longueur UTF-8 en varint
+ * </pre>
+ */
+public class WsBinaryCodec {
+    private static final WsBinaryCodec INSTANCE = new WsBinaryCodec(WsMessageRegistry.getInstance());
+
+    private final WsMessageRegistry registry;
+
+    public WsBinaryCodec(WsMessageRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static WsBinaryCodec getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return  true si le type du message possède un encodage binaire
+     */
+    public boolean canEncode(WsMessage message) {
+        WsMessageRegistry.Entry<?> entry = registry.getEntry(message.getClass());
+        return entry != null && entry.getBinaryAdapter() != null;
+    }
+
+    /**
+     * Encode le message dans un buffer alloué par l'allocateur fourni.
+     *
+     * @return  le buffer encodé, à libérer par l'appelant
+     * @throws  IllegalArgumentException si le type n'a pas d'encodage binaire
+     */
+    @SuppressWarnings("unchecked")
+    public ByteBuf encode(ByteBufAllocator alloc, WsMessage message) {
+        WsMessageRegistry.Entry<WsMessage> entry = (WsMessageRegistry.Entry<WsMessage>) registry.getEntry(message.getClass());
+        if (entry == null || entry.getBinaryAdapter() == null) {
+            throw new IllegalArgumentException(String.format("No binary encoding registered for %s", message.getClass().getName()));
+        }
+
+        ByteBuf out = alloc.ioBuffer();
+        boolean success = false;
+        try {
+            writeHeader(out, entry, message);
+            entry.getBinaryAdapter().writeFields(message, out);
+            success = true;
+            return out;
+        }
+        finally {
+            if (!success) {
+                out.release();
+            }
+        }
+    }
+
+    /**
+     * Écrit l'en-tête commun à tous les types : identifiant du type,
+     * identifiant et numéro de séquence du message, date de création.
+     */
+    static void writeHeader(ByteBuf out, WsMessageRegistry.Entry<?> entry, WsMessage message) {
+        writeVarInt(out, entry.getId());
+        writeVarLong(out, message.getId());
+        writeVarLong(out, message.getSeq());
+        out.writeLong(message.getCreationTimeMillis());
+    }
+
+    /**
+     * Décode le message contenu dans le buffer. Les indices du buffer ne sont
+     * pas modifiés.
+     *
+     * @throws  CorruptedFrameException si le type est inconnu ou si le contenu
+     *          est tronqué
+     */
+    public WsMessage decode(ByteBuf content) throws CorruptedFrameException {
+        return decode(content, false);
+    }
+
+    /**
+     * @param   recycled  true pour obtenir le message de son pool
+     *                    ({@link WsBinaryAdapter#newRecycledMessage()}) : il
+     *                    doit alors être rendu par {@link WsMessage#recycle()}
+     *                    après traitement, ses vues sur {@code content} étant
+     *                    libérées à ce moment
+     * @see #decode(ByteBuf)
+     */
+    @SuppressWarnings("unchecked")
+    public WsMessage decode(ByteBuf content, boolean recycled) throws CorruptedFrameException {
+        // Un buffer poolé renvoie des vues elles-mêmes recyclées
+        ByteBuf in = recycled ? content.retainedDuplicate() : content.duplicate();
+        WsMessage message = null;
+        boolean success = false;
+        try {
+            int id = readVarInt(in);
+            WsMessageRegistry.Entry<WsMessage> entry = (WsMessageRegistry.Entry<WsMessage>) registry.getEntry(id);
+            if (entry == null || entry.getBinaryAdapter() == null) {
+                throw new CorruptedFrameException(String.format("Unknown binary message id %d", id));
+            }
+
+            long messageId = readVarLong(in);
+            long seq = readVarLong(in);
+            long creationTime = in.readLong();
+            message = recycled ? entry.getBinaryAdapter().newRecycledMessage() : entry.getBinaryAdapter().newMessage();
+            message.setId(messageId);
+            message.setSeq(seq);
+            message.setCreationTimeMillis(creationTime);
+            entry.getBinaryAdapter().readFields(message, in);
+
+            if (in.isReadable()) {
+                throw new CorruptedFrameException(String.format("%d unexpected trailing bytes after %s", in.readableBytes(), entry.getCode()));
+            }
+            success = true;
+            return message;
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new CorruptedFrameException("Truncated binary message", e);
+        }
+        finally {
+            if (recycled) {
+                in.release();
+            }
+            if (!success && message != null) {
+                message.recycle();
+            }
+        }
+    }
+
+    public static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(ByteBuf in) throws CorruptedFrameException {
+        int value = 0;
+        for (int shift = 0 ; shift < 35 ; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("Malformed varint");
+    }
+
+    public static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(ByteBuf in) throws CorruptedFrameException {
+        long value = 0;
+        for (int shift = 0 ; shift < 70 ; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("Malformed varlong");
+    }
+
+    /**
+     * Écrit une chaîne UTF-8 préfixée par sa longueur + 1, 0 représentant
+     * une chaîne null.
+     */
+    public static void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, ByteBufUtil.utf8Bytes(value) + 1);
+        ByteBufUtil.writeUtf8(out, value);
+    }
+
+    /**
+     * Écrit une chaîne déjà encodée en UTF-8, comme
+     * {@link #writeString(ByteBuf, String)}. Les indices de {@code utf8} ne
+     * sont pas modifiés.
+     *
+     * @param   utf8  les octets de la chaîne, ou null
+     */
+    public static void writeString(ByteBuf out, ByteBuf utf8) {
+        if (utf8 == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, utf8.readableBytes() + 1);
+        out.writeBytes(utf8, utf8.readerIndex(), utf8.readableBytes());
+    }
+
+    /**
+     * Lit la longueur d'une chaîne, préfixée par sa longueur + 1.
+     *
+     * @return  la longueur en octets, ou -1 pour une chaîne null
+     * @throws  CorruptedFrameException si la longueur est négative ou dépasse
+     *          les octets restants
+     */
+    private static int readStringLength(ByteBuf in) throws CorruptedFrameException {
+        int prefix = readVarInt(in);
+        if (prefix == 0) {
+            return -1;
+        }
+        if (prefix < 0) {
+            throw new CorruptedFrameException(String.format("Negative string length %d", (long) prefix - 1));
+        }
+        int length = prefix - 1;
+        if (length > in.readableBytes()) {
+            throw new CorruptedFrameException(String.format("String length %d exceeds remaining %d bytes", length, in.readableBytes()));
+        }
+        return length;
+    }
+
+    /**
+     * Lit une chaîne écrite par {@link #writeString(ByteBuf, String)} sans
+     * la décoder.
+     *
+     * @return  une vue retenue (retainedSlice) sur ses octets UTF-8, à
+     *          libérer par l'appelant, ou null pour une chaîne null
+     */
+    public static ByteBuf readStringView(ByteBuf in) throws CorruptedFrameException {
+        int length = readStringLength(in);
+        if (length < 0) {
+            return null;
+        }
+        return in.readRetainedSlice(length);
+    }
+
+    public static String readString(ByteBuf in) throws CorruptedFrameException {
+        int length = readStringLength(in);
+        if (length < 0) {
+            return null;
+        }
+        String value = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+}
@@ -0,0 +1,84 @@
+package com.gaetanl.websocket.message;
+
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+import io.netty.buffer.*;
+
+/**
+ * Writer encodant directement en UTF-8 dans un ByteBuf, sans le buffer
+ * intermédiaire de 8 Ko d'un OutputStreamWriter. Une paire de surrogates
+ * coupée entre deux écritures est recomposée.
+ */
+final class WsByteBufWriter extends Writer {
+    private final ByteBuf out;
+
+    /** Surrogate haut en attente de son surrogate bas, 0 si aucun */
+    private char highSurrogate;
+
+    WsByteBufWriter(ByteBuf out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int c) {
+        write(String.valueOf((char) c), 0, 1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        writeUtf8(CharBuffer.wrap(cbuf, off, len), 0, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        writeUtf8(str, off, off + len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        CharSequence seq = csq != null ? csq : "null";
+        writeUtf8(seq, 0, seq.length());
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) {
+        writeUtf8(csq != null ? csq : "null", start, end);
+        return this;
+    }
+
+    private void writeUtf8(CharSequence seq, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        if (highSurrogate != 0) {
+            ByteBufUtil.writeUtf8(out, new String(new char[] { highSurrogate, seq.charAt(start) }));
+            highSurrogate = 0;
+            start++;
+        }
+        if (start < end && Character.isHighSurrogate(seq.charAt(end - 1))) {
+            highSurrogate = seq.charAt(end - 1);
+            end--;
+        }
+        if (start < end) {
+            ByteBufUtil.writeUtf8(out, seq, start, end);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Un surrogate haut isolé en fin de contenu est écrit comme caractère
+     * invalide ('?'), comme le fait ByteBufUtil.
+     */
+    @Override
+    public void close() {
+        if (highSurrogate != 0) {
+            ByteBufUtil.writeUtf8(out, String.valueOf(highSurrogate));
+            highSurrogate = 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.gaetanl.websocket.message;
+
+import java.io.IOException;
+import java.util.Date;
+
+import com.google.gson.*;
+import com.google.gson.stream.*;
+
+/**
+ * Date de création des messages JSON : le champ primitif, en millisecondes,
+ * est transmis au format de date par défaut de Gson, comme un champ
+ * {@link Date}.
+ */
+final class WsCreationTimeAdapter extends TypeAdapter<Long> {
+    private static final TypeAdapter<Date> DATE_ADAPTER = new Gson().getAdapter(Date.class);
+
+    @Override
+    public void write(JsonWriter out, Long value) throws IOException {
+        DATE_ADAPTER.write(out, value == null ? null : new Date(value));
+    }
+
+    @Override
+    public Long read(JsonReader in) throws IOException {
+        Date date = DATE_ADAPTER.read(in);
+        return date == null ? 0L : date.getTime();
+    }
+}
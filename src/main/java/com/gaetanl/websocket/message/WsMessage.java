@@ -3,15 +3,41 @@ package com.gaetanl.websocket.message;
 import java.io.Serializable;
 import java.util.Date;
 
+import com.google.gson.annotations.JsonAdapter;
+
+import io.netty.util.Recycler;
+
 public abstract class WsMessage implements Serializable {
     private static final long serialVersionUID = 4764954821836307569L;
 
     final protected String type;
-    final protected Date creationTime;
+
+    /**
+     * Date de création, en millisecondes depuis l'epoch ; transmise en JSON
+     * au format de date de Gson
+     */
+    @JsonAdapter(WsCreationTimeAdapter.class)
+    protected long creationTime;
+
+    /** Pool d'origine du message, ou null (voir {@link WsMessagePool}) */
+    transient Recycler.Handle<WsMessage> recyclerHandle;
+
+    /** Identifiant attribué par l'émetteur, repris par l'accusé de réception ; 0 si aucun */
+    protected long id;
+
+    /**
+     * Numéro de séquence attribué par l'émetteur, propre au channel et
+     * croissant à partir de 1 ; 0 si le message n'est pas séquencé. Les
+     * messages séquencés sont acquittés par un {@link WsAck} cumulatif.
+     */
+    protected long seq;
 
     public WsMessage() {
-        this.type = this.getClass().getName();
-        this.creationTime = new Date();
+        this.type = WsMessageRegistry.getInstance().getCode(this.getClass());
+        if (this.type == null) {
+            throw new IllegalStateException(String.format("Message class %s is not registered in WsMessageRegistry", this.getClass().getName()));
+        }
+        this.creationTime = System.currentTimeMillis();
     }
 
     /**
@@ -24,6 +50,16 @@ public abstract class WsMessage implements Serializable {
         return null;
     }
 
+    /**
+     * Indique si le message appelle un accusé de réception, sans le
+     * construire. Doit correspondre à {@code getAck() != null}.
+     *
+     * @return  true si {@link #getAck()} retourne un accusé
+     */
+    public boolean expectsAck() {
+        return false;
+    }
+
     @Override
     public String toString() {
         return "WsTestMessage [content= " + getContent() + "]";
@@ -33,9 +69,70 @@ public abstract class WsMessage implements Serializable {
         return type;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
     public Date getCreationTime() {
+        return new Date(creationTime);
+    }
+
+    public long getCreationTimeMillis() {
         return creationTime;
     }
 
+    void setCreationTimeMillis(long creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    /**
+     * @return  true si le message provient d'un {@link WsMessagePool}
+     */
+    public boolean isPooled() {
+        return recyclerHandle != null;
+    }
+
+    /**
+     * Rend le message à son pool une fois traité ; sans effet si le message
+     * n'en provient pas. Le message ne doit plus être utilisé ensuite.
+     */
+    public final void recycle() {
+        Recycler.Handle<WsMessage> handle = recyclerHandle;
+        if (handle == null) {
+            return;
+        }
+        clear();
+        id = 0;
+        seq = 0;
+        creationTime = 0;
+        handle.recycle(this);
+    }
+
+    /**
+     * Réinitialise les champs propres au type et libère leurs buffers avant
+     * le retour du message à son pool.
+     */
+    protected void clear() {
+    }
+
+    /**
+     * Décode les champs reçus sous forme d'octets (messages recyclés), avant
+     * un encodage JSON qui lit directement les champs.
+     */
+    protected void decodeLazyFields() {
+    }
+
     public abstract String getContent();
 }
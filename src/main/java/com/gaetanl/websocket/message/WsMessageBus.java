@@ -0,0 +1,44 @@
+package com.gaetanl.websocket.message;
+
+/**
+ * Bus reliant plusieurs serveurs WebSocket (noeuds) : les messages diffusés
+ * ou publiés sur un sujet par un noeud sont remis aux channels des autres
+ * noeuds, qui les écrivent à leurs propres abonnés.
+ *
+ * Une implémentation regroupe les messages par lots, encode chaque message
+ * une seule fois pour l'ensemble des noeuds et écarte les messages déjà
+ * vus, à identifiant ({@link WsMessage#getId()}) égal. Les messages
+ * d'identifiant 0 ne sont pas dédupliqués ; les émetteurs qui publient un
+ * même message depuis plusieurs noeuds doivent lui attribuer un identifiant
+ * unique dans le cluster.
+ */
+public interface WsMessageBus {
+    /**
+     * Remise des messages reçus des autres noeuds, depuis un thread du bus.
+     */
+    interface Listener {
+        /**
+         * @param   topic  sujet de publication, ou null pour une diffusion à
+         *                 tous les channels
+         */
+        void received(String topic, WsMessage message);
+    }
+
+    /**
+     * Relie le noeud au bus. Le bus peut être redémarré après
+     * {@link #stop()}.
+     */
+    void start(Listener listener) throws Exception;
+
+    /**
+     * Transmet le message aux autres noeuds, sans attendre.
+     *
+     * @param   topic  sujet de publication, ou null pour une diffusion à
+     *                 tous les channels
+     * @return  false si le message a déjà été publié ou reçu par ce noeud,
+     *          auquel cas il ne doit pas non plus être remis localement
+     */
+    boolean publish(String topic, WsMessage message);
+
+    void stop();
+}
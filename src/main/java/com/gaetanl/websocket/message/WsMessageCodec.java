@@ -0,0 +1,123 @@
+package com.gaetanl.websocket.message;
+
+import java.io.*;
+import java.lang.reflect.Type;
+
+import com.google.gson.*;
+
+import io.netty.buffer.*;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Codec JSON partagé pour les {@link WsMessage}. Les instances de
+ * {@link Gson} sont thread-safe et mettent en cache leurs adaptateurs de
+ * type : une seule instance suffit pour le serveur, le client et les accusés
+ * de réception.
+ *
+ * Le format transmis sur le réseau est compact, le format indenté n'est
+ * utilisé que pour les logs.
+ */
+public class WsMessageCodec {
+    private static final WsMessageCodec INSTANCE = new WsMessageCodec();
+
+    private final Gson gson;
+    private final Gson prettyGson;
+
+    public WsMessageCodec() {
+        this.gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new WsMessageTypeAdapterFactory(WsMessageRegistry.getInstance()))
+                .create();
+        this.prettyGson = new GsonBuilder()
+                .registerTypeAdapterFactory(new WsMessageTypeAdapterFactory(WsMessageRegistry.getInstance()))
+                .setPrettyPrinting()
+                .create();
+    }
+
+    public static WsMessageCodec getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Décode le message JSON contenu dans le buffer sans passer par une
+     * {@link String} intermédiaire. Les indices du buffer ne sont pas modifiés.
+     *
+     * @param   content  le contenu UTF-8 de la frame
+     * @return  le message décodé, ou null si le contenu est vide
+     * @throws  JsonParseException si le contenu n'est pas un message valide
+     */
+    public WsMessage decode(ByteBuf content) throws JsonParseException {
+        Reader reader = new InputStreamReader(new ByteBufInputStream(content.duplicate()), CharsetUtil.UTF_8);
+        return gson.fromJson(reader, WsMessage.class);
+    }
+
+    /**
+     * Décode le message JSON au fil de la lecture du flux, sans charger
+     * l'intégralité du contenu en mémoire.
+     *
+     * @param   in  le contenu UTF-8 du message
+     * @return  le message décodé, ou null si le contenu est vide
+     * @throws  JsonParseException si le contenu n'est pas un message valide
+     */
+    public WsMessage decode(InputStream in) throws JsonParseException {
+        return gson.fromJson(new InputStreamReader(in, CharsetUtil.UTF_8), WsMessage.class);
+    }
+
+    /**
+     * Encode le message en JSON compact directement dans un buffer d'I/O
+     * (direct si possible) alloué par l'allocateur fourni.
+     *
+     * @param   alloc    l'allocateur du channel
+     * @param   message  le message à encoder
+     * @return  le buffer contenant le JSON, à libérer par l'appelant
+     * @throws  JsonIOException si l'écriture dans le buffer échoue
+     */
+    public ByteBuf encode(ByteBufAllocator alloc, WsMessage message) throws JsonIOException {
+        message.decodeLazyFields();
+        return encode(alloc, message, message.getClass());
+    }
+
+    /**
+     * Encode une valeur quelconque en JSON compact, par exemple un accusé
+     * dont le texte est mis en cache par {@link WsAckCache}.
+     */
+    ByteBuf encode(ByteBufAllocator alloc, Object value, Type type) throws JsonIOException {
+        ByteBuf buffer = alloc.ioBuffer();
+        boolean success = false;
+        try {
+            encode(buffer, value, type);
+            success = true;
+            return buffer;
+        }
+        finally {
+            if (!success) {
+                buffer.release();
+            }
+        }
+    }
+
+    /**
+     * Ajoute une valeur encodée en JSON compact à la fin du buffer.
+     */
+    void encode(ByteBuf out, Object value, Type type) throws JsonIOException {
+        WsByteBufWriter writer = new WsByteBufWriter(out);
+        gson.toJson(value, type, writer);
+        writer.close();
+    }
+
+    public WsMessage fromJson(String json) throws JsonParseException {
+        return gson.fromJson(json, WsMessage.class);
+    }
+
+    public String toJson(WsMessage message) {
+        message.decodeLazyFields();
+        return gson.toJson(message, message.getClass());
+    }
+
+    /**
+     * Représentation indentée du message, destinée uniquement aux logs.
+     */
+    public String toPrettyJson(WsMessage message) {
+        message.decodeLazyFields();
+        return prettyGson.toJson(message, message.getClass());
+    }
+}
@@ -3,7 +3,15 @@ package com.gaetanl.websocket.message;
 public class WsMessageConstants {
     public static final String DATE_FORMAT = "MMM dd, yyyy HH:mm:ss a";
 
-    public static final String WS_MSG_TEXT = WsMsgText.class.getName();
-    public static final String WS_MSG_DECONNEXION = WsMsgDeconnexion.class.getName();
-    public static final String WS_ACK_TEXT = WsAckText.class.getName();
+    // Codes de type enregistrés dans WsMessageRegistry
+    public static final String WS_MSG_TEXT = "text";
+    public static final String WS_MSG_DECONNEXION = "deconnexion";
+    public static final String WS_ACK_TEXT = "ack-text";
+    public static final String WS_ACK = "ack";
+
+    // Identifiants des mêmes types dans le format binaire
+    public static final int WS_MSG_TEXT_ID = 1;
+    public static final int WS_MSG_DECONNEXION_ID = 2;
+    public static final int WS_ACK_TEXT_ID = 3;
+    public static final int WS_ACK_ID = 4;
 }
@@ -0,0 +1,57 @@
+package com.gaetanl.websocket.message;
+
+import java.util.concurrent.*;
+
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Table de dispatch des messages reçus vers leur {@link WsMessageHandler},
+ * indexée par classe de message.
+ */
+public class WsMessageDispatcher {
+    private final ConcurrentMap<Class<?>, WsMessageHandler<?>> handlers = new ConcurrentHashMap<Class<?>, WsMessageHandler<?>>();
+    private final ConcurrentMap<Class<?>, WsMessageSinkFactory<?>> sinkFactories = new ConcurrentHashMap<Class<?>, WsMessageSinkFactory<?>>();
+
+    public <T extends WsMessage> WsMessageDispatcher register(Class<T> type, WsMessageHandler<? super T> handler) {
+        handlers.put(type, handler);
+        return this;
+    }
+
+    /**
+     * Les messages binaires de ce type sont reçus en flux par une
+     * {@link WsMessageSink} au lieu d'être décodés puis dispatchés.
+     */
+    public <T extends WsMessage> WsMessageDispatcher registerSink(Class<T> type, WsMessageSinkFactory<T> factory) {
+        sinkFactories.put(type, factory);
+        return this;
+    }
+
+    /**
+     * @return  la fabrique de sinks enregistrée pour la classe, ou null
+     */
+    public WsMessageSinkFactory<?> getSinkFactory(Class<?> type) {
+        return sinkFactories.get(type);
+    }
+
+    /**
+     * Transmet le message au traitement enregistré pour sa classe, ou à
+     * défaut pour la classe parente la plus proche.
+     *
+     * @return  true si un traitement a été exécuté
+     */
+    @SuppressWarnings("unchecked")
+    public boolean dispatch(ChannelHandlerContext ctx, WsMessage message) throws Exception {
+        Class<?> clazz = message.getClass();
+        WsMessageHandler<?> handler = handlers.get(clazz);
+        while (handler == null && clazz != WsMessage.class) {
+            clazz = clazz.getSuperclass();
+            handler = handlers.get(clazz);
+        }
+
+        if (handler == null) {
+            return false;
+        }
+        ((WsMessageHandler<WsMessage>) handler).handle(ctx, message);
+        return true;
+    }
+}
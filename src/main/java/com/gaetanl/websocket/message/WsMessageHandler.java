@@ -0,0 +1,11 @@
+package com.gaetanl.websocket.message;
+
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Traitement applicatif d'un type de message, enregistré auprès d'un
+ * {@link WsMessageDispatcher}.
+ */
+public interface WsMessageHandler<T extends WsMessage> {
+    void handle(ChannelHandlerContext ctx, T message) throws Exception;
+}
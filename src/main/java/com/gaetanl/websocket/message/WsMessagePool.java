@@ -0,0 +1,27 @@
+package com.gaetanl.websocket.message;
+
+import io.netty.util.Recycler;
+
+/**
+ * Pool de messages d'un type, par thread (Recycler de Netty), utilisé par
+ * le décodage recyclé ({@link WsBinaryCodec#decode(io.netty.buffer.ByteBuf, boolean)}).
+ * Un message obtenu du pool y retourne par {@link WsMessage#recycle()},
+ * éventuellement depuis un autre thread.
+ */
+public abstract class WsMessagePool<T extends WsMessage> {
+    private final Recycler<T> recycler = new Recycler<T>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected T newObject(Handle<T> handle) {
+            T message = newMessage();
+            message.recyclerHandle = (Handle<WsMessage>) (Handle<?>) handle;
+            return message;
+        }
+    };
+
+    protected abstract T newMessage();
+
+    public T get() {
+        return recycler.get();
+    }
+}
@@ -0,0 +1,170 @@
+package com.gaetanl.websocket.message;
+
+import static com.gaetanl.websocket.message.WsMessageConstants.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Registre des types de {@link WsMessage} acceptés sur le réseau. Chaque
+ * sous-classe est associée à un code court et stable, transmis dans le champ
+ * {@code type} du format JSON, et à un identifiant numérique utilisé par le
+ * format binaire.
+ *
+ * Seules les classes enregistrées peuvent être instanciées à la réception :
+ * un pair ne peut plus désigner une classe arbitraire du classpath.
+ */
+public class WsMessageRegistry {
+    private static final WsMessageRegistry INSTANCE = new WsMessageRegistry();
+
+    /** Borne des identifiants numériques, qui indexent directement un tableau */
+    public static final int MAX_ID = 1024;
+
+    static {
+        INSTANCE.register(WS_MSG_TEXT_ID, WS_MSG_TEXT, WsMsgText.class, WsMsgText.BINARY_ADAPTER);
+        INSTANCE.register(WS_MSG_DECONNEXION_ID, WS_MSG_DECONNEXION, WsMsgDeconnexion.class, WsMsgDeconnexion.BINARY_ADAPTER);
+        INSTANCE.register(WS_ACK_TEXT_ID, WS_ACK_TEXT, WsAckText.class, WsAckText.BINARY_ADAPTER);
+        INSTANCE.register(WS_ACK_ID, WS_ACK, WsAck.class, WsAck.BINARY_ADAPTER);
+    }
+
+    private final ConcurrentMap<String, Entry<?>> entriesByCode = new ConcurrentHashMap<String, Entry<?>>();
+    private final ConcurrentMap<Class<?>, Entry<?>> entriesByClass = new ConcurrentHashMap<Class<?>, Entry<?>>();
+    private volatile Entry<?>[] entriesById = new Entry<?>[0];
+
+    private WsMessageRegistry() {
+    }
+
+    public static WsMessageRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enregistre un type de message transmis uniquement en JSON.
+     *
+     * @see #register(int, String, Class, WsBinaryAdapter)
+     */
+    public <T extends WsMessage> void register(int id, String code, Class<T> clazz) {
+        register(id, code, clazz, null);
+    }
+
+    /**
+     * Enregistre un type de message. L'enregistrement doit avoir lieu avant
+     * la première instanciation de la classe.
+     *
+     * @param   id             l'identifiant du type dans le format binaire
+     * @param   code           le code transmis dans le champ {@code type}
+     * @param   clazz          la classe du message
+     * @param   binaryAdapter  l'encodage binaire des champs du message, ou null
+     *                         si le type n'est transmis qu'en JSON
+     * @throws  IllegalArgumentException si l'identifiant, le code ou la classe
+     *          est déjà enregistré
+     */
+    public synchronized <T extends WsMessage> void register(int id, String code, Class<T> clazz, WsBinaryAdapter<T> binaryAdapter) {
+        if (code == null || clazz == null) {
+            throw new IllegalArgumentException("Message code and class are required");
+        }
+        if (id < 0 || id >= MAX_ID) {
+            throw new IllegalArgumentException(String.format("Message id must be between 0 and %d, got %d", MAX_ID - 1, id));
+        }
+        if (getEntry(id) != null) {
+            throw new IllegalArgumentException(String.format("Message id %d already registered for %s", id, getEntry(id).getMessageClass().getName()));
+        }
+        if (entriesByCode.containsKey(code)) {
+            throw new IllegalArgumentException(String.format("Message code '%s' already registered for %s", code, entriesByCode.get(code).getMessageClass().getName()));
+        }
+        if (entriesByClass.containsKey(clazz)) {
+            throw new IllegalArgumentException(String.format("Message class %s already registered as '%s'", clazz.getName(), entriesByClass.get(clazz).getCode()));
+        }
+
+        Entry<T> entry = new Entry<T>(id, code, clazz, binaryAdapter);
+        Entry<?>[] newEntriesById = Arrays.copyOf(entriesById, Math.max(entriesById.length, id + 1));
+        newEntriesById[id] = entry;
+
+        entriesByClass.put(clazz, entry);
+        entriesByCode.put(code, entry);
+        entriesById = newEntriesById;
+    }
+
+    /**
+     * @return  l'entrée associée au code, ou null si le code est inconnu
+     */
+    public Entry<?> getEntry(String code) {
+        return code == null ? null : entriesByCode.get(code);
+    }
+
+    /**
+     * @return  l'entrée associée à l'identifiant, ou null s'il est inconnu
+     */
+    public Entry<?> getEntry(int id) {
+        Entry<?>[] entries = entriesById;
+        return (id < 0 || id >= entries.length) ? null : entries[id];
+    }
+
+    /**
+     * @return  l'entrée associée à la classe, ou null si elle n'est pas
+     *          enregistrée
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends WsMessage> Entry<T> getEntry(Class<T> clazz) {
+        return (Entry<T>) entriesByClass.get(clazz);
+    }
+
+    /**
+     * @return  la classe associée au code, ou null si le code est inconnu
+     */
+    public Class<? extends WsMessage> getMessageClass(String code) {
+        Entry<?> entry = getEntry(code);
+        return entry == null ? null : entry.getMessageClass();
+    }
+
+    /**
+     * @return  le code associé à la classe, ou null si elle n'est pas
+     *          enregistrée
+     */
+    public String getCode(Class<? extends WsMessage> clazz) {
+        Entry<?> entry = entriesByClass.get(clazz);
+        return entry == null ? null : entry.getCode();
+    }
+
+    public Iterable<Class<? extends WsMessage>> getMessageClasses() {
+        List<Class<? extends WsMessage>> classes = new ArrayList<Class<? extends WsMessage>>();
+        for (Entry<?> entry : entriesByCode.values()) {
+            classes.add(entry.getMessageClass());
+        }
+        return classes;
+    }
+
+    public static class Entry<T extends WsMessage> {
+        private final int id;
+        private final String code;
+        private final Class<T> messageClass;
+        private final WsBinaryAdapter<T> binaryAdapter;
+
+        Entry(int id, String code, Class<T> messageClass, WsBinaryAdapter<T> binaryAdapter) {
+            this.id = id;
+            this.code = code;
+            this.messageClass = messageClass;
+            this.binaryAdapter = binaryAdapter;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public Class<T> getMessageClass() {
+            return messageClass;
+        }
+
+        /**
+         * @return  l'encodage binaire du type, ou null s'il n'est transmis
+         *          qu'en JSON
+         */
+        public WsBinaryAdapter<T> getBinaryAdapter() {
+            return binaryAdapter;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.gaetanl.websocket.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Réception en flux d'un message binaire volumineux (envoi de fichier, etc.),
+ * sans le charger en mémoire. Sur le réseau, le message est un identifiant
+ * de type (varint) suivi du contenu brut, éventuellement réparti sur
+ * plusieurs frames de continuation.
+ *
+ * Les appels d'une même sink sont séquentiels, mais pas nécessairement sur
+ * le même thread.
+ *
+ * @see  WsMessageDispatcher#registerSink(Class, WsMessageSinkFactory)
+ */
+public interface WsMessageSink {
+    /**
+     * @param   chunk  fragment suivant du contenu, valide uniquement pendant
+     *                 l'appel
+     */
+    void write(ChannelHandlerContext ctx, ByteBuf chunk) throws Exception;
+
+    /**
+     * Fin du message.
+     *
+     * @return  l'accusé de réception à renvoyer, ou null
+     */
+    WsMessage close(ChannelHandlerContext ctx) throws Exception;
+
+    /**
+     * Message interrompu (connexion fermée, taille maximale dépassée, erreur
+     * d'écriture) : les ressources de la sink doivent être libérées.
+     */
+    void abort(ChannelHandlerContext ctx, Throwable cause);
+}
@@ -0,0 +1,11 @@
+package com.gaetanl.websocket.message;
+
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Crée une {@link WsMessageSink} pour chaque message reçu en flux d'un type
+ * donné.
+ */
+public interface WsMessageSinkFactory<T extends WsMessage> {
+    WsMessageSink newSink(ChannelHandlerContext ctx) throws Exception;
+}
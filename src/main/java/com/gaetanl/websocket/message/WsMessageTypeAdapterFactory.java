@@ -0,0 +1,392 @@
+package com.gaetanl.websocket.message;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.*;
+
+/**
+ * Adaptateur polymorphe pour {@link WsMessage} : le champ {@code type} est
+ * résolu par le {@link WsMessageRegistry}, puis le message est lu par
+ * l'adaptateur de sa sous-classe, construit une seule fois par instance de
+ * {@link Gson}.
+ *
+ * Le champ {@code type} est écrit en premier, avant les champs de la
+ * sous-classe. À la lecture, il est lu au fil du flux et le reste de l'objet
+ * est lu directement par l'adaptateur de la sous-classe, sans arbre
+ * intermédiaire. Seul un objet dont le {@code type} n'est pas le premier
+ * champ est lu en arbre ({@link JsonObject}) avant d'être converti.
+ */
+public class WsMessageTypeAdapterFactory implements TypeAdapterFactory {
+    private static final String TYPE_FIELD = "type";
+    private static final Reader EMPTY_READER = new StringReader("");
+    private static final Writer EMPTY_WRITER = new StringWriter(0);
+
+    private final WsMessageRegistry registry;
+
+    public WsMessageTypeAdapterFactory(WsMessageRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() == WsMessage.class) {
+            return (TypeAdapter<T>) new Adapter(gson);
+        }
+        if (WsMessage.class.isAssignableFrom(type.getRawType())) {
+            return (TypeAdapter<T>) new TypeFirstAdapter((TypeAdapter<WsMessage>) gson.getDelegateAdapter(this, type));
+        }
+        return null;
+    }
+
+    /**
+     * Adaptateur d'une sous-classe, dont le champ {@code type} est écrit en
+     * premier.
+     */
+    private static final class TypeFirstAdapter extends TypeAdapter<WsMessage> {
+        private final TypeAdapter<WsMessage> delegate;
+
+        TypeFirstAdapter(TypeAdapter<WsMessage> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(JsonWriter out, WsMessage value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            delegate.write(new TypeFirstWriter(out, value.getType()), value);
+        }
+
+        @Override
+        public WsMessage read(JsonReader in) throws IOException {
+            return delegate.read(in);
+        }
+    }
+
+    private class Adapter extends TypeAdapter<WsMessage> {
+        private final Gson gson;
+        private final TypeAdapter<JsonElement> elementAdapter;
+        private final ConcurrentMap<Class<?>, TypeAdapter<?>> delegates = new ConcurrentHashMap<Class<?>, TypeAdapter<?>>();
+
+        Adapter(Gson gson) {
+            this.gson = gson;
+            this.elementAdapter = gson.getAdapter(JsonElement.class);
+            for (Class<? extends WsMessage> clazz : registry.getMessageClasses()) {
+                delegates.put(clazz, gson.getAdapter(clazz));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private TypeAdapter<WsMessage> delegate(Class<?> clazz) {
+            TypeAdapter<?> delegate = delegates.get(clazz);
+            if (delegate == null) {
+                // Type enregistré après la création de l'adaptateur
+                delegate = gson.getAdapter(clazz);
+                delegates.putIfAbsent(clazz, delegate);
+            }
+            return (TypeAdapter<WsMessage>) delegate;
+        }
+
+        @Override
+        public void write(JsonWriter out, WsMessage value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            delegate(value.getClass()).write(out, value);
+        }
+
+        @Override
+        public WsMessage read(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            if (token != JsonToken.BEGIN_OBJECT) {
+                throw new JsonParseException("WsMessage must be a JSON object");
+            }
+
+            in.beginObject();
+            String name = in.hasNext() ? in.nextName() : null;
+            if (TYPE_FIELD.equals(name)) {
+                String code = readType(in);
+                return delegate(messageClass(code)).read(new OpenedObjectReader(in));
+            }
+
+            // Champs précédant le type, lus en arbre
+            JsonObject json = new JsonObject();
+            while (name != null) {
+                json.add(name, elementAdapter.read(in));
+                name = in.hasNext() ? in.nextName() : null;
+            }
+            in.endObject();
+            JsonElement typeElement = json.get(TYPE_FIELD);
+            String code = (typeElement == null || typeElement.isJsonNull()) ? null : typeElement.getAsString();
+            return delegate(messageClass(code)).fromJsonTree(json);
+        }
+
+        private String readType(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextString();
+        }
+
+        private Class<? extends WsMessage> messageClass(String code) {
+            Class<? extends WsMessage> clazz = registry.getMessageClass(code);
+            if (clazz == null) {
+                throw new JsonParseException(String.format("Unknown message type '%s'", code));
+            }
+            return clazz;
+        }
+    }
+
+    /**
+     * Lecteur d'un objet dont l'accolade ouvrante et le champ {@code type}
+     * ont déjà été lus : le premier {@link #beginObject()} est sans effet,
+     * le reste est lu dans le lecteur d'origine. Le type est de toute façon
+     * fixé par le constructeur du message.
+     */
+    private static final class OpenedObjectReader extends JsonReader {
+        private final JsonReader in;
+        private boolean opened = false;
+
+        OpenedObjectReader(JsonReader in) {
+            super(EMPTY_READER);
+            this.in = in;
+        }
+
+        @Override
+        public JsonToken peek() throws IOException {
+            return opened ? in.peek() : JsonToken.BEGIN_OBJECT;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            if (opened) {
+                in.beginObject();
+            }
+            else {
+                opened = true;
+            }
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            in.endObject();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            in.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            in.endArray();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return in.hasNext();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return in.nextName();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            return in.nextString();
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            return in.nextBoolean();
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            in.nextNull();
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            return in.nextDouble();
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            return in.nextLong();
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            return in.nextInt();
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            in.skipValue();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public String getPath() {
+            return in.getPath();
+        }
+
+        @Override
+        public String toString() {
+            return in.toString();
+        }
+    }
+
+    /**
+     * Écrit le champ {@code type} dès l'ouverture de l'objet, et ignore
+     * celui écrit ensuite par l'adaptateur de la sous-classe.
+     */
+    private static final class TypeFirstWriter extends JsonWriter {
+        private final JsonWriter out;
+        private final String type;
+        private int depth = 0;
+        private boolean skipValue = false;
+
+        TypeFirstWriter(JsonWriter out, String type) {
+            super(EMPTY_WRITER);
+            this.out = out;
+            this.type = type;
+            setLenient(out.isLenient());
+            setHtmlSafe(out.isHtmlSafe());
+            setSerializeNulls(out.getSerializeNulls());
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            out.beginObject();
+            if (depth++ == 0) {
+                out.name(TYPE_FIELD).value(type);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            depth--;
+            out.endObject();
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            depth++;
+            out.beginArray();
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            depth--;
+            out.endArray();
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            if (depth == 1 && TYPE_FIELD.equals(name)) {
+                skipValue = true;
+            }
+            else {
+                out.name(name);
+            }
+            return this;
+        }
+
+        /**
+         * @return  true si la valeur est celle du {@code type}, déjà écrit
+         */
+        private boolean skipped() {
+            if (skipValue) {
+                skipValue = false;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (!skipped()) {
+                out.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter jsonValue(String value) throws IOException {
+            if (!skipped()) {
+                out.jsonValue(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            if (!skipped()) {
+                out.nullValue();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            out.value(value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Boolean value) throws IOException {
+            out.value(value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            out.value(value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            out.value(value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            out.value(value);
+            return this;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
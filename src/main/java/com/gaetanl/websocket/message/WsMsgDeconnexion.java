@@ -1,8 +1,27 @@
 package com.gaetanl.websocket.message;
 
+import io.netty.buffer.ByteBuf;
+
 public class WsMsgDeconnexion extends WsMessage {
 	private static final long serialVersionUID = -8472780645145437557L;
 
+	static final WsBinaryAdapter<WsMsgDeconnexion> BINARY_ADAPTER = new WsBinaryAdapter<WsMsgDeconnexion>() {
+		@Override
+		public WsMsgDeconnexion newMessage() {
+			return new WsMsgDeconnexion();
+		}
+
+		@Override
+		public void writeFields(WsMsgDeconnexion message, ByteBuf out) {
+			// Pas de champ propre
+		}
+
+		@Override
+		public void readFields(WsMsgDeconnexion message, ByteBuf in) {
+			// Pas de champ propre
+		}
+	};
+
 	@Override
 	public String getContent() {
 		return null;
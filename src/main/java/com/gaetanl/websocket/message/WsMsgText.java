@@ -1,27 +1,113 @@
 package com.gaetanl.websocket.message;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
 public class WsMsgText extends WsMessage {
 	private static final long serialVersionUID = -955345244784970404L;
 
+	static final WsMessagePool<WsMsgText> POOL = new WsMessagePool<WsMsgText>() {
+		@Override
+		protected WsMsgText newMessage() {
+			return new WsMsgText();
+		}
+	};
+
+	static final WsBinaryAdapter<WsMsgText> BINARY_ADAPTER = new WsBinaryAdapter<WsMsgText>() {
+		@Override
+		public WsMsgText newMessage() {
+			return new WsMsgText();
+		}
+
+		@Override
+		public WsMsgText newRecycledMessage() {
+			return POOL.get();
+		}
+
+		@Override
+		public void writeFields(WsMsgText message, ByteBuf out) {
+			if (message.text == null) {
+				WsBinaryCodec.writeString(out, message.textUtf8);
+			}
+			else {
+				WsBinaryCodec.writeString(out, message.text);
+			}
+		}
+
+		@Override
+		public void readFields(WsMsgText message, ByteBuf in) {
+			if (message.isPooled()) {
+				message.textUtf8 = WsBinaryCodec.readStringView(in);
+			}
+			else {
+				message.text = WsBinaryCodec.readString(in);
+			}
+		}
+	};
+
 	String text;
 
+	/** Texte d'un message recyclé, décodé à la première lecture de getText() */
+	private transient ByteBuf textUtf8;
+
+	@Override
+	public boolean expectsAck() {
+		return true;
+	}
+
 	@Override
 	public WsAckText getAck() {
-		WsAckText ack = new WsAckText();
-		ack.setOriginalText(this.text);
+		WsAckText ack = isPooled() ? WsAckText.POOL.get() : new WsAckText();
+		ack.setMessageId(this.id);
+		if (this.text == null && this.textUtf8 != null) {
+			ack.setOriginalTextUtf8(this.textUtf8.retain());
+		}
+		else {
+			ack.setOriginalText(this.text);
+		}
 		return ack;
 	}
 
 	public String getText() {
+		if (text == null && textUtf8 != null) {
+			text = textUtf8.toString(CharsetUtil.UTF_8);
+		}
 		return text;
 	}
 
+	/**
+	 * @return  les octets UTF-8 du texte reçu par un message recyclé, valides
+	 *          jusqu'à son retour au pool, ou null
+	 */
+	public ByteBuf getTextUtf8() {
+		return textUtf8;
+	}
+
 	public void setText(String text) {
 		this.text = text;
+		releaseTextUtf8();
+	}
+
+	private void releaseTextUtf8() {
+		if (textUtf8 != null) {
+			textUtf8.release();
+			textUtf8 = null;
+		}
+	}
+
+	@Override
+	protected void clear() {
+		text = null;
+		releaseTextUtf8();
+	}
+
+	@Override
+	protected void decodeLazyFields() {
+		getText();
 	}
 
 	@Override
 	public String getContent() {
-		return text;
+		return getText();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package com.gaetanl.websocket.message;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.AttributeKey;
+
+/**
+ * Format d'échange des {@link WsMessage}, négocié par sous-protocole
+ * WebSocket lors du handshake. Sans sous-protocole, le format JSON est
+ * utilisé.
+ */
+public enum WsWireFormat {
+    BINARY("wsmsg.bin.v3") {
+        @Override
+        public WebSocketFrame encodeFrame(ByteBufAllocator alloc, WsMessage message) {
+            // Les types sans encodage binaire restent transmis en JSON
+            if (!WsBinaryCodec.getInstance().canEncode(message)) {
+                return JSON.encodeFrame(alloc, message);
+            }
+            return new BinaryWebSocketFrame(WsBinaryCodec.getInstance().encode(alloc, message));
+        }
+    },
+    JSON("wsmsg.json.v1") {
+        @Override
+        public WebSocketFrame encodeFrame(ByteBufAllocator alloc, WsMessage message) {
+            return new TextWebSocketFrame(WsMessageCodec.getInstance().encode(alloc, message));
+        }
+    };
+
+    /** Sous-protocoles proposés par ordre de préférence */
+    public static final String SUBPROTOCOLS = BINARY.subprotocol + "," + JSON.subprotocol;
+
+    public static final AttributeKey<WsWireFormat> ATTRIBUTE = AttributeKey.valueOf(WsWireFormat.class, "wireFormat");
+
+    private final String subprotocol;
+
+    private WsWireFormat(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    public abstract WebSocketFrame encodeFrame(ByteBufAllocator alloc, WsMessage message);
+
+    /**
+     * Décode une frame texte (JSON) ou binaire, quel que soit le format
+     * négocié.
+     *
+     * @return  le message décodé, ou null si la frame ne transporte pas de
+     *          WsMessage
+     */
+    public static WsMessage decodeFrame(WebSocketFrame frame) {
+        return decodeFrame(frame, false);
+    }
+
+    /**
+     * @param   recycled  true pour obtenir les messages binaires de leur pool
+     *                    (voir {@link WsBinaryCodec#decode(io.netty.buffer.ByteBuf, boolean)}),
+     *                    à rendre par {@link WsMessage#recycle()}
+     * @see #decodeFrame(WebSocketFrame)
+     */
+    public static WsMessage decodeFrame(WebSocketFrame frame, boolean recycled) {
+        if (frame instanceof BinaryWebSocketFrame) {
+            return WsBinaryCodec.getInstance().decode(frame.content(), recycled);
+        }
+        if (frame instanceof TextWebSocketFrame) {
+            return WsMessageCodec.getInstance().decode(frame.content());
+        }
+        return null;
+    }
+
+    public static WsWireFormat fromSubprotocol(String subprotocol) {
+        return BINARY.subprotocol.equals(subprotocol) ? BINARY : JSON;
+    }
+
+    /**
+     * @return  le format négocié pour le channel, JSON par défaut
+     */
+    public static WsWireFormat of(Channel channel) {
+        WsWireFormat format = channel.attr(ATTRIBUTE).get();
+        return format == null ? JSON : format;
+    }
+}
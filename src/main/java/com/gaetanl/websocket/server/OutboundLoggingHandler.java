@@ -1,27 +1,55 @@
 package com.gaetanl.websocket.server;
 
-import org.slf4j.*;
-
 import io.netty.channel.*;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 
+/**
+ * Log des frames sortantes via {@link WebSocketFrameLogger}. Le handler peut
+ * être ajouté ou retiré d'un pipeline en cours d'exécution.
+ */
 public class OutboundLoggingHandler extends ChannelOutboundHandlerAdapter {
-    private static final Logger logger = LoggerFactory.getLogger(OutboundLoggingHandler.class);
+    public static final String NAME = "outboundLogging";
+
+    private final WebSocketFrameLogger frameLogger = new WebSocketFrameLogger();
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
-        logger.debug(String.format("Sent (%s) frame on channel %s", msg.getClass().getSimpleName(), ctx.channel()));
-
-        String type = msg.getClass().getSimpleName();
-        if (msg instanceof TextWebSocketFrame) {
-            String text = ((TextWebSocketFrame) msg).text().replace("\n", "\n    ");
-            logger.info(String.format("[OK] websocket/out: TextWebSocketFrame (see below)\n\n    %s\n", text));
-        }
-        else {
-            logger.info(String.format("[OK] websocket/out: %s", type));
+        if (frameLogger.sample()) {
+            frameLogger.outbound(ctx.channel(), msg);
         }
 
         // Delegate the actual writing to the next handler in the pipeline
         super.write(ctx, msg, promise);
     }
-}
\ No newline at end of file
+
+    /**
+     * Ajoute le handler juste avant le dernier handler du pipeline (le
+     * handler applicatif), s'il n'y est pas déjà : les écritures faites avec
+     * {@code ctx.write()} par ce dernier le traversent.
+     */
+    public static void install(Channel channel) {
+        ChannelPipeline pipeline = channel.pipeline();
+        synchronized (pipeline) {
+            if (pipeline.get(NAME) == null) {
+                ChannelHandlerContext last = pipeline.lastContext();
+                if (last == null) {
+                    pipeline.addLast(NAME, new OutboundLoggingHandler());
+                }
+                else {
+                    pipeline.addBefore(last.name(), NAME, new OutboundLoggingHandler());
+                }
+            }
+        }
+    }
+
+    /**
+     * Retire le handler du pipeline s'il y est présent.
+     */
+    public static void uninstall(Channel channel) {
+        ChannelPipeline pipeline = channel.pipeline();
+        synchronized (pipeline) {
+            if (pipeline.get(NAME) != null) {
+                pipeline.remove(NAME);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.gaetanl.websocket.server;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.gaetanl.websocket.message.*;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Accusés de réception cumulatifs des messages séquencés d'un channel
+ * ({@link WsMessage#getSeq()}). Un {@link WsAck} acquitte tous les messages
+ * reçus jusqu'au premier manquant (abandonné, non décodé, en échec...), et
+ * les plages reçues au-delà. Il part après {@code batchSize} messages à
+ * acquitter ou {@code delayMillis} après le premier d'entre eux, au premier
+ * des deux termes.
+ *
+ * Toujours appelé depuis l'event loop du channel : les traitements
+ * exécutés hors event loop y enregistrent leurs messages, dans l'ordre de
+ * réception. L'accusé est remis à {@link #write(WebSocketFrame)}, qui le
+ * regroupe avec les autres écritures du channel.
+ */
+abstract class WebSocketAckBatcher {
+    /**
+     * Plages sélectives transmises au plus par accusé : les plus récentes,
+     * les précédentes ayant figuré dans les accusés antérieurs
+     */
+    static final int MAX_SENT_RANGES = 16;
+
+    /** Plages conservées au plus : au-delà, les messages isolés ne sont plus acquittés */
+    static final int MAX_RANGES = 1024;
+
+    private final ChannelHandlerContext ctx;
+    private final int batchSize;
+    private final long delayNanos;
+    private final WebSocketMetrics metrics;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private long cumulative = 0;
+    /** Plages reçues au-delà de cumulative + 1, début vers fin incluse */
+    private final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+    private int unacked = 0;
+    private long firstUnackedTime;
+    private ScheduledFuture<?> timer;
+    private boolean closed = false;
+
+    /**
+     * @param   metrics  métriques du serveur, ou null
+     */
+    WebSocketAckBatcher(ChannelHandlerContext ctx, int batchSize, long delayMillis, WebSocketMetrics metrics) {
+        this.ctx = ctx;
+        this.batchSize = batchSize;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Enregistre un message traité.
+     *
+     * @param   ackRequired  false si l'émetteur n'attend pas d'accusé pour ce
+     *                       message : il fait seulement progresser le numéro
+     *                       cumulatif du prochain accusé
+     */
+    void received(long seq, boolean ackRequired) {
+        if (closed) {
+            return;
+        }
+        add(seq);
+        if (!ackRequired) {
+            return;
+        }
+        if (unacked++ == 0) {
+            firstUnackedTime = System.nanoTime();
+        }
+        if (unacked >= batchSize) {
+            flush();
+        }
+        else if (timer == null) {
+            timer = ctx.executor().schedule(flushTask, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void add(long seq) {
+        if (seq <= cumulative) {
+            return;
+        }
+        if (seq == cumulative + 1) {
+            cumulative = seq;
+            Map.Entry<Long, Long> first = ranges.firstEntry();
+            if (first != null && first.getKey() == cumulative + 1) {
+                cumulative = first.getValue();
+                ranges.pollFirstEntry();
+            }
+            return;
+        }
+
+        Map.Entry<Long, Long> before = ranges.floorEntry(seq);
+        if (before != null && before.getValue() >= seq) {
+            // Déjà reçu
+            return;
+        }
+        long start = seq;
+        if (before != null && before.getValue() == seq - 1) {
+            start = before.getKey();
+        }
+        else if (ranges.size() >= MAX_RANGES && !ranges.containsKey(seq + 1)) {
+            return;
+        }
+        Long end = ranges.remove(seq + 1);
+        ranges.put(start, end != null ? end : seq);
+    }
+
+    /**
+     * Envoie l'accusé des messages en attente, s'il y en a.
+     */
+    void flush() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        if (unacked == 0 || closed) {
+            return;
+        }
+        int acked = unacked;
+        unacked = 0;
+
+        if (ctx.channel().isActive()) {
+            WsAck ack = new WsAck(cumulative, sentRanges());
+            write(WsWireFormat.of(ctx.channel()).encodeFrame(ctx.alloc(), ack));
+            if (metrics != null) {
+                metrics.cumulativeAckWritten(acked, System.nanoTime() - firstUnackedTime);
+            }
+        }
+    }
+
+    /**
+     * Écrit l'accusé cumulatif, depuis l'event loop.
+     */
+    protected abstract void write(WebSocketFrame ack);
+
+    private long[] sentRanges() {
+        if (ranges.isEmpty()) {
+            return null;
+        }
+        long[] sent = new long[2 * Math.min(ranges.size(), MAX_SENT_RANGES)];
+        int i = sent.length;
+        for (Map.Entry<Long, Long> range : ranges.descendingMap().entrySet()) {
+            if (i == 0) {
+                break;
+            }
+            sent[--i] = range.getValue();
+            sent[--i] = range.getKey();
+        }
+        return sent;
+    }
+
+    /**
+     * Abandonne les accusés en attente, le channel étant fermé.
+     */
+    void close() {
+        closed = true;
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.gaetanl.websocket.server;
+
+import io.netty.buffer.*;
+
+/**
+ * Allocateur des buffers des channels. Les frames sortantes sont encodées
+ * directement dans des buffers d'I/O de cet allocateur.
+ */
+public enum WebSocketAllocator {
+    /** Arènes par thread, recyclage des buffers : le choix par défaut de Netty */
+    POOLED {
+        @Override
+        public ByteBufAllocator newAllocator(boolean preferDirect) {
+            if (preferDirect == PooledByteBufAllocator.defaultPreferDirect()) {
+                return PooledByteBufAllocator.DEFAULT;
+            }
+            return new PooledByteBufAllocator(preferDirect);
+        }
+    },
+
+    /** Un buffer neuf par allocation : utile pour isoler un problème de recyclage */
+    UNPOOLED {
+        @Override
+        public ByteBufAllocator newAllocator(boolean preferDirect) {
+            return new UnpooledByteBufAllocator(preferDirect);
+        }
+    };
+
+    /**
+     * @param   preferDirect  buffers hors tas par défaut, évite une copie à
+     *                        l'écriture sur le socket
+     */
+    public abstract ByteBufAllocator newAllocator(boolean preferDirect);
+}
@@ -0,0 +1,214 @@
+package com.gaetanl.websocket.server;
+
+import java.util.ArrayDeque;
+
+import org.slf4j.*;
+
+import io.netty.channel.*;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Contre-pression par connexion, basée sur les seuils haut et bas du buffer
+ * d'écriture ({@link ChannelOption#WRITE_BUFFER_WATER_MARK}). Lorsque le
+ * channel n'est plus writable, la lecture est suspendue
+ * ({@link WebSocketReadSuspension}) et la {@link WebSocketOutboundPolicy} s'applique aux
+ * frames suivantes.
+ *
+ * Placé juste après le WebSocketServerProtocolHandler, le handler ne voit
+ * que des {@link WebSocketFrame} applicatives.
+ */
+public class WebSocketBackpressureHandler extends ChannelDuplexHandler {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketBackpressureHandler.class);
+
+    public static final String NAME = "backpressure";
+
+    private final WebSocketOutboundPolicy policy;
+    private final int maxQueuedFrames;
+
+    // File des frames retenues (DROP_OLDEST), manipulée sur l'event loop
+    private final ArrayDeque<PendingWrite> queue = new ArrayDeque<PendingWrite>();
+
+    // Compteurs lus depuis d'autres threads
+    private volatile int queuedFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long readPauses = 0;
+    private volatile boolean readsPaused = false;
+
+    public WebSocketBackpressureHandler(WebSocketOutboundPolicy policy, int maxQueuedFrames) {
+        this.policy = policy;
+        this.maxQueuedFrames = maxQueuedFrames;
+    }
+
+    /**
+     * @return  le handler du channel, ou null s'il n'en a pas
+     */
+    public static WebSocketBackpressureHandler get(Channel channel) {
+        return channel.pipeline().get(WebSocketBackpressureHandler.class);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (policy == WebSocketOutboundPolicy.DROP_OLDEST && msg instanceof WebSocketFrame
+                && (!queue.isEmpty() || !ctx.channel().isWritable())) {
+            queue.add(new PendingWrite(msg, promise));
+            if (queue.size() > maxQueuedFrames) {
+                queue.poll().discard("Outbound queue full, frame dropped");
+                droppedFrames++;
+            }
+            queuedFrames = queue.size();
+        }
+        else {
+            ctx.write(msg, promise);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        Channel channel = ctx.channel();
+        if (channel.isWritable()) {
+            drain(ctx);
+            if (readsPaused) {
+                readsPaused = false;
+                WebSocketReadSuspension.resume(channel, WebSocketReadSuspension.Reason.BACKPRESSURE);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Channel {} writable again, reads resumed", channel);
+                }
+            }
+        }
+        else if (policy == WebSocketOutboundPolicy.DISCONNECT) {
+            logger.warn("[NOK] Channel {} closed: outbound buffer above high water mark ({} bytes pending)",
+                    channel, pendingBytes(channel));
+            ctx.close();
+        }
+        else if (!readsPaused) {
+            readsPaused = true;
+            readPauses++;
+            WebSocketReadSuspension.suspend(channel, WebSocketReadSuspension.Reason.BACKPRESSURE);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Channel {} not writable, reads paused ({} bytes pending)", channel, pendingBytes(channel));
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        if (queue.isEmpty()) {
+            return;
+        }
+        while (!queue.isEmpty() && ctx.channel().isWritable()) {
+            PendingWrite pending = queue.poll();
+            ctx.write(pending.msg, pending.promise);
+        }
+        queuedFrames = queue.size();
+        ctx.flush();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discardQueue();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        discardQueue();
+    }
+
+    private void discardQueue() {
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            pending.discard("Channel closed before frame was written");
+        }
+        queuedFrames = 0;
+    }
+
+    private static long pendingBytes(Channel channel) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        return buffer != null ? buffer.totalPendingWriteBytes() : 0;
+    }
+
+    /**
+     * @return  l'état de la file sortante du channel
+     */
+    public QueueStats stats(Channel channel) {
+        return new QueueStats(channel, pendingBytes(channel), queuedFrames, droppedFrames, readPauses, readsPaused);
+    }
+
+    private static final class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+
+        private void discard(String reason) {
+            ReferenceCountUtil.release(msg);
+            // Une voidPromise en échec déclencherait exceptionCaught
+            if (!promise.isVoid()) {
+                promise.tryFailure(new IllegalStateException(reason));
+            }
+        }
+    }
+
+    /**
+     * Instantané de la file sortante d'une connexion : octets en attente
+     * dans le buffer Netty, frames retenues et abandonnées par
+     * {@link WebSocketOutboundPolicy#DROP_OLDEST}, suspensions de lecture.
+     */
+    public static class QueueStats {
+        private final String channelId;
+        private final String remoteAddress;
+        private final long pendingBytes;
+        private final int queuedFrames;
+        private final long droppedFrames;
+        private final long readPauses;
+        private final boolean readsPaused;
+
+        private QueueStats(Channel channel, long pendingBytes, int queuedFrames, long droppedFrames, long readPauses, boolean readsPaused) {
+            this.channelId = channel.id().asShortText();
+            this.remoteAddress = String.valueOf(channel.remoteAddress());
+            this.pendingBytes = pendingBytes;
+            this.queuedFrames = queuedFrames;
+            this.droppedFrames = droppedFrames;
+            this.readPauses = readPauses;
+            this.readsPaused = readsPaused;
+        }
+
+        public String getChannelId() {
+            return channelId;
+        }
+
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        public long getPendingBytes() {
+            return pendingBytes;
+        }
+
+        public int getQueuedFrames() {
+            return queuedFrames;
+        }
+
+        public long getDroppedFrames() {
+            return droppedFrames;
+        }
+
+        public long getReadPauses() {
+            return readPauses;
+        }
+
+        public boolean isReadsPaused() {
+            return readsPaused;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s): pendingBytes=%d, queuedFrames=%d, droppedFrames=%d, readPauses=%d, readsPaused=%b",
+                    channelId, remoteAddress, pendingBytes, queuedFrames, droppedFrames, readPauses, readsPaused);
+        }
+    }
+}
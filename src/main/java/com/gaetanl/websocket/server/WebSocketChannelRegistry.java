@@ -0,0 +1,232 @@
+package com.gaetanl.websocket.server;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.slf4j.*;
+
+import com.gaetanl.websocket.message.*;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.channel.group.*;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+/**
+ * Registre thread-safe des channels WebSocket ouverts. Les channels sont
+ * retirés automatiquement de tous les groupes à leur fermeture.
+ *
+ * Un sujet est supprimé dès que son groupe devient vide, que ses channels
+ * l'aient quitté ou aient été fermés.
+ *
+ * Un message diffusé n'est encodé qu'une fois par format d'échange ; chaque
+ * destinataire reçoit une copie retenue (retainedDuplicate) du même buffer.
+ *
+ * Avec un {@link WsMessageBus}, les diffusions et publications sont aussi
+ * transmises aux autres noeuds, dont les messages sont remis aux channels
+ * locaux par {@link #deliver(String, WsMessage)}.
+ */
+public class WebSocketChannelRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketChannelRegistry.class);
+
+    /** Sujets auxquels le channel est abonné, quittés à sa fermeture */
+    private static final AttributeKey<Set<String>> TOPICS = AttributeKey.valueOf(WebSocketChannelRegistry.class, "topics");
+
+    private static final ChannelMatcher[] FORMAT_MATCHERS = new ChannelMatcher[WsWireFormat.values().length];
+
+    static {
+        for (final WsWireFormat format : WsWireFormat.values()) {
+            FORMAT_MATCHERS[format.ordinal()] = new ChannelMatcher() {
+                @Override
+                public boolean matches(Channel channel) {
+                    return WsWireFormat.of(channel) == format;
+                }
+            };
+        }
+    }
+
+    private final ChannelGroup channels = new DefaultChannelGroup("websocket", GlobalEventExecutor.INSTANCE);
+    private final ConcurrentMap<String, ChannelGroup> topics = new ConcurrentHashMap<String, ChannelGroup>();
+    private final ByteBufAllocator alloc;
+    private volatile WsMessageBus messageBus;
+
+    public WebSocketChannelRegistry() {
+        this(ByteBufAllocator.DEFAULT);
+    }
+
+    public WebSocketChannelRegistry(ByteBufAllocator alloc) {
+        this.alloc = alloc;
+    }
+
+    /**
+     * @param   messageBus  bus vers les autres noeuds, ou null
+     */
+    public void setMessageBus(WsMessageBus messageBus) {
+        this.messageBus = messageBus;
+    }
+
+    public WsMessageBus getMessageBus() {
+        return messageBus;
+    }
+
+    /**
+     * Enregistre un channel dont le handshake WebSocket est terminé.
+     */
+    public void add(Channel channel) {
+        channels.add(channel);
+    }
+
+    public int size() {
+        return channels.size();
+    }
+
+    public ChannelGroup getChannels() {
+        return channels;
+    }
+
+    /**
+     * Abonne le channel au sujet, créé s'il n'existe pas.
+     */
+    public void join(Channel channel, String topic) {
+        joinedTopics(channel).add(topic);
+        while (true) {
+            ChannelGroup group = topics.get(topic);
+            if (group == null) {
+                ChannelGroup newGroup = new DefaultChannelGroup(topic, GlobalEventExecutor.INSTANCE);
+                group = topics.putIfAbsent(topic, newGroup);
+                if (group == null) {
+                    group = newGroup;
+                }
+            }
+            group.add(channel);
+
+            // Le groupe a pu être retiré par un leave() concurrent
+            if (topics.get(topic) == group) {
+                break;
+            }
+        }
+        // Fermé pendant l'abonnement : le listener de fermeture a pu passer avant
+        if (!channel.isOpen()) {
+            leave(channel, topic);
+        }
+    }
+
+    /**
+     * Désabonne le channel du sujet. Un sujet vide est supprimé.
+     */
+    public void leave(Channel channel, String topic) {
+        Set<String> joined = channel.attr(TOPICS).get();
+        if (joined != null) {
+            joined.remove(topic);
+        }
+        removeFromTopic(channel, topic);
+    }
+
+    private void removeFromTopic(Channel channel, String topic) {
+        ChannelGroup group = topics.get(topic);
+        if (group != null) {
+            group.remove(channel);
+            if (group.isEmpty()) {
+                topics.remove(topic, group);
+            }
+        }
+    }
+
+    public int topicCount() {
+        return topics.size();
+    }
+
+    private Set<String> joinedTopics(final Channel channel) {
+        Set<String> joined = channel.attr(TOPICS).get();
+        if (joined == null) {
+            Set<String> newJoined = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            joined = channel.attr(TOPICS).setIfAbsent(newJoined);
+            if (joined == null) {
+                joined = newJoined;
+                // Le groupe retire lui-même le channel fermé, mais pas le sujet vide
+                channel.closeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        for (String topic : channel.attr(TOPICS).get()) {
+                            removeFromTopic(channel, topic);
+                        }
+                    }
+                });
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Diffuse le message à tous les channels enregistrés, ainsi qu'à ceux
+     * des autres noeuds.
+     */
+    public void broadcast(WsMessage message) {
+        WsMessageBus bus = messageBus;
+        if (bus != null && !bus.publish(null, message)) {
+            return;
+        }
+        write(channels, message);
+    }
+
+    /**
+     * Diffuse le message aux channels abonnés au sujet, ainsi qu'aux abonnés
+     * des autres noeuds.
+     *
+     * @return  false si le sujet n'a pas d'abonné local
+     */
+    public boolean publish(String topic, WsMessage message) {
+        WsMessageBus bus = messageBus;
+        if (bus != null && !bus.publish(topic, message)) {
+            return false;
+        }
+        return publishLocally(topic, message);
+    }
+
+    /**
+     * Remet aux seuls channels locaux un message reçu d'un autre noeud.
+     *
+     * @param   topic  sujet de publication, ou null pour une diffusion
+     */
+    public void deliver(String topic, WsMessage message) {
+        if (topic == null) {
+            write(channels, message);
+        }
+        else {
+            publishLocally(topic, message);
+        }
+    }
+
+    private boolean publishLocally(String topic, WsMessage message) {
+        ChannelGroup group = topics.get(topic);
+        if (group == null || group.isEmpty()) {
+            return false;
+        }
+        write(group, message);
+        return true;
+    }
+
+    private void write(ChannelGroup group, WsMessage message) {
+        for (WsWireFormat format : WsWireFormat.values()) {
+            ChannelMatcher matcher = FORMAT_MATCHERS[format.ordinal()];
+            if (!hasMatch(group, matcher)) {
+                continue;
+            }
+            // Le groupe écrit un retainedDuplicate par channel puis libère la frame
+            group.writeAndFlush(format.encodeFrame(alloc, message), matcher);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Message {} sent to group {} ({} channels)", message.getType(), group.name(), group.size());
+        }
+    }
+
+    private static boolean hasMatch(ChannelGroup group, ChannelMatcher matcher) {
+        for (Channel channel : group) {
+            if (matcher.matches(channel)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
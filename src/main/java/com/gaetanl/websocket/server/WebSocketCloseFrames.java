@@ -0,0 +1,34 @@
+package com.gaetanl.websocket.server;
+
+import java.util.concurrent.*;
+
+import io.netty.buffer.*;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Frames Close constantes : le payload (code et raison) de chaque statut est
+ * encodé une seule fois puis partagé en lecture seule, chaque frame
+ * n'allouant que son enveloppe.
+ */
+public final class WebSocketCloseFrames {
+    private static final ConcurrentMap<WebSocketCloseStatus, ByteBuf> PAYLOADS = new ConcurrentHashMap<WebSocketCloseStatus, ByteBuf>();
+
+    private WebSocketCloseFrames() {
+    }
+
+    public static CloseWebSocketFrame of(WebSocketCloseStatus status) {
+        ByteBuf payload = PAYLOADS.get(status);
+        if (payload == null) {
+            byte[] reason = status.reasonText().getBytes(CharsetUtil.UTF_8);
+            ByteBuf encoded = Unpooled.directBuffer(2 + reason.length).writeShort(status.code()).writeBytes(reason);
+            payload = Unpooled.unreleasableBuffer(encoded.asReadOnly());
+            ByteBuf previous = PAYLOADS.putIfAbsent(status, payload);
+            if (previous != null) {
+                encoded.release();
+                payload = previous;
+            }
+        }
+        return new CloseWebSocketFrame(true, 0, payload.duplicate());
+    }
+}
@@ -0,0 +1,171 @@
+package com.gaetanl.websocket.server;
+
+import java.util.Properties;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.*;
+import io.netty.handler.codec.http.websocketx.extensions.compression.*;
+
+/**
+ * Compression permessage-deflate (RFC 7692), partagée par le client et le
+ * serveur. Les tailles de fenêtre et le context takeover sont exprimés du
+ * point de vue de chaque pair : le client les demande, le serveur les
+ * accepte.
+ *
+ * Les frames dont le payload est inférieur à {@link #getMinSize()} sont
+ * envoyées sans compression : le coût CPU de deflate n'est pas rentable sur
+ * les petits accusés de réception.
+ */
+public class WebSocketCompressionConfig {
+    private boolean enabled = true;
+    private int compressionLevel = 6;
+
+    /** Fenêtres LZ77 en bits (8 à 15) */
+    private int serverWindowBits = PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE;
+    private int clientWindowBits = PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE;
+
+    /** Réinitialisation du dictionnaire à chaque message : moins de mémoire, moins de compression */
+    private boolean serverNoContextTakeover = false;
+    private boolean clientNoContextTakeover = false;
+
+    /** Taille minimale de payload compressé, en octets */
+    private int minSize = 256;
+
+    /**
+     * Surcharge la configuration par défaut avec les propriétés
+     * {@code websocket.compression.enabled}, {@code .level},
+     * {@code .serverWindowBits}, {@code .clientWindowBits},
+     * {@code .serverNoContextTakeover}, {@code .clientNoContextTakeover} et
+     * {@code .minSize}.
+     */
+    public static WebSocketCompressionConfig fromProperties(Properties properties) {
+        WebSocketCompressionConfig config = new WebSocketCompressionConfig();
+        config.setEnabled(Boolean.parseBoolean(properties.getProperty("websocket.compression.enabled", String.valueOf(config.isEnabled()))));
+        config.setCompressionLevel(Integer.parseInt(properties.getProperty("websocket.compression.level", String.valueOf(config.getCompressionLevel()))));
+        config.setServerWindowBits(Integer.parseInt(properties.getProperty("websocket.compression.serverWindowBits", String.valueOf(config.getServerWindowBits()))));
+        config.setClientWindowBits(Integer.parseInt(properties.getProperty("websocket.compression.clientWindowBits", String.valueOf(config.getClientWindowBits()))));
+        config.setServerNoContextTakeover(Boolean.parseBoolean(properties.getProperty("websocket.compression.serverNoContextTakeover", String.valueOf(config.isServerNoContextTakeover()))));
+        config.setClientNoContextTakeover(Boolean.parseBoolean(properties.getProperty("websocket.compression.clientNoContextTakeover", String.valueOf(config.isClientNoContextTakeover()))));
+        config.setMinSize(Integer.parseInt(properties.getProperty("websocket.compression.minSize", String.valueOf(config.getMinSize()))));
+        return config;
+    }
+
+    /**
+     * @return  le handler d'extension à placer avant le
+     *          WebSocketServerProtocolHandler, ou null si la compression est
+     *          désactivée
+     */
+    public ChannelHandler newServerHandler() {
+        if (!enabled) {
+            return null;
+        }
+        return new WebSocketServerExtensionHandler(newServerHandshaker());
+    }
+
+    public PerMessageDeflateServerExtensionHandshaker newServerHandshaker() {
+        return new PerMessageDeflateServerExtensionHandshaker(compressionLevel, true, clientWindowBits, true, clientNoContextTakeover, filterProvider());
+    }
+
+    /**
+     * @return  le handler d'extension à placer après le HttpObjectAggregator
+     *          du client, ou null si la compression est désactivée
+     */
+    public ChannelHandler newClientHandler() {
+        if (!enabled) {
+            return null;
+        }
+        return new WebSocketClientExtensionHandler(newClientHandshaker());
+    }
+
+    public PerMessageDeflateClientExtensionHandshaker newClientHandshaker() {
+        return new PerMessageDeflateClientExtensionHandshaker(compressionLevel, true, serverWindowBits, true, serverNoContextTakeover, filterProvider());
+    }
+
+    private WebSocketExtensionFilterProvider filterProvider() {
+        final WebSocketExtensionFilter encoderFilter = new WebSocketExtensionFilter() {
+            @Override
+            public boolean mustSkip(WebSocketFrame frame) {
+                return frame.content().readableBytes() < minSize;
+            }
+        };
+        return new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                return encoderFilter;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("compressionLevel must be between 0 and 9, got " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getServerWindowBits() {
+        return serverWindowBits;
+    }
+
+    public void setServerWindowBits(int serverWindowBits) {
+        this.serverWindowBits = checkWindowBits(serverWindowBits);
+    }
+
+    public int getClientWindowBits() {
+        return clientWindowBits;
+    }
+
+    public void setClientWindowBits(int clientWindowBits) {
+        this.clientWindowBits = checkWindowBits(clientWindowBits);
+    }
+
+    private static int checkWindowBits(int windowBits) {
+        if (windowBits < PerMessageDeflateServerExtensionHandshaker.MIN_WINDOW_SIZE || windowBits > PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException(String.format("windowBits must be between %d and %d, got %d",
+                    PerMessageDeflateServerExtensionHandshaker.MIN_WINDOW_SIZE, PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE, windowBits));
+        }
+        return windowBits;
+    }
+
+    public boolean isServerNoContextTakeover() {
+        return serverNoContextTakeover;
+    }
+
+    public void setServerNoContextTakeover(boolean serverNoContextTakeover) {
+        this.serverNoContextTakeover = serverNoContextTakeover;
+    }
+
+    public boolean isClientNoContextTakeover() {
+        return clientNoContextTakeover;
+    }
+
+    public void setClientNoContextTakeover(boolean clientNoContextTakeover) {
+        this.clientNoContextTakeover = clientNoContextTakeover;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+}
@@ -0,0 +1,164 @@
+package com.gaetanl.websocket.server;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.buffer.*;
+
+/**
+ * Flux alimenté par le contenu des frames d'un message fragmenté, au fur et
+ * à mesure de leur réception sur l'event loop, et lu par le thread de
+ * traitement. Les buffers sont libérés dès qu'ils ont été lus.
+ *
+ * Au-delà de {@code maxBuffered} octets non lus, {@link #add(ByteBuf)}
+ * signale à l'appelant de suspendre la lecture ; {@code onDrained} est
+ * appelé par le lecteur une fois la moitié de ce volume consommée.
+ */
+final class WebSocketFrameInputStream extends InputStream {
+    private static final ByteBuf END = Unpooled.EMPTY_BUFFER;
+
+    private final BlockingQueue<ByteBuf> chunks = new LinkedBlockingQueue<ByteBuf>();
+    private final AtomicLong buffered = new AtomicLong(0);
+    private final long maxBuffered;
+    private final Runnable onDrained;
+
+    private volatile boolean paused = false;
+    private volatile boolean aborted = false;
+    private volatile boolean closed = false;
+
+    // État du lecteur
+    private ByteBuf current;
+    private boolean ended = false;
+
+    WebSocketFrameInputStream(long maxBuffered, Runnable onDrained) {
+        this.maxBuffered = maxBuffered;
+        this.onDrained = onDrained;
+    }
+
+    /**
+     * Ajoute un fragment, dont le flux prend possession.
+     *
+     * @return  true si la lecture du channel doit être suspendue
+     */
+    boolean add(ByteBuf chunk) {
+        int length = chunk.readableBytes();
+        if (length == 0) {
+            chunk.release();
+            return false;
+        }
+        chunks.add(chunk);
+        if (closed) {
+            releaseQueued();
+            return false;
+        }
+        if (buffered.addAndGet(length) > maxBuffered && !paused) {
+            paused = true;
+            return true;
+        }
+        return false;
+    }
+
+    /** Fin du message */
+    void end() {
+        chunks.add(END);
+    }
+
+    /** Message interrompu : le lecteur reçoit une IOException */
+    void abort() {
+        aborted = true;
+        chunks.add(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        consumed(1);
+        return current.readUnsignedByte();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, current.readableBytes());
+        current.readBytes(b, off, n);
+        consumed(n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current != null ? current.readableBytes() : 0;
+    }
+
+    private boolean nextChunk() throws IOException {
+        while (current == null || !current.isReadable()) {
+            if (current != null) {
+                current.release();
+                current = null;
+            }
+            if (ended) {
+                return false;
+            }
+            ByteBuf next;
+            try {
+                next = chunks.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the next fragment");
+            }
+            if (next == END) {
+                ended = true;
+                if (aborted) {
+                    throw new IOException("Fragmented message aborted");
+                }
+                return false;
+            }
+            current = next;
+        }
+        return true;
+    }
+
+    private void consumed(int length) {
+        long remaining = buffered.addAndGet(-length);
+        if (paused && remaining <= maxBuffered / 2) {
+            paused = false;
+            onDrained.run();
+        }
+    }
+
+    /**
+     * Libère les fragments non lus ; les fragments ajoutés ensuite sont
+     * libérés immédiatement.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+        releaseQueued();
+        if (paused) {
+            paused = false;
+            onDrained.run();
+        }
+    }
+
+    private void releaseQueued() {
+        ByteBuf chunk;
+        while ((chunk = chunks.poll()) != null) {
+            if (chunk != END) {
+                chunk.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.gaetanl.websocket.server;
+
+import org.slf4j.*;
+
+import com.gaetanl.websocket.message.*;
+
+import io.netty.buffer.*;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Log des frames échangées, porté par le logger dédié
+ * {@value #LOGGER_NAME} (niveau INFO pour l'activer). Lorsque ce logger est
+ * désactivé, aucun message n'est construit.
+ *
+ * Propriétés système :
+ * <ul>
+ * <li>{@code websocket.frameLog.sampleRate} : une frame loggée sur N (1 par défaut)</li>
+ * <li>{@code websocket.frameLog.maxPayload} : nombre d'octets de payload loggés (256 par défaut)</li>
+ * </ul>
+ *
+ * Une instance appartient à un seul handler, donc à un seul event loop : le
+ * compteur d'échantillonnage n'est pas synchronisé.
+ */
+public class WebSocketFrameLogger {
+    public static final String LOGGER_NAME = "com.gaetanl.websocket.frames";
+
+    private static final Logger logger = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private static final int SAMPLE_RATE = Math.max(1, Integer.getInteger("websocket.frameLog.sampleRate", 1));
+    private static final int MAX_PAYLOAD = Math.max(0, Integer.getInteger("websocket.frameLog.maxPayload", 256));
+
+    private int count = 0;
+
+    public static boolean isEnabled() {
+        return logger.isInfoEnabled();
+    }
+
+    /**
+     * @return  true si la frame courante doit être loggée
+     */
+    public boolean sample() {
+        if (!logger.isInfoEnabled()) {
+            return false;
+        }
+        if (++count < SAMPLE_RATE) {
+            return false;
+        }
+        count = 0;
+        return true;
+    }
+
+    /**
+     * @param   message  le message décodé de la frame, ou null
+     */
+    public void inbound(Channel channel, Object frame, WsMessage message) {
+        logger.info("[OK] websocket/in:  {} {} on {}", new Object[] { frame.getClass().getSimpleName(), describe(frame, message), channel });
+    }
+
+    public void outbound(Channel channel, Object frame) {
+        logger.info("[OK] websocket/out: {} {} on {}", new Object[] { frame.getClass().getSimpleName(), describe(frame, null), channel });
+    }
+
+    private static String describe(Object frame, WsMessage message) {
+        if (frame instanceof TextWebSocketFrame) {
+            return payload((WebSocketFrame) frame);
+        }
+        if (message != null) {
+            return truncate(WsMessageCodec.getInstance().toJson(message));
+        }
+        if (frame instanceof WebSocketFrame) {
+            return payload((WebSocketFrame) frame);
+        }
+        return "";
+    }
+
+    /**
+     * Payload de la frame tronqué à {@code websocket.frameLog.maxPayload}
+     * octets, sans décoder le reste du buffer. Le texte est restitué tel quel,
+     * le binaire en hexadécimal.
+     */
+    public static String payload(WebSocketFrame frame) {
+        ByteBuf content = frame.content();
+        int readable = content.readableBytes();
+        int length = Math.min(readable, MAX_PAYLOAD);
+
+        String payload;
+        if (frame instanceof TextWebSocketFrame) {
+            payload = content.toString(content.readerIndex(), length, CharsetUtil.UTF_8);
+        }
+        else {
+            payload = ByteBufUtil.hexDump(content, content.readerIndex(), length);
+        }
+        return length < readable ? payload + "... (" + readable + " bytes)" : payload;
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_PAYLOAD ? text : text.substring(0, MAX_PAYLOAD) + "... (" + text.length() + " chars)";
+    }
+}
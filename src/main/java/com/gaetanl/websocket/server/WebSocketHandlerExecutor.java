@@ -0,0 +1,115 @@
+package com.gaetanl.websocket.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+import org.slf4j.*;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Exécution des traitements applicatifs ({@link com.gaetanl.websocket.message.WsMessageHandler}).
+ * Hors {@link #INLINE}, les traitements quittent l'event loop : un
+ * traitement bloquant (accès base de données, etc.) ne bloque plus les
+ * autres connexions.
+ *
+ * Les threads virtuels n'existent qu'à partir du JDK 21 : l'exécuteur est
+ * créé par réflexion et {@link #auto()} se replie sur un pool borné s'ils
+ * sont indisponibles.
+ *
+ * Les traitements s'exécutent sur l'event loop par défaut
+ * ({@link WebSocketServerConfig#setHandlerExecutor(WebSocketHandlerExecutor)}).
+ */
+public enum WebSocketHandlerExecutor {
+    /** Sur l'event loop, pour des traitements courts et non bloquants */
+    INLINE {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public ExecutorService newExecutor(int poolSize) {
+            return null;
+        }
+    },
+
+    /** Pool de {@code poolSize} threads */
+    POOL {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public ExecutorService newExecutor(int poolSize) {
+            return Executors.newFixedThreadPool(poolSize, new DefaultThreadFactory("ws-handler", true));
+        }
+    },
+
+    /** Un thread virtuel par traitement (JDK 21+) */
+    VIRTUAL_THREADS {
+        @Override
+        public boolean isAvailable() {
+            return VIRTUAL_THREAD_FACTORY_METHOD != null;
+        }
+
+        @Override
+        public boolean allowsBlockingReads() {
+            return true;
+        }
+
+        @Override
+        public ExecutorService newExecutor(int poolSize) {
+            if (!isAvailable()) {
+                throw new IllegalStateException("Virtual threads require JDK 21+");
+            }
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_FACTORY_METHOD.invoke(null);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException("Unable to create virtual thread executor", e);
+            }
+        }
+    };
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketHandlerExecutor.class);
+
+    private static final Method VIRTUAL_THREAD_FACTORY_METHOD = virtualThreadFactoryMethod();
+
+    private static Method virtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public abstract boolean isAvailable();
+
+    /**
+     * @return  true si un traitement peut attendre la suite d'un message
+     *          fragmenté sans priver les autres connexions de thread
+     */
+    public boolean allowsBlockingReads() {
+        return false;
+    }
+
+    /**
+     * @param   poolSize  nombre de threads (POOL uniquement)
+     * @return  l'exécuteur, à arrêter avec le serveur, ou null pour INLINE
+     */
+    public abstract ExecutorService newExecutor(int poolSize);
+
+    /**
+     * @return  les threads virtuels s'ils sont disponibles, un pool sinon
+     */
+    public static WebSocketHandlerExecutor auto() {
+        if (VIRTUAL_THREADS.isAvailable()) {
+            return VIRTUAL_THREADS;
+        }
+        logger.debug("Virtual threads unavailable, falling back to a thread pool");
+        return POOL;
+    }
+}
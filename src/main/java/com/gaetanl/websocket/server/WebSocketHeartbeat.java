@@ -0,0 +1,91 @@
+package com.gaetanl.websocket.server;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.*;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Timer unique (roue hachée) des vérifications d'inactivité de toutes les
+ * connexions d'un serveur. Contrairement à {@link io.netty.handler.timeout.IdleStateHandler},
+ * qui programme jusqu'à trois tâches par channel dans la file de son event
+ * loop, chaque connexion n'occupe qu'un {@link Timeout} dans la roue, dont
+ * l'insertion et l'annulation sont en temps constant.
+ *
+ * @see  WebSocketIdleHandler
+ */
+public class WebSocketHeartbeat {
+    private static final long TICK_MILLIS = 100;
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private final HashedWheelTimer timer;
+    private final long readerIdleNanos;
+    private final long writerIdleNanos;
+    private final long allIdleNanos;
+
+    // Intervalle de vérification : le plus court des délais actifs
+    private final long checkIntervalNanos;
+
+    /**
+     * @param   readerIdleSeconds  délai sans lecture avant fermeture, 0 pour désactiver
+     * @param   writerIdleSeconds  délai sans écriture avant l'envoi d'un ping, 0 pour désactiver
+     * @param   allIdleSeconds     délai sans lecture ni écriture avant un
+     *                             {@link io.netty.handler.timeout.IdleStateEvent}, 0 pour désactiver
+     */
+    public WebSocketHeartbeat(int readerIdleSeconds, int writerIdleSeconds, int allIdleSeconds) {
+        this.readerIdleNanos = TimeUnit.SECONDS.toNanos(Math.max(0, readerIdleSeconds));
+        this.writerIdleNanos = TimeUnit.SECONDS.toNanos(Math.max(0, writerIdleSeconds));
+        this.allIdleNanos = TimeUnit.SECONDS.toNanos(Math.max(0, allIdleSeconds));
+
+        long interval = Long.MAX_VALUE;
+        for (long idle : new long[] { readerIdleNanos, writerIdleNanos, allIdleNanos }) {
+            if (idle > 0) {
+                interval = Math.min(interval, idle);
+            }
+        }
+        if (interval == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("At least one idle timeout must be enabled");
+        }
+        this.checkIntervalNanos = interval;
+
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("ws-heartbeat", true), TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+
+    /**
+     * @return  true si au moins un délai est configuré
+     */
+    public static boolean isEnabled(WebSocketServerConfig config) {
+        return config.getReaderIdleSeconds() > 0 || config.getWriterIdleSeconds() > 0 || config.getAllIdleSeconds() > 0;
+    }
+
+    long getReaderIdleNanos() {
+        return readerIdleNanos;
+    }
+
+    long getWriterIdleNanos() {
+        return writerIdleNanos;
+    }
+
+    long getAllIdleNanos() {
+        return allIdleNanos;
+    }
+
+    Timeout schedule(TimerTask task, long delayNanos) {
+        return timer.newTimeout(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    long getCheckIntervalNanos() {
+        return checkIntervalNanos;
+    }
+
+    /**
+     * @return  le nombre de connexions surveillées
+     */
+    public long pendingChecks() {
+        return timer.pendingTimeouts();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+}
@@ -0,0 +1,143 @@
+package com.gaetanl.websocket.server;
+
+import org.slf4j.*;
+
+import com.gaetanl.websocket.message.WsWireFormat;
+
+import io.netty.channel.*;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.*;
+
+/**
+ * Détection d'inactivité d'une connexion, vérifiée par le
+ * {@link WebSocketHeartbeat} du serveur :
+ * <ul>
+ *   <li>sans écriture pendant {@code writerIdleSeconds}, un ping est envoyé
+ *   (une fois le handshake WebSocket terminé) ;</li>
+ *   <li>sans lecture pendant {@code readerIdleSeconds}, y compris du pong
+ *   attendu, le pair est considéré mort et la connexion est fermée ;</li>
+ *   <li>sans activité pendant {@code allIdleSeconds}, un
+ *   {@link IdleStateEvent} est seulement propagé dans le pipeline.</li>
+ * </ul>
+ *
+ * Placé en tête du pipeline, le handler voit toutes les lectures et
+ * écritures, quel que soit leur type.
+ */
+public class WebSocketIdleHandler extends ChannelDuplexHandler implements TimerTask {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketIdleHandler.class);
+
+    public static final String NAME = "idle";
+
+    private final WebSocketHeartbeat heartbeat;
+
+    // Écrits par l'event loop, lus par le thread du timer
+    private volatile long lastReadTime;
+    private volatile long lastWriteTime;
+
+    private Channel channel;
+    private volatile Timeout timeout;
+
+    public WebSocketIdleHandler(WebSocketHeartbeat heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        channel = ctx.channel();
+        lastReadTime = lastWriteTime = System.nanoTime();
+        timeout = heartbeat.schedule(this, heartbeat.getCheckIntervalNanos());
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        lastReadTime = System.nanoTime();
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        lastWriteTime = System.nanoTime();
+        super.write(ctx, msg, promise);
+    }
+
+    /**
+     * Vérification depuis le thread du timer : seul le calcul des délais y
+     * est fait, les actions sont confiées à l'event loop du channel.
+     */
+    @Override
+    public void run(Timeout expired) {
+        if (!channel.isActive()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long readerIdle = now - lastReadTime;
+        long writerIdle = now - lastWriteTime;
+
+        final IdleStateEvent event;
+        long readerIdleNanos = heartbeat.getReaderIdleNanos();
+        long writerIdleNanos = heartbeat.getWriterIdleNanos();
+        long allIdleNanos = heartbeat.getAllIdleNanos();
+        if (readerIdleNanos > 0 && readerIdle >= readerIdleNanos) {
+            event = IdleStateEvent.READER_IDLE_STATE_EVENT;
+        }
+        else if (writerIdleNanos > 0 && writerIdle >= writerIdleNanos) {
+            event = IdleStateEvent.WRITER_IDLE_STATE_EVENT;
+        }
+        else if (allIdleNanos > 0 && Math.min(readerIdle, writerIdle) >= allIdleNanos) {
+            event = IdleStateEvent.ALL_IDLE_STATE_EVENT;
+        }
+        else {
+            event = null;
+        }
+
+        if (event != null) {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    idle(event);
+                }
+            });
+        }
+
+        // Prochaine vérification ; un délai de lecture dépassé ferme la connexion
+        if (event != IdleStateEvent.READER_IDLE_STATE_EVENT) {
+            timeout = heartbeat.schedule(this, heartbeat.getCheckIntervalNanos());
+        }
+    }
+
+    private void idle(IdleStateEvent event) {
+        if (!channel.isActive()) {
+            return;
+        }
+
+        if (event == IdleStateEvent.READER_IDLE_STATE_EVENT) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Channel {} idle for reads, closing", channel);
+            }
+            channel.pipeline().fireUserEventTriggered(event);
+            channel.close();
+        }
+        else if (event == IdleStateEvent.WRITER_IDLE_STATE_EVENT) {
+            // Le format d'échange n'est connu qu'une fois le handshake terminé
+            if (channel.hasAttr(WsWireFormat.ATTRIBUTE)) {
+                channel.writeAndFlush(new PingWebSocketFrame(), channel.voidPromise());
+            }
+            channel.pipeline().fireUserEventTriggered(event);
+        }
+        else {
+            channel.pipeline().fireUserEventTriggered(event);
+        }
+    }
+}
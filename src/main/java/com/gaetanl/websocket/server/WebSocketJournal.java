@@ -0,0 +1,327 @@
+package com.gaetanl.websocket.server;
+
+import java.io.*;
+import java.util.*;
+
+import org.slf4j.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.*;
+
+/**
+ * Journal des frames de données envoyées à une session, en ajout seul.
+ * Chaque frame reçoit un offset croissant, à partir de 1, qui permet à un
+ * client reconnecté de reprendre après le dernier message reçu
+ * ({@link WebSocketJournalHandler}).
+ *
+ * Le journal est découpé en segments projetés en mémoire
+ * ({@link WebSocketJournalSegment}), nommés par leur premier offset ; les
+ * plus anciens sont supprimés selon la rétention configurée. Un seul
+ * channel, le propriétaire, peut écrire dans le journal.
+ */
+public class WebSocketJournal {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketJournal.class);
+
+    private final String sessionId;
+    private final File dir;
+    private final int segmentSize;
+    private final long retentionBytes;
+    private final long retentionMillis;
+
+    /** Segments par offset croissant ; le dernier reçoit les écritures */
+    private final List<WebSocketJournalSegment> segments = new ArrayList<WebSocketJournalSegment>();
+    private long endOffset;
+    private long size;
+
+    private Channel owner;
+
+    /** Relecture en cours : les segments restant à relire sont protégés de la rétention */
+    private Cursor replaying;
+
+    private boolean closed = false;
+
+    private WebSocketJournal(String sessionId, File dir, int segmentSize, long retentionBytes, long retentionMillis) {
+        this.sessionId = sessionId;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Ouvre le journal du répertoire, ou le crée s'il n'existe pas. Les
+     * segments qui précèdent une discontinuité d'offsets sont supprimés.
+     */
+    static WebSocketJournal open(String sessionId, File dir, int segmentSize, long retentionBytes, long retentionMillis) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + dir);
+        }
+        WebSocketJournal journal = new WebSocketJournal(sessionId, dir, segmentSize, retentionBytes, retentionMillis);
+
+        File[] logFiles = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return WebSocketJournalSegment.parseBaseOffset(file.getName()) > 0;
+            }
+        });
+        Arrays.sort(logFiles);
+        for (File logFile : logFiles) {
+            WebSocketJournalSegment segment = WebSocketJournalSegment.open(logFile);
+            if (!journal.segments.isEmpty() && segment.baseOffset != journal.endOffset + 1) {
+                logger.warn("Journal {} has a gap before offset {}, older segments dropped", sessionId, segment.baseOffset);
+                for (WebSocketJournalSegment previous : journal.segments) {
+                    previous.delete();
+                }
+                journal.segments.clear();
+                journal.size = 0;
+            }
+            journal.segments.add(segment);
+            journal.endOffset = segment.lastOffset();
+            journal.size += segment.size();
+        }
+
+        if (journal.segments.isEmpty()) {
+            journal.segments.add(WebSocketJournalSegment.create(dir, 1, segmentSize));
+        }
+        return journal;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return  l'offset du plus ancien message conservé
+     */
+    public synchronized long getStartOffset() {
+        return segments.get(0).baseOffset;
+    }
+
+    /**
+     * @return  l'offset du dernier message, ou getStartOffset() - 1 si le
+     *          journal est vide
+     */
+    public synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return  les octets occupés par les enregistrements
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return  le channel précédemment propriétaire, ou null
+     */
+    synchronized Channel setOwner(Channel owner) {
+        Channel previous = this.owner;
+        this.owner = owner;
+        if (previous != owner) {
+            replaying = null;
+        }
+        return previous;
+    }
+
+    synchronized boolean isOwner(Channel channel) {
+        return owner == channel;
+    }
+
+    /**
+     * Ajoute le payload de la frame au journal.
+     *
+     * @return  l'offset du message, ou -1 si le channel n'est pas le
+     *          propriétaire du journal ou si la frame ne peut être conservée
+     */
+    synchronized long append(Channel from, WebSocketFrame frame) throws IOException {
+        ByteBuf payload = frame.content();
+        if (closed || owner != from || payload.readableBytes() > WebSocketJournalSegment.MAX_PAYLOAD_LENGTH) {
+            return -1;
+        }
+
+        int flags = (frame instanceof BinaryWebSocketFrame ? WebSocketJournalSegment.BINARY
+                : frame instanceof ContinuationWebSocketFrame ? WebSocketJournalSegment.CONTINUATION
+                : WebSocketJournalSegment.TEXT)
+                | (frame.isFinalFragment() ? WebSocketJournalSegment.FINAL_FRAGMENT : 0);
+        long time = System.currentTimeMillis();
+
+        WebSocketJournalSegment active = segments.get(segments.size() - 1);
+        if (!active.append(payload, flags, time)) {
+            int capacity = Math.max(segmentSize, WebSocketJournalSegment.capacityFor(payload.readableBytes()));
+            active = roll(capacity);
+            active.append(payload, flags, time);
+        }
+        size += WebSocketJournalSegment.RECORD_HEADER_SIZE + payload.readableBytes();
+        return ++endOffset;
+    }
+
+    /**
+     * Ouvre un nouveau segment à la suite du segment actif, qui est écrit
+     * sur le disque ou supprimé s'il est vide.
+     */
+    private WebSocketJournalSegment roll(int capacity) throws IOException {
+        WebSocketJournalSegment active = segments.get(segments.size() - 1);
+        if (active.count() == 0) {
+            // Même offset de base, donc mêmes fichiers que le nouveau segment
+            segments.remove(segments.size() - 1);
+            active.delete();
+        }
+        else {
+            active.force();
+        }
+        WebSocketJournalSegment next = WebSocketJournalSegment.create(dir, endOffset + 1, capacity);
+        segments.add(next);
+        return next;
+    }
+
+    /**
+     * @param   from  premier offset à relire, au moins égal à getStartOffset()
+     */
+    synchronized Cursor cursor(long from) {
+        replaying = new Cursor(from);
+        return replaying;
+    }
+
+    private long replayOffset() {
+        return replaying != null ? replaying.next : Long.MAX_VALUE;
+    }
+
+    /**
+     * Supprime les segments plus anciens que la durée de rétention ou au-delà
+     * de la taille maximale, hors segments restant à relire. Le segment actif
+     * est remplacé s'il a expiré.
+     *
+     * @return  le nombre de segments supprimés
+     */
+    synchronized int applyRetention(long now) {
+        if (closed) {
+            return 0;
+        }
+        int deleted = 0;
+        long replayOffset = replayOffset();
+        while (segments.size() > 1 && segments.get(0).lastOffset() < replayOffset && isExpired(segments.get(0), now)) {
+            deleted += deleteFirst();
+        }
+
+        WebSocketJournalSegment active = segments.get(segments.size() - 1);
+        if (segments.size() == 1 && active.count() > 0 && endOffset < replayOffset && isExpired(active, now)) {
+            try {
+                roll(segmentSize);
+                deleted += deleteFirst();
+            }
+            catch (IOException e) {
+                logger.warn("Unable to roll journal " + sessionId, e);
+            }
+        }
+        return deleted;
+    }
+
+    private boolean isExpired(WebSocketJournalSegment segment, long now) {
+        return (retentionMillis > 0 && segment.lastTime() < now - retentionMillis)
+                || (retentionBytes > 0 && size > retentionBytes);
+    }
+
+    private int deleteFirst() {
+        WebSocketJournalSegment first = segments.remove(0);
+        size -= first.size();
+        first.delete();
+        return 1;
+    }
+
+    /**
+     * Écrit les segments sur le disque. Les curseurs ouverts sont terminés.
+     */
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            owner = null;
+            for (WebSocketJournalSegment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Position de relecture du journal, à partir d'un offset. Les frames
+     * lues référencent directement les segments projetés, sans copie.
+     */
+    final class Cursor {
+        private long next;
+        private WebSocketJournalSegment segment;
+        private int index;
+
+        private Cursor(long next) {
+            this.next = next;
+        }
+
+        long nextOffset() {
+            return next;
+        }
+
+        /**
+         * @return  la frame suivante, ou null si le curseur a atteint la fin
+         *          du journal
+         */
+        WebSocketFrame next() {
+            synchronized (WebSocketJournal.this) {
+                if (closed || next > endOffset) {
+                    return null;
+                }
+                if (segment == null || index >= segment.count()) {
+                    segment = find(next);
+                    index = (int) (next - segment.baseOffset);
+                }
+
+                int flags = segment.flags(index);
+                ByteBuf payload = segment.payload(index);
+                boolean last = (flags & WebSocketJournalSegment.FINAL_FRAGMENT) != 0;
+                index++;
+                next++;
+
+                switch (flags & (WebSocketJournalSegment.FINAL_FRAGMENT - 1)) {
+                case WebSocketJournalSegment.BINARY:
+                    return new BinaryWebSocketFrame(last, 0, payload);
+                case WebSocketJournalSegment.CONTINUATION:
+                    return new ContinuationWebSocketFrame(last, 0, payload);
+                default:
+                    return new TextWebSocketFrame(last, 0, payload);
+                }
+            }
+        }
+
+        /**
+         * Libère la protection des segments restant à relire.
+         */
+        void close() {
+            synchronized (WebSocketJournal.this) {
+                if (replaying == this) {
+                    replaying = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return  le segment contenant l'offset, qui doit être conservé
+     */
+    private WebSocketJournalSegment find(long offset) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).baseOffset <= offset) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return segments.get(low);
+    }
+}
@@ -0,0 +1,251 @@
+package com.gaetanl.websocket.server;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+
+import org.slf4j.*;
+
+import io.netty.channel.*;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Journalise les frames de données envoyées à une session et les relit à la
+ * reconnexion du client.
+ *
+ * Le client identifie sa session par l'en-tête {@value #SESSION_HEADER} de
+ * la requête de handshake, et indique par {@value #OFFSET_HEADER} l'offset
+ * du dernier message reçu (0 pour une nouvelle session). La réponse du
+ * serveur porte dans {@value #OFFSET_HEADER} l'offset à partir duquel
+ * reprendre : les messages suivants sont relus depuis le journal, puis
+ * l'envoi se poursuit normalement. Une valeur supérieure à celle du client
+ * signale des messages perdus (rétention), une valeur inférieure un journal
+ * réinitialisé. L'identifiant de session doit être difficile à deviner.
+ *
+ * Placé après le WebSocketBackpressureHandler dans le sens sortant : seules
+ * les frames effectivement écrites reçoivent un offset. Les frames écrites
+ * pendant la relecture sont ajoutées au journal et envoyées à leur tour ;
+ * celles qui n'ont pu y être ajoutées sont retenues jusqu'à ce que la
+ * relecture ait envoyé les frames journalisées avant elles.
+ */
+public class WebSocketJournalHandler extends ChannelDuplexHandler {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketJournalHandler.class);
+
+    public static final String NAME = "journal";
+
+    public static final String SESSION_HEADER = "X-WebSocket-Session";
+    public static final String OFFSET_HEADER = "X-WebSocket-Offset";
+
+    /** Frames relues entre deux flush */
+    private static final int REPLAY_BATCH = 64;
+
+    private final WebSocketJournalStore store;
+
+    private String sessionId;
+    private long clientOffset;
+    private WebSocketJournal journal;
+
+    /** Relecture en cours, ou null */
+    private WebSocketJournal.Cursor cursor;
+
+    /** Frames non journalisées pendant la relecture, dans l'ordre d'écriture */
+    private final ArrayDeque<HeldWrite> held = new ArrayDeque<HeldWrite>();
+
+    public WebSocketJournalHandler(WebSocketJournalStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (journal == null && msg instanceof HttpRequest) {
+            HttpHeaders headers = ((HttpRequest) msg).headers();
+            String session = headers.get(SESSION_HEADER);
+            if (session != null && !WebSocketJournalStore.isValidSessionId(session)) {
+                logger.info("[NOK] Invalid session id '{}' from {}, not journaled", session, ctx.channel());
+                session = null;
+            }
+            sessionId = session;
+            clientOffset = 0;
+            String offset = headers.get(OFFSET_HEADER);
+            if (offset != null) {
+                try {
+                    clientOffset = Math.max(Long.parseLong(offset.trim()), 0);
+                }
+                catch (NumberFormatException e) {
+                    logger.info("[NOK] Invalid offset '{}' from {}, replaying session", offset, ctx.channel());
+                }
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (journal == null) {
+            if (sessionId != null && msg instanceof HttpResponse && ((HttpResponse) msg).status().equals(HttpResponseStatus.SWITCHING_PROTOCOLS)) {
+                resume(ctx, (HttpResponse) msg, promise);
+            }
+            ctx.write(msg, promise);
+            return;
+        }
+
+        if (!(msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame || msg instanceof ContinuationWebSocketFrame)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        long offset = store.append(journal, ctx.channel(), (WebSocketFrame) msg);
+        if (cursor == null) {
+            ctx.write(msg, promise);
+        }
+        else if (offset > 0) {
+            // Envoyée par la relecture, dans l'ordre du journal
+            ((WebSocketFrame) msg).release();
+            promise.trySuccess();
+        }
+        else {
+            // Envoyée directement, elle précéderait les frames pas encore relues
+            held.add(new HeldWrite(msg, promise, journal.getEndOffset()));
+        }
+    }
+
+    /**
+     * Attache le channel au journal de la session et indique au client
+     * l'offset de reprise. La relecture commence une fois la réponse de
+     * handshake écrite et le pipeline WebSocket en place.
+     */
+    private void resume(final ChannelHandlerContext ctx, HttpResponse response, ChannelPromise promise) {
+        try {
+            journal = store.attach(sessionId, ctx.channel());
+        }
+        catch (Exception e) {
+            logger.warn("Unable to open journal of session " + sessionId, e);
+            return;
+        }
+
+        long start = journal.getStartOffset();
+        long end = journal.getEndOffset();
+        long resumeOffset = Math.max(Math.min(clientOffset, end), start - 1);
+        response.headers().set(OFFSET_HEADER, resumeOffset);
+        if (resumeOffset != clientOffset) {
+            logger.info("[NOK] Session {} resumed at offset {} instead of {} (journal holds {} to {})",
+                    new Object[] { sessionId, resumeOffset, clientOffset, start, end });
+        }
+        else if (logger.isDebugEnabled()) {
+            logger.debug("Session {} resumed at offset {} on channel {}", new Object[] { sessionId, resumeOffset, ctx.channel() });
+        }
+
+        if (resumeOffset < end) {
+            cursor = journal.cursor(resumeOffset + 1);
+            promise.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (future.isSuccess()) {
+                        // Après les listeners du handshake, qui installent les encodeurs WebSocket
+                        ctx.executor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                replay(ctx);
+                            }
+                        });
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Relit le journal tant que le channel accepte les écritures ; la
+     * relecture reprend lorsqu'il redevient disponible.
+     */
+    private void replay(ChannelHandlerContext ctx) {
+        if (cursor == null) {
+            return;
+        }
+        Channel channel = ctx.channel();
+        int replayed = 0;
+        while (channel.isActive() && channel.isWritable()) {
+            writeHeld(ctx, cursor.nextOffset() - 1);
+            WebSocketFrame frame = cursor.next();
+            if (frame == null) {
+                cursor.close();
+                cursor = null;
+                writeHeld(ctx, Long.MAX_VALUE);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Session {} replayed up to offset {}", sessionId, journal.getEndOffset());
+                }
+                break;
+            }
+            ctx.write(frame, ctx.voidPromise());
+            if (++replayed % REPLAY_BATCH == 0) {
+                ctx.flush();
+            }
+        }
+        store.replayed(replayed);
+        ctx.flush();
+    }
+
+    /**
+     * Écrit les frames retenues dont les frames journalisées précédentes ont
+     * été envoyées.
+     *
+     * @param   sentOffset  offset de la dernière frame relue
+     */
+    private void writeHeld(ChannelHandlerContext ctx, long sentOffset) {
+        while (!held.isEmpty() && held.peek().afterOffset <= sentOffset) {
+            HeldWrite write = held.poll();
+            ctx.write(write.msg, write.promise);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (cursor != null && ctx.channel().isWritable()) {
+            replay(ctx);
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (journal != null) {
+            if (cursor != null) {
+                cursor.close();
+                cursor = null;
+            }
+            HeldWrite write;
+            while ((write = held.poll()) != null) {
+                write.discard();
+            }
+            store.detach(journal, ctx.channel());
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * @return  la session du channel, ou null s'il n'est pas journalisé
+     */
+    public String getSessionId() {
+        return journal != null ? sessionId : null;
+    }
+
+    private static final class HeldWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+        /** Offset de la dernière frame journalisée avant celle-ci */
+        private final long afterOffset;
+
+        private HeldWrite(Object msg, ChannelPromise promise, long afterOffset) {
+            this.msg = msg;
+            this.promise = promise;
+            this.afterOffset = afterOffset;
+        }
+
+        private void discard() {
+            ReferenceCountUtil.release(msg);
+            if (!promise.isVoid()) {
+                promise.tryFailure(new ClosedChannelException());
+            }
+        }
+    }
+}
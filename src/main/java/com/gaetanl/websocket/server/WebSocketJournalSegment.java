@@ -0,0 +1,256 @@
+package com.gaetanl.websocket.server;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+import io.netty.buffer.*;
+
+/**
+ * Segment d'un {@link WebSocketJournal} : un fichier de log et un index
+ * d'offsets, tous deux projetés en mémoire et alloués à leur taille finale.
+ *
+ * Un enregistrement est composé d'un en-tête (int32 : longueur du payload,
+ * type de frame et bit de validité ; int64 : date en millisecondes) suivi
+ * du payload de la frame. L'en-tête est écrit en dernier : un en-tête nul
+ * marque la fin du log. L'index contient la position (int32) de chaque
+ * enregistrement, l'offset d'un message se déduisant de son rang.
+ *
+ * Les écritures ne sont faites que sous le verrou du journal ; les lectures
+ * ne portent que sur des enregistrements complets.
+ */
+final class WebSocketJournalSegment {
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".index";
+
+    static final int RECORD_HEADER_SIZE = 12;
+    static final int TEXT = 0;
+    static final int BINARY = 1;
+    static final int CONTINUATION = 2;
+    static final int FINAL_FRAGMENT = 4;
+    private static final int VALID = 8;
+    private static final int FLAGS_BITS = 4;
+
+    /** Taille maximale d'un payload, limitée par l'en-tête */
+    static final int MAX_PAYLOAD_LENGTH = Integer.MAX_VALUE >>> FLAGS_BITS;
+
+    final long baseOffset;
+    private final File logFile;
+    private final File indexFile;
+    private final MappedByteBuffer log;
+    private final MappedByteBuffer index;
+
+    /** Nombre d'enregistrements et position d'écriture dans le log */
+    private int count;
+    private int position;
+
+    /** Date du dernier enregistrement, pour la rétention par âge */
+    private long lastTime;
+
+    private WebSocketJournalSegment(long baseOffset, File logFile, File indexFile, int capacity) throws IOException {
+        this.baseOffset = baseOffset;
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        this.log = map(logFile, capacity);
+        this.index = map(indexFile, (capacity / RECORD_HEADER_SIZE + 1) * 4);
+        this.lastTime = logFile.lastModified();
+    }
+
+    /**
+     * Projette le fichier en mémoire, en l'agrandissant à la taille indiquée
+     * s'il est plus petit. Le canal peut être fermé, la projection restant
+     * valide jusqu'à sa collecte par le GC.
+     */
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = Math.max(raf.length(), size);
+            raf.setLength(length);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    static String fileName(long baseOffset, String suffix) {
+        return String.format("%020d%s", baseOffset, suffix);
+    }
+
+    /**
+     * @return  l'offset de base du segment dont le log porte ce nom, ou -1
+     */
+    static long parseBaseOffset(String logFileName) {
+        if (!logFileName.endsWith(LOG_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(logFileName.substring(0, logFileName.length() - LOG_SUFFIX.length()));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static WebSocketJournalSegment create(File dir, long baseOffset, int capacity) throws IOException {
+        return new WebSocketJournalSegment(baseOffset,
+                new File(dir, fileName(baseOffset, LOG_SUFFIX)), new File(dir, fileName(baseOffset, INDEX_SUFFIX)), capacity);
+    }
+
+    /**
+     * Ouvre un segment existant. Les enregistrements complets écrits après la
+     * dernière entrée d'index sont indexés, un enregistrement tronqué est
+     * ignoré.
+     */
+    static WebSocketJournalSegment open(File logFile) throws IOException {
+        long baseOffset = parseBaseOffset(logFile.getName());
+        File indexFile = new File(logFile.getParentFile(), fileName(baseOffset, INDEX_SUFFIX));
+        WebSocketJournalSegment segment = new WebSocketJournalSegment(baseOffset, logFile, indexFile, (int) logFile.length());
+        segment.recover();
+        return segment;
+    }
+
+    private void recover() {
+        int entries = index.capacity() / 4;
+        int indexed = 0;
+        int previous = -1;
+        while (indexed < entries) {
+            int entry = index.getInt(indexed * 4);
+            if (entry <= previous || recordEnd(entry) < 0) {
+                break;
+            }
+            previous = entry;
+            indexed++;
+        }
+
+        count = indexed;
+        position = indexed == 0 ? 0 : recordEnd(previous);
+        while (count < entries) {
+            int end = recordEnd(position);
+            if (end < 0) {
+                break;
+            }
+            index.putInt(count * 4, position);
+            count++;
+            position = end;
+        }
+        if (count > 0) {
+            lastTime = log.getLong(index.getInt((count - 1) * 4) + 4);
+        }
+    }
+
+    /**
+     * @return  la fin de l'enregistrement complet à cette position, ou -1
+     */
+    private int recordEnd(int at) {
+        if (at < 0 || at + RECORD_HEADER_SIZE > log.capacity()) {
+            return -1;
+        }
+        int header = log.getInt(at);
+        if ((header & VALID) == 0) {
+            return -1;
+        }
+        long end = (long) at + RECORD_HEADER_SIZE + (header >>> FLAGS_BITS);
+        return end <= log.capacity() ? (int) end : -1;
+    }
+
+    /**
+     * @return  la taille minimale d'un segment pouvant contenir ce payload
+     */
+    static int capacityFor(int payloadLength) {
+        return RECORD_HEADER_SIZE + payloadLength;
+    }
+
+    /**
+     * @param   flags  type de la frame ({@link #TEXT}, {@link #BINARY} ou
+     *                 {@link #CONTINUATION}) et {@link #FINAL_FRAGMENT}
+     * @return  false si le segment est plein
+     */
+    boolean append(ByteBuf payload, int flags, long time) {
+        int length = payload.readableBytes();
+        if ((count + 1) * 4 > index.capacity() || (long) position + RECORD_HEADER_SIZE + length > log.capacity()) {
+            return false;
+        }
+
+        ByteBuffer target = log.duplicate();
+        target.position(position + RECORD_HEADER_SIZE);
+        target.limit(position + RECORD_HEADER_SIZE + length);
+        payload.getBytes(payload.readerIndex(), target);
+        log.putLong(position + 4, time);
+        log.putInt(position, length << FLAGS_BITS | VALID | flags);
+        index.putInt(count * 4, position);
+
+        count++;
+        position += RECORD_HEADER_SIZE + length;
+        lastTime = time;
+        return true;
+    }
+
+    /**
+     * @return  les indicateurs de l'enregistrement de rang {@code i}
+     */
+    int flags(int i) {
+        return log.getInt(index.getInt(i * 4)) & (VALID - 1);
+    }
+
+    /**
+     * @return  le payload de l'enregistrement de rang {@code i}, en lecture
+     *          seule et sans copie
+     */
+    ByteBuf payload(int i) {
+        int at = index.getInt(i * 4);
+        int length = log.getInt(at) >>> FLAGS_BITS;
+        ByteBuffer slice = log.duplicate();
+        slice.position(at + RECORD_HEADER_SIZE);
+        slice.limit(at + RECORD_HEADER_SIZE + length);
+        return Unpooled.wrappedBuffer(slice.slice().asReadOnlyBuffer());
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return  l'offset du dernier enregistrement, ou baseOffset - 1 si le
+     *          segment est vide
+     */
+    long lastOffset() {
+        return baseOffset + count - 1;
+    }
+
+    /**
+     * @return  les octets utilisés dans le log
+     */
+    int size() {
+        return position;
+    }
+
+    long lastTime() {
+        return lastTime;
+    }
+
+    void force() {
+        log.force();
+        index.force();
+    }
+
+    /**
+     * Écrit les données sur le disque et date les fichiers du dernier
+     * enregistrement. La projection est libérée par le GC.
+     */
+    void close() {
+        force();
+        if (count > 0) {
+            logFile.setLastModified(lastTime);
+        }
+    }
+
+    /**
+     * Supprime les fichiers. Les lectures en cours restent valides tant que
+     * leurs buffers sont référencés.
+     */
+    void delete() {
+        logFile.delete();
+        indexFile.delete();
+    }
+}
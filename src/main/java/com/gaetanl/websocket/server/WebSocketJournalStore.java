@@ -0,0 +1,200 @@
+package com.gaetanl.websocket.server;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.*;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * Journaux des sessions d'un serveur, un sous-répertoire par session. Un
+ * journal reste ouvert tant qu'un channel y est attaché ; une session qui
+ * se reconnecte alors que son ancien channel est encore ouvert en prend
+ * possession et l'ancien channel est fermé.
+ *
+ * La rétention est appliquée périodiquement aux journaux ouverts comme aux
+ * sessions déconnectées, dont les segments sont datés de leur dernier
+ * message.
+ */
+public class WebSocketJournalStore {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketJournalStore.class);
+
+    /** Identifiants de session utilisables comme nom de répertoire */
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final File dir;
+    private final int segmentSize;
+    private final long retentionBytes;
+    private final long retentionMillis;
+
+    private final ConcurrentMap<String, WebSocketJournal> journals = new ConcurrentHashMap<String, WebSocketJournal>();
+
+    private final LongAdder appendedMessages = new LongAdder();
+    private final LongAdder replayedMessages = new LongAdder();
+
+    private Future<?> retentionFuture;
+
+    public WebSocketJournalStore(WebSocketServerConfig config) throws IOException {
+        this.dir = new File(config.getJournalDir());
+        this.segmentSize = config.getJournalSegmentSize();
+        this.retentionBytes = config.getJournalRetentionBytes();
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(config.getJournalRetentionSeconds());
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + dir);
+        }
+    }
+
+    public static boolean isValidSessionId(String sessionId) {
+        return sessionId != null && SESSION_ID.matcher(sessionId).matches();
+    }
+
+    /**
+     * Attache le channel au journal de la session, ouvert ou créé au besoin.
+     * Le channel précédemment attaché est fermé.
+     */
+    synchronized WebSocketJournal attach(String sessionId, Channel channel) throws IOException {
+        WebSocketJournal journal = journals.get(sessionId);
+        if (journal == null) {
+            journal = WebSocketJournal.open(sessionId, new File(dir, sessionId), segmentSize, retentionBytes, retentionMillis);
+            journals.put(sessionId, journal);
+        }
+        Channel previous = journal.setOwner(channel);
+        if (previous != null && previous != channel) {
+            logger.info("[OK] Session {} taken over by {}, closing {}", new Object[] { sessionId, channel, previous });
+            previous.close();
+        }
+        return journal;
+    }
+
+    /**
+     * Ferme le journal si le channel en est encore le propriétaire.
+     */
+    synchronized void detach(WebSocketJournal journal, Channel channel) {
+        if (journal.isOwner(channel)) {
+            journal.close();
+            journals.remove(journal.getSessionId(), journal);
+        }
+    }
+
+    /**
+     * @return  l'offset du message, ou -1 s'il n'est pas journalisé
+     */
+    long append(WebSocketJournal journal, Channel channel, WebSocketFrame frame) {
+        try {
+            long offset = journal.append(channel, frame);
+            if (offset > 0) {
+                appendedMessages.increment();
+            }
+            return offset;
+        }
+        catch (IOException e) {
+            logger.warn("Unable to append to journal " + journal.getSessionId(), e);
+            return -1;
+        }
+    }
+
+    void replayed(int messages) {
+        replayedMessages.add(messages);
+    }
+
+    public synchronized void scheduleRetention(EventExecutorGroup executor, long period, TimeUnit unit) {
+        retentionFuture = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                applyRetention();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Applique la rétention aux journaux ouverts, puis aux sessions
+     * déconnectées : leurs segments expirés sont supprimés, ainsi que le
+     * répertoire d'une session qui n'en a plus.
+     */
+    public void applyRetention() {
+        long now = System.currentTimeMillis();
+        for (WebSocketJournal journal : journals.values()) {
+            journal.applyRetention(now);
+        }
+        if (retentionMillis <= 0) {
+            return;
+        }
+
+        File[] sessionDirs = dir.listFiles();
+        if (sessionDirs == null) {
+            return;
+        }
+        for (File sessionDir : sessionDirs) {
+            synchronized (this) {
+                if (sessionDir.isDirectory() && !journals.containsKey(sessionDir.getName())) {
+                    deleteExpired(sessionDir, now - retentionMillis);
+                }
+            }
+        }
+    }
+
+    private static void deleteExpired(File sessionDir, long expiry) {
+        File[] files = sessionDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        int remaining = 0;
+        for (File file : files) {
+            long baseOffset = WebSocketJournalSegment.parseBaseOffset(file.getName());
+            if (baseOffset <= 0) {
+                continue;
+            }
+            if (file.lastModified() < expiry) {
+                file.delete();
+                new File(sessionDir, WebSocketJournalSegment.fileName(baseOffset, WebSocketJournalSegment.INDEX_SUFFIX)).delete();
+            }
+            else {
+                remaining++;
+            }
+        }
+        if (remaining == 0) {
+            for (File file : sessionDir.listFiles()) {
+                file.delete();
+            }
+            sessionDir.delete();
+        }
+    }
+
+    /**
+     * Arrête la rétention et ferme les journaux ouverts.
+     */
+    public synchronized void close() {
+        if (retentionFuture != null) {
+            retentionFuture.cancel(false);
+            retentionFuture = null;
+        }
+        for (WebSocketJournal journal : journals.values()) {
+            journal.close();
+        }
+        journals.clear();
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * @return  le nombre de journaux ouverts, un par session connectée
+     */
+    public int getOpenJournals() {
+        return journals.size();
+    }
+
+    public long getAppendedMessages() {
+        return appendedMessages.sum();
+    }
+
+    public long getReplayedMessages() {
+        return replayedMessages.sum();
+    }
+}
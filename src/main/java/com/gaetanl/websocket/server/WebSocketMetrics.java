@@ -0,0 +1,452 @@
+package com.gaetanl.websocket.server;
+
+import java.util.concurrent.atomic.*;
+
+import org.HdrHistogram.*;
+
+import com.gaetanl.websocket.message.WsAckCache;
+
+import io.netty.buffer.*;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.concurrent.*;
+
+/**
+ * Métriques d'un serveur, alimentées par {@link WebSocketMetricsHandler} et
+ * {@link WebSocketServerHandler}. L'enregistrement se limite à des
+ * incréments de {@link LongAdder} et à des {@link Recorder} HdrHistogram,
+ * sans verrou sur le chemin des messages ; les agrégations sont faites à la
+ * lecture (JMX, {@link #toPrometheusText()}).
+ */
+public class WebSocketMetrics implements WebSocketMetricsMBean {
+    /** Types de frames, dans l'ordre des compteurs */
+    private static final String[] FRAME_TYPES = { "text", "binary", "continuation", "ping", "pong", "close" };
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final AtomicInteger activeConnections = new AtomicInteger(0);
+    private final LongAdder connectionsTotal = new LongAdder();
+    private final LongAdder decodeFailures = new LongAdder();
+    private final LongAdder cumulativeAcks = new LongAdder();
+    private final LongAdder cumulativelyAckedMessages = new LongAdder();
+
+    private final LongAdder[] framesReceived = newAdders();
+    private final LongAdder[] bytesReceived = newAdders();
+    private final LongAdder[] framesSent = newAdders();
+    private final LongAdder[] bytesSent = newAdders();
+
+    // Latences en nanosecondes : intervalles enregistrés sans verrou, cumulés à la lecture
+    private final Recorder handshakeLatency = new Recorder(3);
+    private final Recorder ackLatency = new Recorder(3);
+    private final Histogram handshakeLatencyTotal = new Histogram(3);
+    private final Histogram ackLatencyTotal = new Histogram(3);
+    private Histogram handshakeLatencyInterval;
+    private Histogram ackLatencyInterval;
+
+    private volatile EventLoopGroup eventLoopGroup;
+    private volatile ByteBufAllocatorMetric allocatorMetric;
+    private volatile WsAckCache ackCache;
+    private volatile WebSocketRateLimiter rateLimiter;
+    private volatile WebSocketJournalStore journalStore;
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[FRAME_TYPES.length];
+        for (int i = 0 ; i < adders.length ; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static int frameType(WebSocketFrame frame) {
+        if (frame instanceof TextWebSocketFrame) {
+            return 0;
+        }
+        if (frame instanceof BinaryWebSocketFrame) {
+            return 1;
+        }
+        if (frame instanceof ContinuationWebSocketFrame) {
+            return 2;
+        }
+        if (frame instanceof PingWebSocketFrame) {
+            return 3;
+        }
+        if (frame instanceof PongWebSocketFrame) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * @param   eventLoopGroup  event loops dont la file de tâches est mesurée
+     */
+    public void setEventLoopGroup(EventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    /**
+     * @param   allocator  allocateur des channels dont la mémoire utilisée
+     *                     est mesurée, si il expose ses métriques
+     */
+    public void setAllocator(ByteBufAllocator allocator) {
+        this.allocatorMetric = allocator instanceof ByteBufAllocatorMetricProvider
+                ? ((ByteBufAllocatorMetricProvider) allocator).metric()
+                : null;
+    }
+
+    /**
+     * @param   ackCache  cache des accusés de réception dont le taux de
+     *                    succès est mesuré, ou null
+     */
+    public void setAckCache(WsAckCache ackCache) {
+        this.ackCache = ackCache;
+    }
+
+    /**
+     * @param   rateLimiter  limites de débit dont les refus sont comptés, ou null
+     */
+    public void setRateLimiter(WebSocketRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @param   journalStore  journaux de session dont l'activité est
+     *                        mesurée, ou null
+     */
+    public void setJournalStore(WebSocketJournalStore journalStore) {
+        this.journalStore = journalStore;
+    }
+
+    void connectionOpened() {
+        activeConnections.incrementAndGet();
+        connectionsTotal.increment();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    void handshakeCompleted(long latencyNanos) {
+        handshakeLatency.recordValue(latencyNanos);
+    }
+
+    void frameReceived(WebSocketFrame frame) {
+        int type = frameType(frame);
+        framesReceived[type].increment();
+        bytesReceived[type].add(frame.content().readableBytes());
+    }
+
+    void frameSent(WebSocketFrame frame) {
+        int type = frameType(frame);
+        framesSent[type].increment();
+        bytesSent[type].add(frame.content().readableBytes());
+    }
+
+    void decodeFailed() {
+        decodeFailures.increment();
+    }
+
+    /**
+     * @param   latencyNanos  délai entre la réception du message et l'écriture
+     *                        de son accusé de réception
+     */
+    void ackWritten(long latencyNanos) {
+        ackLatency.recordValue(latencyNanos);
+    }
+
+    /**
+     * @param   messages      messages acquittés par l'accusé cumulatif
+     * @param   latencyNanos  délai depuis le traitement du plus ancien d'entre
+     *                        eux
+     */
+    void cumulativeAckWritten(int messages, long latencyNanos) {
+        cumulativeAcks.increment();
+        cumulativelyAckedMessages.add(messages);
+        ackLatency.recordValue(latencyNanos);
+    }
+
+    /**
+     * @return  une copie des latences de handshake cumulées, en nanosecondes
+     */
+    public synchronized Histogram getHandshakeLatency() {
+        handshakeLatencyInterval = handshakeLatency.getIntervalHistogram(handshakeLatencyInterval);
+        handshakeLatencyTotal.add(handshakeLatencyInterval);
+        return handshakeLatencyTotal.copy();
+    }
+
+    /**
+     * @return  une copie des latences message / accusé de réception cumulées,
+     *          en nanosecondes
+     */
+    public synchronized Histogram getAckLatency() {
+        ackLatencyInterval = ackLatency.getIntervalHistogram(ackLatencyInterval);
+        ackLatencyTotal.add(ackLatencyInterval);
+        return ackLatencyTotal.copy();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    @Override
+    public long getConnectionsTotal() {
+        return connectionsTotal.sum();
+    }
+
+    @Override
+    public long getFramesReceived() {
+        return sum(framesReceived);
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return sum(bytesReceived);
+    }
+
+    @Override
+    public long getFramesSent() {
+        return sum(framesSent);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return sum(bytesSent);
+    }
+
+    private static long sum(LongAdder[] adders) {
+        long sum = 0;
+        for (LongAdder adder : adders) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public long getDecodeFailures() {
+        return decodeFailures.sum();
+    }
+
+    @Override
+    public double getHandshakeLatencyP50Micros() {
+        return getHandshakeLatency().getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getHandshakeLatencyP99Micros() {
+        return getHandshakeLatency().getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getAckLatencyP50Micros() {
+        return getAckLatency().getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getAckLatencyP99Micros() {
+        return getAckLatency().getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getAckLatencyP999Micros() {
+        return getAckLatency().getValueAtPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getAckLatencyMaxMicros() {
+        return getAckLatency().getMaxValue() / 1000.0;
+    }
+
+    @Override
+    public long getAckCount() {
+        return getAckLatency().getTotalCount();
+    }
+
+    @Override
+    public long getCumulativeAckCount() {
+        return cumulativeAcks.sum();
+    }
+
+    @Override
+    public long getCumulativelyAckedMessages() {
+        return cumulativelyAckedMessages.sum();
+    }
+
+    /**
+     * @return  le nombre de tâches en attente dans les event loops, 0 si le
+     *          serveur n'est pas démarré
+     */
+    @Override
+    public int getEventLoopPendingTasks() {
+        int pending = 0;
+        EventLoopGroup group = eventLoopGroup;
+        if (group != null) {
+            for (EventExecutor executor : group) {
+                if (executor instanceof SingleThreadEventExecutor) {
+                    pending += ((SingleThreadEventExecutor) executor).pendingTasks();
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return  la mémoire hors tas réservée par l'allocateur, -1 si elle
+     *          n'est pas mesurée
+     */
+    @Override
+    public long getAllocatorDirectMemory() {
+        ByteBufAllocatorMetric metric = allocatorMetric;
+        return metric != null ? metric.usedDirectMemory() : -1;
+    }
+
+    @Override
+    public long getAllocatorHeapMemory() {
+        ByteBufAllocatorMetric metric = allocatorMetric;
+        return metric != null ? metric.usedHeapMemory() : -1;
+    }
+
+    /**
+     * @return  la part des accusés de réception servis depuis le cache, -1
+     *          si le cache est désactivé
+     */
+    @Override
+    public double getAckCacheHitRate() {
+        WsAckCache cache = ackCache;
+        return cache != null ? cache.getHitRate() : -1;
+    }
+
+    /**
+     * @return  les messages retardés par les limites de débit, -1 si elles
+     *          ne sont pas configurées
+     */
+    @Override
+    public long getRateLimitDelayedMessages() {
+        WebSocketRateLimiter limiter = rateLimiter;
+        return limiter != null ? limiter.getDelayedMessages() : -1;
+    }
+
+    @Override
+    public long getRateLimitDroppedMessages() {
+        WebSocketRateLimiter limiter = rateLimiter;
+        return limiter != null ? limiter.getDroppedMessages() : -1;
+    }
+
+    @Override
+    public long getRateLimitClosedConnections() {
+        WebSocketRateLimiter limiter = rateLimiter;
+        return limiter != null ? limiter.getClosedConnections() : -1;
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        WebSocketRateLimiter limiter = rateLimiter;
+        return limiter != null ? limiter.getRejectedConnections() : -1;
+    }
+
+    /**
+     * @return  les messages relus depuis les journaux de session, -1 s'ils
+     *          ne sont pas activés
+     */
+    @Override
+    public long getJournalReplayedMessages() {
+        WebSocketJournalStore store = journalStore;
+        return store != null ? store.getReplayedMessages() : -1;
+    }
+
+    /**
+     * @return  les métriques au format texte de Prometheus (version 0.0.4)
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+
+        gauge(out, "websocket_connections_active", "Open connections", getActiveConnections());
+        counter(out, "websocket_connections_total", "Accepted connections", getConnectionsTotal());
+        counter(out, "websocket_decode_failures_total", "Messages that couldn't be decoded", getDecodeFailures());
+
+        perFrameType(out, "websocket_frames_received_total", "Inbound frames", framesReceived);
+        perFrameType(out, "websocket_frame_bytes_received_total", "Inbound frame payload bytes", bytesReceived);
+        perFrameType(out, "websocket_frames_sent_total", "Outbound frames", framesSent);
+        perFrameType(out, "websocket_frame_bytes_sent_total", "Outbound frame payload bytes", bytesSent);
+
+        summary(out, "websocket_handshake_latency_seconds", "Connection to WebSocket handshake completion", getHandshakeLatency());
+        summary(out, "websocket_ack_latency_seconds", "Message reception to ack write", getAckLatency());
+        counter(out, "websocket_cumulative_acks_total", "Cumulative acks sent for sequenced messages", getCumulativeAckCount());
+        counter(out, "websocket_cumulatively_acked_messages_total", "Sequenced messages acknowledged by a cumulative ack", getCumulativelyAckedMessages());
+
+        WsAckCache cache = ackCache;
+        if (cache != null) {
+            counter(out, "websocket_ack_cache_hits_total", "Acks encoded from a cached text", cache.getHits());
+            counter(out, "websocket_ack_cache_misses_total", "Acks whose text had to be encoded", cache.getMisses());
+            counter(out, "websocket_ack_cache_evictions_total", "Cached texts evicted", cache.getEvictions());
+            gauge(out, "websocket_ack_cache_entries", "Cached texts", cache.size());
+        }
+
+        WebSocketRateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            header(out, "websocket_rate_limited_messages_total", "Messages over a rate limit", "counter");
+            out.append("websocket_rate_limited_messages_total{action=\"delayed\"} ").append(limiter.getDelayedMessages()).append('\n');
+            out.append("websocket_rate_limited_messages_total{action=\"dropped\"} ").append(limiter.getDroppedMessages()).append('\n');
+            counter(out, "websocket_rate_limit_closed_connections_total", "Connections closed for exceeding a rate limit", limiter.getClosedConnections());
+            counter(out, "websocket_rejected_connections_total", "Connections refused over a connection limit", limiter.getRejectedConnections());
+        }
+
+        WebSocketJournalStore store = journalStore;
+        if (store != null) {
+            counter(out, "websocket_journal_appended_total", "Frames appended to session journals", store.getAppendedMessages());
+            counter(out, "websocket_journal_replayed_total", "Frames replayed from session journals", store.getReplayedMessages());
+            gauge(out, "websocket_journal_open", "Open session journals", store.getOpenJournals());
+        }
+
+        if (allocatorMetric != null) {
+            gauge(out, "websocket_allocator_direct_bytes", "Direct memory held by the channel allocator", getAllocatorDirectMemory());
+            gauge(out, "websocket_allocator_heap_bytes", "Heap memory held by the channel allocator", getAllocatorHeapMemory());
+        }
+
+        EventLoopGroup group = eventLoopGroup;
+        if (group != null) {
+            header(out, "websocket_event_loop_pending_tasks", "Tasks waiting in each event loop", "gauge");
+            int i = 0;
+            for (EventExecutor executor : group) {
+                if (executor instanceof SingleThreadEventExecutor) {
+                    out.append("websocket_event_loop_pending_tasks{loop=\"").append(i).append("\"} ")
+                            .append(((SingleThreadEventExecutor) executor).pendingTasks()).append('\n');
+                }
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void perFrameType(StringBuilder out, String name, String help, LongAdder[] adders) {
+        header(out, name, help, "counter");
+        for (int i = 0 ; i < FRAME_TYPES.length ; i++) {
+            out.append(name).append("{type=\"").append(FRAME_TYPES[i]).append("\"} ").append(adders[i].sum()).append('\n');
+        }
+    }
+
+    private static void summary(StringBuilder out, String name, String help, Histogram nanos) {
+        header(out, name, help, "summary");
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(nanos.getValueAtPercentile(quantile * 100) / 1e9).append('\n');
+        }
+        long count = nanos.getTotalCount();
+        out.append(name).append("_sum ").append(nanos.getMean() * count / 1e9).append('\n');
+        out.append(name).append("_count ").append(count).append('\n');
+    }
+}
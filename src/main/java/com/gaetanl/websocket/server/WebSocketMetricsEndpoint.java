@@ -0,0 +1,83 @@
+package com.gaetanl.websocket.server;
+
+import java.net.InetSocketAddress;
+
+import org.slf4j.*;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.*;
+import io.netty.channel.*;
+import io.netty.handler.codec.http.*;
+
+/**
+ * Point d'accès HTTP local exposant les {@link WebSocketMetrics} au format
+ * Prometheus sur {@code GET /metrics}. Il partage l'event loop d'acceptation
+ * du serveur.
+ */
+public class WebSocketMetricsEndpoint {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketMetricsEndpoint.class);
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final WebSocketMetrics metrics;
+    private Channel channel;
+
+    public WebSocketMetricsEndpoint(WebSocketMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void start(EventLoopGroup group, Class<? extends ServerChannel> channelClass, String host, int port) throws InterruptedException {
+        ServerBootstrap b = new ServerBootstrap()
+                .group(group)
+                .channel(channelClass)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new HttpServerCodec());
+                        channel.pipeline().addLast(new HttpObjectAggregator(4096));
+                        channel.pipeline().addLast(new MetricsRequestHandler());
+                    }
+                });
+        channel = b.bind(host, port).sync().channel();
+        logger.info(String.format("[OK] Metrics available at http://%s:%d%s", host, localAddress().getPort(), PATH));
+    }
+
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) channel.localAddress();
+    }
+
+    public void stop() {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private class MetricsRequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            FullHttpResponse response;
+            if (request.method() != HttpMethod.GET) {
+                response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.METHOD_NOT_ALLOWED);
+            }
+            else if (!new QueryStringDecoder(request.uri()).path().equals(PATH)) {
+                response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.NOT_FOUND);
+            }
+            else {
+                ByteBuf content = ByteBufUtil.writeUtf8(ctx.alloc(), metrics.toPrometheusText());
+                response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.OK, content);
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+            }
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+            HttpUtil.setKeepAlive(response, keepAlive);
+            ChannelFuture future = ctx.writeAndFlush(response);
+            if (!keepAlive) {
+                future.addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+    }
+}
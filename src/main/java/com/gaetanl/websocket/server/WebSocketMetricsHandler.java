@@ -0,0 +1,58 @@
+package com.gaetanl.websocket.server;
+
+import io.netty.channel.*;
+import io.netty.handler.codec.http.websocketx.*;
+
+/**
+ * Alimente les {@link WebSocketMetrics} du serveur : connexions, durée du
+ * handshake et frames dans les deux sens. Placé juste après le
+ * WebSocketServerProtocolHandler, il voit les frames applicatives avant
+ * compression et chiffrement ; les octets comptés sont ceux des payloads.
+ */
+public class WebSocketMetricsHandler extends ChannelDuplexHandler {
+    public static final String NAME = "metrics";
+
+    private final WebSocketMetrics metrics;
+    private long activeTime;
+
+    public WebSocketMetricsHandler(WebSocketMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        activeTime = System.nanoTime();
+        metrics.connectionOpened();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        metrics.connectionClosed();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+            metrics.handshakeCompleted(System.nanoTime() - activeTime);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof WebSocketFrame) {
+            metrics.frameReceived((WebSocketFrame) msg);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof WebSocketFrame) {
+            metrics.frameSent((WebSocketFrame) msg);
+        }
+        super.write(ctx, msg, promise);
+    }
+}
@@ -0,0 +1,57 @@
+package com.gaetanl.websocket.server;
+
+/**
+ * Vue JMX de {@link WebSocketMetrics}. Les latences sont en microsecondes,
+ * cumulées depuis le démarrage du serveur.
+ */
+public interface WebSocketMetricsMBean {
+    int getActiveConnections();
+
+    long getConnectionsTotal();
+
+    long getFramesReceived();
+
+    long getBytesReceived();
+
+    long getFramesSent();
+
+    long getBytesSent();
+
+    long getDecodeFailures();
+
+    double getHandshakeLatencyP50Micros();
+
+    double getHandshakeLatencyP99Micros();
+
+    double getAckLatencyP50Micros();
+
+    double getAckLatencyP99Micros();
+
+    double getAckLatencyP999Micros();
+
+    double getAckLatencyMaxMicros();
+
+    long getAckCount();
+
+    long getCumulativeAckCount();
+
+    long getCumulativelyAckedMessages();
+
+    int getEventLoopPendingTasks();
+
+    long getAllocatorDirectMemory();
+
+    long getAllocatorHeapMemory();
+
+    double getAckCacheHitRate();
+
+    long getRateLimitDelayedMessages();
+
+    long getRateLimitDroppedMessages();
+
+    long getRateLimitClosedConnections();
+
+    long getRejectedConnections();
+
+    long getJournalReplayedMessages();
+}
@@ -0,0 +1,444 @@
+package com.gaetanl.websocket.server;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.*;
+
+import com.gaetanl.websocket.message.*;
+import com.google.gson.JsonParseException;
+
+import io.netty.bootstrap.*;
+import io.netty.buffer.*;
+import io.netty.channel.*;
+import io.netty.channel.group.*;
+import io.netty.channel.local.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.*;
+import io.netty.handler.codec.*;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+/**
+ * {@link WsMessageBus} en maillage complet : chaque noeud écoute sur son
+ * adresse de bus et se connecte à celle de chacun des autres noeuds, vers
+ * lesquels il envoie ses lots. Les adresses sont de la forme
+ * {@code host:port} (TCP) ou {@code local:<nom>} (transport en mémoire de
+ * Netty, pour plusieurs serveurs d'une même JVM).
+ *
+ * Un lot est une frame préfixée par sa longueur (int32), suite d'entrées :
+ *
+ * <pre>
+ * chaîne  sujet, null pour une diffusion (WsBinaryCodec#writeString)
+ * octet   encodage du message : 0 binaire (WsBinaryCodec), 1 JSON
+ * varint  longueur du message encodé
+ * ...     message encodé
+ * </pre>
+ *
+ * Un lot part après {@code busBatchSize} messages, {@link #MAX_BATCH_BYTES}
+ * octets ou {@code busBatchDelayMicros} après son premier message. Sans
+ * délai, il part dès que le thread du bus est disponible et regroupe les
+ * messages publiés entretemps ; les délais sont arrondis à la milliseconde
+ * supérieure par l'event loop NIO. Il est
+ * encodé une fois et le même buffer est écrit vers chaque noeud connecté ;
+ * le noeud destinataire le décode une fois et l'encode une fois par format
+ * d'échange pour ses channels (WebSocketChannelRegistry).
+ *
+ * La transmission est au plus une fois : un lot destiné à un noeud
+ * déconnecté est perdu pour lui, la connexion étant retentée toutes les
+ * {@code busReconnectDelayMillis}.
+ */
+public class WebSocketNodeBus implements WsMessageBus {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketNodeBus.class);
+
+    /** Taille au-delà de laquelle un lot part sans attendre */
+    static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    private static final String LOCAL_PREFIX = "local:";
+
+    private static final byte BINARY = 0;
+    private static final byte JSON = 1;
+
+    private final SocketAddress address;
+    private final List<SocketAddress> peers = new ArrayList<SocketAddress>();
+    private final int batchSize;
+    private final long batchDelayNanos;
+    private final long reconnectDelayMillis;
+    private final int maxFrameLength;
+    private final ByteBufAllocator alloc;
+
+    /** Identifiants récemment publiés ou reçus, gardés par eux-mêmes */
+    private final Map<Long, Boolean> recentIds;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedMessages = new LongAdder();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private volatile Listener listener;
+    private volatile EventLoopGroup group;
+    private volatile boolean running = false;
+    private Channel serverChannel;
+
+    /** Connexions sortantes, vers lesquelles les lots sont écrits */
+    private final ChannelGroup peerChannels = new DefaultChannelGroup("bus-peers", GlobalEventExecutor.INSTANCE);
+    /** Toutes les connexions du bus, fermées à l'arrêt */
+    private final ChannelGroup allChannels = new DefaultChannelGroup("bus", GlobalEventExecutor.INSTANCE);
+
+    // Lot en cours, gardé par this
+    private ByteBuf batch;
+    private int batchCount;
+    private ScheduledFuture<?> flushTimer;
+
+    public WebSocketNodeBus(WebSocketServerConfig config) {
+        this(config, config.getAllocator().newAllocator(config.isPreferDirect()));
+    }
+
+    /**
+     * @param   alloc  allocateur des lots, celui des channels du serveur
+     */
+    public WebSocketNodeBus(WebSocketServerConfig config, ByteBufAllocator alloc) {
+        this.alloc = alloc;
+        this.address = parseAddress(config.getBusAddress());
+        for (String peer : config.getBusPeers()) {
+            SocketAddress peerAddress = parseAddress(peer);
+            if ((peerAddress instanceof LocalAddress) != (address instanceof LocalAddress)) {
+                throw new IllegalArgumentException("Bus peer " + peer + " does not use the transport of " + config.getBusAddress());
+            }
+            peers.add(peerAddress);
+        }
+        this.batchSize = config.getBusBatchSize();
+        this.batchDelayNanos = TimeUnit.MICROSECONDS.toNanos(config.getBusBatchDelayMicros());
+        this.reconnectDelayMillis = config.getBusReconnectDelayMillis();
+        this.maxFrameLength = (int) Math.min(Integer.MAX_VALUE, config.getMaxMessageSize() + MAX_BATCH_BYTES);
+
+        final int dedupWindow = config.getBusDedupWindow();
+        this.recentIds = new LinkedHashMap<Long, Boolean>(16, 0.75f, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > dedupWindow;
+            }
+        };
+    }
+
+    /**
+     * @param   address  {@code host:port} ou {@code local:<nom>}
+     */
+    static SocketAddress parseAddress(String address) {
+        if (address == null || address.trim().isEmpty()) {
+            throw new IllegalArgumentException("Bus address must not be empty");
+        }
+        address = address.trim();
+        if (address.startsWith(LOCAL_PREFIX)) {
+            return new LocalAddress(address.substring(LOCAL_PREFIX.length()));
+        }
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Bus address must be host:port or local:<name>, got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+    }
+
+    @Override
+    public void start(Listener listener) throws Exception {
+        this.listener = listener;
+        group = new NioEventLoopGroup(1);
+        running = true;
+
+        final boolean local = address instanceof LocalAddress;
+        ServerBootstrap b = new ServerBootstrap()
+                .group(group)
+                .channel(local ? LocalServerChannel.class : NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        allChannels.add(channel);
+                        channel.pipeline().addLast(new LengthFieldBasedFrameDecoder(maxFrameLength, 0, 4, 0, 4));
+                        channel.pipeline().addLast(new BatchDecoder());
+                    }
+                });
+        if (!local) {
+            b.childOption(ChannelOption.TCP_NODELAY, true);
+        }
+        try {
+            serverChannel = b.bind(address).sync().channel();
+            allChannels.add(serverChannel);
+        }
+        catch (Exception e) {
+            stop();
+            throw e;
+        }
+
+        for (SocketAddress peer : peers) {
+            connect(peer);
+        }
+        logger.info("[OK] Message bus listening on {} ({} peer(s))", localAddress(), peers.size());
+    }
+
+    private void connect(final SocketAddress peer) {
+        if (!running) {
+            return;
+        }
+        final boolean local = peer instanceof LocalAddress;
+        Bootstrap b = new Bootstrap()
+                .group(group)
+                .channel(local ? LocalChannel.class : NioSocketChannel.class)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new LengthFieldPrepender(4));
+                    }
+                });
+        if (!local) {
+            b.option(ChannelOption.TCP_NODELAY, true);
+        }
+        b.connect(peer).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    logger.debug("[NOK] Bus peer {} unreachable: {}", peer, future.cause().toString());
+                    scheduleConnect(peer);
+                    return;
+                }
+                Channel channel = future.channel();
+                allChannels.add(channel);
+                peerChannels.add(channel);
+                logger.info("[OK] Bus peer {} connected", peer);
+                channel.closeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (running) {
+                            logger.info("[NOK] Bus peer {} disconnected", peer);
+                            scheduleConnect(peer);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void scheduleConnect(final SocketAddress peer) {
+        EventLoopGroup group = this.group;
+        if (!running || group == null || group.isShuttingDown()) {
+            return;
+        }
+        group.schedule(new Runnable() {
+            @Override
+            public void run() {
+                connect(peer);
+            }
+        }, reconnectDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean publish(String topic, WsMessage message) {
+        if (!firstSeen(message.getId())) {
+            duplicates.increment();
+            return false;
+        }
+        published.increment();
+        if (!running || peerChannels.isEmpty()) {
+            return true;
+        }
+
+        byte encoding;
+        ByteBuf encoded;
+        if (WsBinaryCodec.getInstance().canEncode(message)) {
+            encoding = BINARY;
+            encoded = WsBinaryCodec.getInstance().encode(alloc, message);
+        }
+        else {
+            encoding = JSON;
+            encoded = WsMessageCodec.getInstance().encode(alloc, message);
+        }
+
+        boolean flushNow;
+        try {
+            synchronized (this) {
+                if (batch == null) {
+                    batch = alloc.ioBuffer();
+                }
+                WsBinaryCodec.writeString(batch, topic);
+                batch.writeByte(encoding);
+                WsBinaryCodec.writeVarInt(batch, encoded.readableBytes());
+                batch.writeBytes(encoded);
+                batchCount++;
+
+                EventLoopGroup group = this.group;
+                flushNow = batchCount >= batchSize || batch.readableBytes() >= MAX_BATCH_BYTES || group == null;
+                if (!flushNow && batchCount == 1) {
+                    if (batchDelayNanos == 0) {
+                        group.execute(flushTask);
+                    }
+                    else {
+                        flushTimer = group.schedule(flushTask, batchDelayNanos, TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+        }
+        finally {
+            encoded.release();
+        }
+        if (flushNow) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Envoie le lot en cours aux noeuds connectés.
+     */
+    void flush() {
+        ByteBuf out;
+        int count;
+        synchronized (this) {
+            if (flushTimer != null) {
+                flushTimer.cancel(false);
+                flushTimer = null;
+            }
+            if (batch == null) {
+                return;
+            }
+            out = batch;
+            count = batchCount;
+            batch = null;
+            batchCount = 0;
+        }
+        batches.increment();
+        batchedMessages.add(count);
+        // Le groupe écrit un retainedDuplicate par noeud puis libère le lot
+        peerChannels.writeAndFlush(out);
+    }
+
+    /**
+     * @return  false si l'identifiant, non nul, a déjà été publié ou reçu
+     */
+    private boolean firstSeen(long id) {
+        if (id == 0) {
+            return true;
+        }
+        synchronized (recentIds) {
+            return recentIds.put(id, Boolean.TRUE) == null;
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        listener = null;
+        synchronized (this) {
+            if (flushTimer != null) {
+                flushTimer.cancel(false);
+                flushTimer = null;
+            }
+            if (batch != null) {
+                batch.release();
+                batch = null;
+                batchCount = 0;
+            }
+        }
+        allChannels.close().awaitUninterruptibly();
+        serverChannel = null;
+        if (group != null) {
+            group.shutdownGracefully();
+            group = null;
+        }
+    }
+
+    /**
+     * @return  l'adresse effectivement liée, utile avec un port éphémère (0)
+     */
+    public SocketAddress localAddress() {
+        return serverChannel != null ? serverChannel.localAddress() : address;
+    }
+
+    /**
+     * @return  le nombre de noeuds actuellement connectés
+     */
+    public int getConnectedPeers() {
+        return peerChannels.size();
+    }
+
+    /** Messages publiés par ce noeud, hors doublons */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /** Messages reçus des autres noeuds, doublons compris */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /** Messages publiés ou reçus écartés comme doublons */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return  le nombre moyen de messages par lot envoyé
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) batchedMessages.sum() / count;
+    }
+
+    /**
+     * Décode les lots reçus d'un autre noeud et remet leurs messages.
+     */
+    private class BatchDecoder extends SimpleChannelInboundHandler<ByteBuf> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            while (frame.isReadable()) {
+                String topic = WsBinaryCodec.readString(frame);
+                byte encoding = frame.readByte();
+                int length = WsBinaryCodec.readVarInt(frame);
+                if (length < 0 || length > frame.readableBytes()) {
+                    throw new CorruptedFrameException(String.format("Bus message length %d exceeds remaining %d bytes", length, frame.readableBytes()));
+                }
+                ByteBuf encoded = frame.readSlice(length);
+                WsMessage message = encoding == BINARY
+                        ? WsBinaryCodec.getInstance().decode(encoded)
+                        : WsMessageCodec.getInstance().decode(encoded);
+                received.increment();
+
+                if (message == null) {
+                    continue;
+                }
+                if (!firstSeen(message.getId())) {
+                    duplicates.increment();
+                    continue;
+                }
+                Listener listener = WebSocketNodeBus.this.listener;
+                if (listener != null) {
+                    listener.received(topic, message);
+                }
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (cause instanceof CorruptedFrameException || cause instanceof JsonParseException || cause instanceof TooLongFrameException) {
+                logger.warn("[NOK] Invalid batch from bus peer {}, closing: {}", ctx.channel().remoteAddress(), cause.getMessage());
+            }
+            else {
+                logger.warn("[NOK] Bus connection from " + ctx.channel().remoteAddress() + " failed", cause);
+            }
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.gaetanl.websocket.server;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.*;
+
+/**
+ * Exécuteur d'un channel : les tâches sont exécutées une à une, dans l'ordre
+ * de soumission, par l'exécuteur partagé. Les messages d'une connexion sont
+ * ainsi traités dans l'ordre de réception, sans monopoliser un thread.
+ *
+ * Si l'exécuteur partagé refuse la tâche (arrêté ou saturé), les tâches en
+ * attente ne seront jamais exécutées : elles sont retirées et abandonnées
+ * ({@link Discardable#discard(RejectedExecutionException)}), pour que leurs
+ * messages soient libérés et le channel fermé.
+ */
+final class WebSocketOrderedExecutor implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketOrderedExecutor.class);
+
+    /** Tâches exécutées avant de rendre le thread aux autres channels */
+    private static final int MAX_TASKS_PER_RUN = 16;
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Runnable runner = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                for (int i = 0 ; i < MAX_TASKS_PER_RUN && (task = tasks.poll()) != null ; i++) {
+                    try {
+                        task.run();
+                    }
+                    catch (Throwable t) {
+                        logger.warn("Unexpected exception in ordered task", t);
+                    }
+                }
+            }
+            finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    };
+
+    /**
+     * Tâche qui retient des ressources (message, buffers) jusqu'à son
+     * exécution.
+     */
+    interface Discardable extends Runnable {
+        /**
+         * Appelée à la place de {@link #run()} si la tâche ne peut pas être
+         * exécutée.
+         */
+        void discard(RejectedExecutionException cause);
+    }
+
+    WebSocketOrderedExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(runner);
+            }
+            catch (RejectedExecutionException e) {
+                // Les tâches ajoutées pendant l'abandon relancent la planification
+                int discarded = discard(e);
+                scheduled.set(false);
+                logger.warn("Ordered task rejected by the shared executor, {} pending tasks discarded: {}", discarded, e.getMessage());
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    private int discard(RejectedExecutionException cause) {
+        int discarded = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            discarded++;
+            if (task instanceof Discardable) {
+                try {
+                    ((Discardable) task).discard(cause);
+                }
+                catch (Throwable t) {
+                    logger.warn("Unexpected exception while discarding ordered task", t);
+                }
+            }
+        }
+        return discarded;
+    }
+}
@@ -0,0 +1,18 @@
+package com.gaetanl.websocket.server;
+
+/**
+ * Comportement d'une connexion dont le buffer d'écriture dépasse le seuil
+ * haut (le channel n'est plus {@link io.netty.channel.Channel#isWritable()
+ * writable}). Dans tous les cas la lecture est suspendue jusqu'au retour sous
+ * le seuil bas.
+ */
+public enum WebSocketOutboundPolicy {
+    /** Les écritures continuent d'être mises en file, seule la lecture est suspendue */
+    PAUSE_READS,
+
+    /** Les frames sont retenues dans une file bornée, les plus anciennes sont abandonnées */
+    DROP_OLDEST,
+
+    /** La connexion est fermée */
+    DISCONNECT
+}
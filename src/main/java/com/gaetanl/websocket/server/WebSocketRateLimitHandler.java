@@ -0,0 +1,193 @@
+package com.gaetanl.websocket.server;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.*;
+
+import io.netty.channel.*;
+import io.netty.handler.codec.http.websocketx.*;
+
+/**
+ * Applique les limites du {@link WebSocketRateLimiter} à une connexion.
+ * Placé avant le {@link WebSocketServerHandler}, il compte les messages
+ * (frames Text et Binary) et les octets de payload, continuations
+ * comprises.
+ *
+ * Un message fragmenté est accepté ou refusé sur sa première frame : les
+ * continuations d'un message accepté sont débitées sans être refusées, pour
+ * ne jamais transmettre un message tronqué.
+ */
+public class WebSocketRateLimitHandler extends ChannelInboundHandlerAdapter {
+    public static final String NAME = "rateLimit";
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketRateLimitHandler.class);
+
+    private final WebSocketRateLimiter limiter;
+    private WebSocketRateLimiter.Limits limits;
+
+    /** Frames retenues par la politique DELAY, dans l'ordre de réception */
+    private final ArrayDeque<WebSocketFrame> delayed = new ArrayDeque<WebSocketFrame>();
+    /** Les jetons de la première frame retenue sont déjà pris */
+    private boolean headReserved;
+
+    /** Continuations du message en cours à abandonner (DROP) */
+    private boolean dropping;
+
+    /** Connexion refusée ou fermée pour dépassement : les frames suivantes sont ignorées */
+    private boolean closing;
+
+    public WebSocketRateLimitHandler(WebSocketRateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        InetSocketAddress remote = WebSocketUtil.getRemoteAddress(ctx);
+        limits = limiter.openConnection(remote.getAddress());
+        super.channelActive(ctx);
+        if (limits == null) {
+            closing = true;
+            logger.info("[NOK] Connection from {} rejected: too many connections", remote);
+            ctx.close();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (limits != null) {
+            limiter.closeConnection(limits.address);
+            limits = null;
+        }
+        while (!delayed.isEmpty()) {
+            delayed.poll().release();
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame || msg instanceof ContinuationWebSocketFrame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        if (closing) {
+            frame.release();
+            return;
+        }
+
+        switch (limiter.getPolicy()) {
+        case DELAY:
+            delay(ctx, frame);
+            break;
+        case DROP:
+            drop(ctx, frame);
+            break;
+        default:
+            close(ctx, frame);
+            break;
+        }
+    }
+
+    private static int messageCount(WebSocketFrame frame) {
+        return frame instanceof ContinuationWebSocketFrame ? 0 : 1;
+    }
+
+    private void delay(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        if (!delayed.isEmpty()) {
+            // Les frames déjà décodées de la lecture en cours suivent la file
+            delayed.add(frame);
+            limiter.messageDelayed();
+            WebSocketReadSuspension.suspend(ctx.channel(), WebSocketReadSuspension.Reason.RATE_LIMIT);
+            return;
+        }
+
+        long wait = limits.reserve(messageCount(frame), frame.content().readableBytes());
+        if (wait == 0) {
+            ctx.fireChannelRead(frame);
+            return;
+        }
+        delayed.add(frame);
+        limiter.messageDelayed();
+        headReserved = true;
+        WebSocketReadSuspension.suspend(ctx.channel(), WebSocketReadSuspension.Reason.RATE_LIMIT);
+        scheduleDrain(ctx, wait);
+    }
+
+    private void scheduleDrain(final ChannelHandlerContext ctx, long wait) {
+        ctx.executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                drain(ctx);
+            }
+        }, wait, TimeUnit.NANOSECONDS);
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        if (limits == null) {
+            return;
+        }
+        boolean fired = false;
+        while (!delayed.isEmpty()) {
+            WebSocketFrame frame = delayed.peek();
+            if (!headReserved) {
+                long wait = limits.reserve(messageCount(frame), frame.content().readableBytes());
+                if (wait > 0) {
+                    headReserved = true;
+                    scheduleDrain(ctx, wait);
+                    break;
+                }
+            }
+            headReserved = false;
+            ctx.fireChannelRead(delayed.poll());
+            fired = true;
+        }
+        if (fired) {
+            // Le WebSocketServerHandler regroupe ses écritures jusqu'à la fin de lecture
+            ctx.fireChannelReadComplete();
+        }
+        if (delayed.isEmpty()) {
+            WebSocketReadSuspension.resume(ctx.channel(), WebSocketReadSuspension.Reason.RATE_LIMIT);
+        }
+    }
+
+    private void drop(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        int bytes = frame.content().readableBytes();
+        if (frame instanceof ContinuationWebSocketFrame) {
+            if (dropping) {
+                dropping = !frame.isFinalFragment();
+                frame.release();
+            }
+            else {
+                limits.reserve(0, bytes);
+                ctx.fireChannelRead(frame);
+            }
+            return;
+        }
+
+        if (limits.tryAcquire(1, bytes) > 0) {
+            limiter.messageDropped();
+            dropping = !frame.isFinalFragment();
+            if (logger.isDebugEnabled()) {
+                logger.debug("[NOK] websocket/in: message dropped on channel {}, rate limit exceeded", ctx.channel());
+            }
+            frame.release();
+            return;
+        }
+        ctx.fireChannelRead(frame);
+    }
+
+    private void close(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        if (limits.tryAcquire(messageCount(frame), frame.content().readableBytes()) == 0) {
+            ctx.fireChannelRead(frame);
+            return;
+        }
+        frame.release();
+        limiter.connectionClosed();
+        logger.info("[NOK] websocket/in: channel {} closed, rate limit exceeded", ctx.channel());
+        closing = true;
+        ctx.writeAndFlush(WebSocketCloseFrames.of(WebSocketCloseStatus.POLICY_VIOLATION)).addListener(ChannelFutureListener.CLOSE);
+    }
+}
@@ -0,0 +1,16 @@
+package com.gaetanl.websocket.server;
+
+/**
+ * Traitement d'un message qui dépasse une limite de débit
+ * ({@link WebSocketRateLimiter}).
+ */
+public enum WebSocketRateLimitPolicy {
+    /** La lecture de la connexion est suspendue jusqu'à ce que le débit le permette */
+    DELAY,
+
+    /** Le message est abandonné sans accusé de réception */
+    DROP,
+
+    /** La connexion est fermée avec le statut 1008 (policy violation) */
+    CLOSE
+}
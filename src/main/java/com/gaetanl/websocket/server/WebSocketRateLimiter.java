@@ -0,0 +1,262 @@
+package com.gaetanl.websocket.server;
+
+import java.net.InetAddress;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.BiFunction;
+
+/**
+ * Limites de débit d'un serveur, en messages et en octets par seconde, par
+ * connexion, par adresse IP distante et globalement, ainsi que le nombre de
+ * connexions simultanées total et par adresse. Partagé par tous les
+ * {@link WebSocketRateLimitHandler}.
+ *
+ * Le chemin des messages est sans verrou (token buckets à compareAndSet) ;
+ * seules l'ouverture et la fermeture des connexions mettent à jour la table
+ * des adresses. Une adresse sans connexion y reste tant que ses limites ne
+ * sont pas revenues pleines : se reconnecter ne les remet pas à zéro. Ces
+ * adresses inactives sont retirées au plus une fois par seconde, lors d'une
+ * fermeture de connexion.
+ */
+public class WebSocketRateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final BiFunction<InetAddress, Address, Address> IDLE_REMOVER = new BiFunction<InetAddress, Address, Address>() {
+        @Override
+        public Address apply(InetAddress key, Address state) {
+            return state.isIdle() ? null : state;
+        }
+    };
+
+    private final WebSocketServerConfig config;
+    private final WebSocketTokenBucket globalMessages;
+    private final WebSocketTokenBucket globalBytes;
+    private final ConcurrentMap<InetAddress, Address> addresses = new ConcurrentHashMap<InetAddress, Address>();
+    private final AtomicInteger connections = new AtomicInteger();
+    /** Dernier retrait des adresses inactives (System.nanoTime) */
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final LongAdder delayedMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder closedConnections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+
+    public WebSocketRateLimiter(WebSocketServerConfig config) {
+        this.config = config;
+        this.globalMessages = bucket(config.getGlobalMessagesPerSecond());
+        this.globalBytes = bucket(config.getGlobalBytesPerSecond());
+    }
+
+    /**
+     * @return  true si au moins une limite est configurée
+     */
+    public static boolean isEnabled(WebSocketServerConfig config) {
+        return config.getMaxConnections() > 0 || config.getMaxConnectionsPerIp() > 0
+                || config.getConnectionMessagesPerSecond() > 0 || config.getConnectionBytesPerSecond() > 0
+                || config.getIpMessagesPerSecond() > 0 || config.getIpBytesPerSecond() > 0
+                || config.getGlobalMessagesPerSecond() > 0 || config.getGlobalBytesPerSecond() > 0;
+    }
+
+    private static WebSocketTokenBucket bucket(int ratePerSecond) {
+        return ratePerSecond > 0 ? new WebSocketTokenBucket(ratePerSecond) : null;
+    }
+
+    public WebSocketRateLimitPolicy getPolicy() {
+        return config.getRateLimitPolicy();
+    }
+
+    /**
+     * Compte une nouvelle connexion depuis l'adresse.
+     *
+     * @return  les limites de la connexion, ou null si le nombre maximal de
+     *          connexions est atteint
+     */
+    Limits openConnection(final InetAddress address) {
+        int maxConnections = config.getMaxConnections();
+        if (connections.incrementAndGet() > maxConnections && maxConnections > 0) {
+            connections.decrementAndGet();
+            rejectedConnections.increment();
+            return null;
+        }
+
+        final int maxPerIp = config.getMaxConnectionsPerIp();
+        final boolean[] accepted = new boolean[1];
+        Address state = addresses.compute(address, new BiFunction<InetAddress, Address, Address>() {
+            @Override
+            public Address apply(InetAddress key, Address current) {
+                Address state = current != null ? current : new Address();
+                if (maxPerIp > 0 && state.connections >= maxPerIp) {
+                    return current;
+                }
+                state.connections++;
+                accepted[0] = true;
+                return state;
+            }
+        });
+        if (!accepted[0]) {
+            connections.decrementAndGet();
+            rejectedConnections.increment();
+            return null;
+        }
+        return new Limits(address, state);
+    }
+
+    void closeConnection(InetAddress address) {
+        connections.decrementAndGet();
+        addresses.computeIfPresent(address, new BiFunction<InetAddress, Address, Address>() {
+            @Override
+            public Address apply(InetAddress key, Address state) {
+                state.connections--;
+                return state.isIdle() ? null : state;
+            }
+        });
+
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last >= SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            sweep();
+        }
+    }
+
+    /**
+     * Retire les adresses sans connexion dont les limites sont pleines.
+     */
+    private void sweep() {
+        for (InetAddress address : addresses.keySet()) {
+            addresses.computeIfPresent(address, IDLE_REMOVER);
+        }
+    }
+
+    void messageDelayed() {
+        delayedMessages.increment();
+    }
+
+    void messageDropped() {
+        droppedMessages.increment();
+    }
+
+    void connectionClosed() {
+        closedConnections.increment();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public long getDelayedMessages() {
+        return delayedMessages.sum();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    public long getClosedConnections() {
+        return closedConnections.sum();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    /**
+     * @return  le nombre d'adresses suivies, avec ou sans connexion
+     */
+    int getTrackedAddresses() {
+        return addresses.size();
+    }
+
+    /**
+     * Compteur de connexions et limites de débit d'une adresse. Le compteur
+     * n'est modifié que sous le verrou de la table (compute).
+     */
+    private class Address {
+        int connections;
+        final WebSocketTokenBucket messages = bucket(config.getIpMessagesPerSecond());
+        final WebSocketTokenBucket bytes = bucket(config.getIpBytesPerSecond());
+
+        /**
+         * @return  true si l'adresse n'a plus de connexion et que ses limites
+         *          sont pleines : la retirer ne change rien
+         */
+        boolean isIdle() {
+            return connections == 0 && (messages == null || messages.isFull()) && (bytes == null || bytes.isFull());
+        }
+    }
+
+    /**
+     * Limites applicables à une connexion : les siennes, celles de son
+     * adresse et les limites globales.
+     */
+    final class Limits {
+        final InetAddress address;
+        private final WebSocketTokenBucket[] messages;
+        private final WebSocketTokenBucket[] bytes;
+
+        Limits(InetAddress address, Address state) {
+            this.address = address;
+            this.messages = nonNull(bucket(config.getConnectionMessagesPerSecond()), state.messages, globalMessages);
+            this.bytes = nonNull(bucket(config.getConnectionBytesPerSecond()), state.bytes, globalBytes);
+        }
+
+        /**
+         * Prend les jetons s'ils sont disponibles dans toutes les limites.
+         * Les limites déjà consultées avant un refus restent débitées.
+         *
+         * @return  0 si le message est accepté, sinon le délai en
+         *          nanosecondes avant qu'il puisse l'être
+         */
+        long tryAcquire(int messageCount, int byteCount) {
+            long wait = tryAcquire(messages, messageCount);
+            return wait > 0 ? wait : tryAcquire(bytes, byteCount);
+        }
+
+        /**
+         * Prend les jetons dans toutes les limites.
+         *
+         * @return  le délai en nanosecondes avant de traiter le message
+         */
+        long reserve(int messageCount, int byteCount) {
+            return Math.max(reserve(messages, messageCount), reserve(bytes, byteCount));
+        }
+
+        private long tryAcquire(WebSocketTokenBucket[] buckets, int permits) {
+            if (permits > 0) {
+                for (WebSocketTokenBucket bucket : buckets) {
+                    long wait = bucket.tryAcquire(permits);
+                    if (wait > 0) {
+                        return wait;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        private long reserve(WebSocketTokenBucket[] buckets, int permits) {
+            long wait = 0;
+            if (permits > 0) {
+                for (WebSocketTokenBucket bucket : buckets) {
+                    wait = Math.max(wait, bucket.reserve(permits));
+                }
+            }
+            return wait;
+        }
+    }
+
+    private static WebSocketTokenBucket[] nonNull(WebSocketTokenBucket... buckets) {
+        int count = 0;
+        for (WebSocketTokenBucket bucket : buckets) {
+            if (bucket != null) {
+                count++;
+            }
+        }
+        WebSocketTokenBucket[] result = new WebSocketTokenBucket[count];
+        int i = 0;
+        for (WebSocketTokenBucket bucket : buckets) {
+            if (bucket != null) {
+                result[i++] = bucket;
+            }
+        }
+        return result;
+    }
+}
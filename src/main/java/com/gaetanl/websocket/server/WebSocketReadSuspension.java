@@ -0,0 +1,79 @@
+package com.gaetanl.websocket.server;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * Suspension de la lecture d'un channel ({@code autoRead}), partagée par
+ * les handlers qui la demandent chacun pour leur propre raison. La lecture
+ * ne reprend que lorsque plus aucune raison ne la retient : un handler ne
+ * peut plus la relancer alors qu'un autre a encore besoin qu'elle reste
+ * suspendue.
+ *
+ * Toujours appelé depuis l'event loop du channel.
+ */
+public final class WebSocketReadSuspension {
+    /** Raisons de suspension, une par handler concerné */
+    public enum Reason {
+        /** Buffer d'écriture au-dessus du seuil haut (WebSocketBackpressureHandler) */
+        BACKPRESSURE,
+
+        /** {@code maxPendingMessages} traitements en attente (WebSocketServerHandler) */
+        PENDING_MESSAGES,
+
+        /** Message en flux dont le buffer de réception est plein (WebSocketServerHandler) */
+        STREAM_BUFFER,
+
+        /** Frames retenues par la politique DELAY (WebSocketRateLimitHandler) */
+        RATE_LIMIT;
+
+        private final int mask = 1 << ordinal();
+    }
+
+    private static final AttributeKey<WebSocketReadSuspension> ATTRIBUTE = AttributeKey.valueOf(WebSocketReadSuspension.class, "suspension");
+
+    private int reasons = 0;
+
+    private WebSocketReadSuspension() {
+    }
+
+    private static WebSocketReadSuspension of(Channel channel) {
+        WebSocketReadSuspension suspension = channel.attr(ATTRIBUTE).get();
+        if (suspension == null) {
+            suspension = new WebSocketReadSuspension();
+            channel.attr(ATTRIBUTE).set(suspension);
+        }
+        return suspension;
+    }
+
+    /**
+     * Suspend la lecture pour cette raison. Sans effet si elle la retient déjà.
+     */
+    public static void suspend(Channel channel, Reason reason) {
+        WebSocketReadSuspension suspension = of(channel);
+        if (suspension.reasons == 0) {
+            channel.config().setAutoRead(false);
+        }
+        suspension.reasons |= reason.mask;
+    }
+
+    /**
+     * Lève cette raison de suspension ; la lecture reprend si c'était la
+     * dernière.
+     */
+    public static void resume(Channel channel, Reason reason) {
+        WebSocketReadSuspension suspension = channel.attr(ATTRIBUTE).get();
+        if (suspension == null || (suspension.reasons & reason.mask) == 0) {
+            return;
+        }
+        suspension.reasons &= ~reason.mask;
+        if (suspension.reasons == 0) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    public static boolean isSuspended(Channel channel, Reason reason) {
+        WebSocketReadSuspension suspension = channel.attr(ATTRIBUTE).get();
+        return suspension != null && (suspension.reasons & reason.mask) != 0;
+    }
+}
@@ -1,36 +1,74 @@
 package com.gaetanl.websocket.server;
 
-import java.io.InputStream;
-import java.security.KeyStore;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.*;
 
-import javax.net.ssl.*;
+import javax.management.*;
 
 import org.slf4j.*;
 
+import com.gaetanl.websocket.message.*;
+
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.*;
-import io.netty.handler.ssl.*;
+import io.netty.util.ResourceLeakDetector;
 
 public class WebSocketServer {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServer.class);
 
     private enum WebSocketProtocol {WS, WSS};
-    private static final List<Channel> openChannels = new ArrayList<Channel>();
+
+    private final WebSocketServerConfig config;
+    private final ByteBufAllocator allocator;
+    private final WebSocketChannelRegistry channelRegistry;
+    private final List<Channel> serverChannels = new ArrayList<Channel>();
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private WebSocketSslContextProvider sslContextProvider;
+
+    /** Traitements applicatifs, partagés par tous les channels */
+    private final WsMessageDispatcher dispatcher;
+    private ExecutorService handlerExecutor;
+
+    private final WebSocketMetrics metrics = new WebSocketMetrics();
+    private WebSocketMetricsEndpoint metricsEndpoint;
+    private ObjectName metricsObjectName;
+
+    private WebSocketHeartbeat heartbeat;
+    private WsAckCache ackCache;
+    private WebSocketRateLimiter rateLimiter;
+    private WebSocketJournalStore journalStore;
+    private WsMessageBus messageBus;
+
+    /** Ajout de l'OutboundLoggingHandler aux nouveaux channels */
+    private volatile boolean outboundLogging = WebSocketFrameLogger.isEnabled();
+
+    public WebSocketServer(WebSocketServerConfig config) {
+        this(config, WebSocketServerHandler.defaultDispatcher());
+    }
+
+    public WebSocketServer(WebSocketServerConfig config, WsMessageDispatcher dispatcher) {
+        this.config = config;
+        this.dispatcher = dispatcher;
+        this.allocator = config.getAllocator().newAllocator(config.isPreferDirect());
+        this.channelRegistry = new WebSocketChannelRegistry(allocator);
+    }
 
     public static void main(String[] args) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
-        final String protocol;
-        final int port;
+        final WebSocketServerConfig config;
 
         logger.info("Initiating server configuration");
         try {
-            protocol = WebSocketProtocol.valueOf(args[0]).toString().toLowerCase();
-            port = Integer.valueOf(args[1]);
+            config = WebSocketServerConfig.fromProperties(System.getProperties());
+            config.setSsl(WebSocketProtocol.valueOf(args[0]) == WebSocketProtocol.WSS);
+            config.setPort(Integer.valueOf(args[1]));
         }
         catch (Exception e) {
             logger.error("Exception parsing main arguments", e);
@@ -47,69 +85,339 @@ public class WebSocketServer {
             throw new IllegalArgumentException("Excepted args: WS|WSS port [HTTPServerHandler class name], got: " + argsString.toString());
         }
 
-        // Configure the server
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup worker = new NioEventLoopGroup(1);
+        WebSocketServer server = new WebSocketServer(config);
         try {
-            ServerBootstrap b = new ServerBootstrap()
-                    .group(bossGroup, worker)
-                    .channel(NioServerSocketChannel.class)
-                    .handler(new LoggingHandler(LogLevel.INFO))
-                    .childHandler(new ChannelInitializer<Channel>() {
-                        @Override
-                        protected void initChannel(Channel channel) throws Exception {
-                            ChannelPipeline pipeline = channel.pipeline();
-
-                            if ("wss".equalsIgnoreCase(protocol)) {
-                                SslContext sslCtx = createSSLContext();
-                                pipeline.addLast(sslCtx.newHandler(channel.alloc()));
-                            }
-                            pipeline.addLast(new HttpServerCodec());
-                            pipeline.addLast(new HttpObjectAggregator(64000));
-                            pipeline.addLast(new WebSocketServerProtocolHandler("/") {
-                                @Override
-                                public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-                                    super.channelRead(ctx, msg);
-                                    logger.info(String.format("Received frame on channel %s", ctx.channel()));
-                                }
-                            });
-                            pipeline.addLast(new WebSocketServerHandler());
-                            pipeline.addLast(new OutboundLoggingHandler());
+            server.start();
+            server.serverChannels.get(0).closeFuture().sync();
+        }
+        catch (Exception e) {
+            logger.error("Exception starting server", e);
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Démarre le serveur et se lie au port configuré. Avec epoll et
+     * SO_REUSEPORT, chaque boucle d'acceptation se lie au même port et le
+     * noyau répartit les connexions entrantes entre elles.
+     */
+    public void start() throws Exception {
+        final String protocol = config.isSsl() ? "wss" : "ws";
+        final WebSocketTransport transport = config.resolveTransport();
+        final boolean reusePort = config.isReusePort() && transport == WebSocketTransport.EPOLL;
+        // Sur un port éphémère, chaque bind obtiendrait un port différent
+        final int binds = (reusePort && config.getPort() != 0) ? config.getAcceptorThreads() : 1;
+
+        final WebSocketHandlerExecutor handlerExecution = config.resolveHandlerExecutor();
+
+        if (config.getLeakDetection() != null) {
+            ResourceLeakDetector.setLevel(config.getLeakDetection());
+        }
+        if (config.getAckCacheSize() > 0) {
+            ackCache = new WsAckCache(config.getAckCacheSize(), config.getAckCacheMaxTextLength());
+        }
+        final WsAckCache sharedAckCache = ackCache;
+        if (WebSocketRateLimiter.isEnabled(config)) {
+            rateLimiter = new WebSocketRateLimiter(config);
+        }
+        final WebSocketRateLimiter sharedRateLimiter = rateLimiter;
+        if (config.getJournalDir() != null) {
+            journalStore = new WebSocketJournalStore(config);
+        }
+        final WebSocketJournalStore sharedJournalStore = journalStore;
+        if (messageBus == null && config.getBusAddress() != null) {
+            messageBus = new WebSocketNodeBus(config, allocator);
+        }
+
+        bossGroup = transport.newEventLoopGroup(config.getAcceptorThreads());
+        workerGroup = transport.newEventLoopGroup(config.getWorkerThreads());
+        handlerExecutor = handlerExecution.newExecutor(config.getHandlerThreads());
+        final Executor sharedHandlerExecutor = handlerExecutor;
+
+        // Le contexte SSL est construit une fois et partagé par tous les channels
+        if (config.isSsl()) {
+            sslContextProvider = new WebSocketSslContextProvider(config);
+            if (config.getSslReloadInterval() > 0) {
+                sslContextProvider.scheduleReload(bossGroup, config.getSslReloadInterval(), TimeUnit.SECONDS);
+            }
+        }
+        final WebSocketSslContextProvider sslProvider = sslContextProvider;
+
+        if (WebSocketHeartbeat.isEnabled(config)) {
+            heartbeat = new WebSocketHeartbeat(config.getReaderIdleSeconds(), config.getWriterIdleSeconds(), config.getAllIdleSeconds());
+        }
+        final WebSocketHeartbeat sharedHeartbeat = heartbeat;
+
+        if (journalStore != null) {
+            // Rétention vérifiée au dixième de sa durée, au plus chaque minute
+            long period = Math.max(1, Math.min(config.getJournalRetentionSeconds() > 0 ? config.getJournalRetentionSeconds() / 10 : 60, 60));
+            journalStore.scheduleRetention(bossGroup, period, TimeUnit.SECONDS);
+        }
+
+        ServerBootstrap b = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(transport.serverChannelClass())
+                .option(ChannelOption.SO_BACKLOG, config.getBacklog())
+                .option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+                .childOption(ChannelOption.SO_KEEPALIVE, config.isKeepAlive())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()))
+                .handler(new LoggingHandler(LogLevel.INFO))
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) throws Exception {
+                        ChannelPipeline pipeline = channel.pipeline();
+
+                        if (sharedHeartbeat != null) {
+                            pipeline.addLast(WebSocketIdleHandler.NAME, new WebSocketIdleHandler(sharedHeartbeat));
+                        }
+                        if (sslProvider != null) {
+                            pipeline.addLast(sslProvider.get().newHandler(channel.alloc()));
+                        }
+                        if (config.isFlushConsolidation()) {
+                            pipeline.addLast(new FlushConsolidationHandler(config.getMaxWritesPerFlush(), true));
                         }
-                    });
+                        pipeline.addLast(new HttpServerCodec());
+                        // Agrégation de la seule requête de handshake, les messages
+                        // WebSocket fragmentés sont traités par WebSocketServerHandler
+                        pipeline.addLast(new HttpObjectAggregator(config.getMaxHttpContentLength()));
+                        ChannelHandler compressionHandler = config.getCompression().newServerHandler();
+                        if (compressionHandler != null) {
+                            pipeline.addLast(compressionHandler);
+                        }
+                        // Avant le protocole pour lire la requête de handshake et compléter sa réponse
+                        if (sharedJournalStore != null) {
+                            pipeline.addLast(WebSocketJournalHandler.NAME, new WebSocketJournalHandler(sharedJournalStore));
+                        }
+                        pipeline.addLast(new WebSocketServerProtocolHandler("/", WsWireFormat.SUBPROTOCOLS, true, config.getMaxFramePayloadLength()));
+                        if (config.isMetrics()) {
+                            pipeline.addLast(WebSocketMetricsHandler.NAME, new WebSocketMetricsHandler(metrics));
+                        }
+                        if (sharedRateLimiter != null) {
+                            pipeline.addLast(WebSocketRateLimitHandler.NAME, new WebSocketRateLimitHandler(sharedRateLimiter));
+                        }
+                        pipeline.addLast(WebSocketBackpressureHandler.NAME,
+                                new WebSocketBackpressureHandler(config.getOutboundPolicy(), config.getMaxQueuedFrames()));
+                        // Placé avant le handler applicatif, qui écrit avec ctx.write()
+                        if (outboundLogging) {
+                            pipeline.addLast(OutboundLoggingHandler.NAME, new OutboundLoggingHandler());
+                        }
+                        pipeline.addLast(WebSocketServerHandler.NAME, new WebSocketServerHandler(dispatcher, channelRegistry, config, sharedHandlerExecutor,
+                                config.isMetrics() ? metrics : null, sharedAckCache));
+                    }
+                });
+        if (reusePort) {
+            b.option(WebSocketTransport.SO_REUSEPORT, true);
+        }
+        if (config.getReceiveBufferSize() > 0) {
+            b.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+        }
+        if (config.getSendBufferSize() > 0) {
+            b.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+        }
 
-            Channel ch = b.bind(port).sync().channel();
-            logger.info(String.format("[OK] Server started at %s://%s:%d", protocol, "localhost", port));
-            ch.closeFuture().sync();
+        try {
+            for (int i = 0 ; i < binds ; i++) {
+                serverChannels.add(b.bind(config.getPort()).sync().channel());
+            }
         }
         catch (InterruptedException e) {
-            logger.error("Exception starting server", e);
+            stop();
+            throw e;
         }
-        finally {
+
+        if (messageBus != null) {
+            messageBus.start(new WsMessageBus.Listener() {
+                @Override
+                public void received(String topic, WsMessage message) {
+                    channelRegistry.deliver(topic, message);
+                }
+            });
+            channelRegistry.setMessageBus(messageBus);
+        }
+
+        if (config.isMetrics()) {
+            metrics.setEventLoopGroup(workerGroup);
+            metrics.setAllocator(allocator);
+            metrics.setAckCache(ackCache);
+            metrics.setRateLimiter(rateLimiter);
+            metrics.setJournalStore(journalStore);
+            if (config.isJmx()) {
+                registerMBean();
+            }
+            if (config.getMetricsPort() >= 0) {
+                metricsEndpoint = new WebSocketMetricsEndpoint(metrics);
+                metricsEndpoint.start(bossGroup, transport.serverChannelClass(), config.getMetricsHost(), config.getMetricsPort());
+            }
+        }
+        logger.info(String.format("[OK] Server started at %s://%s:%d (transport=%s, acceptors=%d, workers=%d, handlers=%s, allocator=%s, leakDetection=%s)",
+                protocol, "localhost", config.getPort(), transport, binds, config.getWorkerThreads(), handlerExecution,
+                config.getAllocator(), ResourceLeakDetector.getLevel()));
+    }
+
+    /**
+     * Enregistre les métriques sous
+     * {@code com.gaetanl.websocket:type=WebSocketServer,port=<port>}.
+     */
+    private void registerMBean() {
+        try {
+            metricsObjectName = new ObjectName("com.gaetanl.websocket:type=WebSocketServer,port=" + localAddress().getPort());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsObjectName);
+        }
+        catch (JMException e) {
+            logger.warn("Unable to register metrics MBean", e);
+            metricsObjectName = null;
+        }
+    }
+
+    public void stop() {
+        if (messageBus != null) {
+            channelRegistry.setMessageBus(null);
+            messageBus.stop();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+            metricsEndpoint = null;
+        }
+        if (metricsObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsObjectName);
+            }
+            catch (JMException e) {
+                logger.warn("Unable to unregister metrics MBean", e);
+            }
+            metricsObjectName = null;
+        }
+        if (sslContextProvider != null) {
+            sslContextProvider.close();
+        }
+        if (heartbeat != null) {
+            heartbeat.stop();
+            heartbeat = null;
+        }
+        for (Channel serverChannel : serverChannels) {
+            serverChannel.close();
+        }
+        serverChannels.clear();
+        if (bossGroup != null) {
             bossGroup.shutdownGracefully();
-            worker.shutdownGracefully();
         }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdown();
+        }
+        if (ackCache != null) {
+            ackCache.clear();
+            ackCache = null;
+        }
+        if (journalStore != null) {
+            journalStore.close();
+            journalStore = null;
+        }
+    }
+
+    /**
+     * @return  l'adresse effectivement liée, utile avec un port éphémère (0)
+     */
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) serverChannels.get(0).localAddress();
+    }
+
+    public WebSocketServerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Active ou désactive le log des frames sortantes, pour les nouveaux
+     * channels comme pour ceux déjà ouverts.
+     */
+    public void setOutboundLogging(boolean outboundLogging) {
+        this.outboundLogging = outboundLogging;
+        for (Channel channel : channelRegistry.getChannels()) {
+            if (outboundLogging) {
+                OutboundLoggingHandler.install(channel);
+            }
+            else {
+                OutboundLoggingHandler.uninstall(channel);
+            }
+        }
+    }
+
+    public boolean isOutboundLogging() {
+        return outboundLogging;
+    }
+
+    /**
+     * @return  les limites de débit du serveur, ou null si aucune n'est configurée
+     */
+    public WebSocketRateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
-    public static void addOpenChannel(Channel channel) {
-        openChannels.add(channel);
+    /**
+     * @return  les journaux de session, ou null s'ils ne sont pas activés
+     */
+    public WebSocketJournalStore getJournalStore() {
+        return journalStore;
     }
 
-    private static SslContext createSSLContext() throws Exception {
-        String path = "/TestKeystore.jks";
-        logger.debug(String.format("keystore content=\"%s\"", WebSocketUtil.asString(WebSocketServer.class.getResourceAsStream(path))));
+    /**
+     * Relie le serveur aux autres noeuds par le bus fourni, démarré avec le
+     * serveur. À défaut, un {@link WebSocketNodeBus} est créé si
+     * {@code websocket.busAddress} est configurée.
+     */
+    public void setMessageBus(WsMessageBus messageBus) {
+        this.messageBus = messageBus;
+    }
+
+    /**
+     * @return  le bus vers les autres noeuds, ou null s'il n'y en a pas
+     */
+    public WsMessageBus getMessageBus() {
+        return messageBus;
+    }
 
-        KeyStore keystore = KeyStore.getInstance("JKS");
-        InputStream is = WebSocketServer.class.getResourceAsStream(path);
-        keystore.load(is, "testtest".toCharArray());
-        logger.debug("keystore=" + is);
+    public WebSocketMetrics getMetrics() {
+        return metrics;
+    }
 
-        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        keyManagerFactory.init(keystore, "testtest".toCharArray());
+    /**
+     * @return  le point d'accès Prometheus, ou null s'il n'est pas activé
+     */
+    public WebSocketMetricsEndpoint getMetricsEndpoint() {
+        return metricsEndpoint;
+    }
 
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+    public WebSocketChannelRegistry getChannelRegistry() {
+        return channelRegistry;
+    }
 
-        return SslContextBuilder.forServer(keyManagerFactory).build();
+    /**
+     * @return  l'état des files sortantes des connexions ouvertes, les plus
+     *          chargées en premier
+     */
+    public List<WebSocketBackpressureHandler.QueueStats> getOutboundQueueStats() {
+        List<WebSocketBackpressureHandler.QueueStats> stats = new ArrayList<WebSocketBackpressureHandler.QueueStats>();
+        for (Channel channel : channelRegistry.getChannels()) {
+            WebSocketBackpressureHandler handler = WebSocketBackpressureHandler.get(channel);
+            if (handler != null) {
+                stats.add(handler.stats(channel));
+            }
+        }
+        Collections.sort(stats, new Comparator<WebSocketBackpressureHandler.QueueStats>() {
+            @Override
+            public int compare(WebSocketBackpressureHandler.QueueStats a, WebSocketBackpressureHandler.QueueStats b) {
+                long pendingA = a.getPendingBytes() + a.getQueuedFrames();
+                long pendingB = b.getPendingBytes() + b.getQueuedFrames();
+                return pendingA < pendingB ? 1 : (pendingA == pendingB ? 0 : -1);
+            }
+        });
+        return stats;
     }
 }
@@ -0,0 +1,959 @@
+package com.gaetanl.websocket.server;
+
+import java.util.*;
+
+import io.netty.util.ResourceLeakDetector;
+
+/**
+ * Configuration de {@link WebSocketServer}. Les valeurs par défaut peuvent
+ * être surchargées par les propriétés système {@code websocket.*} (voir
+ * {@link #fromProperties(Properties)}).
+ */
+public class WebSocketServerConfig {
+    private boolean ssl = false;
+    private int port = 8080;
+
+    /** Nombre de boucles d'acceptation, chacune liée au port si SO_REUSEPORT est disponible */
+    private int acceptorThreads = 1;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Transport imposé, ou null pour une sélection automatique */
+    private WebSocketTransport transport = null;
+
+    private int backlog = 1024;
+    private boolean reusePort = true;
+    private boolean tcpNoDelay = true;
+    private boolean keepAlive = false;
+
+    /** Tailles des buffers socket, 0 pour la valeur du système */
+    private int receiveBufferSize = 0;
+    private int sendBufferSize = 0;
+
+    /** Keystore serveur (fichier), ou null pour le keystore de test du classpath */
+    private String keystorePath = null;
+    private String keystorePassword = "testtest";
+
+    /** Intervalle de vérification du keystore en secondes, 0 pour désactiver le rechargement */
+    private int sslReloadInterval = 30;
+
+    /** Cache des sessions TLS pour la reprise de session, 0 pour la valeur par défaut du provider */
+    private long sslSessionCacheSize = 20480;
+    private long sslSessionTimeout = 300;
+
+    private WebSocketCompressionConfig compression = new WebSocketCompressionConfig();
+
+    /** Nombre maximal d'accusés de réception écrits avant un flush forcé */
+    private int maxWritesPerFlush = 64;
+
+    /** Attente maximale d'une écriture avant flush, en microsecondes */
+    private long flushMaxLatencyMicros = 1000;
+
+    /**
+     * Regroupement des flush explicites (diffusions, etc.) par
+     * FlushConsolidationHandler. Désactivé par défaut : les accusés sont
+     * déjà regroupés par WebSocketServerHandler, dans la limite de
+     * {@code flushMaxLatencyMicros}, que ce second regroupement ne respecte
+     * pas.
+     */
+    private boolean flushConsolidation = false;
+
+    /** Seuils du buffer d'écriture par connexion, en octets (voir WebSocketBackpressureHandler) */
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+
+    private WebSocketOutboundPolicy outboundPolicy = WebSocketOutboundPolicy.PAUSE_READS;
+
+    /** Nombre de frames retenues par connexion avec la politique DROP_OLDEST */
+    private int maxQueuedFrames = 1024;
+
+    /** Exécution des traitements applicatifs, ou null pour une sélection automatique */
+    private WebSocketHandlerExecutor handlerExecutor = WebSocketHandlerExecutor.INLINE;
+
+    /** Taille du pool de traitement (WebSocketHandlerExecutor.POOL) */
+    private int handlerThreads = 64;
+
+    /** Messages en cours de traitement par connexion au-delà desquels la lecture est suspendue */
+    private int maxPendingMessages = 64;
+
+    /** Taille maximale de la requête HTTP de handshake agrégée */
+    private int maxHttpContentLength = 64000;
+
+    /** Taille maximale d'une frame WebSocket ; au-delà, les messages doivent être fragmentés */
+    private int maxFramePayloadLength = 65536;
+
+    /** Taille maximale d'un message fragmenté ou reçu en flux */
+    private long maxMessageSize = 64L * 1024 * 1024;
+
+    /** Octets reçus non encore décodés au-delà desquels la lecture d'un message en flux est suspendue */
+    private int streamBufferSize = 1024 * 1024;
+
+    /** Collecte des métriques (WebSocketMetricsHandler) et enregistrement JMX */
+    private boolean metrics = true;
+    private boolean jmx = true;
+
+    /** Port du point d'accès Prometheus, -1 pour le désactiver */
+    private int metricsPort = -1;
+    private String metricsHost = "127.0.0.1";
+
+    private WebSocketAllocator allocator = WebSocketAllocator.POOLED;
+    private boolean preferDirect = true;
+
+    /** Niveau de détection des fuites de ByteBuf (global à la JVM), ou null pour le défaut de Netty */
+    private ResourceLeakDetector.Level leakDetection = null;
+
+    /** Textes acquittés dont l'encodage est gardé en cache (WsAckCache), 0 (défaut) pour désactiver */
+    private int ackCacheSize = 0;
+    /** Longueur maximale, en caractères, d'un texte mis en cache */
+    private int ackCacheMaxTextLength = 4096;
+
+    /** Accusé cumulatif des messages séquencés après ce nombre de messages ou ce délai */
+    private int ackBatchSize = 32;
+    private int ackBatchDelayMillis = 10;
+    /** Codes des types dont les messages séquencés reçoivent aussi leur accusé individuel */
+    private Set<String> echoAckTypes = Collections.emptySet();
+
+    /** Messages binaires reçus obtenus d'un pool et rendus après traitement (voir setRecycleMessages) */
+    private boolean recycleMessages = false;
+
+    /** Traitement des messages au-delà des limites de débit (voir WebSocketRateLimiter) */
+    private WebSocketRateLimitPolicy rateLimitPolicy = WebSocketRateLimitPolicy.DELAY;
+
+    /** Connexions simultanées, au total et par adresse IP distante, 0 pour ne pas limiter */
+    private int maxConnections = 0;
+    private int maxConnectionsPerIp = 0;
+
+    /** Débits entrants par connexion, par adresse IP et globaux, 0 pour ne pas limiter */
+    private int connectionMessagesPerSecond = 0;
+    private int connectionBytesPerSecond = 0;
+    private int ipMessagesPerSecond = 0;
+    private int ipBytesPerSecond = 0;
+    private int globalMessagesPerSecond = 0;
+    private int globalBytesPerSecond = 0;
+
+    /** Répertoire des journaux de session (voir WebSocketJournalHandler), ou null pour les désactiver */
+    private String journalDir = null;
+    /** Taille d'un segment de journal, en octets */
+    private int journalSegmentSize = 16 * 1024 * 1024;
+    /** Rétention par session, en octets et en secondes, 0 pour ne pas limiter */
+    private long journalRetentionBytes = 256L * 1024 * 1024;
+    private int journalRetentionSeconds = 3600;
+
+    /** Adresse de ce noeud sur le bus inter-serveurs (voir WebSocketNodeBus), ou null pour le désactiver */
+    private String busAddress = null;
+    /** Adresses des autres noeuds du bus */
+    private List<String> busPeers = Collections.emptyList();
+    /** Envoi d'un lot aux autres noeuds après ce nombre de messages ou ce délai */
+    private int busBatchSize = 64;
+    private int busBatchDelayMicros = 0;
+    /** Identifiants de messages récents retenus pour écarter les doublons */
+    private int busDedupWindow = 65536;
+    /** Délai entre deux tentatives de connexion à un noeud */
+    private int busReconnectDelayMillis = 1000;
+
+    /**
+     * Délais d'inactivité en secondes (voir WebSocketIdleHandler), 0 pour
+     * désactiver. Désactivés par défaut : sans délai, aucun timer n'est créé.
+     */
+    private int readerIdleSeconds = 0;
+    private int writerIdleSeconds = 0;
+    private int allIdleSeconds = 0;
+
+    /**
+     * Surcharge la configuration par défaut avec les propriétés fournies :
+     * {@code websocket.acceptorThreads}, {@code websocket.workerThreads},
+     * {@code websocket.transport} (NIO|EPOLL), {@code websocket.backlog},
+     * {@code websocket.reusePort}, {@code websocket.tcpNoDelay},
+     * {@code websocket.keepAlive}, {@code websocket.receiveBufferSize},
+     * {@code websocket.sendBufferSize}, {@code websocket.keystorePath},
+     * {@code websocket.keystorePassword}, {@code websocket.sslReloadInterval},
+     * {@code websocket.sslSessionCacheSize}, {@code websocket.sslSessionTimeout},
+     * {@code websocket.maxWritesPerFlush}, {@code websocket.flushMaxLatencyMicros},
+     * {@code websocket.flushConsolidation}, {@code websocket.writeBufferLowWaterMark},
+     * {@code websocket.writeBufferHighWaterMark}, {@code websocket.outboundPolicy}
+     * (PAUSE_READS|DROP_OLDEST|DISCONNECT), {@code websocket.maxQueuedFrames},
+     * {@code websocket.handlerExecutor} (INLINE|POOL|VIRTUAL_THREADS|AUTO),
+     * {@code websocket.handlerThreads}, {@code websocket.maxPendingMessages},
+     * {@code websocket.maxHttpContentLength}, {@code websocket.maxFramePayloadLength},
+     * {@code websocket.maxMessageSize}, {@code websocket.streamBufferSize},
+     * {@code websocket.metrics}, {@code websocket.jmx}, {@code websocket.metricsPort},
+     * {@code websocket.metricsHost}, {@code websocket.readerIdleSeconds},
+     * {@code websocket.writerIdleSeconds}, {@code websocket.allIdleSeconds},
+     * {@code websocket.allocator} (POOLED|UNPOOLED), {@code websocket.preferDirect},
+     * {@code websocket.leakDetection} (DISABLED|SIMPLE|ADVANCED|PARANOID),
+     * {@code websocket.ackCacheSize}, {@code websocket.ackCacheMaxTextLength},
+     * {@code websocket.ackBatchSize}, {@code websocket.ackBatchDelayMillis},
+     * {@code websocket.echoAckTypes} (codes séparés par des virgules),
+     * {@code websocket.recycleMessages},
+     * {@code websocket.rateLimitPolicy} (DELAY|DROP|CLOSE), {@code websocket.maxConnections},
+     * {@code websocket.maxConnectionsPerIp}, {@code websocket.connectionMessagesPerSecond},
+     * {@code websocket.connectionBytesPerSecond}, {@code websocket.ipMessagesPerSecond},
+     * {@code websocket.ipBytesPerSecond}, {@code websocket.globalMessagesPerSecond},
+     * {@code websocket.globalBytesPerSecond}, {@code websocket.journalDir},
+     * {@code websocket.journalSegmentSize}, {@code websocket.journalRetentionBytes},
+     * {@code websocket.journalRetentionSeconds}, {@code websocket.busAddress}
+     * ({@code host:port} ou {@code local:<nom>}), {@code websocket.busPeers}
+     * (adresses séparées par des virgules), {@code websocket.busBatchSize},
+     * {@code websocket.busBatchDelayMicros}, {@code websocket.busDedupWindow},
+     * {@code websocket.busReconnectDelayMillis} et {@code websocket.compression.*} (voir
+     * {@link WebSocketCompressionConfig#fromProperties(Properties)}).
+     */
+    public static WebSocketServerConfig fromProperties(Properties properties) {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setAcceptorThreads(intProperty(properties, "websocket.acceptorThreads", config.getAcceptorThreads()));
+        config.setWorkerThreads(intProperty(properties, "websocket.workerThreads", config.getWorkerThreads()));
+        String transport = properties.getProperty("websocket.transport");
+        if (transport != null) {
+            config.setTransport(WebSocketTransport.valueOf(transport.toUpperCase()));
+        }
+        config.setBacklog(intProperty(properties, "websocket.backlog", config.getBacklog()));
+        config.setReusePort(booleanProperty(properties, "websocket.reusePort", config.isReusePort()));
+        config.setTcpNoDelay(booleanProperty(properties, "websocket.tcpNoDelay", config.isTcpNoDelay()));
+        config.setKeepAlive(booleanProperty(properties, "websocket.keepAlive", config.isKeepAlive()));
+        config.setReceiveBufferSize(intProperty(properties, "websocket.receiveBufferSize", config.getReceiveBufferSize()));
+        config.setSendBufferSize(intProperty(properties, "websocket.sendBufferSize", config.getSendBufferSize()));
+        config.setKeystorePath(properties.getProperty("websocket.keystorePath", config.getKeystorePath()));
+        config.setKeystorePassword(properties.getProperty("websocket.keystorePassword", config.getKeystorePassword()));
+        config.setSslReloadInterval(intProperty(properties, "websocket.sslReloadInterval", config.getSslReloadInterval()));
+        config.setSslSessionCacheSize(intProperty(properties, "websocket.sslSessionCacheSize", (int) config.getSslSessionCacheSize()));
+        config.setSslSessionTimeout(intProperty(properties, "websocket.sslSessionTimeout", (int) config.getSslSessionTimeout()));
+        config.setCompression(WebSocketCompressionConfig.fromProperties(properties));
+        config.setMaxWritesPerFlush(intProperty(properties, "websocket.maxWritesPerFlush", config.getMaxWritesPerFlush()));
+        config.setFlushMaxLatencyMicros(intProperty(properties, "websocket.flushMaxLatencyMicros", (int) config.getFlushMaxLatencyMicros()));
+        config.setFlushConsolidation(booleanProperty(properties, "websocket.flushConsolidation", config.isFlushConsolidation()));
+        config.setWriteBufferWaterMark(
+                intProperty(properties, "websocket.writeBufferLowWaterMark", config.getWriteBufferLowWaterMark()),
+                intProperty(properties, "websocket.writeBufferHighWaterMark", config.getWriteBufferHighWaterMark()));
+        String outboundPolicy = properties.getProperty("websocket.outboundPolicy");
+        if (outboundPolicy != null) {
+            config.setOutboundPolicy(WebSocketOutboundPolicy.valueOf(outboundPolicy.trim().toUpperCase()));
+        }
+        config.setMaxQueuedFrames(intProperty(properties, "websocket.maxQueuedFrames", config.getMaxQueuedFrames()));
+        String handlerExecutor = properties.getProperty("websocket.handlerExecutor");
+        if (handlerExecutor != null) {
+            handlerExecutor = handlerExecutor.trim().toUpperCase();
+            config.setHandlerExecutor("AUTO".equals(handlerExecutor) ? null : WebSocketHandlerExecutor.valueOf(handlerExecutor));
+        }
+        config.setHandlerThreads(intProperty(properties, "websocket.handlerThreads", config.getHandlerThreads()));
+        config.setMaxPendingMessages(intProperty(properties, "websocket.maxPendingMessages", config.getMaxPendingMessages()));
+        config.setMaxHttpContentLength(intProperty(properties, "websocket.maxHttpContentLength", config.getMaxHttpContentLength()));
+        config.setMaxFramePayloadLength(intProperty(properties, "websocket.maxFramePayloadLength", config.getMaxFramePayloadLength()));
+        String maxMessageSize = properties.getProperty("websocket.maxMessageSize");
+        if (maxMessageSize != null) {
+            config.setMaxMessageSize(Long.parseLong(maxMessageSize.trim()));
+        }
+        config.setStreamBufferSize(intProperty(properties, "websocket.streamBufferSize", config.getStreamBufferSize()));
+        config.setMetrics(booleanProperty(properties, "websocket.metrics", config.isMetrics()));
+        config.setJmx(booleanProperty(properties, "websocket.jmx", config.isJmx()));
+        config.setMetricsPort(intProperty(properties, "websocket.metricsPort", config.getMetricsPort()));
+        config.setMetricsHost(properties.getProperty("websocket.metricsHost", config.getMetricsHost()));
+        config.setReaderIdleSeconds(intProperty(properties, "websocket.readerIdleSeconds", config.getReaderIdleSeconds()));
+        config.setWriterIdleSeconds(intProperty(properties, "websocket.writerIdleSeconds", config.getWriterIdleSeconds()));
+        config.setAllIdleSeconds(intProperty(properties, "websocket.allIdleSeconds", config.getAllIdleSeconds()));
+        String allocator = properties.getProperty("websocket.allocator");
+        if (allocator != null) {
+            config.setAllocator(WebSocketAllocator.valueOf(allocator.trim().toUpperCase()));
+        }
+        config.setPreferDirect(booleanProperty(properties, "websocket.preferDirect", config.isPreferDirect()));
+        String leakDetection = properties.getProperty("websocket.leakDetection");
+        if (leakDetection != null) {
+            config.setLeakDetection(ResourceLeakDetector.Level.valueOf(leakDetection.trim().toUpperCase()));
+        }
+        config.setAckCacheSize(intProperty(properties, "websocket.ackCacheSize", config.getAckCacheSize()));
+        config.setAckCacheMaxTextLength(intProperty(properties, "websocket.ackCacheMaxTextLength", config.getAckCacheMaxTextLength()));
+        config.setAckBatchSize(intProperty(properties, "websocket.ackBatchSize", config.getAckBatchSize()));
+        config.setAckBatchDelayMillis(intProperty(properties, "websocket.ackBatchDelayMillis", config.getAckBatchDelayMillis()));
+        String echoAckTypes = properties.getProperty("websocket.echoAckTypes");
+        if (echoAckTypes != null) {
+            Set<String> types = new HashSet<String>();
+            for (String type : echoAckTypes.split(",")) {
+                if (!type.trim().isEmpty()) {
+                    types.add(type.trim());
+                }
+            }
+            config.setEchoAckTypes(types);
+        }
+        config.setRecycleMessages(booleanProperty(properties, "websocket.recycleMessages", config.isRecycleMessages()));
+        String rateLimitPolicy = properties.getProperty("websocket.rateLimitPolicy");
+        if (rateLimitPolicy != null) {
+            config.setRateLimitPolicy(WebSocketRateLimitPolicy.valueOf(rateLimitPolicy.trim().toUpperCase()));
+        }
+        config.setMaxConnections(intProperty(properties, "websocket.maxConnections", config.getMaxConnections()));
+        config.setMaxConnectionsPerIp(intProperty(properties, "websocket.maxConnectionsPerIp", config.getMaxConnectionsPerIp()));
+        config.setConnectionMessagesPerSecond(intProperty(properties, "websocket.connectionMessagesPerSecond", config.getConnectionMessagesPerSecond()));
+        config.setConnectionBytesPerSecond(intProperty(properties, "websocket.connectionBytesPerSecond", config.getConnectionBytesPerSecond()));
+        config.setIpMessagesPerSecond(intProperty(properties, "websocket.ipMessagesPerSecond", config.getIpMessagesPerSecond()));
+        config.setIpBytesPerSecond(intProperty(properties, "websocket.ipBytesPerSecond", config.getIpBytesPerSecond()));
+        config.setGlobalMessagesPerSecond(intProperty(properties, "websocket.globalMessagesPerSecond", config.getGlobalMessagesPerSecond()));
+        config.setGlobalBytesPerSecond(intProperty(properties, "websocket.globalBytesPerSecond", config.getGlobalBytesPerSecond()));
+        config.setJournalDir(properties.getProperty("websocket.journalDir", config.getJournalDir()));
+        config.setJournalSegmentSize(intProperty(properties, "websocket.journalSegmentSize", config.getJournalSegmentSize()));
+        String journalRetentionBytes = properties.getProperty("websocket.journalRetentionBytes");
+        if (journalRetentionBytes != null) {
+            config.setJournalRetentionBytes(Long.parseLong(journalRetentionBytes.trim()));
+        }
+        config.setJournalRetentionSeconds(intProperty(properties, "websocket.journalRetentionSeconds", config.getJournalRetentionSeconds()));
+        config.setBusAddress(properties.getProperty("websocket.busAddress", config.getBusAddress()));
+        String busPeers = properties.getProperty("websocket.busPeers");
+        if (busPeers != null) {
+            List<String> peers = new ArrayList<String>();
+            for (String peer : busPeers.split(",")) {
+                if (!peer.trim().isEmpty()) {
+                    peers.add(peer.trim());
+                }
+            }
+            config.setBusPeers(peers);
+        }
+        config.setBusBatchSize(intProperty(properties, "websocket.busBatchSize", config.getBusBatchSize()));
+        config.setBusBatchDelayMicros(intProperty(properties, "websocket.busBatchDelayMicros", config.getBusBatchDelayMicros()));
+        config.setBusDedupWindow(intProperty(properties, "websocket.busDedupWindow", config.getBusDedupWindow()));
+        config.setBusReconnectDelayMillis(intProperty(properties, "websocket.busReconnectDelayMillis", config.getBusReconnectDelayMillis()));
+        return config;
+    }
+
+    private static int intProperty(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static boolean booleanProperty(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * @return  le transport imposé s'il est défini, sinon epoll lorsqu'il
+     *          est disponible et NIO à défaut
+     */
+    public WebSocketTransport resolveTransport() {
+        return transport != null ? transport : WebSocketTransport.auto();
+    }
+
+    /**
+     * @return  l'exécution configurée (INLINE par défaut), ou pour null les
+     *          threads virtuels lorsqu'ils sont disponibles et un pool à
+     *          défaut
+     */
+    public WebSocketHandlerExecutor resolveHandlerExecutor() {
+        return handlerExecutor != null ? handlerExecutor : WebSocketHandlerExecutor.auto();
+    }
+
+    public boolean isSsl() {
+        return ssl;
+    }
+
+    public void setSsl(boolean ssl) {
+        this.ssl = ssl;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getAcceptorThreads() {
+        return acceptorThreads;
+    }
+
+    public void setAcceptorThreads(int acceptorThreads) {
+        if (acceptorThreads < 1) {
+            throw new IllegalArgumentException("acceptorThreads must be >= 1, got " + acceptorThreads);
+        }
+        this.acceptorThreads = acceptorThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("workerThreads must be >= 1, got " + workerThreads);
+        }
+        this.workerThreads = workerThreads;
+    }
+
+    public WebSocketTransport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(WebSocketTransport transport) {
+        this.transport = transport;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public String getKeystorePath() {
+        return keystorePath;
+    }
+
+    public void setKeystorePath(String keystorePath) {
+        this.keystorePath = keystorePath;
+    }
+
+    public String getKeystorePassword() {
+        return keystorePassword;
+    }
+
+    public void setKeystorePassword(String keystorePassword) {
+        this.keystorePassword = keystorePassword;
+    }
+
+    public int getSslReloadInterval() {
+        return sslReloadInterval;
+    }
+
+    public void setSslReloadInterval(int sslReloadInterval) {
+        this.sslReloadInterval = sslReloadInterval;
+    }
+
+    public long getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public void setSslSessionCacheSize(long sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    public long getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    public void setSslSessionTimeout(long sslSessionTimeout) {
+        this.sslSessionTimeout = sslSessionTimeout;
+    }
+
+    public WebSocketCompressionConfig getCompression() {
+        return compression;
+    }
+
+    public void setCompression(WebSocketCompressionConfig compression) {
+        this.compression = compression;
+    }
+
+    public int getMaxWritesPerFlush() {
+        return maxWritesPerFlush;
+    }
+
+    public void setMaxWritesPerFlush(int maxWritesPerFlush) {
+        if (maxWritesPerFlush < 1) {
+            throw new IllegalArgumentException("maxWritesPerFlush must be >= 1, got " + maxWritesPerFlush);
+        }
+        this.maxWritesPerFlush = maxWritesPerFlush;
+    }
+
+    public long getFlushMaxLatencyMicros() {
+        return flushMaxLatencyMicros;
+    }
+
+    public void setFlushMaxLatencyMicros(long flushMaxLatencyMicros) {
+        this.flushMaxLatencyMicros = flushMaxLatencyMicros;
+    }
+
+    public boolean isFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    public void setFlushConsolidation(boolean flushConsolidation) {
+        this.flushConsolidation = flushConsolidation;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    /**
+     * Les deux seuils sont fixés ensemble, le seuil bas ne pouvant dépasser
+     * le seuil haut.
+     */
+    public void setWriteBufferWaterMark(int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException(String.format("Invalid write buffer water marks: low=%d, high=%d", low, high));
+        }
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+    }
+
+    public WebSocketOutboundPolicy getOutboundPolicy() {
+        return outboundPolicy;
+    }
+
+    public void setOutboundPolicy(WebSocketOutboundPolicy outboundPolicy) {
+        this.outboundPolicy = outboundPolicy;
+    }
+
+    public int getMaxQueuedFrames() {
+        return maxQueuedFrames;
+    }
+
+    public void setMaxQueuedFrames(int maxQueuedFrames) {
+        if (maxQueuedFrames < 1) {
+            throw new IllegalArgumentException("maxQueuedFrames must be >= 1, got " + maxQueuedFrames);
+        }
+        this.maxQueuedFrames = maxQueuedFrames;
+    }
+
+    public WebSocketHandlerExecutor getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    public void setHandlerExecutor(WebSocketHandlerExecutor handlerExecutor) {
+        this.handlerExecutor = handlerExecutor;
+    }
+
+    public int getHandlerThreads() {
+        return handlerThreads;
+    }
+
+    public void setHandlerThreads(int handlerThreads) {
+        if (handlerThreads < 1) {
+            throw new IllegalArgumentException("handlerThreads must be >= 1, got " + handlerThreads);
+        }
+        this.handlerThreads = handlerThreads;
+    }
+
+    public int getMaxPendingMessages() {
+        return maxPendingMessages;
+    }
+
+    public void setMaxPendingMessages(int maxPendingMessages) {
+        if (maxPendingMessages < 1) {
+            throw new IllegalArgumentException("maxPendingMessages must be >= 1, got " + maxPendingMessages);
+        }
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    public int getMaxHttpContentLength() {
+        return maxHttpContentLength;
+    }
+
+    public void setMaxHttpContentLength(int maxHttpContentLength) {
+        this.maxHttpContentLength = maxHttpContentLength;
+    }
+
+    public int getMaxFramePayloadLength() {
+        return maxFramePayloadLength;
+    }
+
+    public void setMaxFramePayloadLength(int maxFramePayloadLength) {
+        this.maxFramePayloadLength = maxFramePayloadLength;
+    }
+
+    public long getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(long maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public int getStreamBufferSize() {
+        return streamBufferSize;
+    }
+
+    public void setStreamBufferSize(int streamBufferSize) {
+        if (streamBufferSize < 1) {
+            throw new IllegalArgumentException("streamBufferSize must be >= 1, got " + streamBufferSize);
+        }
+        this.streamBufferSize = streamBufferSize;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    public String getMetricsHost() {
+        return metricsHost;
+    }
+
+    public void setMetricsHost(String metricsHost) {
+        this.metricsHost = metricsHost;
+    }
+
+    public int getReaderIdleSeconds() {
+        return readerIdleSeconds;
+    }
+
+    public void setReaderIdleSeconds(int readerIdleSeconds) {
+        this.readerIdleSeconds = readerIdleSeconds;
+    }
+
+    public int getWriterIdleSeconds() {
+        return writerIdleSeconds;
+    }
+
+    public void setWriterIdleSeconds(int writerIdleSeconds) {
+        this.writerIdleSeconds = writerIdleSeconds;
+    }
+
+    public int getAllIdleSeconds() {
+        return allIdleSeconds;
+    }
+
+    public void setAllIdleSeconds(int allIdleSeconds) {
+        this.allIdleSeconds = allIdleSeconds;
+    }
+
+    public WebSocketAllocator getAllocator() {
+        return allocator;
+    }
+
+    public void setAllocator(WebSocketAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public boolean isPreferDirect() {
+        return preferDirect;
+    }
+
+    public void setPreferDirect(boolean preferDirect) {
+        this.preferDirect = preferDirect;
+    }
+
+    public ResourceLeakDetector.Level getLeakDetection() {
+        return leakDetection;
+    }
+
+    public void setLeakDetection(ResourceLeakDetector.Level leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    public int getAckCacheSize() {
+        return ackCacheSize;
+    }
+
+    public void setAckCacheSize(int ackCacheSize) {
+        this.ackCacheSize = ackCacheSize;
+    }
+
+    public int getAckCacheMaxTextLength() {
+        return ackCacheMaxTextLength;
+    }
+
+    public void setAckCacheMaxTextLength(int ackCacheMaxTextLength) {
+        this.ackCacheMaxTextLength = ackCacheMaxTextLength;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public void setAckBatchSize(int ackBatchSize) {
+        if (ackBatchSize < 1) {
+            throw new IllegalArgumentException("ackBatchSize must be >= 1, got " + ackBatchSize);
+        }
+        this.ackBatchSize = ackBatchSize;
+    }
+
+    public int getAckBatchDelayMillis() {
+        return ackBatchDelayMillis;
+    }
+
+    public void setAckBatchDelayMillis(int ackBatchDelayMillis) {
+        if (ackBatchDelayMillis < 0) {
+            throw new IllegalArgumentException("ackBatchDelayMillis must be >= 0, got " + ackBatchDelayMillis);
+        }
+        this.ackBatchDelayMillis = ackBatchDelayMillis;
+    }
+
+    public Set<String> getEchoAckTypes() {
+        return echoAckTypes;
+    }
+
+    /**
+     * @param   echoAckTypes  codes des types (WsMessageRegistry) dont
+     *                        l'accusé individuel est conservé, par exemple
+     *                        "text" pour l'écho du WsAckText
+     */
+    public void setEchoAckTypes(Set<String> echoAckTypes) {
+        this.echoAckTypes = Collections.unmodifiableSet(new HashSet<String>(echoAckTypes));
+    }
+
+    public boolean isRecycleMessages() {
+        return recycleMessages;
+    }
+
+    /**
+     * @param   recycleMessages  true pour décoder les messages binaires dans
+     *                           des instances recyclées (WsMessagePool), dont
+     *                           les textes restent des vues sur la frame
+     *                           reçue jusqu'à leur première lecture. Les
+     *                           traitements ne doivent alors conserver ni le
+     *                           message ni son accusé au-delà de leur appel.
+     */
+    public void setRecycleMessages(boolean recycleMessages) {
+        this.recycleMessages = recycleMessages;
+    }
+
+    public WebSocketRateLimitPolicy getRateLimitPolicy() {
+        return rateLimitPolicy;
+    }
+
+    public void setRateLimitPolicy(WebSocketRateLimitPolicy rateLimitPolicy) {
+        this.rateLimitPolicy = rateLimitPolicy;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("maxConnections must be >= 0, got " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerIp() {
+        return maxConnectionsPerIp;
+    }
+
+    public void setMaxConnectionsPerIp(int maxConnectionsPerIp) {
+        if (maxConnectionsPerIp < 0) {
+            throw new IllegalArgumentException("maxConnectionsPerIp must be >= 0, got " + maxConnectionsPerIp);
+        }
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+    }
+
+    public int getConnectionMessagesPerSecond() {
+        return connectionMessagesPerSecond;
+    }
+
+    public void setConnectionMessagesPerSecond(int connectionMessagesPerSecond) {
+        if (connectionMessagesPerSecond < 0) {
+            throw new IllegalArgumentException("connectionMessagesPerSecond must be >= 0, got " + connectionMessagesPerSecond);
+        }
+        this.connectionMessagesPerSecond = connectionMessagesPerSecond;
+    }
+
+    public int getConnectionBytesPerSecond() {
+        return connectionBytesPerSecond;
+    }
+
+    public void setConnectionBytesPerSecond(int connectionBytesPerSecond) {
+        if (connectionBytesPerSecond < 0) {
+            throw new IllegalArgumentException("connectionBytesPerSecond must be >= 0, got " + connectionBytesPerSecond);
+        }
+        this.connectionBytesPerSecond = connectionBytesPerSecond;
+    }
+
+    public int getIpMessagesPerSecond() {
+        return ipMessagesPerSecond;
+    }
+
+    public void setIpMessagesPerSecond(int ipMessagesPerSecond) {
+        if (ipMessagesPerSecond < 0) {
+            throw new IllegalArgumentException("ipMessagesPerSecond must be >= 0, got " + ipMessagesPerSecond);
+        }
+        this.ipMessagesPerSecond = ipMessagesPerSecond;
+    }
+
+    public int getIpBytesPerSecond() {
+        return ipBytesPerSecond;
+    }
+
+    public void setIpBytesPerSecond(int ipBytesPerSecond) {
+        if (ipBytesPerSecond < 0) {
+            throw new IllegalArgumentException("ipBytesPerSecond must be >= 0, got " + ipBytesPerSecond);
+        }
+        this.ipBytesPerSecond = ipBytesPerSecond;
+    }
+
+    public int getGlobalMessagesPerSecond() {
+        return globalMessagesPerSecond;
+    }
+
+    public void setGlobalMessagesPerSecond(int globalMessagesPerSecond) {
+        if (globalMessagesPerSecond < 0) {
+            throw new IllegalArgumentException("globalMessagesPerSecond must be >= 0, got " + globalMessagesPerSecond);
+        }
+        this.globalMessagesPerSecond = globalMessagesPerSecond;
+    }
+
+    public int getGlobalBytesPerSecond() {
+        return globalBytesPerSecond;
+    }
+
+    public void setGlobalBytesPerSecond(int globalBytesPerSecond) {
+        if (globalBytesPerSecond < 0) {
+            throw new IllegalArgumentException("globalBytesPerSecond must be >= 0, got " + globalBytesPerSecond);
+        }
+        this.globalBytesPerSecond = globalBytesPerSecond;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        if (journalSegmentSize < 1024) {
+            throw new IllegalArgumentException("journalSegmentSize must be >= 1024, got " + journalSegmentSize);
+        }
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    public long getJournalRetentionBytes() {
+        return journalRetentionBytes;
+    }
+
+    public void setJournalRetentionBytes(long journalRetentionBytes) {
+        this.journalRetentionBytes = journalRetentionBytes;
+    }
+
+    public int getJournalRetentionSeconds() {
+        return journalRetentionSeconds;
+    }
+
+    public void setJournalRetentionSeconds(int journalRetentionSeconds) {
+        this.journalRetentionSeconds = journalRetentionSeconds;
+    }
+
+    public String getBusAddress() {
+        return busAddress;
+    }
+
+    /**
+     * @param   busAddress  {@code host:port} pour un bus TCP,
+     *                      {@code local:<nom>} pour un bus en mémoire entre
+     *                      serveurs d'une même JVM, ou null
+     */
+    public void setBusAddress(String busAddress) {
+        this.busAddress = busAddress;
+    }
+
+    public List<String> getBusPeers() {
+        return busPeers;
+    }
+
+    public void setBusPeers(List<String> busPeers) {
+        this.busPeers = Collections.unmodifiableList(new ArrayList<String>(busPeers));
+    }
+
+    public int getBusBatchSize() {
+        return busBatchSize;
+    }
+
+    public void setBusBatchSize(int busBatchSize) {
+        if (busBatchSize < 1) {
+            throw new IllegalArgumentException("busBatchSize must be >= 1, got " + busBatchSize);
+        }
+        this.busBatchSize = busBatchSize;
+    }
+
+    public int getBusBatchDelayMicros() {
+        return busBatchDelayMicros;
+    }
+
+    /**
+     * @param   busBatchDelayMicros  0 pour envoyer le lot dès que le thread
+     *                               du bus est disponible
+     */
+    public void setBusBatchDelayMicros(int busBatchDelayMicros) {
+        if (busBatchDelayMicros < 0) {
+            throw new IllegalArgumentException("busBatchDelayMicros must be >= 0, got " + busBatchDelayMicros);
+        }
+        this.busBatchDelayMicros = busBatchDelayMicros;
+    }
+
+    public int getBusDedupWindow() {
+        return busDedupWindow;
+    }
+
+    public void setBusDedupWindow(int busDedupWindow) {
+        if (busDedupWindow < 1) {
+            throw new IllegalArgumentException("busDedupWindow must be >= 1, got " + busDedupWindow);
+        }
+        this.busDedupWindow = busDedupWindow;
+    }
+
+    public int getBusReconnectDelayMillis() {
+        return busReconnectDelayMillis;
+    }
+
+    public void setBusReconnectDelayMillis(int busReconnectDelayMillis) {
+        if (busReconnectDelayMillis < 1) {
+            throw new IllegalArgumentException("busReconnectDelayMillis must be >= 1, got " + busReconnectDelayMillis);
+        }
+        this.busReconnectDelayMillis = busReconnectDelayMillis;
+    }
+}
@@ -1,67 +1,252 @@
 package com.gaetanl.websocket.server;
 
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.*;
 
 import com.gaetanl.websocket.message.*;
 import com.google.gson.*;
 
+import io.netty.buffer.*;
 import io.netty.channel.*;
+import io.netty.handler.codec.*;
 import io.netty.handler.codec.http.websocketx.*;
 
-public class WebSocketServerHandler extends ChannelInboundHandlerAdapter {
+public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object> {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServerHandler.class);
 
-    @Override
-    public void channelRead(ChannelHandlerContext ctx, Object frame) {
-        logger.debug(String.format("Received (%s) frame on channel %s", frame.getClass().getSimpleName(), ctx.channel()));
+    public static final String NAME = "webSocketServerHandler";
 
-        // Par défaut on log simplement la classe de la frame reçue
-        String logMessageRecu = frame.getClass().getSimpleName();
+    private static final WebSocketServerConfig DEFAULT_CONFIG = new WebSocketServerConfig();
 
-        // On indique s'il existe un traitement serveur pour la frame reçue
-        boolean traitement = false;
+    private final WsMessageDispatcher dispatcher;
+    private final WebSocketChannelRegistry channelRegistry;
+    private final WebSocketFrameLogger frameLogger = new WebSocketFrameLogger();
 
-        // Accusé de réception à envoyer par le serveur en réponse de la frame
-        WebSocketFrame responseFrame = null;
+    // Regroupement des accusés de réception : écrits avec ctx.write() et
+    // envoyés en un seul flush à la fin de la lecture (channelReadComplete),
+    // ou par flushTimer pour les écritures faites hors lecture
+    private final int maxWritesPerFlush;
+    private final long flushMaxLatencyNanos;
+    private int pendingWrites = 0;
+    private long firstPendingWriteTime;
+    private boolean reading = false;
+    private ScheduledFuture<?> flushTimer;
 
-        if (frame instanceof WebSocketFrame) {
-            if (frame instanceof TextWebSocketFrame) {
-                String receivedText = ((TextWebSocketFrame) frame).text();
-                logMessageRecu = receivedText.replaceAll("(?m)^", "    ");
+    // Traitements applicatifs hors event loop, dans l'ordre de réception, ou
+    // null pour les exécuter sur l'event loop
+    private final Executor handlerExecutor;
+    private final int maxPendingMessages;
+    // Décodage du JSON fragmenté au fil de la réception, par un thread de
+    // traitement qui attend la suite du message (threads virtuels seulement)
+    private final boolean streamJson;
+    private final AtomicInteger pendingMessages = new AtomicInteger(0);
 
-                WsMessage receivedMessage = null;
-                try {
-                    GsonBuilder builder = new GsonBuilder().setPrettyPrinting();
-                    builder.registerTypeAdapter(WsMessage.class, new WsMessageDeserializer());
-                    Gson gson = builder.create();
-                    receivedMessage = gson.fromJson(receivedText, WsMessage.class);
-
-                    String receivedType = receivedMessage.getType();
-                    if (WsMsgText.class.getName().equals(receivedType)) {
-                        // Do nothing
-                    }
-                    else if (WsMsgDeconnexion.class.getName().equals(receivedType)) {
+    // Message fragmenté ou reçu en flux en cours de réception
+    private final long maxMessageSize;
+    private final int streamBufferSize;
+    private IncomingMessage incoming;
+
+    private final WebSocketMetrics metrics;
+    private final WsAckCache ackCache;
+
+    // Accusés cumulatifs des messages séquencés ; les types de echoAckTypes
+    // reçoivent en plus leur accusé individuel
+    private final int ackBatchSize;
+    private final long ackBatchDelayMillis;
+    private final Set<String> echoAckTypes;
+    private WebSocketAckBatcher ackBatcher;
+
+    // Messages binaires obtenus de leur pool, rendus après traitement
+    private final boolean recycleMessages;
+
+    public WebSocketServerHandler() {
+        this(defaultDispatcher());
+    }
+
+    public WebSocketServerHandler(WsMessageDispatcher dispatcher) {
+        this(dispatcher, null);
+    }
+
+    /**
+     * @param   channelRegistry  registre auquel le channel est ajouté une fois
+     *                           le handshake terminé, ou null
+     */
+    public WebSocketServerHandler(WsMessageDispatcher dispatcher, WebSocketChannelRegistry channelRegistry) {
+        this(dispatcher, channelRegistry, DEFAULT_CONFIG);
+    }
+
+    /**
+     * @param   config  configuration du regroupement des écritures
+     *                  (maxWritesPerFlush, flushMaxLatencyMicros)
+     */
+    public WebSocketServerHandler(WsMessageDispatcher dispatcher, WebSocketChannelRegistry channelRegistry, WebSocketServerConfig config) {
+        this(dispatcher, channelRegistry, config, null);
+    }
+
+    /**
+     * @param   handlerExecutor  exécuteur partagé des traitements applicatifs,
+     *                           ou null pour les exécuter sur l'event loop
+     */
+    public WebSocketServerHandler(WsMessageDispatcher dispatcher, WebSocketChannelRegistry channelRegistry, WebSocketServerConfig config, Executor handlerExecutor) {
+        this(dispatcher, channelRegistry, config, handlerExecutor, null);
+    }
+
+    /**
+     * @param   metrics  métriques du serveur (échecs de décodage, latence des
+     *                   accusés de réception), ou null
+     */
+    public WebSocketServerHandler(WsMessageDispatcher dispatcher, WebSocketChannelRegistry channelRegistry, WebSocketServerConfig config, Executor handlerExecutor, WebSocketMetrics metrics) {
+        this(dispatcher, channelRegistry, config, handlerExecutor, metrics, null);
+    }
+
+    /**
+     * @param   ackCache  cache partagé des accusés de réception encodés, ou
+     *                    null
+     */
+    public WebSocketServerHandler(WsMessageDispatcher dispatcher, WebSocketChannelRegistry channelRegistry, WebSocketServerConfig config, Executor handlerExecutor,
+            WebSocketMetrics metrics, WsAckCache ackCache) {
+        this.metrics = metrics;
+        this.ackCache = ackCache;
+        this.dispatcher = dispatcher;
+        this.channelRegistry = channelRegistry;
+        this.maxWritesPerFlush = config.getMaxWritesPerFlush();
+        this.flushMaxLatencyNanos = config.getFlushMaxLatencyMicros() * 1000L;
+        this.handlerExecutor = handlerExecutor != null ? new WebSocketOrderedExecutor(handlerExecutor) : null;
+        this.maxPendingMessages = config.getMaxPendingMessages();
+        this.streamJson = handlerExecutor != null && config.resolveHandlerExecutor().allowsBlockingReads();
+        this.maxMessageSize = config.getMaxMessageSize();
+        this.streamBufferSize = config.getStreamBufferSize();
+        this.ackBatchSize = config.getAckBatchSize();
+        this.ackBatchDelayMillis = config.getAckBatchDelayMillis();
+        this.echoAckTypes = config.getEchoAckTypes();
+        this.recycleMessages = config.isRecycleMessages();
+    }
+
+    /**
+     * Traitements serveur par défaut. Les messages sans traitement enregistré
+     * (WsMsgText, WsAckText) sont seulement acquittés.
+     */
+    public static WsMessageDispatcher defaultDispatcher() {
+        return new WsMessageDispatcher()
+                .register(WsMsgDeconnexion.class, new WsMessageHandler<WsMsgDeconnexion>() {
+                    @Override
+                    public void handle(ChannelHandlerContext ctx, WsMsgDeconnexion message) {
+                        // Les accusés de réception en attente partent avant la fermeture
+                        flushAcks(ctx);
+                        ctx.flush();
                         ctx.channel().close();
                         // TODO: Code métier
                     }
-                    else if (WsAckText.class.getName().equals(receivedType)) {
-                        // Do nothing
-                    }
+                });
+    }
 
-                    WsMessage ack = receivedMessage.getAck();
+    /**
+     * Envoie sans attendre l'accusé cumulatif en attente du channel, par
+     * exemple avant sa fermeture par un traitement. Hors event loop, l'envoi
+     * y est programmé, après les accusés des messages déjà traités.
+     *
+     * @param   ctx  le contexte transmis aux traitements du channel
+     */
+    public static void flushAcks(final ChannelHandlerContext ctx) {
+        if (!(ctx.handler() instanceof WebSocketServerHandler)) {
+            return;
+        }
+        final WebSocketServerHandler handler = (WebSocketServerHandler) ctx.handler();
+        if (ctx.executor().inEventLoop()) {
+            handler.flushAcks0(ctx);
+        }
+        else {
+            ctx.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.flushAcks0(ctx);
+                }
+            });
+        }
+    }
 
-                    if (ack != null) {
-                        Gson gsonWriter = new GsonBuilder().setPrettyPrinting().create();
-                        responseFrame = new TextWebSocketFrame(gsonWriter.toJson(ack));
-                    }
+    private void flushAcks0(ChannelHandlerContext ctx) {
+        if (ackBatcher != null) {
+            ackBatcher.flush();
+            flush(ctx);
+        }
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) throws Exception {
+        ackBatcher = new WebSocketAckBatcher(ctx, ackBatchSize, ackBatchDelayMillis, metrics) {
+            @Override
+            protected void write(WebSocketFrame ack) {
+                WebSocketServerHandler.this.write(ctx, ack);
+            }
+        };
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+            String subprotocol = ((WebSocketServerProtocolHandler.HandshakeComplete) evt).selectedSubprotocol();
+            WsWireFormat format = WsWireFormat.fromSubprotocol(subprotocol);
+            ctx.channel().attr(WsWireFormat.ATTRIBUTE).set(format);
+            if (channelRegistry != null) {
+                channelRegistry.add(ctx.channel());
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Handshake complete on channel {} (subprotocol={}, format={})", new Object[] { ctx.channel(), subprotocol, format });
+            }
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelRead0(ChannelHandlerContext ctx, Object frame) throws Exception {
+        long receiveTime = System.nanoTime();
+        reading = true;
+
+        // Message décodé, loggué avec la frame
+        WsMessage receivedMessage = null;
+
+        // Réponse du serveur aux frames de contrôle
+        WebSocketFrame responseFrame = null;
+
+        // Frame prise en charge par un message fragmenté ou reçu en flux
+        boolean streamed = false;
+
+        if (frame instanceof WebSocketFrame) {
+            if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
+                WebSocketFrame dataFrame = (WebSocketFrame) frame;
+                WsMessageSinkFactory<?> sinkFactory = frame instanceof BinaryWebSocketFrame ? sinkFactory(dataFrame) : null;
+
+                if (sinkFactory != null || !dataFrame.isFinalFragment()) {
+                    startMessage(ctx, dataFrame, sinkFactory, receiveTime);
+                    streamed = true;
                 }
-                catch (JsonSyntaxException e) {
-                    logger.info(String.format("[NOK] websocket/in:  TextWebSocketFrame/WsMessage ('%s' couldn't be parsed)", receivedText), e.getMessage(), e);
+                else {
+                    try {
+                        receivedMessage = WsWireFormat.decodeFrame(dataFrame, recycleMessages);
+                    }
+                    catch (JsonParseException e) {
+                        logDecodeFailure(dataFrame, e);
+                    }
+                    catch (CorruptedFrameException e) {
+                        logDecodeFailure(dataFrame, e);
+                    }
                 }
             }
 
-            else if (frame instanceof BinaryWebSocketFrame) {
-                // Do nothing
+            else if (frame instanceof ContinuationWebSocketFrame) {
+                // Sans message en cours, la suite d'un message abandonné
+                if (incoming != null) {
+                    ContinuationWebSocketFrame continuation = (ContinuationWebSocketFrame) frame;
+                    incoming.append(ctx, continuation.content(), continuation.isFinalFragment());
+                    streamed = true;
+                }
             }
 
             else if (frame instanceof PingWebSocketFrame) {
@@ -77,16 +262,658 @@ public class WebSocketServerHandler extends ChannelInboundHandlerAdapter {
             }
         }
 
-        logger.info(String.format("[OK] websocket/in:\n\n%s\n", logMessageRecu));
+        if (frameLogger.sample()) {
+            frameLogger.inbound(ctx.channel(), frame, receivedMessage);
+        }
 
-        // On loggue si aucun traitement n'est effectué
-        if (!traitement) {
-            logger.debug(String.format("No action defined for type %s", frame.getClass().getSimpleName()));
+        if (receivedMessage != null) {
+            executeHandle(ctx, receivedMessage, receiveTime);
         }
 
-        // On envoie l'accusé de réception le cas échéant
-        if (responseFrame != null) {
-            ctx.channel().writeAndFlush(responseFrame);
+        else if (responseFrame != null) {
+            write(ctx, responseFrame);
+        }
+
+        else if (!streamed && logger.isDebugEnabled()) {
+            logger.debug("No action defined for type {}", frame.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return  la fabrique de sinks du type de ce message binaire, ou null
+     *          s'il doit être décodé
+     */
+    private WsMessageSinkFactory<?> sinkFactory(WebSocketFrame frame) {
+        ByteBuf content = frame.content();
+        int readerIndex = content.readerIndex();
+        try {
+            WsMessageRegistry.Entry<?> entry = WsMessageRegistry.getInstance().getEntry(WsBinaryCodec.readVarInt(content));
+            return entry != null ? dispatcher.getSinkFactory(entry.getMessageClass()) : null;
+        }
+        catch (IndexOutOfBoundsException e) {
+            // Identifiant tronqué, l'erreur est signalée par le décodage
+            return null;
+        }
+        catch (CorruptedFrameException e) {
+            return null;
+        }
+        finally {
+            content.readerIndex(readerIndex);
+        }
+    }
+
+    /**
+     * Premier fragment d'un message fragmenté, ou message destiné à une sink.
+     * Le JSON est décodé au fil des fragments lorsque les traitements sont
+     * confiés à des threads virtuels ; un thread de pool bloqué pendant tout
+     * l'envoi d'un client lent priverait les autres connexions. Sinon, comme
+     * pour les messages binaires, les fragments sont regroupés sans copie
+     * avant décodage.
+     */
+    private void startMessage(ChannelHandlerContext ctx, WebSocketFrame first, WsMessageSinkFactory<?> sinkFactory, long receiveTime) throws Exception {
+        ByteBuf content = first.content();
+
+        if (sinkFactory != null) {
+            content = content.duplicate();
+            int typeId = WsBinaryCodec.readVarInt(content);
+            incoming = new SinkMessage(ctx, sinkFactory, WsMessageRegistry.getInstance().getEntry(typeId).getCode(), sinkSeq(content), receiveTime);
+        }
+        else if (first instanceof TextWebSocketFrame && streamJson) {
+            incoming = new StreamedJsonMessage(ctx, receiveTime);
+        }
+        else {
+            incoming = new AggregatedMessage(ctx, first instanceof BinaryWebSocketFrame, receiveTime);
+        }
+        incoming.append(ctx, content, first.isFinalFragment());
+    }
+
+    /**
+     * @param   content  contenu d'un message binaire, après l'identifiant du
+     *                   type
+     * @return  le numéro de séquence de l'en-tête, ou 0 s'il est tronqué
+     */
+    private static long sinkSeq(ByteBuf content) {
+        ByteBuf header = content.duplicate();
+        try {
+            WsBinaryCodec.readVarLong(header);
+            return WsBinaryCodec.readVarLong(header);
+        }
+        catch (IndexOutOfBoundsException e) {
+            return 0;
+        }
+        catch (CorruptedFrameException e) {
+            return 0;
+        }
+    }
+
+    private Task handleTask(final ChannelHandlerContext ctx, final WsMessage message) {
+        return new Task() {
+            @Override
+            public WebSocketFrame call() throws Exception {
+                return handle(ctx, message);
+            }
+
+            @Override
+            void discard(Throwable cause) {
+                message.recycle();
+            }
+        };
+    }
+
+    /**
+     * Comme {@link #execute(ChannelHandlerContext, Task, long)}, sans
+     * allouer de tâche lorsque le traitement a lieu sur l'event loop.
+     */
+    private void executeHandle(ChannelHandlerContext ctx, WsMessage message, long receiveTime) throws Exception {
+        if (handlerExecutor != null) {
+            execute(ctx, handleTask(ctx, message), receiveTime);
+            return;
+        }
+        WebSocketFrame ackFrame = handle(ctx, message);
+        if (ackFrame != null) {
+            writeAck(ctx, ackFrame, receiveTime);
+        }
+    }
+
+    /**
+     * Exécute le traitement applicatif du message et encode son accusé de
+     * réception. Un message recyclé et son accusé sont ensuite rendus à leur
+     * pool.
+     *
+     * @return  la frame de l'accusé de réception, ou null
+     */
+    private WebSocketFrame handle(ChannelHandlerContext ctx, WsMessage message) throws Exception {
+        try {
+            boolean traitement = dispatcher.dispatch(ctx, message);
+
+            // On loggue si aucun traitement n'est effectué
+            if (!traitement && logger.isDebugEnabled()) {
+                logger.debug("No action defined for type {}", message.getClass().getSimpleName());
+            }
+
+            return acknowledge(ctx, message);
+        }
+        finally {
+            message.recycle();
+        }
+    }
+
+    /**
+     * Un message séquencé est acquitté par l'accusé cumulatif du channel :
+     * son accusé individuel n'est envoyé que si son type figure dans
+     * {@code echoAckTypes}. Un message non séquencé reçoit son accusé
+     * individuel.
+     *
+     * @return  la frame de l'accusé de réception individuel, ou null
+     */
+    private WebSocketFrame acknowledge(ChannelHandlerContext ctx, String type, long seq, WsMessage ack) {
+        if (seq > 0) {
+            boolean echo = ack != null && echoAckTypes.contains(type);
+            received(ctx, seq, ack != null && !echo);
+            if (!echo) {
+                return null;
+            }
+        }
+        return encodeAck(ctx, ack);
+    }
+
+    /**
+     * Acquitte un message décodé, comme {@link #acknowledge(ChannelHandlerContext, String, long, WsMessage)} :
+     * son accusé individuel n'est construit que s'il est envoyé, puis rendu
+     * à son pool.
+     *
+     * @return  la frame de l'accusé de réception individuel, ou null
+     */
+    private WebSocketFrame acknowledge(ChannelHandlerContext ctx, WsMessage message) {
+        long seq = message.getSeq();
+        if (seq > 0) {
+            boolean expectsAck = message.expectsAck();
+            boolean echo = expectsAck && echoAckTypes.contains(message.getType());
+            received(ctx, seq, expectsAck && !echo);
+            if (!echo) {
+                return null;
+            }
+        }
+
+        WsMessage ack = message.getAck();
+        try {
+            return encodeAck(ctx, ack);
+        }
+        finally {
+            if (ack != null) {
+                ack.recycle();
+            }
+        }
+    }
+
+    /**
+     * Enregistre le message auprès de l'accusé cumulatif, sur l'event loop.
+     * Depuis l'exécuteur du channel, l'enregistrement y est programmé avant
+     * l'écriture de l'accusé individuel du même traitement : les accusés
+     * partent dans l'ordre des traitements.
+     */
+    private void received(ChannelHandlerContext ctx, final long seq, final boolean ackRequired) {
+        if (ctx.executor().inEventLoop()) {
+            ackBatcher.received(seq, ackRequired);
+            return;
+        }
+        ctx.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ackBatcher.received(seq, ackRequired);
+            }
+        });
+    }
+
+    private WebSocketFrame encodeAck(ChannelHandlerContext ctx, WsMessage ack) {
+        if (ack == null) {
+            return null;
+        }
+        if (ackCache != null && ack instanceof WsAckText) {
+            return ackCache.encodeFrame(ctx.alloc(), WsWireFormat.of(ctx.channel()), (WsAckText) ack);
+        }
+        return WsWireFormat.of(ctx.channel()).encodeFrame(ctx.alloc(), ack);
+    }
+
+    /**
+     * Exécute la tâche sur l'event loop, ou la confie à l'exécuteur du
+     * channel. L'accusé de réception est alors écrit depuis l'event loop,
+     * dans l'ordre des tâches ; la lecture est suspendue
+     * ({@link WebSocketReadSuspension}) tant que {@code maxPendingMessages}
+     * tâches sont en attente. Une tâche refusée par l'exécuteur partagé est
+     * abandonnée et la connexion fermée.
+     *
+     * @param   receiveTime  réception du message (System.nanoTime()), pour la
+     *                       latence de l'accusé de réception
+     */
+    private void execute(final ChannelHandlerContext ctx, final Task task, final long receiveTime) throws Exception {
+        if (handlerExecutor == null) {
+            WebSocketFrame ackFrame = task.call();
+            if (ackFrame != null) {
+                writeAck(ctx, ackFrame, receiveTime);
+            }
+            return;
+        }
+
+        if (pendingMessages.incrementAndGet() >= maxPendingMessages) {
+            WebSocketReadSuspension.suspend(ctx.channel(), WebSocketReadSuspension.Reason.PENDING_MESSAGES);
+        }
+
+        handlerExecutor.execute(new WebSocketOrderedExecutor.Discardable() {
+            @Override
+            public void run() {
+                WebSocketFrame ackFrame = null;
+                Throwable failure = null;
+                try {
+                    ackFrame = task.call();
+                }
+                catch (Throwable t) {
+                    failure = t;
+                }
+                completed(ctx, ackFrame, failure, receiveTime);
+            }
+
+            @Override
+            public void discard(RejectedExecutionException cause) {
+                try {
+                    task.discard(cause);
+                }
+                finally {
+                    rejected(ctx);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tâche refusée par l'exécuteur partagé : les messages suivants ne
+     * seraient plus traités dans l'ordre, la connexion est fermée.
+     */
+    private void rejected(ChannelHandlerContext ctx) {
+        pendingMessages.decrementAndGet();
+        if (ctx.channel().isActive() && logger.isInfoEnabled()) {
+            logger.info("[NOK] websocket/in:  message on channel {} rejected by the handler executor, closing", ctx.channel());
+        }
+        ctx.close();
+    }
+
+    private void completed(final ChannelHandlerContext ctx, final WebSocketFrame ackFrame, final Throwable failure, final long receiveTime) {
+        ctx.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                int pending = pendingMessages.decrementAndGet();
+                if (failure != null) {
+                    ctx.fireExceptionCaught(failure);
+                }
+                if (ackFrame != null) {
+                    writeAck(ctx, ackFrame, receiveTime);
+                }
+                // Dernier message en attente : rien d'autre à regrouper
+                if (pending == 0) {
+                    flush(ctx);
+                }
+                if (pending < maxPendingMessages) {
+                    WebSocketReadSuspension.resume(ctx.channel(), WebSocketReadSuspension.Reason.PENDING_MESSAGES);
+                }
+            }
+        });
+    }
+
+    private void writeAck(ChannelHandlerContext ctx, WebSocketFrame ackFrame, long receiveTime) {
+        write(ctx, ackFrame);
+        if (metrics != null) {
+            metrics.ackWritten(System.nanoTime() - receiveTime);
+        }
+    }
+
+    /**
+     * Écrit la frame sans flush. Le flush a lieu à la fin de la lecture, ou
+     * plus tôt si {@code maxWritesPerFlush} écritures sont en attente ou si
+     * la première attend depuis plus de {@code flushMaxLatencyMicros}. Hors
+     * lecture (accusés des traitements hors event loop), ce délai est garanti
+     * par un flush programmé sur l'event loop.
+     */
+    private void write(final ChannelHandlerContext ctx, Object frame) {
+        ctx.write(frame, ctx.voidPromise());
+
+        if (pendingWrites++ == 0) {
+            firstPendingWriteTime = System.nanoTime();
+        }
+        if (pendingWrites >= maxWritesPerFlush || System.nanoTime() - firstPendingWriteTime >= flushMaxLatencyNanos) {
+            flush(ctx);
+        }
+        else if (!reading && flushTimer == null) {
+            flushTimer = ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushTimer = null;
+                    flush(ctx);
+                }
+            }, flushMaxLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush(ChannelHandlerContext ctx) {
+        cancelFlushTimer();
+        if (pendingWrites > 0) {
+            pendingWrites = 0;
+            ctx.flush();
+        }
+    }
+
+    private void cancelFlushTimer() {
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        reading = false;
+        flush(ctx);
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        pendingWrites = 0;
+        cancelFlushTimer();
+        ackBatcher.close();
+        if (incoming != null) {
+            IncomingMessage aborted = incoming;
+            incoming = null;
+            aborted.abort(ctx, new ClosedChannelException());
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * Traitement d'un message, exécuté sur l'event loop ou confié à
+     * l'exécuteur du channel. Refusé par l'exécuteur partagé, il n'est
+     * jamais appelé : {@link #discard(Throwable)} libère alors ce qu'il
+     * retient.
+     */
+    private abstract static class Task implements Callable<WebSocketFrame> {
+        void discard(Throwable cause) {
+        }
+    }
+
+    /**
+     * Message en cours de réception, fragment par fragment. Au-delà de
+     * {@code maxMessageSize} octets, le message est abandonné et la
+     * connexion fermée (1009).
+     */
+    private abstract class IncomingMessage {
+        protected final long receiveTime;
+        private long size = 0;
+
+        IncomingMessage(long receiveTime) {
+            this.receiveTime = receiveTime;
+        }
+
+        /**
+         * @param   content  contenu du fragment, libéré après l'appel
+         */
+        final void append(ChannelHandlerContext ctx, ByteBuf content, boolean last) throws Exception {
+            size += content.readableBytes();
+            if (size > maxMessageSize) {
+                incoming = null;
+                abort(ctx, new TooLongFrameException("Message exceeds " + maxMessageSize + " bytes"));
+                if (logger.isInfoEnabled()) {
+                    logger.info("[NOK] websocket/in:  message on channel {} exceeds {} bytes, closing", ctx.channel(), maxMessageSize);
+                }
+                ctx.writeAndFlush(WebSocketCloseFrames.of(WebSocketCloseStatus.MESSAGE_TOO_BIG)).addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+
+            onContent(ctx, content);
+            if (last) {
+                incoming = null;
+                onEnd(ctx);
+            }
+        }
+
+        abstract void onContent(ChannelHandlerContext ctx, ByteBuf content) throws Exception;
+
+        abstract void onEnd(ChannelHandlerContext ctx) throws Exception;
+
+        abstract void abort(ChannelHandlerContext ctx, Throwable cause);
+    }
+
+    /**
+     * Fragments regroupés dans un CompositeByteBuf, sans copie, puis décodés
+     * en une fois.
+     */
+    private class AggregatedMessage extends IncomingMessage {
+        private final boolean binary;
+        private final CompositeByteBuf content;
+
+        AggregatedMessage(ChannelHandlerContext ctx, boolean binary, long receiveTime) {
+            super(receiveTime);
+            this.binary = binary;
+            this.content = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+        }
+
+        @Override
+        void onContent(ChannelHandlerContext ctx, ByteBuf fragment) {
+            content.addComponent(true, fragment.retain());
+        }
+
+        @Override
+        void onEnd(ChannelHandlerContext ctx) throws Exception {
+            WebSocketFrame whole = binary ? new BinaryWebSocketFrame(content) : new TextWebSocketFrame(content);
+            WsMessage message = null;
+            try {
+                message = WsWireFormat.decodeFrame(whole, recycleMessages);
+            }
+            catch (JsonParseException e) {
+                logDecodeFailure(whole, e);
+            }
+            catch (CorruptedFrameException e) {
+                logDecodeFailure(whole, e);
+            }
+            finally {
+                whole.release();
+            }
+
+            if (message != null) {
+                executeHandle(ctx, message, receiveTime);
+            }
+        }
+
+        @Override
+        void abort(ChannelHandlerContext ctx, Throwable cause) {
+            content.release();
+        }
+    }
+
+    /**
+     * JSON décodé par le thread de traitement au fil de la réception des
+     * fragments : ni le contenu complet ni sa représentation String ne sont
+     * conservés en mémoire.
+     */
+    private class StreamedJsonMessage extends IncomingMessage {
+        private final WebSocketFrameInputStream stream;
+
+        StreamedJsonMessage(final ChannelHandlerContext ctx, long receiveTime) throws Exception {
+            super(receiveTime);
+            this.stream = new WebSocketFrameInputStream(streamBufferSize, new Runnable() {
+                @Override
+                public void run() {
+                    ctx.executor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            WebSocketReadSuspension.resume(ctx.channel(), WebSocketReadSuspension.Reason.STREAM_BUFFER);
+                        }
+                    });
+                }
+            });
+
+            execute(ctx, new Task() {
+                @Override
+                public WebSocketFrame call() throws Exception {
+                    WsMessage message;
+                    try {
+                        message = WsMessageCodec.getInstance().decode(stream);
+                    }
+                    catch (JsonParseException e) {
+                        // Message abandonné (taille maximale, fermeture) : déjà signalé
+                        if (e.getCause() instanceof IOException) {
+                            logger.debug("Fragmented message aborted", e);
+                        }
+                        else {
+                            if (metrics != null) {
+                                metrics.decodeFailed();
+                            }
+                            if (logger.isInfoEnabled()) {
+                                logger.info("[NOK] websocket/in:  fragmented TextWebSocketFrame/WsMessage couldn't be parsed", e);
+                            }
+                        }
+                        return null;
+                    }
+                    finally {
+                        stream.close();
+                    }
+                    return message != null ? handle(ctx, message) : null;
+                }
+
+                @Override
+                void discard(Throwable cause) {
+                    stream.close();
+                }
+            }, receiveTime);
+        }
+
+        @Override
+        void onContent(ChannelHandlerContext ctx, ByteBuf fragment) {
+            if (stream.add(fragment.retain())) {
+                WebSocketReadSuspension.suspend(ctx.channel(), WebSocketReadSuspension.Reason.STREAM_BUFFER);
+            }
+        }
+
+        @Override
+        void onEnd(ChannelHandlerContext ctx) {
+            stream.end();
+        }
+
+        @Override
+        void abort(ChannelHandlerContext ctx, Throwable cause) {
+            stream.abort();
+        }
+    }
+
+    /**
+     * Contenu transmis fragment par fragment à une {@link WsMessageSink},
+     * dans l'ordre des autres traitements du channel.
+     */
+    private class SinkMessage extends IncomingMessage {
+        private final WsMessageSinkFactory<?> factory;
+        private final String type;
+        private final long seq;
+        private WsMessageSink sink;
+        private volatile boolean failed = false;
+
+        SinkMessage(ChannelHandlerContext ctx, WsMessageSinkFactory<?> factory, String type, long seq, long receiveTime) {
+            super(receiveTime);
+            this.factory = factory;
+            this.type = type;
+            this.seq = seq;
+        }
+
+        @Override
+        void onContent(final ChannelHandlerContext ctx, ByteBuf fragment) throws Exception {
+            final ByteBuf chunk = fragment.retainedDuplicate();
+            execute(ctx, new Task() {
+                @Override
+                public WebSocketFrame call() throws Exception {
+                    try {
+                        if (!failed) {
+                            if (sink == null) {
+                                sink = factory.newSink(ctx);
+                            }
+                            sink.write(ctx, chunk);
+                        }
+                    }
+                    catch (Exception e) {
+                        fail(ctx, e);
+                        throw e;
+                    }
+                    finally {
+                        chunk.release();
+                    }
+                    return null;
+                }
+
+                @Override
+                void discard(Throwable cause) {
+                    chunk.release();
+                    fail(ctx, cause);
+                }
+            }, receiveTime);
+        }
+
+        @Override
+        void onEnd(final ChannelHandlerContext ctx) throws Exception {
+            execute(ctx, new Task() {
+                @Override
+                public WebSocketFrame call() throws Exception {
+                    if (failed || sink == null) {
+                        return null;
+                    }
+                    try {
+                        return acknowledge(ctx, type, seq, sink.close(ctx));
+                    }
+                    catch (Exception e) {
+                        fail(ctx, e);
+                        throw e;
+                    }
+                }
+
+                @Override
+                void discard(Throwable cause) {
+                    fail(ctx, cause);
+                }
+            }, receiveTime);
+        }
+
+        @Override
+        void abort(final ChannelHandlerContext ctx, final Throwable cause) {
+            try {
+                execute(ctx, new Task() {
+                    @Override
+                    public WebSocketFrame call() {
+                        fail(ctx, cause);
+                        return null;
+                    }
+
+                    @Override
+                    void discard(Throwable rejection) {
+                        fail(ctx, cause);
+                    }
+                }, receiveTime);
+            }
+            catch (Exception e) {
+                logger.warn("Unable to abort message sink", e);
+            }
+        }
+
+        private void fail(ChannelHandlerContext ctx, Throwable cause) {
+            if (!failed) {
+                failed = true;
+                if (sink != null) {
+                    sink.abort(ctx, cause);
+                }
+            }
+        }
+    }
+
+    private void logDecodeFailure(WebSocketFrame frame, RuntimeException e) {
+        if (metrics != null) {
+            metrics.decodeFailed();
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info(String.format("[NOK] websocket/in:  %s/WsMessage ('%s' couldn't be parsed)", frame.getClass().getSimpleName(), WebSocketFrameLogger.payload(frame)), e);
         }
     }
 }
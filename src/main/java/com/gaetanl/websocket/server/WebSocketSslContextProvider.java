@@ -0,0 +1,149 @@
+package com.gaetanl.websocket.server;
+
+import java.io.*;
+import java.net.*;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+
+import org.slf4j.*;
+
+import io.netty.handler.ssl.*;
+import io.netty.util.concurrent.*;
+
+/**
+ * Fournit le {@link SslContext} serveur, construit une seule fois au
+ * démarrage puis partagé par tous les channels. Lorsque le keystore est un
+ * fichier, il est rechargé si sa date de modification change.
+ *
+ * Le provider OpenSSL (netty-tcnative/BoringSSL) est utilisé lorsqu'il est
+ * disponible sur le classpath, le provider JDK sinon.
+ */
+public class WebSocketSslContextProvider {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketSslContextProvider.class);
+
+    public static final String DEFAULT_KEYSTORE = "/TestKeystore.jks";
+
+    private final URL keystoreUrl;
+    private final char[] password;
+    private final long sessionCacheSize;
+    private final long sessionTimeout;
+
+    private volatile SslContext sslContext;
+    private volatile long keystoreLastModified;
+    private ScheduledFuture<?> reloadFuture;
+
+    public WebSocketSslContextProvider(WebSocketServerConfig config) throws Exception {
+        this.keystoreUrl = resolveKeystore(config.getKeystorePath());
+        this.password = config.getKeystorePassword().toCharArray();
+        this.sessionCacheSize = config.getSslSessionCacheSize();
+        this.sessionTimeout = config.getSslSessionTimeout();
+
+        this.keystoreLastModified = lastModified();
+        this.sslContext = build();
+    }
+
+    private static URL resolveKeystore(String path) throws MalformedURLException {
+        if (path == null) {
+            URL url = WebSocketSslContextProvider.class.getResource(DEFAULT_KEYSTORE);
+            if (url == null) {
+                throw new IllegalStateException(String.format("Keystore %s not found on classpath", DEFAULT_KEYSTORE));
+            }
+            return url;
+        }
+        return new File(path).toURI().toURL();
+    }
+
+    public SslContext get() {
+        return sslContext;
+    }
+
+    /**
+     * Vérifie périodiquement le keystore sur l'executor fourni, hors du
+     * chemin des connexions.
+     */
+    public synchronized void scheduleReload(EventExecutorGroup executor, long period, TimeUnit unit) {
+        if (keystoreFile() == null) {
+            logger.debug(String.format("Keystore %s is not a file, hot reload disabled", keystoreUrl));
+            return;
+        }
+        reloadFuture = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reloadIfModified();
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void close() {
+        if (reloadFuture != null) {
+            reloadFuture.cancel(false);
+            reloadFuture = null;
+        }
+    }
+
+    /**
+     * Reconstruit le contexte si le keystore a été modifié. Les connexions
+     * déjà établies conservent l'ancien contexte ; en cas d'erreur, l'ancien
+     * contexte reste utilisé.
+     *
+     * @return  true si le contexte a été rechargé
+     */
+    public boolean reloadIfModified() {
+        long lastModified = lastModified();
+        if (lastModified == keystoreLastModified) {
+            return false;
+        }
+        try {
+            sslContext = build();
+            keystoreLastModified = lastModified;
+            logger.info(String.format("[OK] SSL context reloaded from %s", keystoreUrl));
+            return true;
+        }
+        catch (Exception e) {
+            logger.error(String.format("[NOK] SSL context reload from %s failed, keeping previous context", keystoreUrl), e);
+            return false;
+        }
+    }
+
+    private SslContext build() throws Exception {
+        KeyStore keystore = KeyStore.getInstance("JKS");
+        InputStream is = keystoreUrl.openStream();
+        try {
+            keystore.load(is, password);
+        }
+        finally {
+            is.close();
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keystore, password);
+
+        SslProvider provider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+        logger.debug(String.format("Building SSL context from %s (provider=%s)", keystoreUrl, provider));
+
+        return SslContextBuilder.forServer(keyManagerFactory)
+                .sslProvider(provider)
+                .sessionCacheSize(sessionCacheSize)
+                .sessionTimeout(sessionTimeout)
+                .build();
+    }
+
+    private File keystoreFile() {
+        if (!"file".equals(keystoreUrl.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(keystoreUrl.toURI());
+        }
+        catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private long lastModified() {
+        File file = keystoreFile();
+        return file == null ? 0 : file.lastModified();
+    }
+}
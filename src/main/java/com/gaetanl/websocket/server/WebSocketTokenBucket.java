@@ -0,0 +1,85 @@
+package com.gaetanl.websocket.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket sans verrou, sous la forme GCRA : l'état se réduit à la date
+ * à laquelle le seau sera de nouveau plein, mise à jour par un seul
+ * compareAndSet. La capacité correspond à une seconde de débit.
+ *
+ * Une demande supérieure à la capacité est acceptée lorsque le seau est
+ * plein ; la dette ainsi créée retarde les demandes suivantes.
+ */
+final class WebSocketTokenBucket {
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long ratePerSecond;
+
+    /** Date (System.nanoTime) à laquelle le seau sera plein */
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    WebSocketTokenBucket(long ratePerSecond) {
+        if (ratePerSecond < 1) {
+            throw new IllegalArgumentException("ratePerSecond must be at least 1: " + ratePerSecond);
+        }
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    /**
+     * @return  0 si les jetons sont pris, sinon le délai en nanosecondes avant
+     *          qu'ils soient disponibles (rien n'est pris)
+     */
+    long tryAcquire(long permits) {
+        long cost = cost(permits);
+        for (;;) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long debt = Math.max(current - now, 0);
+            long wait = wait(debt, cost);
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, now + debt + cost)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Prend les jetons dans tous les cas.
+     *
+     * @return  le délai en nanosecondes à respecter avant d'utiliser les
+     *          jetons, 0 s'ils étaient disponibles
+     */
+    long reserve(long permits) {
+        long cost = cost(permits);
+        for (;;) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long debt = Math.max(current - now, 0);
+            if (fullAt.compareAndSet(current, now + debt + cost)) {
+                return wait(debt, cost);
+            }
+        }
+    }
+
+    /**
+     * @return  true si le seau est plein : un seau neuf lui est équivalent
+     */
+    boolean isFull() {
+        return fullAt.get() - System.nanoTime() <= 0;
+    }
+
+    private long cost(long permits) {
+        return permits * BURST_NANOS / ratePerSecond;
+    }
+
+    private static long wait(long debt, long cost) {
+        if (debt == 0 || debt + cost <= BURST_NANOS) {
+            return 0;
+        }
+        // Au-delà de la capacité, il faut attendre que le seau soit plein
+        return cost > BURST_NANOS ? debt : debt + cost - BURST_NANOS;
+    }
+}
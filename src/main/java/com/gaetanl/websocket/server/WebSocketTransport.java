@@ -0,0 +1,106 @@
+package com.gaetanl.websocket.server;
+
+import org.slf4j.*;
+
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.*;
+
+/**
+ * Transport réseau utilisé par les event loops. Le transport epoll natif
+ * n'est qu'une dépendance optionnelle (netty-transport-native-epoll) : il est
+ * chargé par réflexion et {@link #auto()} se replie sur NIO s'il est absent
+ * ou indisponible sur la plateforme.
+ */
+public enum WebSocketTransport {
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return NioSocketChannel.class;
+        }
+    },
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            try {
+                return (Boolean) Class.forName(EPOLL_PACKAGE + ".Epoll").getMethod("isAvailable").invoke(null);
+            }
+            catch (Throwable e) {
+                return false;
+            }
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            try {
+                return (EventLoopGroup) Class.forName(EPOLL_PACKAGE + ".EpollEventLoopGroup").getConstructor(int.class).newInstance(threads);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException("Epoll transport unavailable", e);
+            }
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return loadClass(EPOLL_PACKAGE + ".EpollServerSocketChannel", ServerChannel.class);
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return loadClass(EPOLL_PACKAGE + ".EpollSocketChannel", Channel.class);
+        }
+    };
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketTransport.class);
+
+    private static final String EPOLL_PACKAGE = "io.netty.channel.epoll";
+
+    /**
+     * Option SO_REUSEPORT du transport epoll, résolue par son nom pour ne pas
+     * dépendre de EpollChannelOption à la compilation.
+     */
+    public static final ChannelOption<Boolean> SO_REUSEPORT = ChannelOption.valueOf(EPOLL_PACKAGE + ".EpollChannelOption#SO_REUSEPORT");
+
+    public abstract boolean isAvailable();
+
+    public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    public abstract Class<? extends Channel> channelClass();
+
+    /**
+     * @return  EPOLL si le transport natif est disponible, NIO sinon
+     */
+    public static WebSocketTransport auto() {
+        if (EPOLL.isAvailable()) {
+            return EPOLL;
+        }
+        logger.debug("Epoll transport unavailable, falling back to NIO");
+        return NIO;
+    }
+
+    private static <T> Class<? extends T> loadClass(String name, Class<T> type) {
+        try {
+            return Class.forName(name).asSubclass(type);
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalStateException(String.format("%s not found on classpath", name), e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.gaetanl.websocket.message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.*;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+public class WsAckCacheTest {
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static WsAckText ack(String text, long id) {
+        WsAckText ack = new WsAckText();
+        ack.setOriginalText(text);
+        ack.setId(id);
+        return ack;
+    }
+
+    @Test
+    public void binaryMatchesUncachedEncoding() {
+        WsAckCache cache = new WsAckCache(16, 4096);
+        try {
+            for (String text : new String[] { "court", repeat('x', 2000), "court", repeat('x', 2000) }) {
+                WsAckText ack = ack(text, 7);
+                WebSocketFrame frame = cache.encodeFrame(UnpooledByteBufAllocator.DEFAULT, WsWireFormat.BINARY, ack);
+                ByteBuf expected = WsBinaryCodec.getInstance().encode(UnpooledByteBufAllocator.DEFAULT, ack);
+                try {
+                    assertEquals(expected, frame.content());
+                }
+                finally {
+                    frame.release();
+                    expected.release();
+                }
+            }
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getMisses());
+        }
+        finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void jsonDecodesToSameValues() {
+        WsAckCache cache = new WsAckCache(16, 4096);
+        try {
+            for (String text : new String[] { "\"échappé\"\n", repeat('y', 2000), "\"échappé\"\n" }) {
+                WebSocketFrame frame = cache.encodeFrame(UnpooledByteBufAllocator.DEFAULT, WsWireFormat.JSON, ack(text, 9));
+                try {
+                    WsAckText decoded = (WsAckText) WsWireFormat.decodeFrame(frame);
+                    assertEquals(text, decoded.getOriginalText());
+                    assertEquals(9, decoded.getId());
+                }
+                finally {
+                    frame.release();
+                }
+            }
+            assertEquals(1, cache.getHits());
+        }
+        finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void textsAboveMaxLengthNotCached() {
+        WsAckCache cache = new WsAckCache(16, 10);
+        try {
+            for (int i = 0 ; i < 2 ; i++) {
+                cache.encodeFrame(UnpooledByteBufAllocator.DEFAULT, WsWireFormat.BINARY, ack(repeat('z', 11), 1)).release();
+            }
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.getHits());
+        }
+        finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void evictionKeepsFramesReadable() {
+        WsAckCache cache = new WsAckCache(1, 4096);
+        List<WebSocketFrame> frames = new ArrayList<WebSocketFrame>();
+        try {
+            for (int i = 0 ; i < 4 ; i++) {
+                frames.add(cache.encodeFrame(PooledByteBufAllocator.DEFAULT, WsWireFormat.BINARY, ack(repeat((char) ('a' + i), 1500), i)));
+            }
+            assertEquals(1, cache.size());
+            for (int i = 0 ; i < frames.size() ; i++) {
+                WsAckText decoded = (WsAckText) WsWireFormat.decodeFrame(frames.get(i));
+                assertEquals(repeat((char) ('a' + i), 1500), decoded.getOriginalText());
+            }
+        }
+        finally {
+            for (WebSocketFrame frame : frames) {
+                frame.release();
+            }
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.gaetanl.websocket.message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.*;
+import io.netty.handler.codec.CorruptedFrameException;
+
+public class WsAckTest {
+    @Test
+    public void binaryRoundTripWithRanges() {
+        long[] ranges = { 12, 12, 15, 20, 1000000, 1000003 };
+        WsAck decoded = roundTrip(new WsAck(10, ranges));
+        assertEquals(10, decoded.getCumulative());
+        assertArrayEquals(ranges, decoded.getRanges());
+    }
+
+    @Test
+    public void binaryRoundTripWithoutRanges() {
+        WsAck decoded = roundTrip(new WsAck(Long.MAX_VALUE >>> 1, null));
+        assertEquals(Long.MAX_VALUE >>> 1, decoded.getCumulative());
+        assertNull(decoded.getRanges());
+    }
+
+    @Test
+    public void rangesAreDeltaEncoded() {
+        ByteBuf near = Unpooled.buffer();
+        ByteBuf far = Unpooled.buffer();
+        try {
+            WsAck.BINARY_ADAPTER.writeFields(new WsAck(1000000000L, new long[] { 1000000002L, 1000000010L }), near);
+            WsAck.BINARY_ADAPTER.writeFields(new WsAck(1000000000L, null), far);
+            // Deux plages proches : un octet pour le nombre de plages, un par écart
+            assertEquals(far.readableBytes() + 2, near.readableBytes());
+        }
+        finally {
+            near.release();
+            far.release();
+        }
+    }
+
+    @Test
+    public void jsonRoundTrip() {
+        long[] ranges = { 5, 6 };
+        ByteBuf encoded = WsMessageCodec.getInstance().encode(UnpooledByteBufAllocator.DEFAULT, new WsAck(3, ranges));
+        try {
+            WsAck decoded = (WsAck) WsMessageCodec.getInstance().decode(encoded);
+            assertEquals(3, decoded.getCumulative());
+            assertArrayEquals(ranges, decoded.getRanges());
+        }
+        finally {
+            encoded.release();
+        }
+    }
+
+    @Test
+    public void isAcked() {
+        WsAck ack = new WsAck(10, new long[] { 12, 12, 15, 20 });
+        assertTrue(ack.isAcked(1));
+        assertTrue(ack.isAcked(10));
+        assertFalse(ack.isAcked(11));
+        assertTrue(ack.isAcked(12));
+        assertFalse(ack.isAcked(13));
+        assertTrue(ack.isAcked(15));
+        assertTrue(ack.isAcked(20));
+        assertFalse(ack.isAcked(21));
+    }
+
+    @Test
+    public void oversizedRangeCountRejected() {
+        final ByteBuf buf = Unpooled.buffer();
+        try {
+            WsBinaryCodec.writeVarLong(buf, 10);
+            WsBinaryCodec.writeVarInt(buf, 1000);
+            buf.writeZero(10);
+            assertThrows(CorruptedFrameException.class, () -> WsAck.BINARY_ADAPTER.readFields(new WsAck(), buf));
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    private static WsAck roundTrip(WsAck ack) {
+        ByteBuf encoded = WsBinaryCodec.getInstance().encode(UnpooledByteBufAllocator.DEFAULT, ack);
+        try {
+            return (WsAck) WsBinaryCodec.getInstance().decode(encoded);
+        }
+        finally {
+            encoded.release();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.gaetanl.websocket.message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.*;
+import io.netty.handler.codec.CorruptedFrameException;
+
+public class WsBinaryCodecTest {
+    private static final int[] INTS = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+    private static final long[] LONGS = { 0, 1, 127, 128, 1L << 35, Long.MAX_VALUE, -1, Long.MIN_VALUE };
+
+    @Test
+    public void varIntRoundTrip() {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            for (int value : INTS) {
+                buf.clear();
+                WsBinaryCodec.writeVarInt(buf, value);
+                assertEquals(value, WsBinaryCodec.readVarInt(buf));
+                assertFalse(buf.isReadable());
+            }
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void varLongRoundTrip() {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            for (long value : LONGS) {
+                buf.clear();
+                WsBinaryCodec.writeVarLong(buf, value);
+                assertEquals(value, WsBinaryCodec.readVarLong(buf));
+                assertFalse(buf.isReadable());
+            }
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void varIntSizes() {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            WsBinaryCodec.writeVarInt(buf, 127);
+            assertEquals(1, buf.readableBytes());
+            buf.clear();
+            WsBinaryCodec.writeVarInt(buf, 128);
+            assertEquals(2, buf.readableBytes());
+            buf.clear();
+            WsBinaryCodec.writeVarInt(buf, -1);
+            assertEquals(5, buf.readableBytes());
+            buf.clear();
+            WsBinaryCodec.writeVarLong(buf, -1);
+            assertEquals(10, buf.readableBytes());
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void malformedVarInt() {
+        final ByteBuf buf = Unpooled.wrappedBuffer(new byte[] { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0 });
+        try {
+            assertThrows(CorruptedFrameException.class, () -> WsBinaryCodec.readVarInt(buf));
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void truncatedVarLong() {
+        final ByteBuf buf = Unpooled.wrappedBuffer(new byte[] { (byte) 0x80, (byte) 0x80 });
+        try {
+            assertThrows(IndexOutOfBoundsException.class, () -> WsBinaryCodec.readVarLong(buf));
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void stringRoundTrip() {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            WsBinaryCodec.writeString(buf, "héllo 😀");
+            WsBinaryCodec.writeString(buf, "");
+            WsBinaryCodec.writeString(buf, (String) null);
+            assertEquals("héllo 😀", WsBinaryCodec.readString(buf));
+            assertEquals("", WsBinaryCodec.readString(buf));
+            assertNull(WsBinaryCodec.readString(buf));
+            assertFalse(buf.isReadable());
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void stringLengthBeyondContent() {
+        final ByteBuf buf = Unpooled.buffer();
+        try {
+            WsBinaryCodec.writeVarInt(buf, 11);
+            buf.writeByte('a');
+            assertThrows(CorruptedFrameException.class, () -> WsBinaryCodec.readString(buf));
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void negativeStringLength() {
+        for (int prefix : new int[] { -1, Integer.MIN_VALUE }) {
+            final ByteBuf buf = Unpooled.buffer();
+            try {
+                WsBinaryCodec.writeVarInt(buf, prefix);
+                buf.writeZero(16);
+                assertThrows(CorruptedFrameException.class, () -> WsBinaryCodec.readString(buf));
+                buf.readerIndex(0);
+                assertThrows(CorruptedFrameException.class, () -> WsBinaryCodec.readStringView(buf));
+            }
+            finally {
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    public void messageRoundTrip() {
+        WsMsgText message = new WsMsgText();
+        message.setText("bonjour");
+        message.setId(42);
+        message.setSeq(7);
+
+        ByteBuf encoded = WsBinaryCodec.getInstance().encode(UnpooledByteBufAllocator.DEFAULT, message);
+        try {
+            WsMsgText decoded = (WsMsgText) WsBinaryCodec.getInstance().decode(encoded);
+            assertEquals("bonjour", decoded.getText());
+            assertEquals(42, decoded.getId());
+            assertEquals(7, decoded.getSeq());
+            assertEquals(message.getCreationTimeMillis(), decoded.getCreationTimeMillis());
+            // Les indices du buffer ne sont pas modifiés
+            assertEquals(0, encoded.readerIndex());
+        }
+        finally {
+            encoded.release();
+        }
+    }
+
+    @Test
+    public void trailingBytesRejected() {
+        WsMsgText message = new WsMsgText();
+        message.setText("bonjour");
+        final ByteBuf encoded = WsBinaryCodec.getInstance().encode(UnpooledByteBufAllocator.DEFAULT, message);
+        try {
+            encoded.writeByte(0);
+            assertThrows(CorruptedFrameException.class, () -> WsBinaryCodec.getInstance().decode(encoded));
+        }
+        finally {
+            encoded.release();
+        }
+    }
+
+    @Test
+    public void truncatedMessageRejected() {
+        WsMsgText message = new WsMsgText();
+        message.setText("bonjour");
+        ByteBuf encoded = WsBinaryCodec.getInstance().encode(UnpooledByteBufAllocator.DEFAULT, message);
+        final ByteBuf truncated = encoded.slice(0, encoded.readableBytes() - 3);
+        try {
+            assertThrows(CorruptedFrameException.class, () -> WsBinaryCodec.getInstance().decode(truncated, true));
+        }
+        finally {
+            encoded.release();
+        }
+    }
+
+    @Test
+    public void unknownTypeRejected() {
+        final ByteBuf buf = Unpooled.buffer();
+        try {
+            WsBinaryCodec.writeVarInt(buf, 99999);
+            assertThrows(CorruptedFrameException.class, () -> WsBinaryCodec.getInstance().decode(buf));
+        }
+        finally {
+            buf.release();
+        }
+    }
+}
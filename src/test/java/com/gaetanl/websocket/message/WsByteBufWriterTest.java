@@ -0,0 +1,108 @@
+package com.gaetanl.websocket.message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.*;
+import io.netty.util.CharsetUtil;
+
+public class WsByteBufWriterTest {
+    private static final String EMOJI = "😀";
+
+    @Test
+    public void surrogatePairSplitBetweenStrings() {
+        ByteBuf out = Unpooled.buffer();
+        try {
+            WsByteBufWriter writer = new WsByteBufWriter(out);
+            writer.write("a\ud83d", 0, 2);
+            writer.write("\ude00b", 0, 2);
+            writer.close();
+            assertEquals("a" + EMOJI + "b", out.toString(CharsetUtil.UTF_8));
+            assertEquals(6, out.readableBytes());
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void surrogatePairSplitBetweenChars() {
+        ByteBuf out = Unpooled.buffer();
+        try {
+            WsByteBufWriter writer = new WsByteBufWriter(out);
+            writer.write(EMOJI.charAt(0));
+            writer.write(EMOJI.charAt(1));
+            writer.close();
+            assertArrayEquals(EMOJI.getBytes(CharsetUtil.UTF_8), ByteBufUtil.getBytes(out));
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void surrogatePairSplitBetweenArrays() {
+        ByteBuf out = Unpooled.buffer();
+        try {
+            WsByteBufWriter writer = new WsByteBufWriter(out);
+            char[] chars = ("x" + EMOJI + EMOJI).toCharArray();
+            writer.write(chars, 0, 2);
+            writer.write(chars, 2, 2);
+            writer.write(chars, 4, 1);
+            writer.close();
+            assertEquals("x" + EMOJI + EMOJI, out.toString(CharsetUtil.UTF_8));
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void appendWithRange() {
+        ByteBuf out = Unpooled.buffer();
+        try {
+            WsByteBufWriter writer = new WsByteBufWriter(out);
+            writer.append("--é\ud83d", 2, 4);
+            writer.append("\ude00");
+            writer.append(null);
+            writer.close();
+            assertEquals("é" + EMOJI + "null", out.toString(CharsetUtil.UTF_8));
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void loneHighSurrogateAtClose() throws Exception {
+        ByteBuf out = Unpooled.buffer();
+        try {
+            WsByteBufWriter writer = new WsByteBufWriter(out);
+            writer.write("ab\ud83d");
+            assertEquals(2, out.readableBytes());
+            writer.close();
+            assertEquals("ab?", out.toString(CharsetUtil.UTF_8));
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void matchesByteBufUtil() {
+        String text = "Grüße 世界 " + EMOJI + " \"\\\n";
+        ByteBuf out = Unpooled.buffer();
+        try {
+            WsByteBufWriter writer = new WsByteBufWriter(out);
+            for (int i = 0 ; i < text.length() ; i++) {
+                writer.write(text, i, 1);
+            }
+            writer.close();
+            assertArrayEquals(text.getBytes(CharsetUtil.UTF_8), ByteBufUtil.getBytes(out));
+        }
+        finally {
+            out.release();
+        }
+    }
+}
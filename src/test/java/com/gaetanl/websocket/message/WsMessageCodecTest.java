@@ -0,0 +1,68 @@
+package com.gaetanl.websocket.message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonParseException;
+
+public class WsMessageCodecTest {
+    private final WsMessageCodec codec = WsMessageCodec.getInstance();
+
+    @Test
+    public void roundTrip() {
+        WsMsgText message = new WsMsgText();
+        message.setText("bonjour \"à tous\"");
+        message.setId(42);
+        message.setSeq(3);
+        String json = codec.toJson(message);
+        assertTrue(json.startsWith("{\"type\":\"text\""), json);
+
+        WsMsgText decoded = (WsMsgText) codec.fromJson(json);
+        assertEquals("text", decoded.getType());
+        assertEquals("bonjour \"à tous\"", decoded.getText());
+        assertEquals(42, decoded.getId());
+        assertEquals(3, decoded.getSeq());
+    }
+
+    @Test
+    public void typeWrittenFirst() {
+        WsAckText ack = new WsAckText();
+        ack.setOriginalText("x");
+        assertTrue(codec.toJson(ack).startsWith("{\"type\":\"ack-text\""), codec.toJson(ack));
+        assertTrue(codec.toPrettyJson(ack).matches("(?s)\\{\\s*\"type\": \"ack-text\",.*"), codec.toPrettyJson(ack));
+    }
+
+    @Test
+    public void typeAfterOtherFields() {
+        WsMsgText decoded = (WsMsgText) codec.fromJson("{\"text\":\"x\",\"id\":5,\"type\":\"text\",\"seq\":2}");
+        assertEquals("x", decoded.getText());
+        assertEquals(5, decoded.getId());
+        assertEquals(2, decoded.getSeq());
+    }
+
+    @Test
+    public void unknownFieldsSkipped() {
+        WsMsgText decoded = (WsMsgText) codec.fromJson("{\"type\":\"text\",\"extra\":{\"a\":[1,2]},\"text\":\"x\"}");
+        assertEquals("x", decoded.getText());
+    }
+
+    @Test
+    public void messageWithoutFields() {
+        assertEquals(WsMsgDeconnexion.class, codec.fromJson("{\"type\":\"deconnexion\"}").getClass());
+    }
+
+    @Test
+    public void nullMessage() {
+        assertNull(codec.fromJson("null"));
+    }
+
+    @Test
+    public void unknownOrMissingTypeRejected() {
+        assertThrows(JsonParseException.class, () -> codec.fromJson("{\"type\":\"inconnu\",\"text\":\"x\"}"));
+        assertThrows(JsonParseException.class, () -> codec.fromJson("{\"type\":null}"));
+        assertThrows(JsonParseException.class, () -> codec.fromJson("{\"text\":\"x\"}"));
+        assertThrows(JsonParseException.class, () -> codec.fromJson("{}"));
+        assertThrows(JsonParseException.class, () -> codec.fromJson("[1]"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.gaetanl.websocket.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.*;
+
+import com.gaetanl.websocket.message.*;
+
+import io.netty.channel.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+public class WebSocketAckBatcherTest {
+    private EmbeddedChannel channel;
+    private WebSocketAckBatcher batcher;
+
+    @BeforeEach
+    public void setUp() {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        channel.freezeTime();
+        final ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        batcher = new WebSocketAckBatcher(ctx, 4, 10, null) {
+            @Override
+            protected void write(WebSocketFrame ack) {
+                ctx.writeAndFlush(ack);
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void batchSizeFlushesImmediately() {
+        batcher.received(1, true);
+        batcher.received(2, true);
+        batcher.received(3, true);
+        assertNull(channel.readOutbound());
+        batcher.received(4, true);
+        WsAck ack = readAck();
+        assertEquals(4, ack.getCumulative());
+        assertNull(ack.getRanges());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void delayFlushesPartialBatch() {
+        batcher.received(1, true);
+        channel.advanceTimeBy(9, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertNull(channel.readOutbound());
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertEquals(1, readAck().getCumulative());
+    }
+
+    @Test
+    public void gapsBecomeRanges() {
+        batcher.received(1, true);
+        batcher.received(2, true);
+        batcher.received(4, true);
+        batcher.received(6, true);
+        WsAck ack = readAck();
+        assertEquals(2, ack.getCumulative());
+        assertArrayEquals(new long[] { 4, 4, 6, 6 }, ack.getRanges());
+
+        // Le message manquant comble la plage suivante
+        batcher.received(3, true);
+        batcher.received(5, true);
+        batcher.flush();
+        ack = readAck();
+        assertEquals(6, ack.getCumulative());
+        assertNull(ack.getRanges());
+    }
+
+    @Test
+    public void adjacentRangesMerge() {
+        batcher.received(3, false);
+        batcher.received(5, false);
+        batcher.received(4, true);
+        batcher.flush();
+        WsAck ack = readAck();
+        assertEquals(0, ack.getCumulative());
+        assertArrayEquals(new long[] { 3, 5 }, ack.getRanges());
+    }
+
+    @Test
+    public void duplicatesIgnored() {
+        batcher.received(1, true);
+        batcher.received(3, true);
+        batcher.received(3, true);
+        batcher.received(1, true);
+        WsAck ack = readAck();
+        assertEquals(1, ack.getCumulative());
+        assertArrayEquals(new long[] { 3, 3 }, ack.getRanges());
+    }
+
+    @Test
+    public void messagesWithoutAckOnlyAdvanceCumulative() {
+        batcher.received(1, false);
+        batcher.received(2, false);
+        batcher.flush();
+        channel.advanceTimeBy(1, TimeUnit.SECONDS);
+        channel.runScheduledPendingTasks();
+        assertNull(channel.readOutbound());
+
+        batcher.received(3, true);
+        batcher.flush();
+        assertEquals(3, readAck().getCumulative());
+    }
+
+    @Test
+    public void onlyMostRecentRangesSent() {
+        for (int i = 0 ; i < WebSocketAckBatcher.MAX_SENT_RANGES + 4 ; i++) {
+            batcher.received(2 * i + 2, false);
+        }
+        batcher.received(1000, true);
+        batcher.flush();
+        long[] ranges = readAck().getRanges();
+        assertEquals(2 * WebSocketAckBatcher.MAX_SENT_RANGES, ranges.length);
+        assertEquals(1000, ranges[ranges.length - 1]);
+    }
+
+    @Test
+    public void closeDropsPendingAck() {
+        batcher.received(1, true);
+        batcher.close();
+        batcher.flush();
+        channel.advanceTimeBy(1, TimeUnit.SECONDS);
+        channel.runScheduledPendingTasks();
+        assertNull(channel.readOutbound());
+        batcher.received(2, true);
+        batcher.flush();
+        assertNull(channel.readOutbound());
+    }
+
+    private WsAck readAck() {
+        WebSocketFrame frame = channel.readOutbound();
+        assertNotNull(frame, "no ack written");
+        try {
+            return (WsAck) WsWireFormat.decodeFrame(frame);
+        }
+        finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.gaetanl.websocket.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.netty.buffer.*;
+import io.netty.util.CharsetUtil;
+
+public class WebSocketJournalSegmentTest {
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void reopenIndexedSegment() throws IOException {
+        WebSocketJournalSegment segment = WebSocketJournalSegment.create(dir, 1, CAPACITY);
+        append(segment, "un", WebSocketJournalSegment.TEXT | WebSocketJournalSegment.FINAL_FRAGMENT);
+        append(segment, "deux", WebSocketJournalSegment.BINARY);
+        append(segment, "trois", WebSocketJournalSegment.CONTINUATION | WebSocketJournalSegment.FINAL_FRAGMENT);
+        int size = segment.size();
+        segment.close();
+
+        WebSocketJournalSegment reopened = WebSocketJournalSegment.open(logFile(1));
+        assertEquals(3, reopened.count());
+        assertEquals(3, reopened.lastOffset());
+        assertEquals(size, reopened.size());
+        assertRecord(reopened, 0, "un", WebSocketJournalSegment.TEXT | WebSocketJournalSegment.FINAL_FRAGMENT);
+        assertRecord(reopened, 1, "deux", WebSocketJournalSegment.BINARY);
+        assertRecord(reopened, 2, "trois", WebSocketJournalSegment.CONTINUATION | WebSocketJournalSegment.FINAL_FRAGMENT);
+    }
+
+    @Test
+    public void recoverRecordsWrittenAfterIndex() throws IOException {
+        WebSocketJournalSegment segment = WebSocketJournalSegment.create(dir, 11, CAPACITY);
+        append(segment, "un", WebSocketJournalSegment.TEXT);
+        append(segment, "deux", WebSocketJournalSegment.TEXT);
+        append(segment, "trois", WebSocketJournalSegment.TEXT);
+        segment.close();
+
+        // Arrêt entre l'écriture de l'enregistrement et celle de son index
+        writeInt(indexFile(11), 8, 0);
+        writeInt(indexFile(11), 4, 0);
+
+        WebSocketJournalSegment reopened = WebSocketJournalSegment.open(logFile(11));
+        assertEquals(3, reopened.count());
+        assertEquals(13, reopened.lastOffset());
+        assertRecord(reopened, 1, "deux", WebSocketJournalSegment.TEXT);
+        assertRecord(reopened, 2, "trois", WebSocketJournalSegment.TEXT);
+
+        // Les écritures reprennent après le dernier enregistrement
+        append(reopened, "quatre", WebSocketJournalSegment.TEXT);
+        assertRecord(reopened, 3, "quatre", WebSocketJournalSegment.TEXT);
+    }
+
+    @Test
+    public void truncatedRecordIgnored() throws IOException {
+        WebSocketJournalSegment segment = WebSocketJournalSegment.create(dir, 1, CAPACITY);
+        append(segment, "un", WebSocketJournalSegment.TEXT);
+        int end = segment.size();
+        segment.close();
+
+        // En-tête valide annonçant un payload plus long que le fichier
+        writeInt(logFile(1), end, (CAPACITY << 4) | 8);
+
+        WebSocketJournalSegment reopened = WebSocketJournalSegment.open(logFile(1));
+        assertEquals(1, reopened.count());
+        assertEquals(end, reopened.size());
+    }
+
+    @Test
+    public void recordWithoutHeaderIgnored() throws IOException {
+        WebSocketJournalSegment segment = WebSocketJournalSegment.create(dir, 1, CAPACITY);
+        append(segment, "un", WebSocketJournalSegment.TEXT);
+        append(segment, "deux", WebSocketJournalSegment.TEXT);
+        segment.close();
+
+        // Payload écrit, en-tête pas encore : fin du log
+        int second = WebSocketJournalSegment.RECORD_HEADER_SIZE + 2;
+        writeInt(logFile(1), second, 0);
+        writeInt(indexFile(1), 4, 0);
+
+        WebSocketJournalSegment reopened = WebSocketJournalSegment.open(logFile(1));
+        assertEquals(1, reopened.count());
+        assertEquals(second, reopened.size());
+    }
+
+    @Test
+    public void fullSegmentRefusesAppend() throws IOException {
+        WebSocketJournalSegment segment = WebSocketJournalSegment.create(dir, 1, WebSocketJournalSegment.capacityFor(4));
+        assertTrue(append(segment, "abcd", WebSocketJournalSegment.TEXT));
+        assertFalse(append(segment, "e", WebSocketJournalSegment.TEXT));
+        assertEquals(1, segment.count());
+    }
+
+    @Test
+    public void parseBaseOffset() {
+        assertEquals(42, WebSocketJournalSegment.parseBaseOffset(WebSocketJournalSegment.fileName(42, WebSocketJournalSegment.LOG_SUFFIX)));
+        assertEquals(-1, WebSocketJournalSegment.parseBaseOffset(WebSocketJournalSegment.fileName(42, WebSocketJournalSegment.INDEX_SUFFIX)));
+        assertEquals(-1, WebSocketJournalSegment.parseBaseOffset("abc.log"));
+    }
+
+    private static boolean append(WebSocketJournalSegment segment, String payload, int flags) {
+        ByteBuf buf = Unpooled.copiedBuffer(payload, CharsetUtil.UTF_8);
+        try {
+            return segment.append(buf, flags, System.currentTimeMillis());
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    private static void assertRecord(WebSocketJournalSegment segment, int i, String payload, int flags) {
+        assertEquals(flags, segment.flags(i));
+        ByteBuf buf = segment.payload(i);
+        try {
+            assertEquals(payload, buf.toString(CharsetUtil.UTF_8));
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    private File logFile(long baseOffset) {
+        return new File(dir, WebSocketJournalSegment.fileName(baseOffset, WebSocketJournalSegment.LOG_SUFFIX));
+    }
+
+    private File indexFile(long baseOffset) {
+        return new File(dir, WebSocketJournalSegment.fileName(baseOffset, WebSocketJournalSegment.INDEX_SUFFIX));
+    }
+
+    private static void writeInt(File file, int position, int value) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            raf.writeInt(value);
+        }
+        finally {
+            raf.close();
+        }
+    }
+}
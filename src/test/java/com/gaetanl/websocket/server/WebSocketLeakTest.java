@@ -0,0 +1,249 @@
+package com.gaetanl.websocket.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.*;
+
+import com.gaetanl.websocket.message.*;
+
+import io.netty.buffer.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.ResourceLeakDetector;
+
+/**
+ * Chemins d'encodage, de décodage, du cache des accusés et du recyclage des
+ * messages, parcourus par un {@link WebSocketServerHandler} sous
+ * {@link ResourceLeakDetector.Level#PARANOID} : chaque buffer est suivi, et
+ * toute fuite signalée par Netty fait échouer le test.
+ */
+public class WebSocketLeakTest {
+    private static final List<String> leaks = new CopyOnWriteArrayList<String>();
+    private static ResourceLeakDetector.Level previousLevel;
+
+    private WsAckCache ackCache;
+    private EmbeddedChannel channel;
+
+    @BeforeAll
+    public static void enableLeakDetection() throws Exception {
+        previousLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        byteBufLeakDetector().setLeakListener(new ResourceLeakDetector.LeakListener() {
+            @Override
+            public void onLeak(String resourceType, String records) {
+                leaks.add(resourceType + records);
+            }
+        });
+    }
+
+    @AfterAll
+    public static void restoreLeakDetection() throws Exception {
+        byteBufLeakDetector().setLeakListener(null);
+        ResourceLeakDetector.setLevel(previousLevel);
+    }
+
+    /**
+     * Le détecteur des ByteBuf est créé par Netty et n'est pas exposé.
+     */
+    @SuppressWarnings("unchecked")
+    private static ResourceLeakDetector<ByteBuf> byteBufLeakDetector() throws Exception {
+        Field field = AbstractByteBuf.class.getDeclaredField("leakDetector");
+        field.setAccessible(true);
+        return (ResourceLeakDetector<ByteBuf>) field.get(null);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        leaks.clear();
+        ackCache = new WsAckCache(16, 4096);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+        ackCache.clear();
+        assertEquals(Collections.emptyList(), collectLeaks(20), "ByteBuf leaks");
+    }
+
+    /**
+     * Les fuites sont signalées à l'allocation suivante d'un buffer suivi,
+     * une fois le buffer perdu collecté par le GC.
+     *
+     * @param   attempts    nombre maximal de GC demandés
+     */
+    private static List<String> collectLeaks(int attempts) {
+        for (int i = 0 ; i < attempts && leaks.isEmpty() ; i++) {
+            System.gc();
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            PooledByteBufAllocator.DEFAULT.buffer(1).release();
+        }
+        return new ArrayList<String>(leaks);
+    }
+
+    private EmbeddedChannel newChannel(WsWireFormat format, WebSocketServerConfig config) {
+        channel = new EmbeddedChannel();
+        channel.attr(WsWireFormat.ATTRIBUTE).set(format);
+        channel.pipeline().addLast(new WebSocketServerHandler(WebSocketServerHandler.defaultDispatcher(), null, config, null, null, ackCache));
+        return channel;
+    }
+
+    private static WebSocketServerConfig recyclingConfig() {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setRecycleMessages(true);
+        config.setAckBatchSize(1);
+        return config;
+    }
+
+    private static WsMsgText text(String text, long seq) {
+        WsMsgText message = new WsMsgText();
+        message.setText(text);
+        message.setId(seq + 100);
+        message.setSeq(seq);
+        return message;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * @return  l'accusé écrit par le serveur, décodé depuis son pool puis
+     *          recyclé
+     */
+    private WsMessage readAck(Class<? extends WsMessage> type) {
+        WebSocketFrame frame = channel.readOutbound();
+        assertNotNull(frame, "no ack written");
+        try {
+            WsMessage ack = WsWireFormat.decodeFrame(frame, true);
+            assertEquals(type, ack.getClass());
+            return ack;
+        }
+        finally {
+            frame.release();
+        }
+    }
+
+    @Test
+    public void detectsLeaks() {
+        leakBuffer();
+        assertFalse(collectLeaks(100).isEmpty(), "leak not reported");
+        leaks.clear();
+    }
+
+    /**
+     * Hors de la méthode de test, pour que le buffer ne soit plus référencé
+     * par sa frame d'exécution. Non poolé : le détecteur suit le buffer
+     * sous-jacent, qu'un pool peut garder atteignable après la perte du
+     * wrapper.
+     */
+    private static void leakBuffer() {
+        UnpooledByteBufAllocator.DEFAULT.directBuffer(16).writeInt(1);
+    }
+
+    @Test
+    public void binaryCachedAcks() {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setAckBatchSize(1);
+        newChannel(WsWireFormat.BINARY, config);
+        String[] texts = { "court", repeat('x', 2000), "court", repeat('x', 2000) };
+        for (String text : texts) {
+            assertFalse(channel.writeInbound(WsWireFormat.BINARY.encodeFrame(channel.alloc(), text(text, 0))));
+            WsAckText ack = (WsAckText) readAck(WsAckText.class);
+            assertEquals(text, ack.getOriginalText());
+            ack.recycle();
+        }
+        assertEquals(2, ackCache.getHits());
+    }
+
+    @Test
+    public void jsonCachedAcks() {
+        newChannel(WsWireFormat.JSON, recyclingConfig());
+        String[] texts = { "court", repeat('y', 2000), "court", repeat('y', 2000) };
+        for (String text : texts) {
+            assertFalse(channel.writeInbound(WsWireFormat.JSON.encodeFrame(channel.alloc(), text(text, 0))));
+            WsAckText ack = (WsAckText) readAck(WsAckText.class);
+            assertEquals(text, ack.getOriginalText());
+        }
+        assertEquals(2, ackCache.getHits());
+    }
+
+    @Test
+    public void binaryRecycledMessages() {
+        newChannel(WsWireFormat.BINARY, recyclingConfig());
+        for (String text : new String[] { "recyclé", repeat('w', 2000), "recyclé" }) {
+            channel.writeInbound(WsWireFormat.BINARY.encodeFrame(channel.alloc(), text(text, 0)));
+            WsAckText ack = (WsAckText) readAck(WsAckText.class);
+            assertTrue(ack.isPooled());
+            assertEquals(text, ack.getOriginalText());
+            ack.recycle();
+        }
+        // Texte reçu non décodé : copié tel quel, sans passer par le cache
+        assertEquals(0, ackCache.getHits() + ackCache.getMisses());
+    }
+
+    @Test
+    public void sequencedMessagesCumulativeAck() {
+        newChannel(WsWireFormat.BINARY, recyclingConfig());
+        channel.writeInbound(WsWireFormat.BINARY.encodeFrame(channel.alloc(), text("un", 1)));
+        WsAck ack = (WsAck) readAck(WsAck.class);
+        assertEquals(1, ack.getCumulative());
+    }
+
+    @Test
+    public void fragmentedBinaryMessage() {
+        newChannel(WsWireFormat.BINARY, recyclingConfig());
+        ByteBuf encoded = WsBinaryCodec.getInstance().encode(channel.alloc(), text("fragmenté", 0));
+        int half = encoded.readableBytes() / 2;
+        channel.writeInbound(new BinaryWebSocketFrame(false, 0, encoded.readRetainedSlice(half)),
+                new ContinuationWebSocketFrame(true, 0, encoded));
+        WsAckText ack = (WsAckText) readAck(WsAckText.class);
+        assertEquals("fragmenté", ack.getOriginalText());
+        ack.recycle();
+    }
+
+    @Test
+    public void fragmentedJsonMessage() {
+        newChannel(WsWireFormat.JSON, recyclingConfig());
+        ByteBuf encoded = WsMessageCodec.getInstance().encode(channel.alloc(), text("fragmenté", 0));
+        int half = encoded.readableBytes() / 2;
+        channel.writeInbound(new TextWebSocketFrame(false, 0, encoded.readRetainedSlice(half)),
+                new ContinuationWebSocketFrame(true, 0, encoded));
+        assertEquals("fragmenté", ((WsAckText) readAck(WsAckText.class)).getOriginalText());
+    }
+
+    @Test
+    public void corruptedFramesReleased() {
+        newChannel(WsWireFormat.BINARY, recyclingConfig());
+        ByteBuf encoded = WsBinaryCodec.getInstance().encode(channel.alloc(), text("tronqué", 0));
+        encoded.writerIndex(encoded.writerIndex() - 2);
+        channel.writeInbound(new BinaryWebSocketFrame(encoded));
+        channel.writeInbound(new TextWebSocketFrame(channel.alloc().buffer().writeBytes("{pas du json".getBytes())));
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void oversizedMessageAborted() {
+        WebSocketServerConfig config = recyclingConfig();
+        config.setMaxMessageSize(16);
+        newChannel(WsWireFormat.BINARY, config);
+        ByteBuf encoded = WsBinaryCodec.getInstance().encode(channel.alloc(), text(repeat('z', 64), 0));
+        channel.writeInbound(new BinaryWebSocketFrame(false, 0, encoded.readRetainedSlice(8)),
+                new ContinuationWebSocketFrame(true, 0, encoded));
+        CloseWebSocketFrame close = channel.readOutbound();
+        assertEquals(WebSocketCloseStatus.MESSAGE_TOO_BIG.code(), close.statusCode());
+        close.release();
+    }
+}
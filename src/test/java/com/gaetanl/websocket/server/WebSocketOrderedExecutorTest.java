@@ -0,0 +1,86 @@
+package com.gaetanl.websocket.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+
+public class WebSocketOrderedExecutorTest {
+    /** Exécuteur partagé qui garde les tâches acceptées, puis refuse les suivantes une fois arrêté */
+    private static final class StoppableExecutor implements Executor {
+        final Queue<Runnable> accepted = new ArrayDeque<Runnable>();
+        boolean stopped = false;
+
+        @Override
+        public void execute(Runnable command) {
+            if (stopped) {
+                throw new RejectedExecutionException("stopped");
+            }
+            accepted.add(command);
+        }
+    }
+
+    private static final class CountingTask implements WebSocketOrderedExecutor.Discardable {
+        int runs = 0;
+        int discards = 0;
+
+        @Override
+        public void run() {
+            runs++;
+        }
+
+        @Override
+        public void discard(RejectedExecutionException cause) {
+            discards++;
+        }
+    }
+
+    @Test
+    public void rejectedTaskIsDiscarded() {
+        StoppableExecutor shared = new StoppableExecutor();
+        shared.stopped = true;
+        WebSocketOrderedExecutor executor = new WebSocketOrderedExecutor(shared);
+
+        CountingTask task = new CountingTask();
+        executor.execute(task);
+        assertEquals(0, task.runs);
+        assertEquals(1, task.discards);
+    }
+
+    @Test
+    public void pendingTasksAreDiscardedWhenRescheduleIsRejected() {
+        StoppableExecutor shared = new StoppableExecutor();
+        WebSocketOrderedExecutor executor = new WebSocketOrderedExecutor(shared);
+
+        // Au-delà d'un passage du runner, le reste attend une nouvelle planification
+        List<CountingTask> tasks = new ArrayList<CountingTask>();
+        for (int i = 0; i < 20; i++) {
+            CountingTask task = new CountingTask();
+            tasks.add(task);
+            executor.execute(task);
+        }
+        assertEquals(1, shared.accepted.size());
+
+        shared.stopped = true;
+        shared.accepted.poll().run();
+
+        int runs = 0;
+        int discards = 0;
+        for (CountingTask task : tasks) {
+            assertEquals(1, task.runs + task.discards);
+            runs += task.runs;
+            discards += task.discards;
+        }
+        assertEquals(16, runs);
+        assertEquals(4, discards);
+
+        // Les tâches suivantes sont de nouveau planifiées une fois l'exécuteur disponible
+        shared.stopped = false;
+        CountingTask next = new CountingTask();
+        executor.execute(next);
+        shared.accepted.poll().run();
+        assertEquals(1, next.runs);
+    }
+}
@@ -0,0 +1,56 @@
+package com.gaetanl.websocket.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetAddress;
+
+import org.junit.jupiter.api.Test;
+
+public class WebSocketRateLimiterTest {
+    private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+    private static WebSocketRateLimiter limiter(int ipMessagesPerSecond) {
+        WebSocketServerConfig config = new WebSocketServerConfig();
+        config.setIpMessagesPerSecond(ipMessagesPerSecond);
+        config.setMaxConnectionsPerIp(1);
+        return new WebSocketRateLimiter(config);
+    }
+
+    @Test
+    public void reconnectKeepsAddressLimits() {
+        WebSocketRateLimiter limiter = limiter(2);
+        WebSocketRateLimiter.Limits limits = limiter.openConnection(ADDRESS);
+        assertEquals(0, limits.tryAcquire(2, 0));
+        limiter.closeConnection(ADDRESS);
+        assertEquals(1, limiter.getTrackedAddresses());
+
+        limits = limiter.openConnection(ADDRESS);
+        assertNotNull(limits);
+        assertTrue(limits.tryAcquire(1, 0) > 0);
+    }
+
+    @Test
+    public void idleAddressRemovedOnClose() {
+        WebSocketRateLimiter limiter = limiter(2);
+        assertNotNull(limiter.openConnection(ADDRESS));
+        assertNull(limiter.openConnection(ADDRESS));
+        limiter.closeConnection(ADDRESS);
+        assertEquals(0, limiter.getTrackedAddresses());
+        assertEquals(0, limiter.getConnections());
+    }
+
+    @Test
+    public void refilledAddressSwept() throws Exception {
+        WebSocketRateLimiter limiter = limiter(1000);
+        InetAddress other = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+        assertEquals(0, limiter.openConnection(ADDRESS).tryAcquire(1000, 0));
+        limiter.closeConnection(ADDRESS);
+        assertEquals(1, limiter.getTrackedAddresses());
+
+        // Seau de nouveau plein après une seconde, retiré à la fermeture suivante
+        Thread.sleep(1100);
+        limiter.openConnection(other);
+        limiter.closeConnection(other);
+        assertEquals(0, limiter.getTrackedAddresses());
+    }
+}
@@ -0,0 +1,76 @@
+package com.gaetanl.websocket.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class WebSocketTokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void burstUpToOneSecondOfRate() {
+        WebSocketTokenBucket bucket = new WebSocketTokenBucket(10);
+        for (int i = 0 ; i < 10 ; i++) {
+            assertEquals(0, bucket.tryAcquire(1), "permit " + i);
+        }
+        long wait = bucket.tryAcquire(1);
+        assertTrue(wait > 0 && wait <= SECOND / 10, "wait " + wait);
+    }
+
+    @Test
+    public void refusedRequestTakesNothing() {
+        WebSocketTokenBucket bucket = new WebSocketTokenBucket(10);
+        assertEquals(0, bucket.tryAcquire(10));
+        long first = bucket.tryAcquire(5);
+        long second = bucket.tryAcquire(5);
+        assertTrue(first > 0);
+        // Aucune dette supplémentaire : le second délai ne peut qu'avoir diminué
+        assertTrue(second <= first, first + " then " + second);
+    }
+
+    @Test
+    public void reserveAccumulatesDebt() {
+        WebSocketTokenBucket bucket = new WebSocketTokenBucket(10);
+        assertEquals(0, bucket.reserve(10));
+        long first = bucket.reserve(1);
+        long second = bucket.reserve(1);
+        assertTrue(first > 0);
+        assertTrue(second > first, first + " then " + second);
+        assertTrue(second <= 2 * SECOND / 10);
+        assertTrue(bucket.tryAcquire(1) > second - SECOND / 100);
+    }
+
+    @Test
+    public void oversizedRequestAcceptedWhenFull() {
+        WebSocketTokenBucket bucket = new WebSocketTokenBucket(10);
+        assertEquals(0, bucket.tryAcquire(25));
+        // La dette de 2,5 s retarde la demande suivante
+        long wait = bucket.tryAcquire(1);
+        assertTrue(wait > SECOND, "wait " + wait);
+    }
+
+    @Test
+    public void refillsOverTime() throws InterruptedException {
+        WebSocketTokenBucket bucket = new WebSocketTokenBucket(1000);
+        assertEquals(0, bucket.tryAcquire(1000));
+        long wait = bucket.tryAcquire(1);
+        assertTrue(wait > 0);
+        TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(0, bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void fullUntilAcquired() {
+        WebSocketTokenBucket bucket = new WebSocketTokenBucket(10);
+        assertTrue(bucket.isFull());
+        assertEquals(0, bucket.tryAcquire(1));
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    public void invalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new WebSocketTokenBucket(0));
+    }
+}